@@ -1,5 +1,10 @@
 package com.gigsterous.auth;
 
+import com.gigsterous.auth.token.WriteBehindTokenStore;
+
+import java.time.Duration;
+import java.util.Locale;
+
 import lombok.Getter;
 import lombok.Setter;
 
@@ -23,4 +28,383 @@ public class AuthProperties {
   private String emailFrom;
   private String corsAllowedOrigins;
 
+  private TokenCache tokenCache = new TokenCache();
+  private Jwt jwt = new Jwt();
+  private TokenReaper tokenReaper = new TokenReaper();
+  private TokenEpoch tokenEpoch = new TokenEpoch();
+  private Introspection introspection = new Introspection();
+  private TokenLog tokenLog = new TokenLog();
+  private TokenWriteBehind tokenWriteBehind = new TokenWriteBehind();
+  private ClientCache clientCache = new ClientCache();
+  private PasswordHashing passwordHashing = new PasswordHashing();
+  private LoginThrottle loginThrottle = new LoginThrottle();
+  private UserCache userCache = new UserCache();
+  private EmailFilter emailFilter = new EmailFilter();
+  private UserExport userExport = new UserExport();
+  private UserImport userImport = new UserImport();
+  private ConfirmationTokens confirmationTokens = new ConfirmationTokens();
+  private EmailOutbox emailOutbox = new EmailOutbox();
+  private EmailThrottle emailThrottle = new EmailThrottle();
+  private Localization localization = new Localization();
+  private SessionStore sessionStore = new SessionStore();
+
+  /**
+   * <p>
+   * Settings of the in-memory cache in front of the token store.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class TokenCache {
+
+    private boolean enabled = true;
+    private long maximumSize = 10000;
+    private Duration timeToLive = Duration.ofSeconds(30);
+
+  }
+
+  /**
+   * <p>
+   * Settings of self-contained JWT access tokens. When no key store is given, a
+   * key pair is generated on startup, which is only suitable for a single node.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class Jwt {
+
+    private boolean enabled = false;
+    private String keyStore;
+    private String keyStorePassword;
+    private String keyAlias;
+    private String keyPassword;
+    private String keyId;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the job deleting expired tokens and abandoned authorization
+   * codes. Rows are deleted in batches of batchSize with a pause between them.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class TokenReaper {
+
+    private boolean enabled = true;
+    private Duration interval = Duration.ofMinutes(1);
+    private int batchSize = 1000;
+    private int maxBatches = 100;
+    private Duration pause = Duration.ofMillis(100);
+    private Duration gracePeriod = Duration.ofHours(1);
+    private Duration codeTimeToLive = Duration.ofMinutes(10);
+    private Duration leaseDuration = Duration.ofMinutes(5);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the in-memory copy of user token epochs. An epoch moved on
+   * another node is picked up here after at most refreshInterval.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class TokenEpoch {
+
+    private long maximumSize = 10000;
+    private Duration refreshInterval = Duration.ofSeconds(5);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the token introspection endpoint.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class Introspection {
+
+    private int maxBatchSize = 100;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the local memory-mapped token log, which replaces the token
+   * tables on single node deployments when enabled.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class TokenLog {
+
+    private boolean enabled = false;
+    private String directory = "data/tokens";
+    private int initialSize = 16 * 1024 * 1024;
+    private boolean sync = false;
+    private Duration compactionInterval = Duration.ofHours(1);
+    private Duration expiredRetention = Duration.ofHours(1);
+
+  }
+
+  /**
+   * <p>
+   * Settings of batched token writes. Issued tokens are written every
+   * flushInterval or once batchSize tokens are pending, and the grant waits
+   * for the write only with the GROUP_COMMIT durability.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class TokenWriteBehind {
+
+    private boolean enabled = false;
+    private Duration flushInterval = Duration.ofMillis(5);
+    private int batchSize = 100;
+    private int maxPending = 10000;
+    private WriteBehindTokenStore.Durability durability = WriteBehindTokenStore.Durability.ASYNC;
+    private Duration commitTimeout = Duration.ofSeconds(5);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the in-memory client details cache, and of the cache of
+   * verified client secrets which saves repeated BCrypt comparisons.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class ClientCache {
+
+    private long maximumSize = 1000;
+    private Duration timeToLive = Duration.ofMinutes(1);
+    private Duration secretTimeToLive = Duration.ofMinutes(1);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the pool hashing and matching passwords. When queueCapacity
+   * passwords already wait, requests are rejected with 503 and retryAfter.
+   * Without a fixed strength, BCrypt strength is calibrated on startup so that
+   * one hash takes about targetDuration.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class PasswordHashing {
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = 100;
+    private Duration retryAfter = Duration.ofSeconds(1);
+    private Integer strength;
+    private Duration targetDuration = Duration.ofMillis(250);
+    private int minStrength = 10;
+    private int maxStrength = 16;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the login throttle. Attempts are counted per account and per
+   * address within window, in counters of fixed size given by slices, depth
+   * and width.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class LoginThrottle {
+
+    private boolean enabled = true;
+    private Duration window = Duration.ofMinutes(5);
+    private int maxAttemptsPerAccount = 10;
+    private int maxAttemptsPerAddress = 100;
+    private int slices = 5;
+    private int depth = 4;
+    private int width = 4096;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the in-memory cache of users looked up by e-mail.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class UserCache {
+
+    private long maximumSize = 10000;
+    private Duration timeToLive = Duration.ofMinutes(1);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the filter of registered e-mails. It is sized for twice the
+   * current users, but at least expectedUsers, rebuilt every rebuildInterval
+   * reading pageSize users at a time, and updated with users registered on
+   * other nodes every refreshInterval. A refresh reads again the last
+   * refreshOverlap user ids, which may have committed after higher ones.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class EmailFilter {
+
+    private boolean enabled = true;
+    private long expectedUsers = 100000;
+    private double falsePositiveRate = 0.01;
+    private Duration refreshInterval = Duration.ofSeconds(5);
+    private Duration rebuildInterval = Duration.ofHours(1);
+    private int pageSize = 10000;
+    private long refreshOverlap = 1000;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the user export, which reads fetchSize rows from the database
+   * at a time.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class UserExport {
+
+    private int fetchSize = 500;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the bulk user import, which looks up and inserts batchSize
+   * users at a time.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class UserImport {
+
+    private int batchSize = 1000;
+
+  }
+
+  /**
+   * <p>
+   * How long the links sent by e-mail can be used, per purpose.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class ConfirmationTokens {
+
+    private Duration registrationValidity = Duration.ofDays(7);
+    private Duration passwordResetValidity = Duration.ofHours(1);
+    private Duration emailChangeValidity = Duration.ofDays(1);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the e-mail dispatcher, which sends up to maxBatches batches of
+   * queued e-mails every interval. A failed e-mail is tried again after a
+   * backoff starting at initialBackoff and doubling up to maxBackoff, at most
+   * maxAttempts times. E-mails not sent within retention are dropped, so that
+   * their links do not stay in the table; retention should be longer than the
+   * backoffs of all attempts together, about 35 minutes by default, or the
+   * last attempts are never made.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class EmailOutbox {
+
+    private boolean enabled = true;
+    private Duration interval = Duration.ofSeconds(1);
+    private int batchSize = 50;
+    private int maxBatches = 20;
+    private int maxAttempts = 8;
+    private Duration initialBackoff = Duration.ofSeconds(30);
+    private Duration maxBackoff = Duration.ofMinutes(10);
+    private Duration retention = Duration.ofHours(1);
+    private Duration leaseDuration = Duration.ofMinutes(1);
+
+  }
+
+  /**
+   * <p>
+   * Settings of the per-address limit of confirmation e-mails. E-mails asked
+   * for within window after one was sent are merged into one, and at most
+   * maxPerHour are sent per hour. At most maximumSize addresses are counted.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class EmailThrottle {
+
+    private boolean enabled = true;
+    private Duration window = Duration.ofMinutes(5);
+    private int maxPerHour = 5;
+    private long maximumSize = 100000;
+
+  }
+
+  /**
+   * <p>
+   * Settings of the locale chosen with the lang parameter, which is kept in a
+   * cookie for cookieMaxAge, or in the HTTP session with resolver SESSION.
+   * Until a locale is chosen defaultLocale is used, or the Accept-Language
+   * header with acceptLanguage.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class Localization {
+
+    private Resolver resolver = Resolver.COOKIE;
+    private Locale defaultLocale = Locale.US;
+    private boolean acceptLanguage = false;
+    private Duration cookieMaxAge = Duration.ofDays(365);
+
+    public enum Resolver {
+      COOKIE, SESSION
+    }
+
+  }
+
+  /**
+   * <p>
+   * Settings of the store of HTTP sessions. With type NONE sessions stay in
+   * the servlet container, JDBC keeps them in a table shared by all nodes and
+   * LOG in a local memory-mapped log in directory. Sessions are closed after
+   * timeout without a request, and the time of their last request is written
+   * at most once per touchInterval. Expired sessions are deleted from the log
+   * every expiryInterval, expiryBatchSize at a time.
+   * </p>
+   */
+  @Getter
+  @Setter
+  public static class SessionStore {
+
+    private Type type = Type.NONE;
+    private String cookieName = "SESSION";
+    private Duration timeout = Duration.ofMinutes(30);
+    private Duration touchInterval = Duration.ofMinutes(1);
+    private String directory = "data/sessions";
+    private int initialSize = 4 * 1024 * 1024;
+    private boolean sync = false;
+    private Duration expiryInterval = Duration.ofMinutes(1);
+    private int expiryBatchSize = 1000;
+
+    public enum Type {
+      NONE, JDBC, LOG
+    }
+
+  }
+
 }
@@ -0,0 +1,81 @@
+package com.gigsterous.auth.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+
+/**
+ * <p>
+ * CachingClientDetailsService class. Read-through cache in front of another
+ * client details service, so that token requests do not query and parse the
+ * client details table every time. Unknown clients are not cached.
+ * </p>
+ * <p>
+ * Clients changed in the database are picked up after the time to live, or
+ * right away on the node where they are evicted.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class CachingClientDetailsService implements ClientDetailsService {
+
+  private final ClientDetailsService delegate;
+  private final Cache<String, ClientDetails> clients;
+
+  /**
+   * <p>
+   * CachingClientDetailsService constructor.
+   * </p>
+   */
+  public CachingClientDetailsService(ClientDetailsService delegate, long maximumSize, Duration timeToLive) {
+    this.delegate = delegate;
+    this.clients = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS).recordStats().build();
+  }
+
+  /**
+   * <p>
+   * Register hit/miss/eviction metrics of the cache with given registry.
+   * </p>
+   */
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, clients, "clientDetails");
+  }
+
+  @Override
+  public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+    return clients.get(clientId, delegate::loadClientByClientId);
+  }
+
+  /**
+   * <p>
+   * Drop given client, so that it is loaded again on the next request.
+   * </p>
+   */
+  public void evict(String clientId) {
+    log.debug("Evicting client {}", clientId);
+    clients.invalidate(clientId);
+  }
+
+  /**
+   * <p>
+   * Drop all clients.
+   * </p>
+   */
+  public void evictAll() {
+    clients.invalidateAll();
+  }
+
+}
@@ -0,0 +1,98 @@
+package com.gigsterous.auth.client;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * <p>
+ * CachingPasswordEncoder class. Remembers successful matches of another
+ * encoder for a short time, so that a client presenting the same secret again
+ * does not pay for a full BCrypt comparison.
+ * </p>
+ * <p>
+ * Matches are keyed by an HMAC of the presented secret and the stored hash,
+ * with a key generated on startup and never stored, so the cache holds no
+ * secret and a changed hash no longer matches. Failed matches are never
+ * cached and always go to the delegate.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private final PasswordEncoder delegate;
+  private final Cache<String, Boolean> matches;
+  private final ThreadLocal<Mac> mac;
+
+  /**
+   * <p>
+   * CachingPasswordEncoder constructor.
+   * </p>
+   */
+  public CachingPasswordEncoder(PasswordEncoder delegate, long maximumSize, Duration timeToLive) {
+    this.delegate = delegate;
+    this.matches = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS).build();
+
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    SecretKeySpec keySpec = new SecretKeySpec(key, ALGORITHM);
+
+    this.mac = ThreadLocal.withInitial(() -> {
+      try {
+        Mac instance = Mac.getInstance(ALGORITHM);
+        instance.init(keySpec);
+        return instance;
+      } catch (GeneralSecurityException e) {
+        throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+      }
+    });
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return delegate.encode(rawPassword);
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    if (rawPassword == null || encodedPassword == null) {
+      return delegate.matches(rawPassword, encodedPassword);
+    }
+
+    String key = key(rawPassword, encodedPassword);
+    if (matches.getIfPresent(key) != null) {
+      return true;
+    }
+
+    boolean matched = delegate.matches(rawPassword, encodedPassword);
+    if (matched) {
+      matches.put(key, Boolean.TRUE);
+    }
+
+    return matched;
+  }
+
+  private String key(CharSequence rawPassword, String encodedPassword) {
+    Mac instance = mac.get();
+    instance.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+    instance.update((byte) 0);
+    return Base64.getEncoder()
+        .encodeToString(instance.doFinal(rawPassword.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+
+}
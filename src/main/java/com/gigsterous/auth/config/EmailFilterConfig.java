@@ -0,0 +1,46 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.RegisteredEmails;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * <p>
+ * EmailFilterConfig class. Schedules the build and refresh of the filter of
+ * registered e-mails. Without it, the filter is never built and every e-mail
+ * is looked up in the database.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "auth.emailFilter", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class EmailFilterConfig implements SchedulingConfigurer {
+
+  private final AuthProperties properties;
+  private final RegisteredEmails registeredEmails;
+
+  /**
+   * <p>
+   * EmailFilterConfig constructor.
+   * </p>
+   */
+  public EmailFilterConfig(AuthProperties properties, RegisteredEmails registeredEmails) {
+    this.properties = properties;
+    this.registeredEmails = registeredEmails;
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar registrar) {
+    AuthProperties.EmailFilter settings = properties.getEmailFilter();
+
+    // the first build runs right on startup
+    registrar.addFixedDelayTask(registeredEmails::rebuild, settings.getRebuildInterval().toMillis());
+    registrar.addFixedDelayTask(registeredEmails::refresh, settings.getRefreshInterval().toMillis());
+  }
+
+}
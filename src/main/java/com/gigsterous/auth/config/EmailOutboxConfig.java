@@ -0,0 +1,63 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.EmailDispatcher;
+import com.gigsterous.auth.service.LeaseService;
+import com.gigsterous.auth.service.MailContentBuilder;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * <p>
+ * EmailOutboxConfig class. Schedules sending of queued e-mails. Without it,
+ * e-mails stay in the outbox.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "auth.emailOutbox", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class EmailOutboxConfig implements SchedulingConfigurer {
+
+  private final AuthProperties properties;
+  private final JdbcTemplate jdbcTemplate;
+  private final LeaseService leaseService;
+  private final JavaMailSender mailSender;
+  private final MailContentBuilder mailContentBuilder;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * <p>
+   * EmailOutboxConfig constructor.
+   * </p>
+   */
+  public EmailOutboxConfig(AuthProperties properties, JdbcTemplate jdbcTemplate, LeaseService leaseService,
+      JavaMailSender mailSender, MailContentBuilder mailContentBuilder, MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.jdbcTemplate = jdbcTemplate;
+    this.leaseService = leaseService;
+    this.mailSender = mailSender;
+    this.mailContentBuilder = mailContentBuilder;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Bean
+  public EmailDispatcher emailDispatcher() {
+    return new EmailDispatcher(jdbcTemplate, leaseService, mailSender, mailContentBuilder,
+        properties.getEmailOutbox(), meterRegistry);
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar registrar) {
+    registrar.addFixedDelayTask(emailDispatcher()::dispatch, properties.getEmailOutbox().getInterval().toMillis());
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.client.CachingPasswordEncoder;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.ClientDetailsUserDetailsService;
+
+/**
+ * <p>
+ * IntrospectionSecurityConfig class. Clients call the introspection endpoint
+ * with HTTP basic authentication, the same way they call check_token.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Configuration
+@Order(1)
+public class IntrospectionSecurityConfig extends WebSecurityConfigurerAdapter {
+
+  private static final String INTROSPECT = "/oauth/introspect/**";
+
+  private final ClientDetailsService clientDetailsService;
+  private final PasswordEncoder passwordEncoder;
+
+  /**
+   * <p>
+   * IntrospectionSecurityConfig constructor.
+   * </p>
+   */
+  public IntrospectionSecurityConfig(@Lazy ClientDetailsService clientDetailsService,
+      CachingPasswordEncoder clientSecretEncoder) {
+    this.clientDetailsService = clientDetailsService;
+    this.passwordEncoder = clientSecretEncoder;
+  }
+
+  @Override
+  protected void configure(HttpSecurity http) throws Exception {
+
+    // @formatter:off
+    http
+      .requestMatchers().antMatchers(INTROSPECT).and()
+      .authorizeRequests().anyRequest().authenticated().and()
+      .httpBasic().and()
+      .csrf().disable()
+      .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
+      // @formatter:on
+
+  }
+
+  @Override
+  protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+    auth.userDetailsService(new ClientDetailsUserDetailsService(clientDetailsService)).passwordEncoder(passwordEncoder);
+  }
+
+}
@@ -1,16 +1,38 @@
 package com.gigsterous.auth.config;
 
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.TokenEpochService;
+import com.gigsterous.auth.token.BulkTokenStore;
+import com.gigsterous.auth.token.CachingTokenStore;
+import com.gigsterous.auth.token.CompactJdbcTokenStore;
+import com.gigsterous.auth.token.EpochTokenStore;
+import com.gigsterous.auth.token.LogTokenStore;
+import com.gigsterous.auth.token.StringInterner;
+import com.gigsterous.auth.token.TokenCodec;
+import com.gigsterous.auth.token.WriteBehindTokenStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Date;
+
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * <p>
- * JDBCTokenStoreConfig class. Configures data source for tokens.
+ * JDBCTokenStoreConfig class. Configures data source for tokens. Tokens are
+ * kept in the database, optionally written in batches, or in a local token log
+ * on single node deployments.
  * </p>
  * 
  * @author Martin Myslik
@@ -18,11 +40,92 @@ import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
 @Configuration
 public class JDBCTokenStoreConfig {
 
+  private static final int INTERNED_STRINGS = 4096;
+
   @Autowired
   private DataSource dataSource;
 
+  @Autowired
+  private AuthProperties properties;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private TokenEpochService tokenEpochService;
+
+  @Autowired
+  private TaskScheduler taskScheduler;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
   @Bean
   public TokenStore tokenStore() {
-    return new JdbcTokenStore(dataSource);
+    AuthProperties.TokenLog tokenLog = properties.getTokenLog();
+    if (tokenLog.isEnabled()) {
+      // already in memory, a cache in front of it would only hold a second copy
+      return new EpochTokenStore(logTokenStore(), tokenEpochService);
+    }
+
+    BulkTokenStore jdbcTokenStore = properties.getTokenWriteBehind().isEnabled() ? writeBehindTokenStore()
+        : compactJdbcTokenStore();
+
+    AuthProperties.TokenCache cache = properties.getTokenCache();
+    if (!cache.isEnabled()) {
+      return new EpochTokenStore(jdbcTokenStore, tokenEpochService);
+    }
+
+    CachingTokenStore cachingTokenStore = new CachingTokenStore(jdbcTokenStore, cache.getMaximumSize(),
+        cache.getTimeToLive());
+    cachingTokenStore.bindTo(meterRegistry);
+
+    // epochs are checked outside the cache, so that invalidated tokens are rejected even while cached
+    return new EpochTokenStore(cachingTokenStore, tokenEpochService);
+  }
+
+  /**
+   * <p>
+   * Local token log, closed on shutdown so that it is flushed to disk.
+   * </p>
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "auth.tokenLog", name = "enabled", havingValue = "true")
+  public LogTokenStore logTokenStore() {
+    AuthProperties.TokenLog tokenLog = properties.getTokenLog();
+
+    LogTokenStore logTokenStore = new LogTokenStore(Paths.get(tokenLog.getDirectory()),
+        new TokenCodec(new StringInterner(INTERNED_STRINGS)), tokenLog.getInitialSize(), tokenLog.isSync(),
+        tokenLog.getExpiredRetention().toMillis());
+
+    Duration interval = tokenLog.getCompactionInterval();
+    taskScheduler.scheduleWithFixedDelay(logTokenStore::compact, new Date(System.currentTimeMillis()
+        + interval.toMillis()), interval.toMillis());
+
+    return logTokenStore;
   }
+
+  /**
+   * <p>
+   * Batched token writes, closed on shutdown so that pending tokens are
+   * written.
+   * </p>
+   */
+  @Bean
+  @ConditionalOnProperty(prefix = "auth.tokenWriteBehind", name = "enabled", havingValue = "true")
+  public WriteBehindTokenStore writeBehindTokenStore() {
+    AuthProperties.TokenWriteBehind writeBehind = properties.getTokenWriteBehind();
+
+    WriteBehindTokenStore writeBehindTokenStore = new WriteBehindTokenStore(compactJdbcTokenStore(),
+        new TransactionTemplate(transactionManager), writeBehind.getFlushInterval(), writeBehind.getBatchSize(),
+        writeBehind.getMaxPending(), writeBehind.getDurability(), writeBehind.getCommitTimeout());
+    writeBehindTokenStore.bindTo(meterRegistry);
+
+    return writeBehindTokenStore;
+  }
+
+  private CompactJdbcTokenStore compactJdbcTokenStore() {
+    return new CompactJdbcTokenStore(dataSource, new TokenCodec(new StringInterner(INTERNED_STRINGS)));
+  }
+
 }
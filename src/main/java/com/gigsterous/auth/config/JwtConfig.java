@@ -0,0 +1,67 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.token.KeyIdJwtAccessTokenConverter;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
+
+/**
+ * <p>
+ * JwtConfig class. Configures signing of self-contained JWT access tokens when
+ * enabled by auth.jwt.enabled.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "auth.jwt", name = "enabled", havingValue = "true")
+public class JwtConfig {
+
+  private final AuthProperties properties;
+  private final ResourceLoader resourceLoader;
+
+  /**
+   * <p>
+   * JwtConfig constructor.
+   * </p>
+   */
+  public JwtConfig(AuthProperties properties, ResourceLoader resourceLoader) {
+    this.properties = properties;
+    this.resourceLoader = resourceLoader;
+  }
+
+  @Bean
+  public KeyIdJwtAccessTokenConverter accessTokenConverter() throws NoSuchAlgorithmException {
+    return new KeyIdJwtAccessTokenConverter(keyPair(), properties.getJwt().getKeyId());
+  }
+
+  private KeyPair keyPair() throws NoSuchAlgorithmException {
+    AuthProperties.Jwt jwt = properties.getJwt();
+
+    if (jwt.getKeyStore() != null) {
+      KeyStoreKeyFactory factory = new KeyStoreKeyFactory(resourceLoader.getResource(jwt.getKeyStore()),
+          jwt.getKeyStorePassword().toCharArray());
+      String keyPassword = jwt.getKeyPassword() != null ? jwt.getKeyPassword() : jwt.getKeyStorePassword();
+
+      return factory.getKeyPair(jwt.getKeyAlias(), keyPassword.toCharArray());
+    }
+
+    log.warn("No JWT key store configured, generating a key pair - tokens will not survive a restart");
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+
+    return generator.generateKeyPair();
+  }
+
+}
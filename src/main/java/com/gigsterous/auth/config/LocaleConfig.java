@@ -0,0 +1,64 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.LocaleResolver;
+import org.springframework.web.servlet.i18n.CookieLocaleResolver;
+import org.springframework.web.servlet.i18n.SessionLocaleResolver;
+
+/**
+ * <p>
+ * LocaleConfig class. By default the chosen locale is kept in a cookie, so
+ * that visitors who are not logged in do not open an HTTP session just by
+ * switching the language.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Configuration
+public class LocaleConfig {
+
+  static final String COOKIE_NAME = "lang";
+
+  private final AuthProperties properties;
+
+  /**
+   * <p>
+   * LocaleConfig constructor.
+   * </p>
+   */
+  public LocaleConfig(AuthProperties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * <p>
+   * Resolver for localizations.
+   * </p>
+   */
+  @Bean
+  public LocaleResolver localeResolver() {
+    AuthProperties.Localization localization = properties.getLocalization();
+
+    if (localization.getResolver() == AuthProperties.Localization.Resolver.SESSION) {
+      SessionLocaleResolver slr = new SessionLocaleResolver();
+      if (!localization.isAcceptLanguage()) {
+        slr.setDefaultLocale(localization.getDefaultLocale());
+      }
+      return slr;
+    }
+
+    CookieLocaleResolver clr = new CookieLocaleResolver();
+    clr.setCookieName(COOKIE_NAME);
+    clr.setCookieMaxAge((int) localization.getCookieMaxAge().getSeconds());
+    clr.setCookieHttpOnly(true);
+    if (!localization.isAcceptLanguage()) {
+      // without a default locale the Accept-Language header is used
+      clr.setDefaultLocale(localization.getDefaultLocale());
+    }
+    return clr;
+  }
+
+}
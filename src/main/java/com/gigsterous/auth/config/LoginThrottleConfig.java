@@ -0,0 +1,80 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.throttle.LoginFailureListener;
+import com.gigsterous.auth.throttle.LoginThrottle;
+import com.gigsterous.auth.throttle.LoginThrottleEndpoint;
+import com.gigsterous.auth.throttle.LoginThrottleFilter;
+import com.gigsterous.auth.throttle.SlidingWindowSketch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * <p>
+ * LoginThrottleConfig class. Limits failed login attempts per account and
+ * address.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "auth.loginThrottle", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class LoginThrottleConfig {
+
+  private final AuthProperties properties;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * <p>
+   * LoginThrottleConfig constructor.
+   * </p>
+   */
+  public LoginThrottleConfig(AuthProperties properties, MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Bean
+  public LoginThrottle loginThrottle() {
+    AuthProperties.LoginThrottle throttle = properties.getLoginThrottle();
+
+    return new LoginThrottle(sketch(throttle), sketch(throttle), throttle.getMaxAttemptsPerAccount(),
+        throttle.getMaxAttemptsPerAddress(), meterRegistry);
+  }
+
+  @Bean
+  public LoginFailureListener loginFailureListener() {
+    return new LoginFailureListener(loginThrottle());
+  }
+
+  @Bean
+  public LoginThrottleEndpoint loginThrottleEndpoint() {
+    return new LoginThrottleEndpoint(loginThrottle());
+  }
+
+  /**
+   * <p>
+   * Throttle placed in front of the security filters, so that rejected
+   * attempts never reach the user store or the password encoder.
+   * </p>
+   */
+  @Bean
+  public FilterRegistrationBean<LoginThrottleFilter> loginThrottleFilter() {
+    FilterRegistrationBean<LoginThrottleFilter> registration = new FilterRegistrationBean<>(
+        new LoginThrottleFilter(loginThrottle()));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+    return registration;
+  }
+
+  private static SlidingWindowSketch sketch(AuthProperties.LoginThrottle throttle) {
+    return new SlidingWindowSketch(throttle.getWindow(), throttle.getSlices(), throttle.getDepth(),
+        throttle.getWidth());
+  }
+
+}
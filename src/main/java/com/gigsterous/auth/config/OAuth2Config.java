@@ -1,20 +1,44 @@
 package com.gigsterous.auth.config;
 
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.client.CachingClientDetailsService;
+import com.gigsterous.auth.client.CachingPasswordEncoder;
+import com.gigsterous.auth.crypto.PasswordHashingRejectedException;
+import com.gigsterous.auth.service.TokenEpochService;
+import com.gigsterous.auth.token.EpochTokenEnhancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
+import org.springframework.security.oauth2.provider.code.JdbcAuthorizationCodeServices;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
 import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 
 /**
  * <p>
@@ -32,6 +56,11 @@ public class OAuth2Config extends AuthorizationServerConfigurerAdapter {
   private final TokenStore tokenStore;
   private final DataSource dataSource;
   private final AuthenticationManager authenticationManager;
+  private final ObjectProvider<JwtAccessTokenConverter> accessTokenConverter;
+  private final TokenEpochService tokenEpochService;
+  private final AuthProperties properties;
+  private final MeterRegistry meterRegistry;
+  private final PasswordEncoder passwordEncoder;
 
   /**
    * <p>
@@ -39,21 +68,52 @@ public class OAuth2Config extends AuthorizationServerConfigurerAdapter {
    * </p>
    */
   public OAuth2Config(UserDetailsService userService, TokenStore tokenStore, DataSource dataSource,
-      @Lazy AuthenticationManager authenticationManager) {
+      @Lazy AuthenticationManager authenticationManager, ObjectProvider<JwtAccessTokenConverter> accessTokenConverter,
+      TokenEpochService tokenEpochService, AuthProperties properties, MeterRegistry meterRegistry,
+      PasswordEncoder passwordEncoder) {
     this.userService = userService;
     this.tokenStore = tokenStore;
     this.dataSource = dataSource;
     this.authenticationManager = authenticationManager;
+    this.accessTokenConverter = accessTokenConverter;
+    this.tokenEpochService = tokenEpochService;
+    this.properties = properties;
+    this.meterRegistry = meterRegistry;
+    this.passwordEncoder = passwordEncoder;
   }
 
+  /**
+   * <p>
+   * Encoder of client secrets, which remembers verified secrets for a short
+   * time.
+   * </p>
+   */
   @Bean
-  public BCryptPasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public CachingPasswordEncoder clientSecretEncoder() {
+    AuthProperties.ClientCache cache = properties.getClientCache();
+    return new CachingPasswordEncoder(passwordEncoder, cache.getMaximumSize(), cache.getSecretTimeToLive());
+  }
+
+  /**
+   * <p>
+   * Client details read from the database through a cache.
+   * </p>
+   */
+  @Bean
+  public CachingClientDetailsService cachingClientDetailsService() {
+    AuthProperties.ClientCache cache = properties.getClientCache();
+
+    CachingClientDetailsService clientDetailsService = new CachingClientDetailsService(
+        new JdbcClientDetailsService(dataSource), cache.getMaximumSize(), cache.getTimeToLive());
+    clientDetailsService.bindTo(meterRegistry);
+
+    return clientDetailsService;
   }
 
   @Override
   public void configure(AuthorizationServerSecurityConfigurer security) throws Exception {
     security.tokenKeyAccess("permitAll()").checkTokenAccess("isAuthenticated()");
+    security.passwordEncoder(clientSecretEncoder());
   }
 
   @Override
@@ -61,11 +121,61 @@ public class OAuth2Config extends AuthorizationServerConfigurerAdapter {
     configurer.authenticationManager(authenticationManager);
     configurer.userDetailsService(userService);
     configurer.tokenStore(tokenStore);
+    // codes must be visible to every node, abandoned ones are deleted by the token reaper
+    configurer.authorizationCodeServices(new JdbcAuthorizationCodeServices(dataSource));
+
+    List<TokenEnhancer> enhancers = new ArrayList<>();
+    enhancers.add(new EpochTokenEnhancer(tokenEpochService));
+
+    // in JWT mode the converter also acts as the token enhancer which signs tokens, it must run last
+    JwtAccessTokenConverter converter = accessTokenConverter.getIfAvailable();
+    if (converter != null) {
+      configurer.accessTokenConverter(converter);
+      enhancers.add(converter);
+    }
+
+    TokenEnhancerChain tokenEnhancer = new TokenEnhancerChain();
+    tokenEnhancer.setTokenEnhancers(enhancers);
+    configurer.tokenEnhancer(tokenEnhancer);
+
+    configurer.exceptionTranslator(exceptionTranslator());
+  }
+
+  private WebResponseExceptionTranslator exceptionTranslator() {
+    DefaultWebResponseExceptionTranslator translator = new DefaultWebResponseExceptionTranslator();
+    String retryAfter = String.valueOf(properties.getPasswordHashing().getRetryAfter().getSeconds());
+
+    return e -> {
+      PasswordHashingRejectedException rejected = PasswordHashingRejectedException.find(e);
+      if (rejected == null) {
+        return translator.translate(e);
+      }
+
+      // password grants rejected by the hashing pool are worth retrying, unlike server errors
+      OAuth2Exception unavailable = new OAuth2Exception(rejected.getMessage()) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String getOAuth2ErrorCode() {
+          return "temporarily_unavailable";
+        }
+
+        @Override
+        public int getHttpErrorCode() {
+          return HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+
+      };
+
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, retryAfter)
+          .body(unavailable);
+    };
   }
 
   @Override
   public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
-    clients.jdbc(dataSource);
+    clients.withClientDetails(cachingClientDetailsService());
   }
 
 }
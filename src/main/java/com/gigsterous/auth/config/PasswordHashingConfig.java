@@ -0,0 +1,78 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.crypto.AdaptiveBCryptPasswordEncoder;
+import com.gigsterous.auth.crypto.BoundedPasswordEncoder;
+import com.gigsterous.auth.crypto.PasswordHashingRejectedFilter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+
+/**
+ * <p>
+ * PasswordHashingConfig class. Configures how passwords and client secrets are
+ * hashed.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Configuration
+public class PasswordHashingConfig {
+
+  private final AuthProperties properties;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * <p>
+   * PasswordHashingConfig constructor.
+   * </p>
+   */
+  public PasswordHashingConfig(AuthProperties properties, MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * <p>
+   * Encoder of passwords and client secrets. BCrypt runs on its own bounded
+   * pool, so that logins cannot take all worker threads, with a strength
+   * calibrated to the target time unless one is given.
+   * </p>
+   */
+  @Bean
+  @Primary
+  public BoundedPasswordEncoder passwordEncoder() {
+    AuthProperties.PasswordHashing hashing = properties.getPasswordHashing();
+
+    AdaptiveBCryptPasswordEncoder bcrypt = hashing.getStrength() != null
+        ? new AdaptiveBCryptPasswordEncoder(hashing.getStrength())
+        : AdaptiveBCryptPasswordEncoder.calibrated(hashing.getTargetDuration(), hashing.getMinStrength(),
+            hashing.getMaxStrength());
+
+    BoundedPasswordEncoder passwordEncoder = new BoundedPasswordEncoder(bcrypt, hashing.getThreads(),
+        hashing.getQueueCapacity());
+    passwordEncoder.bindTo(meterRegistry);
+
+    return passwordEncoder;
+  }
+
+  /**
+   * <p>
+   * Turns requests rejected by the password hashing pool into 503, placed in
+   * front of the security filters where passwords are checked.
+   * </p>
+   */
+  @Bean
+  public FilterRegistrationBean<PasswordHashingRejectedFilter> passwordHashingRejectedFilter() {
+    FilterRegistrationBean<PasswordHashingRejectedFilter> registration = new FilterRegistrationBean<>(
+        new PasswordHashingRejectedFilter(properties.getPasswordHashing().getRetryAfter().getSeconds()));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
+  }
+
+}
@@ -1,10 +1,16 @@
 package com.gigsterous.auth.config;
 
+import com.gigsterous.auth.service.TokenEpochService;
+import com.gigsterous.auth.token.LocalJwtTokenServices;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.ResourceServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configurers.ResourceServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 
 /**
  * <p>
@@ -17,11 +23,27 @@ import org.springframework.security.oauth2.config.annotation.web.configurers.Res
 @EnableResourceServer
 public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
 
+  private final TokenStore tokenStore;
+  private final ObjectProvider<JwtAccessTokenConverter> accessTokenConverter;
+  private final TokenEpochService tokenEpochService;
+
+  /**
+   * <p>
+   * ResourceServerConfig constructor.
+   * </p>
+   */
+  public ResourceServerConfig(TokenStore tokenStore, ObjectProvider<JwtAccessTokenConverter> accessTokenConverter,
+      TokenEpochService tokenEpochService) {
+    this.tokenStore = tokenStore;
+    this.accessTokenConverter = accessTokenConverter;
+    this.tokenEpochService = tokenEpochService;
+  }
+
   @Override
   public void configure(HttpSecurity http) throws Exception {
     http
         // These paths are secured by this SecurityFilterChain
-        .requestMatchers().antMatchers("/user", "/users").and()
+        .requestMatchers().antMatchers("/user", "/users", "/users/export", "/users/import", "/clients/**").and()
         // These from the above are secured by the following way
         .authorizeRequests().anyRequest().authenticated();
   }
@@ -29,6 +51,12 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
   @Override
   public void configure(ResourceServerSecurityConfigurer resources) {
     resources.resourceId(null);
+
+    // verify JWT access tokens by signature instead of reading them from the store
+    JwtAccessTokenConverter converter = accessTokenConverter.getIfAvailable();
+    if (converter != null) {
+      resources.tokenServices(new LocalJwtTokenServices(converter, tokenStore, tokenEpochService));
+    }
   }
 
 }
@@ -0,0 +1,36 @@
+package com.gigsterous.auth.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * <p>
+ * SchedulingConfig class. Enables background jobs.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+
+  private static final int POOL_SIZE = 4;
+
+  /**
+   * <p>
+   * Scheduler running the background jobs, so that a slow job does not hold up
+   * the others.
+   * </p>
+   */
+  @Bean
+  public TaskScheduler taskScheduler() {
+    ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+    scheduler.setPoolSize(POOL_SIZE);
+    scheduler.setThreadNamePrefix("scheduler-");
+    return scheduler;
+  }
+
+}
@@ -0,0 +1,108 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.session.JdbcSessionStore;
+import com.gigsterous.auth.session.LogSessionStore;
+import com.gigsterous.auth.session.SessionCodec;
+import com.gigsterous.auth.session.SessionCounter;
+import com.gigsterous.auth.session.SessionStore;
+import com.gigsterous.auth.session.SessionStoreFilter;
+import com.gigsterous.auth.token.StringInterner;
+import com.gigsterous.auth.token.TokenCodec;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Date;
+
+import javax.servlet.DispatcherType;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * <p>
+ * SessionStoreConfig class. Keeps HTTP sessions in the session table or in a
+ * local session log instead of the servlet container, when a session store
+ * type is set.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Configuration
+@ConditionalOnExpression("!'${auth.sessionStore.type:none}'.equalsIgnoreCase('none')")
+public class SessionStoreConfig {
+
+  private static final int INTERNED_STRINGS = 1024;
+
+  private final AuthProperties properties;
+  private final JdbcTemplate jdbcTemplate;
+  private final TaskScheduler taskScheduler;
+  private final SessionCounter sessionCounter;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * <p>
+   * SessionStoreConfig constructor.
+   * </p>
+   */
+  public SessionStoreConfig(AuthProperties properties, JdbcTemplate jdbcTemplate, TaskScheduler taskScheduler,
+      SessionCounter sessionCounter, MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.jdbcTemplate = jdbcTemplate;
+    this.taskScheduler = taskScheduler;
+    this.sessionCounter = sessionCounter;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * <p>
+   * Session store, a local session log is closed on shutdown so that it is
+   * flushed to disk. Expired sessions of the session table are deleted by the
+   * token reaper.
+   * </p>
+   */
+  @Bean
+  public SessionStore sessionStore() {
+    AuthProperties.SessionStore settings = properties.getSessionStore();
+    if (settings.getType() != AuthProperties.SessionStore.Type.LOG) {
+      return new JdbcSessionStore(jdbcTemplate);
+    }
+
+    LogSessionStore logSessionStore = new LogSessionStore(Paths.get(settings.getDirectory()),
+        settings.getInitialSize(), settings.isSync());
+
+    Counter expired = meterRegistry.counter("sessionStore.expired");
+    Duration interval = settings.getExpiryInterval();
+    taskScheduler.scheduleWithFixedDelay(
+        () -> expired.increment(logSessionStore.expire(System.currentTimeMillis(), settings.getExpiryBatchSize())),
+        new Date(System.currentTimeMillis() + interval.toMillis()), interval.toMillis());
+
+    return logSessionStore;
+  }
+
+  /**
+   * <p>
+   * Filter placed in front of the security filters, so that they find the
+   * stored session, also on error pages.
+   * </p>
+   */
+  @Bean
+  public FilterRegistrationBean<SessionStoreFilter> sessionStoreFilter() {
+    SessionCodec codec = new SessionCodec(new TokenCodec(new StringInterner(INTERNED_STRINGS)));
+
+    FilterRegistrationBean<SessionStoreFilter> registration = new FilterRegistrationBean<>(
+        new SessionStoreFilter(sessionStore(), codec, sessionCounter, properties.getSessionStore(), meterRegistry));
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+    registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ERROR, DispatcherType.ASYNC);
+    return registration;
+  }
+
+}
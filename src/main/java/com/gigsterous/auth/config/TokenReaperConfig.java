@@ -0,0 +1,61 @@
+package com.gigsterous.auth.config;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.LeaseService;
+import com.gigsterous.auth.token.TokenReaper;
+import com.gigsterous.auth.token.TokenReaperEndpoint;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * <p>
+ * TokenReaperConfig class. Schedules deletion of expired tokens.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "auth.tokenReaper", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class TokenReaperConfig implements SchedulingConfigurer {
+
+  private final AuthProperties properties;
+  private final JdbcTemplate jdbcTemplate;
+  private final LeaseService leaseService;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * <p>
+   * TokenReaperConfig constructor.
+   * </p>
+   */
+  public TokenReaperConfig(AuthProperties properties, JdbcTemplate jdbcTemplate, LeaseService leaseService,
+      MeterRegistry meterRegistry) {
+    this.properties = properties;
+    this.jdbcTemplate = jdbcTemplate;
+    this.leaseService = leaseService;
+    this.meterRegistry = meterRegistry;
+  }
+
+  @Bean
+  public TokenReaper tokenReaper() {
+    return new TokenReaper(jdbcTemplate, leaseService, properties.getTokenReaper(), meterRegistry);
+  }
+
+  @Bean
+  public TokenReaperEndpoint tokenReaperEndpoint() {
+    return new TokenReaperEndpoint(tokenReaper());
+  }
+
+  @Override
+  public void configureTasks(ScheduledTaskRegistrar registrar) {
+    registrar.addFixedDelayTask(tokenReaper()::reap, properties.getTokenReaper().getInterval().toMillis());
+  }
+
+}
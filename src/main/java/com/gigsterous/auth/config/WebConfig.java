@@ -2,16 +2,12 @@ package com.gigsterous.auth.config;
 
 import com.gigsterous.auth.AuthProperties;
 
-import java.util.Locale;
-
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.LocaleResolver;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.i18n.LocaleChangeInterceptor;
-import org.springframework.web.servlet.i18n.SessionLocaleResolver;
 
 /**
  * <p>
@@ -53,19 +49,8 @@ public class WebConfig implements WebMvcConfigurer {
 
   /**
    * <p>
-   * Resolver for localizations.
-   * </p>
-   */
-  @Bean
-  public LocaleResolver localeResolver() {
-    SessionLocaleResolver slr = new SessionLocaleResolver();
-    slr.setDefaultLocale(Locale.US);
-    return slr;
-  }
-
-  /**
-   * <p>
-   * Localization interceptors.
+   * Localization interceptors. The locale chosen with the lang parameter is
+   * kept by the resolver from {@link LocaleConfig}.
    * </p>
    */
   @Bean
@@ -1,5 +1,10 @@
 package com.gigsterous.auth.config;
 
+import com.gigsterous.auth.crypto.RehashingAuthenticationProvider;
+import com.gigsterous.auth.service.TokenEpochService;
+import com.gigsterous.auth.service.UserService;
+import com.gigsterous.auth.session.StaleSessionFilter;
+
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
@@ -9,7 +14,10 @@ import org.springframework.security.config.annotation.authentication.builders.Au
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.csrf.CsrfFilter;
+import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
+import org.springframework.security.web.csrf.LazyCsrfTokenRepository;
 
 /**
  * <p>
@@ -30,13 +38,21 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   private static final String FORGOTTEN = "/forgotten";
   private static final String VERIFY = "/verifyEmail";
   private static final String ERROR = "/error";
+  private static final String JWK_SET = "/.well-known/jwks.json";
+  private static final String TOKEN_REAPER = "/tokenreaper";
+  private static final String LOGIN_THROTTLE = "/loginthrottle";
 
-  private final UserDetailsService userService;
+  private final UserService userService;
   private final AuthenticationManager authenticationManager;
+  private final PasswordEncoder passwordEncoder;
+  private final TokenEpochService tokenEpochService;
 
-  public WebSecurityConfig(UserDetailsService userService, @Lazy AuthenticationManager authenticationManager) {
+  public WebSecurityConfig(UserService userService, @Lazy AuthenticationManager authenticationManager,
+      PasswordEncoder passwordEncoder, TokenEpochService tokenEpochService) {
     this.userService = userService;
     this.authenticationManager = authenticationManager;
+    this.passwordEncoder = passwordEncoder;
+    this.tokenEpochService = tokenEpochService;
   }
 
   @Override
@@ -50,12 +66,18 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
       .formLogin().loginPage(LOGIN).permitAll().defaultSuccessUrl(PROFILE).and()
       // These requests are permitted without authorization
       .authorizeRequests().antMatchers("/", "/css/*", "/health", 
-          LOGIN, REGISTER, CONFIRM, CONFIRM_REDIRECT, FORGOTTEN, VERIFY, ERROR)
+          LOGIN, REGISTER, CONFIRM, CONFIRM_REDIRECT, FORGOTTEN, VERIFY, ERROR, JWK_SET)
           .permitAll()
+      // Operational endpoints are for administrators only
+      .antMatchers(TOKEN_REAPER, LOGIN_THROTTLE).hasRole("ADMIN")
       // These requests are secured by the following way
       .anyRequest().authenticated().and()
       // Set logout handling
-      .logout().logoutSuccessUrl(LOGOUT_SUCCESS);
+      .logout().logoutSuccessUrl(LOGOUT_SUCCESS).and()
+      // Store CSRF tokens only for pages with a form, others do not open a session
+      .csrf().csrfTokenRepository(new LazyCsrfTokenRepository(new HttpSessionCsrfTokenRepository())).and()
+      // Log out sessions opened before a password change or a global logout
+      .addFilterAfter(new StaleSessionFilter(tokenEpochService), CsrfFilter.class);
       // @formatter:on
 
   }
@@ -68,7 +90,8 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
   @Override
   protected void configure(AuthenticationManagerBuilder auth) throws Exception {
     auth.parentAuthenticationManager(authenticationManager);
-    auth.userDetailsService(userService);
+    // hashes made with an outdated strength are replaced on login
+    auth.authenticationProvider(new RehashingAuthenticationProvider(userService, passwordEncoder));
 
     // nullify parent auth manager to prevent infinite loop when userDetails not
     // found for username
@@ -0,0 +1,76 @@
+package com.gigsterous.auth.controller;
+
+import com.gigsterous.auth.client.CachingClientDetailsService;
+import com.gigsterous.auth.service.TokenService;
+
+import java.util.Collections;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * <p>
+ * ClientController class. Only accessible by ADMIN.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Slf4j
+@RestController
+public class ClientController {
+
+  private final TokenService tokenService;
+  private final CachingClientDetailsService clientDetailsService;
+
+  /**
+   * <p>
+   * ClientController constructor.
+   * </p>
+   */
+  public ClientController(TokenService tokenService, CachingClientDetailsService clientDetailsService) {
+    this.tokenService = tokenService;
+    this.clientDetailsService = clientDetailsService;
+  }
+
+  /**
+   * <p>
+   * Revoke all tokens issued to a client, or only those of one user when
+   * username is given.
+   * </p>
+   * 
+   * @return number of revoked tokens
+   */
+  @Secured("ROLE_ADMIN")
+  @DeleteMapping("/clients/{clientId}/tokens")
+  public Map<String, Integer> revokeTokens(@PathVariable String clientId,
+      @RequestParam(value = "username", required = false) String username) {
+    log.debug("Revoking tokens of client {}", clientId);
+
+    int revoked = username != null ? tokenService.revokeClientTokens(clientId, username)
+        : tokenService.revokeClientTokens(clientId);
+
+    return Collections.singletonMap("revoked", revoked);
+  }
+
+  /**
+   * <p>
+   * Drop a client from the client details cache of this node, so that changes
+   * made in the database take effect right away.
+   * </p>
+   */
+  @Secured("ROLE_ADMIN")
+  @DeleteMapping("/clients/{clientId}/cache")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void evictClient(@PathVariable String clientId) {
+    clientDetailsService.evict(clientId);
+  }
+
+}
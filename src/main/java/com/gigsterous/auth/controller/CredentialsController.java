@@ -13,6 +13,8 @@ import javax.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.context.MessageSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -140,8 +142,9 @@ public class CredentialsController {
     if (success) {
       modelAndView.addObject(SUCCESS_MESSAGE, messages.getMessage("password.changeSuccess", null, locale));
 
-      // revoke tokens
-      tokenService.revokeTokens(principal.getName());
+      // invalidate tokens, this session stays logged in while the other ones are logged out
+      long epoch = tokenService.invalidateTokens(principal.getName());
+      renewAuthentication(principal, epoch);
     } else {
       modelAndView.addObject(ERROR_MESSAGE, messages.getMessage("password.incorrect", null, locale));
     }
@@ -191,15 +194,14 @@ public class CredentialsController {
   @GetMapping("/verifyEmail")
   public ModelAndView showVerifyEmailPage(ModelAndView modelAndView, @RequestParam("token") String token,
       Locale locale) {
-    Optional<User> optionalUser = accountService.getUserForToken(token);
+    Optional<User> optionalUser = accountService.verifyEmail(token);
 
-    if (!optionalUser.isPresent()) { // No token found in DB
-      log.debug("No user found for this token: {}", token);
+    if (!optionalUser.isPresent()) { // No valid token found in DB
+      log.debug("No user found for this token");
 
       modelAndView.addObject(ERROR_MESSAGE, messages.getMessage("email.verificationFailure", null, locale));
-    } else { // Token found
+    } else { // Token found and used
       User user = optionalUser.get();
-      accountService.verifyEmail(user);
 
       modelAndView.addObject(SUCCESS_MESSAGE,
           messages.getMessage("email.verificationSuccess", new Object[] { user.getEmail() }, locale));
@@ -210,4 +212,21 @@ public class CredentialsController {
 
   }
 
+  private static void renewAuthentication(Principal principal, long epoch) {
+    if (!(principal instanceof UsernamePasswordAuthenticationToken)
+        || !(((UsernamePasswordAuthenticationToken) principal).getPrincipal() instanceof User)) {
+      return;
+    }
+
+    UsernamePasswordAuthenticationToken authentication = (UsernamePasswordAuthenticationToken) principal;
+    User user = (User) authentication.getPrincipal();
+    user.setTokenEpoch(epoch);
+
+    // a new authentication, so that the security context is written to the session again
+    UsernamePasswordAuthenticationToken renewed = new UsernamePasswordAuthenticationToken(user, null,
+        authentication.getAuthorities());
+    renewed.setDetails(authentication.getDetails());
+    SecurityContextHolder.getContext().setAuthentication(renewed);
+  }
+
 }
@@ -0,0 +1,72 @@
+package com.gigsterous.auth.controller;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.IntrospectionService;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * <p>
+ * IntrospectionController class. Token introspection endpoint (RFC 7662) for
+ * resource servers and gateways authenticated with their client credentials.
+ * Gateways can collect tokens and introspect them with one batch request.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@RestController
+public class IntrospectionController {
+
+  private final IntrospectionService introspectionService;
+  private final AuthProperties properties;
+
+  /**
+   * <p>
+   * IntrospectionController constructor.
+   * </p>
+   */
+  public IntrospectionController(IntrospectionService introspectionService, AuthProperties properties) {
+    this.introspectionService = introspectionService;
+    this.properties = properties;
+  }
+
+  /**
+   * <p>
+   * Introspect a single token. Only access tokens are known, so token_type_hint
+   * is accepted but has no effect.
+   * </p>
+   */
+  @PostMapping(path = "/oauth/introspect", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+  public Map<String, Object> introspect(@RequestParam("token") String token,
+      @RequestParam(value = "token_type_hint", required = false) String tokenTypeHint) {
+    return introspectionService.introspect(token);
+  }
+
+  /**
+   * <p>
+   * Introspect a JSON array of tokens. Responses are returned in the same
+   * order.
+   * </p>
+   */
+  @PostMapping(path = "/oauth/introspect/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public List<Map<String, Object>> introspectBatch(@RequestBody List<String> tokens) {
+    int maxBatchSize = properties.getIntrospection().getMaxBatchSize();
+
+    if (tokens.size() > maxBatchSize) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "At most " + maxBatchSize + " tokens can be introspected at once");
+    }
+
+    return introspectionService.introspect(tokens);
+  }
+
+}
@@ -0,0 +1,45 @@
+package com.gigsterous.auth.controller;
+
+import com.gigsterous.auth.token.KeyIdJwtAccessTokenConverter;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * <p>
+ * JwkSetController class. Publishes the public key JWT access tokens are
+ * signed with, so that resource servers can verify them locally.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@RestController
+@ConditionalOnProperty(prefix = "auth.jwt", name = "enabled", havingValue = "true")
+public class JwkSetController {
+
+  private final KeyIdJwtAccessTokenConverter accessTokenConverter;
+
+  /**
+   * <p>
+   * JwkSetController constructor.
+   * </p>
+   */
+  public JwkSetController(KeyIdJwtAccessTokenConverter accessTokenConverter) {
+    this.accessTokenConverter = accessTokenConverter;
+  }
+
+  /**
+   * <p>
+   * Return the JSON Web Key Set with the signing key.
+   * </p>
+   */
+  @GetMapping("/.well-known/jwks.json")
+  public Map<String, Object> getKeySet() {
+    return Collections.singletonMap("keys", Collections.singletonList(accessTokenConverter.getJwk()));
+  }
+
+}
@@ -82,8 +82,8 @@ public class LogoutController {
 
     ModelAndView modelAndView = new ModelAndView(LOGOUT);
 
-    // Revoke tokens
-    tokenService.revokeTokens(principal.getName());
+    // Invalidate tokens
+    tokenService.invalidateTokens(principal.getName());
 
     modelAndView.addObject(CONFIRMATION_MESSAGE, messages.getMessage("logout.globalConfirmation", null, locale));
 
@@ -114,12 +114,12 @@ public class RegisterController {
 
     Optional<User> optionalUser = accountService.getUserForToken(token);
 
-    if (!optionalUser.isPresent()) { // No token found in DB
-      log.debug("No user found for this token: {}", token);
+    if (!optionalUser.isPresent()) { // No valid token found in DB
+      log.debug("No user found for this token");
 
       modelAndView.addObject("invalidToken", messages.getMessage("registration.invalidToken", null, locale));
     } else { // Token found
-      modelAndView.addObject("confirmationToken", optionalUser.get().getConfirmationToken());
+      modelAndView.addObject("confirmationToken", token);
     }
 
     // mobile param to model and view
@@ -1,19 +1,30 @@
 package com.gigsterous.auth.controller;
 
 import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.model.UserInfo;
 import com.gigsterous.auth.repository.UserRepository;
+import com.gigsterous.auth.service.UserCache;
+import com.gigsterous.auth.service.UserExportService;
+import com.gigsterous.auth.service.UserFormat;
+import com.gigsterous.auth.service.UserImportService;
 
+import java.io.IOException;
 import java.security.Principal;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.context.MessageSource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -21,9 +32,11 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 /**
  * <p>
@@ -41,8 +54,16 @@ public class UserController {
   private static final String PROFILE = "profile";
   private static final String CONFIRMATION_MESSAGE = "confirmationMessage";
   private static final String WARNING_MESSAGE = "warningMessage";
+  private static final String NDJSON = "application/x-ndjson";
+  private static final String CSV = "text/csv";
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int MAX_PAGE_SIZE = 1000;
 
   private final UserRepository userRepo;
+  private final UserCache userCache;
+  private final UserExportService userExportService;
+  private final UserImportService userImportService;
   private final MessageSource messages;
 
   /**
@@ -50,35 +71,39 @@ public class UserController {
    * UserController constructor.
    * </p>
    */
-  public UserController(UserRepository userRepo, MessageSource messages) {
+  public UserController(UserRepository userRepo, UserCache userCache, UserExportService userExportService,
+      UserImportService userImportService, MessageSource messages) {
     this.userRepo = userRepo;
+    this.userCache = userCache;
+    this.userExportService = userExportService;
+    this.userImportService = userImportService;
     this.messages = messages;
   }
 
   /**
    * <p>
-   * getUser.
+   * getUser. Returns only what resource servers need, read with a narrow
+   * query, together with an ETag of the user row, so that clients polling
+   * with If-None-Match get 304 Not Modified until the user changes.
    * </p>
    * 
    * @param principal
    *          containing security context
-   * @return user
+   * @return user info
    */
   @RequestMapping(path = "/user", method = RequestMethod.GET)
-  public User getUser(Principal principal) {
-    Optional<User> optionalUser = userRepo.findOneByEmail(principal.getName());
+  public ResponseEntity<UserInfo> getUser(Principal principal) {
+    Optional<UserInfo> optionalUser = userRepo.findInfoByEmail(principal.getName());
 
     if (!optionalUser.isPresent()) {
       throw new UsernameNotFoundException("User for principal not found!");
 
     }
 
-    User user = optionalUser.get();
-
-    // override email (in Principal username) with ID - only used at this endpoint
-    user.setEmail(Long.toString(user.getId()));
+    UserInfo user = optionalUser.get();
 
-    return user;
+    // the body is not written when the ETag matches If-None-Match
+    return ResponseEntity.ok().eTag(user.getETag()).cacheControl(CacheControl.noCache().cachePrivate()).body(user);
   }
 
   /**
@@ -104,7 +129,7 @@ public class UserController {
   public ModelAndView deleteAccount(HttpServletRequest request, Principal principal, Locale locale) {
     log.debug("User deletion requested for: {}", principal.getName());
 
-    Optional<User> optionalUser = userRepo.findOneByEmail(principal.getName());
+    Optional<User> optionalUser = userCache.findByEmail(principal.getName());
 
     if (!optionalUser.isPresent()) {
       throw new UsernameNotFoundException("User for principal not found!");
@@ -112,7 +137,8 @@ public class UserController {
 
     User user = optionalUser.get();
 
-    userRepo.delete(user);
+    userRepo.deleteById(user.getId());
+    userCache.evict(user.getEmail());
 
     ModelAndView modelAndView = new ModelAndView("redirect:/" + DELETE_SUCCESS);
     modelAndView.addObject("success", true);
@@ -152,16 +178,76 @@ public class UserController {
 
   /**
    * <p>
-   * getAllUsers. Only accessible by ADMIN.
+   * getAllUsers. Only accessible by ADMIN. Returns one page of users ordered by
+   * ID, starting after given ID. When the page is full, the Link header points
+   * to the next one.
    * </p>
    * 
+   * @param after
+   *          last ID of the previous page
+   * @param size
+   *          page size, at most 1000
    * @return user list
    */
   @Secured("ROLE_ADMIN")
   @RequestMapping("/users")
-  public List<User> getAllUsers() {
-    log.debug("Accessing list of users");
+  public ResponseEntity<List<User>> getAllUsers(@RequestParam(value = "after", defaultValue = "0") long after,
+      @RequestParam(value = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+    log.debug("Accessing list of users after {}", after);
+
+    int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    List<User> users = userRepo.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, pageSize));
+
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+    if (users.size() == pageSize) {
+      String next = ServletUriComponentsBuilder.fromCurrentRequest()
+          .replaceQueryParam("after", users.get(users.size() - 1).getId()).replaceQueryParam("size", pageSize)
+          .toUriString();
+      response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+    }
+
+    return response.body(users);
+  }
+
+  /**
+   * <p>
+   * Export all users as newline delimited JSON, or as CSV when asked for with
+   * the Accept header. Only accessible by ADMIN. The users are written to the
+   * response as they are read, so the export works for any number of users.
+   * </p>
+   */
+  @Secured("ROLE_ADMIN")
+  @GetMapping(path = "/users/export", produces = { NDJSON, CSV })
+  public void exportUsers(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+      HttpServletResponse response) throws IOException {
+    UserFormat format = accept != null && accept.contains(CSV) ? UserFormat.CSV : UserFormat.NDJSON;
+    log.debug("Exporting users as {}", format);
+
+    response.setContentType(format.getMediaType());
+    userExportService.export(response.getOutputStream(), format);
+  }
 
-    return userRepo.findAll();
+  /**
+   * <p>
+   * Import users in the format of the export. Only accessible by ADMIN.
+   * Passwords have to be BCrypt hashes and no e-mails are sent. Progress is
+   * written to the response after every batch, one JSON object per line,
+   * together with the users which were skipped.
+   * </p>
+   */
+  @Secured("ROLE_ADMIN")
+  @PostMapping(path = "/users/import", consumes = { NDJSON, CSV }, produces = NDJSON)
+  public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    UserFormat format = UserFormat.of(request.getContentType());
+    log.debug("Importing users as {}", format);
+
+    try {
+      response.setContentType(NDJSON);
+      userImportService.importUsers(request.getInputStream(), format, response.getOutputStream());
+    } catch (IllegalArgumentException e) {
+      // thrown before anything is written
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    }
   }
 }
@@ -0,0 +1,86 @@
+package com.gigsterous.auth.crypto;
+
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.crypto.bcrypt.BCrypt;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * <p>
+ * AdaptiveBCryptPasswordEncoder class. BCrypt encoder which reports hashes of
+ * a lower strength than its own for upgrade. The strength can be calibrated on
+ * startup, so that one hash takes about a target time on the current CPU.
+ * </p>
+ * <p>
+ * Stronger hashes are kept. Nodes on different hardware calibrate different
+ * strengths, and would otherwise rehash the same password back and forth on
+ * every login.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class AdaptiveBCryptPasswordEncoder extends BCryptPasswordEncoder implements UpgradablePasswordEncoder {
+
+  private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2a?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+  private static final int SAMPLES = 3;
+
+  private final int strength;
+
+  /**
+   * <p>
+   * AdaptiveBCryptPasswordEncoder constructor.
+   * </p>
+   */
+  public AdaptiveBCryptPasswordEncoder(int strength) {
+    super(strength);
+    this.strength = strength;
+  }
+
+  /**
+   * <p>
+   * Create an encoder with the highest strength between minStrength and
+   * maxStrength whose hash still takes at most target time. Hashing time
+   * doubles with each step of strength, so it is measured at minStrength only.
+   * </p>
+   */
+  public static AdaptiveBCryptPasswordEncoder calibrated(Duration target, int minStrength, int maxStrength) {
+    long fastest = Long.MAX_VALUE;
+    for (int sample = 0; sample < SAMPLES; sample++) {
+      long started = System.nanoTime();
+      BCrypt.hashpw("calibration", BCrypt.gensalt(minStrength));
+      fastest = Math.min(fastest, System.nanoTime() - started);
+    }
+
+    int strength = minStrength;
+    long estimate = fastest;
+    while (strength < maxStrength && estimate * 2 <= target.toNanos()) {
+      strength++;
+      estimate *= 2;
+    }
+
+    log.info("Calibrated BCrypt strength {}, about {} ms per hash", strength, Duration.ofNanos(estimate).toMillis());
+
+    return new AdaptiveBCryptPasswordEncoder(strength);
+  }
+
+  public int getStrength() {
+    return strength;
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    if (encodedPassword == null) {
+      return false;
+    }
+
+    // hashes of other schemes are left alone, they cannot be matched by this encoder anyway
+    Matcher matcher = BCRYPT_PATTERN.matcher(encodedPassword);
+    return matcher.matches() && Integer.parseInt(matcher.group(1)) < strength;
+  }
+
+}
@@ -0,0 +1,125 @@
+package com.gigsterous.auth.crypto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * <p>
+ * BoundedPasswordEncoder class. Runs another encoder on a fixed number of
+ * threads with a bounded queue, so that a flood of logins can use at most
+ * that many cores for hashing and leaves the rest of the server responsive.
+ * When the queue is full, {@link PasswordHashingRejectedException} is thrown
+ * instead of queueing more work.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements UpgradablePasswordEncoder, Closeable {
+
+  private final PasswordEncoder delegate;
+  private final ThreadPoolExecutor executor;
+
+  private Timer waitTimer;
+  private Counter rejectedCounter;
+
+  /**
+   * <p>
+   * BoundedPasswordEncoder constructor.
+   * </p>
+   */
+  public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity) {
+    this.delegate = delegate;
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+          Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * <p>
+   * Register queue depth, wait time and rejections with given registry.
+   * </p>
+   */
+  public void bindTo(MeterRegistry registry) {
+    registry.gauge("passwordHashing.queue", executor, pool -> pool.getQueue().size());
+    registry.gauge("passwordHashing.active", executor, ThreadPoolExecutor::getActiveCount);
+    waitTimer = registry.timer("passwordHashing.wait");
+    rejectedCounter = registry.counter("passwordHashing.rejected");
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return run(() -> delegate.encode(rawPassword));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    return run(() -> delegate.matches(rawPassword, encodedPassword));
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate instanceof UpgradablePasswordEncoder
+        && ((UpgradablePasswordEncoder) delegate).upgradeEncoding(encodedPassword);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  private <T> T run(Callable<T> task) {
+    long submitted = System.nanoTime();
+
+    Future<T> result;
+    try {
+      result = executor.submit(() -> {
+        if (waitTimer != null) {
+          waitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+        }
+        return task.call();
+      });
+    } catch (RejectedExecutionException e) {
+      log.warn("Password hashing queue is full, rejecting request");
+
+      if (rejectedCounter != null) {
+        rejectedCounter.increment();
+      }
+      throw new PasswordHashingRejectedException("Too many passwords waiting to be checked");
+    }
+
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      result.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+}
@@ -0,0 +1,39 @@
+package com.gigsterous.auth.crypto;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * <p>
+ * PasswordHashingRejectedException class. Thrown when too many passwords wait
+ * to be hashed or matched, so that the request fails right away instead of
+ * holding a worker thread.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PasswordHashingRejectedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public PasswordHashingRejectedException(String message) {
+    super(message);
+  }
+
+  /**
+   * <p>
+   * Return the exception among the causes of given throwable, or null.
+   * </p>
+   */
+  public static PasswordHashingRejectedException find(Throwable throwable) {
+    for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+      if (cause instanceof PasswordHashingRejectedException) {
+        return (PasswordHashingRejectedException) cause;
+      }
+    }
+
+    return null;
+  }
+
+}
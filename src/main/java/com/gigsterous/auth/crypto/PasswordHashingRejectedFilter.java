@@ -0,0 +1,48 @@
+package com.gigsterous.auth.crypto;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>
+ * PasswordHashingRejectedFilter class. Answers requests rejected by
+ * {@link BoundedPasswordEncoder} inside the security filters, e.g. form login
+ * or client authentication, with 503 and a Retry-After header instead of an
+ * internal error.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class PasswordHashingRejectedFilter extends OncePerRequestFilter {
+
+  private final long retryAfterSeconds;
+
+  public PasswordHashingRejectedFilter(long retryAfterSeconds) {
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    try {
+      filterChain.doFilter(request, response);
+    } catch (ServletException | RuntimeException e) {
+      PasswordHashingRejectedException rejected = PasswordHashingRejectedException.find(e);
+      if (rejected == null || response.isCommitted()) {
+        throw e;
+      }
+
+      response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+      response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), rejected.getMessage());
+    }
+  }
+
+}
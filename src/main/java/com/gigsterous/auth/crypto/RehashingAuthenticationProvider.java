@@ -0,0 +1,50 @@
+package com.gigsterous.auth.crypto;
+
+import com.gigsterous.auth.service.UserService;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * <p>
+ * RehashingAuthenticationProvider class. Authenticates users by password and
+ * replaces their password hash after a successful login when it was made with
+ * other settings than the current ones.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+
+  private final UserService userService;
+
+  /**
+   * <p>
+   * RehashingAuthenticationProvider constructor.
+   * </p>
+   */
+  public RehashingAuthenticationProvider(UserService userService, PasswordEncoder passwordEncoder) {
+    this.userService = userService;
+    setUserDetailsService(userService);
+    setPasswordEncoder(passwordEncoder);
+  }
+
+  @Override
+  protected Authentication createSuccessAuthentication(Object principal, Authentication authentication,
+      UserDetails user) {
+    try {
+      userService.upgradePassword(user, authentication.getCredentials().toString());
+    } catch (RuntimeException e) {
+      // the old hash keeps working, the next login tries again
+      log.warn("Failed to rehash password of {}", user.getUsername(), e);
+    }
+
+    return super.createSuccessAuthentication(principal, authentication, user);
+  }
+
+}
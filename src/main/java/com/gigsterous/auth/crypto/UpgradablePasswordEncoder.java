@@ -0,0 +1,23 @@
+package com.gigsterous.auth.crypto;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * <p>
+ * UpgradablePasswordEncoder interface. Encoder which can tell hashes made with
+ * other settings than its own, so that they can be replaced on the next
+ * successful login.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public interface UpgradablePasswordEncoder extends PasswordEncoder {
+
+  /**
+   * <p>
+   * Return true if given hash should be replaced by a new one.
+   * </p>
+   */
+  boolean upgradeEncoding(String encodedPassword);
+
+}
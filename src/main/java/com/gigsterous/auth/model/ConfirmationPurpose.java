@@ -0,0 +1,13 @@
+package com.gigsterous.auth.model;
+
+/**
+ * <p>
+ * ConfirmationPurpose enum. What a confirmation token sent by e-mail can be
+ * used for.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+public enum ConfirmationPurpose {
+  REGISTRATION, PASSWORD_RESET, EMAIL_CHANGE
+}
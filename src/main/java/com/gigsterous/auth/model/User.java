@@ -12,6 +12,7 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.Email;
 
 import lombok.Getter;
@@ -61,16 +62,24 @@ public class User implements UserDetails {
   @Column(name = "enabled", nullable = false)
   private boolean enabled;
 
-  @Column(name = "confirmation_token")
-  private String confirmationToken;
+  // only ever moved forward by TokenEpochService, never written back from a loaded entity
+  @Column(name = "token_epoch", nullable = false, insertable = false, updatable = false)
+  private long tokenEpoch;
+
+  @Version
+  @Column(name = "version", nullable = false)
+  private long version;
 
   // User Details
 
   @Override
   public Collection<? extends GrantedAuthority> getAuthorities() {
+    return authoritiesOf(this.getRole());
+  }
+
+  static List<GrantedAuthority> authoritiesOf(Role roleName) {
     List<GrantedAuthority> authorities = new ArrayList<>();
 
-    Role roleName = this.getRole();
     authorities.add(new SimpleGrantedAuthority("ROLE_" + roleName));
 
     if (roleName == Role.ADMIN) {
@@ -0,0 +1,64 @@
+package com.gigsterous.auth.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+import lombok.Getter;
+
+import org.springframework.security.core.GrantedAuthority;
+
+/**
+ * <p>
+ * UserInfo class. What the user info endpoint tells resource servers about
+ * the current user. The e-mail is never handed out, username and email both
+ * hold the ID of the user instead.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Getter
+public final class UserInfo {
+
+  private final long id;
+  private final Role role;
+  private final boolean enabled;
+
+  @JsonIgnore
+  private final long version;
+
+  /**
+   * <p>
+   * UserInfo constructor.
+   * </p>
+   */
+  public UserInfo(long id, Role role, boolean enabled, long version) {
+    this.id = id;
+    this.role = role;
+    this.enabled = enabled;
+    this.version = version;
+  }
+
+  public String getUsername() {
+    return Long.toString(id);
+  }
+
+  public String getEmail() {
+    return Long.toString(id);
+  }
+
+  public List<GrantedAuthority> getAuthorities() {
+    return User.authoritiesOf(role);
+  }
+
+  /**
+   * <p>
+   * Return a strong ETag, which changes whenever the user row changes.
+   * </p>
+   */
+  @JsonIgnore
+  public String getETag() {
+    return "\"" + id + "-" + version + "\"";
+  }
+
+}
@@ -0,0 +1,65 @@
+package com.gigsterous.auth.model;
+
+import lombok.Getter;
+
+/**
+ * <p>
+ * UserSnapshot class. Immutable copy of the columns of a {@link User}, which
+ * can be kept around and shared between threads, unlike the entity managed by
+ * JPA. Every caller gets its own detached {@link User} made from it.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Getter
+public final class UserSnapshot {
+
+  private final long id;
+  private final String email;
+  private final String pendingEmail;
+  private final String password;
+  private final Role role;
+  private final boolean enabled;
+  private final long tokenEpoch;
+  private final long version;
+
+  private UserSnapshot(User user) {
+    this.id = user.getId();
+    this.email = user.getEmail();
+    this.pendingEmail = user.getPendingEmail();
+    this.password = user.getPassword();
+    this.role = user.getRole();
+    this.enabled = user.isEnabled();
+    this.tokenEpoch = user.getTokenEpoch();
+    this.version = user.getVersion();
+  }
+
+  /**
+   * <p>
+   * Copy current state of given user.
+   * </p>
+   */
+  public static UserSnapshot of(User user) {
+    return new UserSnapshot(user);
+  }
+
+  /**
+   * <p>
+   * Return a new detached user with the state of this snapshot.
+   * </p>
+   */
+  public User toUser() {
+    User user = new User();
+    user.setId(id);
+    user.setEmail(email);
+    user.setPendingEmail(pendingEmail);
+    user.setPassword(password);
+    user.setRole(role);
+    user.setEnabled(enabled);
+    user.setTokenEpoch(tokenEpoch);
+    user.setVersion(version);
+
+    return user;
+  }
+
+}
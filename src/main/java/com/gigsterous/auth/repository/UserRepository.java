@@ -1,10 +1,14 @@
 package com.gigsterous.auth.repository;
 
 import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.model.UserInfo;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -26,15 +30,6 @@ public interface UserRepository extends JpaRepository<User, Long> {
    */
   Optional<User> findOneByEmail(String email);
 
-  /**
-   * Find a user by confirmation token.
-   * 
-   * @param confirmationToken
-   *          generated for registration confirmation
-   * @return user associated with this confirmation token
-   */
-  Optional<User> findByConfirmationToken(String confirmationToken);
-
   /**
    * Find a user by ID.
    *
@@ -43,4 +38,28 @@ public interface UserRepository extends JpaRepository<User, Long> {
    * @return User returns an Optional User object which contains the user or null.
    */
   Optional<User> findById(Long id);
+
+  /**
+   * Find users with ID greater than the given one, ordered by ID. Pages are
+   * read by passing the last ID of the previous page, which uses the primary
+   * key index instead of skipping rows with an offset.
+   *
+   * @param id
+   *          the last ID of the previous page
+   * @param pageable
+   *          the page size
+   * @return users of the next page
+   */
+  List<User> findByIdGreaterThanOrderByIdAsc(long id, Pageable pageable);
+
+  /**
+   * Find the user info of a user by email, reading only the columns it needs.
+   *
+   * @param email
+   *          the user's email
+   * @return user info of the user with the given email or null.
+   */
+  @Query("select new com.gigsterous.auth.model.UserInfo(u.id, u.role, u.enabled, u.version) "
+      + "from User u where u.email = ?1")
+  Optional<UserInfo> findInfoByEmail(String email);
 }
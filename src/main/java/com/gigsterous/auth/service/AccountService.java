@@ -37,7 +37,8 @@ public interface AccountService {
 
   /**
    * <p>
-   * Get user for given registration token.
+   * Get user for given registration or password reset token, if it is still
+   * valid.
    * </p>
    */
   public Optional<User> getUserForToken(String token);
@@ -65,9 +66,11 @@ public interface AccountService {
 
   /**
    * <p>
-   * Verify email for given user.
+   * Verify pending email of the user of given email change token.
    * </p>
+   *
+   * @return the user with the new email, empty if the token is not valid
    */
-  public void verifyEmail(User user);
+  public Optional<User> verifyEmail(String token);
 
 }
@@ -1,24 +1,33 @@
 package com.gigsterous.auth.service;
 
 import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.ConfirmationPurpose;
 import com.gigsterous.auth.model.User;
 import com.gigsterous.auth.repository.UserRepository;
 
+import java.time.Instant;
 import java.util.Locale;
 import java.util.Optional;
-import java.util.UUID;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.context.MessageSource;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * <p>
  * AccountServiceImpl class.
  * </p>
+ * <p>
+ * Changes which send an e-mail run in one transaction with queueing the
+ * e-mail, so that no e-mail is sent for a change which was rolled back.
+ * Registration and password reset e-mails are limited per address by
+ * {@link EmailThrottle}. A link in an e-mail held back by it does not revoke
+ * the link of the e-mail sent before.
+ * </p>
  * 
  * @author Martin Myslik
  */
@@ -28,9 +37,13 @@ public class AccountServiceImpl implements AccountService {
 
   private final UserRepository userRepository;
   private final EmailService emailService;
-  private final BCryptPasswordEncoder passwordEncoder;
+  private final PasswordEncoder passwordEncoder;
   private final AuthProperties properties;
   private final MessageSource messages;
+  private final UserCache userCache;
+  private final RegisteredEmails registeredEmails;
+  private final ConfirmationTokenService confirmationTokens;
+  private final EmailThrottle emailThrottle;
 
   /**
    * <p>
@@ -38,15 +51,21 @@ public class AccountServiceImpl implements AccountService {
    * </p>
    */
   public AccountServiceImpl(UserRepository userRepository, EmailService emailService,
-      BCryptPasswordEncoder passwordEncoder, AuthProperties properties, MessageSource messages) {
+      PasswordEncoder passwordEncoder, AuthProperties properties, MessageSource messages, UserCache userCache,
+      RegisteredEmails registeredEmails, ConfirmationTokenService confirmationTokens, EmailThrottle emailThrottle) {
     this.userRepository = userRepository;
     this.emailService = emailService;
     this.passwordEncoder = passwordEncoder;
     this.properties = properties;
     this.messages = messages;
+    this.userCache = userCache;
+    this.registeredEmails = registeredEmails;
+    this.confirmationTokens = confirmationTokens;
+    this.emailThrottle = emailThrottle;
   }
 
   @Override
+  @Transactional
   public void registerUser(User user, Locale locale) {
     log.debug("Registering new user...");
 
@@ -60,27 +79,39 @@ public class AccountServiceImpl implements AccountService {
     // Disable user until they click on confirmation link in email
     user.setEnabled(false);
 
-    // Generate random 36-character string token for confirmation link
-    user.setConfirmationToken(UUID.randomUUID().toString());
-
     userRepository.save(user);
+    userCache.evict(user.getEmail());
+    registeredEmails.add(user.getEmail());
+
+    Instant sendAt = emailThrottle.acquire(user.getEmail());
+    if (sendAt == null) {
+      log.warn("Too many confirmation e-mails to {}, not sending another one", user.getEmail());
+
+      return;
+    }
+
+    // Generate one-time token for confirmation link
+    String token = issueToken(user, ConfirmationPurpose.REGISTRATION, sendAt);
 
     // send email
     log.debug("Sending confirmation token to the selected email: {}", user.getEmail());
 
     String message = messages.getMessage("email.registration", null, locale);
-    String link = properties.getRedirectionUrl() + "/confirmRedirect?token=" + user.getConfirmationToken();
+    String link = properties.getRedirectionUrl() + "/confirmRedirect?token=" + token;
 
-    emailService.prepareAndSend(user.getEmail(), properties.getEmailFrom(), "Registration confirmation", message, link);
+    emailService.prepareAndSend(user.getEmail(), properties.getEmailFrom(), "Registration confirmation", message, link,
+        sendAt);
 
   }
 
   @Override
   public void confirmUser(String token, String password) {
-    log.debug("Confirming user with token {}", token);
+    log.debug("Confirming user with token");
 
-    // Find the user associated with the reset token
-    Optional<User> optionalUser = userRepository.findByConfirmationToken(token);
+    // Find the user associated with the registration or reset token, which cannot be used again
+    Optional<User> optionalUser = confirmationTokens
+        .consume(token, ConfirmationPurpose.REGISTRATION, ConfirmationPurpose.PASSWORD_RESET)
+        .flatMap(userRepository::findById);
 
     if (!optionalUser.isPresent()) {
       throw new UsernameNotFoundException("NO user found for token!");
@@ -93,15 +124,15 @@ public class AccountServiceImpl implements AccountService {
 
     // Set user to enabled
     user.setEnabled(true);
-    user.setConfirmationToken("");
 
     // Save user
     userRepository.save(user);
+    userCache.evict(user.getEmail());
   }
 
   @Override
   public boolean isUserRegistered(User user) {
-    Optional<User> loaded = userRepository.findOneByEmail(user.getUsername());
+    Optional<User> loaded = userCache.findByEmail(user.getUsername());
     if (loaded.isPresent()) {
       return loaded.get().isEnabled();
     }
@@ -111,10 +142,12 @@ public class AccountServiceImpl implements AccountService {
 
   @Override
   public Optional<User> getUserForToken(String token) {
-    return userRepository.findByConfirmationToken(token);
+    return confirmationTokens.find(token, ConfirmationPurpose.REGISTRATION, ConfirmationPurpose.PASSWORD_RESET)
+        .flatMap(userRepository::findById);
   }
 
   @Override
+  @Transactional
   public void resetPassword(User user, Locale locale) {
     log.debug("Resetting password for user: {}", user.getEmail());
 
@@ -125,22 +158,25 @@ public class AccountServiceImpl implements AccountService {
       return;
     }
 
-    // invalidate current password
     user = optionalUser.get();
 
-    // Generate random 36-character string token for confirmation link
-    user.setConfirmationToken(UUID.randomUUID().toString());
+    Instant sendAt = emailThrottle.acquire(user.getEmail());
+    if (sendAt == null) {
+      log.warn("Too many password reset e-mails to {}, not sending another one", user.getEmail());
+
+      return;
+    }
+
+    // Generate one-time token for confirmation link, the current password stays valid until it is used
+    String token = issueToken(user, ConfirmationPurpose.PASSWORD_RESET, sendAt);
 
     // send email with confirmation token
     log.debug("Sending confirmation token to the selected email: {}", user.getEmail());
 
     String message = messages.getMessage("email.resetPassword", null, locale);
-    String link = properties.getRedirectionUrl() + "/confirmRedirect?token=" + user.getConfirmationToken();
-
-    emailService.prepareAndSend(user.getEmail(), properties.getEmailFrom(), "Password reset", message, link);
+    String link = properties.getRedirectionUrl() + "/confirmRedirect?token=" + token;
 
-    // update user entity
-    userRepository.save(user);
+    emailService.prepareAndSend(user.getEmail(), properties.getEmailFrom(), "Password reset", message, link, sendAt);
 
   }
 
@@ -164,6 +200,7 @@ public class AccountServiceImpl implements AccountService {
       user.setPassword(passwordEncoder.encode(newPassword));
 
       userRepository.save(user);
+      userCache.evict(user.getEmail());
 
       return true;
     }
@@ -173,6 +210,7 @@ public class AccountServiceImpl implements AccountService {
   }
 
   @Override
+  @Transactional
   public boolean changeEmail(String email, String password, String newEmail, Locale locale) {
     log.debug("Changing e-mail for user: {}", email);
 
@@ -185,7 +223,7 @@ public class AccountServiceImpl implements AccountService {
 
     User user = optionalUser.get();
 
-    if (userRepository.findOneByEmail(newEmail).isPresent()) {
+    if (userCache.findByEmail(newEmail).isPresent()) {
       log.warn("User with email {} already exists.", newEmail);
 
       return false;
@@ -197,19 +235,21 @@ public class AccountServiceImpl implements AccountService {
     if (passwordMatch) {
       user.setPendingEmail(newEmail);
 
-      // Generate random 36-character string token for confirmation link
-      user.setConfirmationToken(UUID.randomUUID().toString());
+      userRepository.save(user);
+      userCache.evict(user.getEmail());
+      registeredEmails.add(newEmail);
+
+      // Generate one-time token for verification link
+      String token = confirmationTokens.issue(user.getId(), ConfirmationPurpose.EMAIL_CHANGE);
 
       // send email with confirmation token
-      log.debug("Sending verification token {} to the selected email: {}", user.getConfirmationToken(), newEmail);
+      log.debug("Sending verification token to the selected email: {}", newEmail);
 
       String message = messages.getMessage("email.verification", null, locale);
-      String link = properties.getRedirectionUrl() + "/verifyEmail?token=" + user.getConfirmationToken();
+      String link = properties.getRedirectionUrl() + "/verifyEmail?token=" + token;
 
       emailService.prepareAndSend(newEmail, properties.getEmailFrom(), "E-mail change", message, link);
 
-      userRepository.save(user);
-
       return true;
     }
 
@@ -218,16 +258,40 @@ public class AccountServiceImpl implements AccountService {
   }
 
   @Override
-  public void verifyEmail(User user) {
+  public Optional<User> verifyEmail(String token) {
+    // Find the user associated with the e-mail change token, which cannot be used again
+    Optional<User> optionalUser = confirmationTokens.consume(token, ConfirmationPurpose.EMAIL_CHANGE)
+        .flatMap(userRepository::findById).filter(loaded -> loaded.getPendingEmail() != null);
+
+    if (!optionalUser.isPresent()) {
+      return optionalUser;
+    }
+
+    User user = optionalUser.get();
     log.debug("Verifying e-mail {}", user.getPendingEmail());
 
+    String oldEmail = user.getEmail();
+
     // Set new e-mail
     user.setEmail(user.getPendingEmail());
     user.setPendingEmail(null);
-    user.setConfirmationToken("");
 
     // Save user
     userRepository.save(user);
+    userCache.evict(oldEmail);
+    userCache.evict(user.getEmail());
+    registeredEmails.add(user.getEmail());
+
+    return optionalUser;
+  }
+
+  private String issueToken(User user, ConfirmationPurpose purpose, Instant sendAt) {
+    if (sendAt.isAfter(Instant.now())) {
+      // the link of the e-mail sent before keeps working until this one is sent
+      return confirmationTokens.issueAnother(user.getId(), purpose);
+    }
+
+    return confirmationTokens.issue(user.getId(), purpose);
   }
 
 }
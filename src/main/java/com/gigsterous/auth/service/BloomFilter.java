@@ -0,0 +1,104 @@
+package com.gigsterous.auth.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * BloomFilter class. Set of strings which can answer that a string was
+ * definitely never added, in a fixed amount of memory sized for the expected
+ * number of strings and false positive rate. Strings cannot be removed.
+ * </p>
+ * <p>
+ * Bits are set without locks, so strings can be added while others are
+ * looked up.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class BloomFilter {
+
+  private final AtomicLongArray bits;
+  private final long bitCount;
+  private final int hashCount;
+
+  /**
+   * <p>
+   * BloomFilter constructor.
+   * </p>
+   */
+  public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+    long n = Math.max(1, expectedInsertions);
+    long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+
+    this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, Math.max(1, (m + 63) / 64)));
+    this.bitCount = (long) bits.length() * Long.SIZE;
+    this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+  }
+
+  /**
+   * <p>
+   * Add given string.
+   * </p>
+   */
+  public void put(String value) {
+    long hash = hash(value);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+
+    for (int i = 0; i < hashCount; i++) {
+      long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+
+      long current = bits.get(word);
+      while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+        current = bits.get(word);
+      }
+    }
+  }
+
+  /**
+   * <p>
+   * Return false if given string was definitely never added.
+   * </p>
+   */
+  public boolean mightContain(String value) {
+    long hash = hash(value);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+
+    for (int i = 0; i < hashCount; i++) {
+      long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * <p>
+   * Return the memory taken by the bits.
+   * </p>
+   */
+  public long getSizeInBytes() {
+    return bitCount / Byte.SIZE;
+  }
+
+  private static long hash(String value) {
+    long h = 0xCBF29CE484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      h = (h ^ value.charAt(i)) * 0x100000001B3L;
+    }
+
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB86C3BBB2A1BL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+}
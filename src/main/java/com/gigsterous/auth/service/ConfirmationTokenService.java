@@ -0,0 +1,168 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.ConfirmationPurpose;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * ConfirmationTokenService class. Issues the one-time tokens of the links sent
+ * by e-mail and checks them. Only a SHA-256 hash of every token is stored,
+ * together with the user, the purpose and the expiry, so tokens are looked up
+ * by the primary key and a leaked table does not give away any link.
+ * </p>
+ * <p>
+ * Issuing a token replaces the previous ones of the user for the purpose,
+ * unless its e-mail is held back, when a link delivered earlier must keep
+ * working until the new one arrives. Using any token revokes all others of
+ * the user for the purpose. Expired tokens are deleted by the token reaper.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class ConfirmationTokenService {
+
+  private static final String DELETE_BY_USER_SQL = "delete from confirmation_tokens where user_id = ? and purpose = ?";
+  private static final String INSERT_SQL = "insert into confirmation_tokens (token_hash, user_id, purpose, "
+      + "expires_at) values (?, ?, ?, ?)";
+  private static final String SELECT_SQL = "select user_id, purpose from confirmation_tokens "
+      + "where token_hash = ? and expires_at > ?";
+  private static final String DELETE_SQL = "delete from confirmation_tokens where token_hash = ?";
+
+  private static final int TOKEN_BYTES = 32;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AuthProperties.ConfirmationTokens settings;
+  private final SecureRandom random = new SecureRandom();
+
+  /**
+   * <p>
+   * ConfirmationTokenService constructor.
+   * </p>
+   */
+  public ConfirmationTokenService(JdbcTemplate jdbcTemplate, AuthProperties properties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.settings = properties.getConfirmationTokens();
+  }
+
+  /**
+   * <p>
+   * Issue a new token for given user and purpose, replacing the previous one.
+   * </p>
+   *
+   * @return the token to be sent to the user, it cannot be read again
+   */
+  public String issue(long userId, ConfirmationPurpose purpose) {
+    jdbcTemplate.update(DELETE_BY_USER_SQL, userId, purpose.name());
+
+    return issueAnother(userId, purpose);
+  }
+
+  /**
+   * <p>
+   * Issue a new token for given user and purpose, keeping the previous ones
+   * valid until one of them is used.
+   * </p>
+   *
+   * @return the token to be sent to the user, it cannot be read again
+   */
+  public String issueAnother(long userId, ConfirmationPurpose purpose) {
+    byte[] bytes = new byte[TOKEN_BYTES];
+    random.nextBytes(bytes);
+    String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+    long expiresAt = System.currentTimeMillis() + validity(purpose).toMillis();
+
+    jdbcTemplate.update(INSERT_SQL, hash(token), userId, purpose.name(), new Timestamp(expiresAt));
+
+    return token;
+  }
+
+  /**
+   * <p>
+   * Return the user of given token, if it has not expired and was issued for
+   * one of given purposes.
+   * </p>
+   */
+  public Optional<Long> find(String token, ConfirmationPurpose... purposes) {
+    if (token == null || token.isEmpty()) {
+      return Optional.empty();
+    }
+
+    List<Long> users = jdbcTemplate.query(SELECT_SQL, (rs, row) -> {
+      ConfirmationPurpose purpose = ConfirmationPurpose.valueOf(rs.getString(2));
+      return Arrays.asList(purposes).contains(purpose) ? rs.getLong(1) : null;
+    }, hash(token), new Timestamp(System.currentTimeMillis()));
+
+    return users.stream().filter(Objects::nonNull).findFirst();
+  }
+
+  /**
+   * <p>
+   * Like {@link #find(String, ConfirmationPurpose...)}, but also delete the
+   * token and the other tokens of the user for given purposes, so that none of
+   * them can be used again. When used twice at once, only one of the calls
+   * gets the user.
+   * </p>
+   */
+  public Optional<Long> consume(String token, ConfirmationPurpose... purposes) {
+    Optional<Long> userId = find(token, purposes);
+
+    if (userId.isPresent() && jdbcTemplate.update(DELETE_SQL, hash(token)) == 0) {
+      log.debug("Confirmation token was used concurrently");
+      return Optional.empty();
+    }
+
+    userId.ifPresent(user -> {
+      for (ConfirmationPurpose purpose : purposes) {
+        jdbcTemplate.update(DELETE_BY_USER_SQL, user, purpose.name());
+      }
+    });
+
+    return userId;
+  }
+
+  private Duration validity(ConfirmationPurpose purpose) {
+    switch (purpose) {
+      case REGISTRATION:
+        return settings.getRegistrationValidity();
+      case PASSWORD_RESET:
+        return settings.getPasswordResetValidity();
+      default:
+        return settings.getEmailChangeValidity();
+    }
+  }
+
+  private static String hash(String token) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+}
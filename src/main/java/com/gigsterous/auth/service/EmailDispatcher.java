@@ -0,0 +1,273 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.AuthProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+/**
+ * <p>
+ * EmailDispatcher class. Sends e-mails queued by {@link EmailService} in
+ * batches, each batch over a single connection to the mail server. Only the
+ * node holding the dispatcher lease sends at a time.
+ * </p>
+ * <p>
+ * Sent e-mails are deleted from the outbox with their links. Failed ones are
+ * tried again after an exponential backoff, and dropped after the last
+ * attempt, when they cannot be composed at all or when they were not sent
+ * within the retention. An e-mail sent right before the node dies may be sent
+ * again, but none is lost before it is dropped.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class EmailDispatcher {
+
+  static final String LEASE = "emailDispatcher";
+
+  private static final String SELECT_DUE_SQL = "select email_id, recipient, sender, subject, message, link, "
+      + "attempts, created_at from email_outbox where next_attempt_at <= ? order by next_attempt_at, email_id "
+      + "limit ?";
+  private static final String DELETE_SQL = "delete from email_outbox where email_id = ?";
+  private static final String RETRY_SQL = "update email_outbox set attempts = ?, next_attempt_at = ? "
+      + "where email_id = ?";
+  private static final String DELETE_EXPIRED_SQL = "delete from email_outbox where created_at < ?";
+  private static final String COUNT_SQL = "select count(*) from email_outbox";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final LeaseService leaseService;
+  private final JavaMailSender mailSender;
+  private final MailContentBuilder mailContentBuilder;
+  private final AuthProperties.EmailOutbox properties;
+
+  private final Timer sendTimer;
+  private final Timer delayTimer;
+  private final Counter retriedCounter;
+  private final Counter droppedCounter;
+  private final AtomicLong queueSize = new AtomicLong();
+
+  /**
+   * <p>
+   * EmailDispatcher constructor.
+   * </p>
+   */
+  public EmailDispatcher(JdbcTemplate jdbcTemplate, LeaseService leaseService, JavaMailSender mailSender,
+      MailContentBuilder mailContentBuilder, AuthProperties.EmailOutbox properties, MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.leaseService = leaseService;
+    this.mailSender = mailSender;
+    this.mailContentBuilder = mailContentBuilder;
+    this.properties = properties;
+
+    this.sendTimer = meterRegistry.timer("emailOutbox.send");
+    this.delayTimer = meterRegistry.timer("emailOutbox.delay");
+    this.retriedCounter = meterRegistry.counter("emailOutbox.retried");
+    this.droppedCounter = meterRegistry.counter("emailOutbox.dropped");
+    meterRegistry.gauge("emailOutbox.size", queueSize);
+
+    long totalBackoff = 0;
+    for (int attempts = 1; attempts < properties.getMaxAttempts(); attempts++) {
+      totalBackoff += backoff(attempts);
+    }
+    if (totalBackoff >= properties.getRetention().toMillis()) {
+      log.warn("E-mails are dropped after {} but their {} attempts take {} ms of backoff, the last attempts are "
+          + "never made", properties.getRetention(), properties.getMaxAttempts(), totalBackoff);
+    }
+  }
+
+  /**
+   * <p>
+   * Send due e-mails, unless another node holds the lease.
+   * </p>
+   */
+  public void dispatch() {
+    if (leaseService.tryAcquire(LEASE, properties.getLeaseDuration())) {
+      try {
+        dropExpired();
+        sendAll();
+      } finally {
+        leaseService.release(LEASE);
+      }
+    } else {
+      log.debug("Email dispatcher lease is held by another node, skipping");
+    }
+
+    queueSize.set(jdbcTemplate.queryForObject(COUNT_SQL, Long.class));
+  }
+
+  private void dropExpired() {
+    int dropped = jdbcTemplate.update(DELETE_EXPIRED_SQL,
+        new Timestamp(System.currentTimeMillis() - properties.getRetention().toMillis()));
+
+    if (dropped > 0) {
+      log.error("Dropping {} e-mails not sent within {}", dropped, properties.getRetention());
+      droppedCounter.increment(dropped);
+    }
+  }
+
+  private void sendAll() {
+    for (int batch = 0; batch < properties.getMaxBatches(); batch++) {
+      if (sendBatch() < properties.getBatchSize()) {
+        break;
+      }
+
+      // a long run must not outlive the lease and overlap with another node
+      if (!leaseService.tryAcquire(LEASE, properties.getLeaseDuration())) {
+        log.warn("Email dispatcher lost its lease");
+        break;
+      }
+    }
+  }
+
+  private int sendBatch() {
+    long now = System.currentTimeMillis();
+    List<QueuedEmail> emails = jdbcTemplate.query(SELECT_DUE_SQL, (rs, rowNum) -> new QueuedEmail(rs.getLong(1),
+        rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6), rs.getInt(7),
+        rs.getTimestamp(8).getTime()), new Timestamp(now), properties.getBatchSize());
+
+    if (emails.isEmpty()) {
+      return 0;
+    }
+
+    Map<MimeMessage, QueuedEmail> messages = new IdentityHashMap<>();
+    List<Object[]> done = new ArrayList<>();
+
+    for (QueuedEmail email : emails) {
+      try {
+        messages.put(createMessage(email), email);
+      } catch (MessagingException | RuntimeException e) {
+        // sending it again would not help
+        log.error("Dropping e-mail {} to {} which cannot be composed", email.id, email.recipient, e);
+        droppedCounter.increment();
+        done.add(new Object[] { email.id });
+      }
+    }
+
+    send(messages);
+
+    List<Object[]> retries = new ArrayList<>();
+
+    for (QueuedEmail email : messages.values()) {
+      if (!email.failed) {
+        delayTimer.record(System.currentTimeMillis() - email.createdAt, TimeUnit.MILLISECONDS);
+        done.add(new Object[] { email.id });
+      } else if (email.attempts + 1 >= properties.getMaxAttempts()) {
+        log.error("Dropping e-mail {} to {} after {} attempts", email.id, email.recipient, email.attempts + 1);
+        droppedCounter.increment();
+        done.add(new Object[] { email.id });
+      } else {
+        retriedCounter.increment();
+        retries.add(new Object[] { email.attempts + 1, new Timestamp(now + backoff(email.attempts + 1)), email.id });
+      }
+    }
+
+    jdbcTemplate.batchUpdate(DELETE_SQL, done);
+    jdbcTemplate.batchUpdate(RETRY_SQL, retries);
+
+    log.debug("Sent {} e-mails, {} to be tried again", done.size(), retries.size());
+
+    return emails.size();
+  }
+
+  private void send(Map<MimeMessage, QueuedEmail> messages) {
+    if (messages.isEmpty()) {
+      return;
+    }
+
+    long started = System.nanoTime();
+
+    try {
+      // all messages go over one connection
+      mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+    } catch (MailSendException e) {
+      if (e.getFailedMessages().isEmpty()) {
+        markFailed(messages.values(), e);
+      }
+      e.getFailedMessages().forEach((message, cause) -> {
+        QueuedEmail email = messages.get(message);
+        if (email != null) {
+          log.warn("Failed to send e-mail {} to {}: {}", email.id, email.recipient, cause.getMessage());
+          email.failed = true;
+        }
+      });
+    } catch (MailException e) {
+      markFailed(messages.values(), e);
+    }
+
+    sendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+  }
+
+  private static void markFailed(Iterable<QueuedEmail> emails, Exception e) {
+    log.warn("Failed to send e-mails: {}", e.getMessage());
+
+    for (QueuedEmail email : emails) {
+      email.failed = true;
+    }
+  }
+
+  private MimeMessage createMessage(QueuedEmail email) throws MessagingException {
+    MimeMessage mimeMessage = mailSender.createMimeMessage();
+
+    MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
+    messageHelper.setFrom(email.sender);
+    messageHelper.setTo(email.recipient);
+    messageHelper.setSubject(email.subject);
+    messageHelper.setText(mailContentBuilder.build(email.message, email.link), true);
+
+    return mimeMessage;
+  }
+
+  private long backoff(int attempts) {
+    long backoff = properties.getInitialBackoff().toMillis() << Math.min(attempts - 1, 30);
+
+    return Math.min(backoff, properties.getMaxBackoff().toMillis());
+  }
+
+  private static class QueuedEmail {
+
+    private final long id;
+    private final String recipient;
+    private final String sender;
+    private final String subject;
+    private final String message;
+    private final String link;
+    private final int attempts;
+    private final long createdAt;
+    private boolean failed;
+
+    QueuedEmail(long id, String recipient, String sender, String subject, String message, String link, int attempts,
+        long createdAt) {
+      this.id = id;
+      this.recipient = recipient;
+      this.sender = sender;
+      this.subject = subject;
+      this.message = message;
+      this.link = link;
+      this.attempts = attempts;
+      this.createdAt = createdAt;
+    }
+
+  }
+
+}
@@ -1,56 +1,69 @@
 package com.gigsterous.auth.service;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.mail.javamail.MimeMessagePreparator;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 /**
  * <p>
- * EmailService class.
+ * EmailService class. Queues e-mails in the outbox table. The row is written
+ * with the transaction of the caller, so an e-mail is sent exactly when the
+ * change it announces is committed, and the request does not wait for the
+ * mail server. {@link EmailDispatcher} sends the queued e-mails.
  * </p>
- * 
+ *
  * @author Martin Myslik
  */
 @Slf4j
 @Service
 public class EmailService {
 
-  private final JavaMailSender mailSender;
-  private final MailContentBuilder mailContentBuilder;
+  private static final String INSERT_SQL = "insert into email_outbox (recipient, sender, subject, message, link, "
+      + "created_at, next_attempt_at) values (?, ?, ?, ?, ?, ?, ?)";
+  private static final String COALESCE_SQL = "update email_outbox set message = ?, link = ? "
+      + "where recipient = ? and subject = ? and attempts = 0 and next_attempt_at > ?";
+
+  private final JdbcTemplate jdbcTemplate;
 
   /**
    * <p>
    * EmailService constructor.
    * </p>
    */
-  public EmailService(JavaMailSender mailSender, MailContentBuilder mailContentBuilder) {
-    this.mailSender = mailSender;
-    this.mailContentBuilder = mailContentBuilder;
+  public EmailService(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
   }
 
   /**
    * <p>
-   * Prepare Mime message and send it using java mail sender.
+   * Queue e-mail with given message and link, to be sent in the background.
    * </p>
    */
-  @Async
   public void prepareAndSend(String to, String from, String subject, String message, String link) {
-    MimeMessagePreparator messagePreparator = mimeMessage -> {
-      MimeMessageHelper messageHelper = new MimeMessageHelper(mimeMessage);
-      messageHelper.setFrom(from);
-      messageHelper.setTo(to);
-      messageHelper.setSubject(subject);
-
-      String content = mailContentBuilder.build(message, link);
-      messageHelper.setText(content, true);
-    };
-
-    log.debug("Sending email...");
-    mailSender.send(messagePreparator);
+    prepareAndSend(to, from, subject, message, link, Instant.now());
+  }
+
+  /**
+   * <p>
+   * Queue e-mail with given message and link, to be sent at given time. An
+   * e-mail with the same subject which is still waiting to be sent to the
+   * same address gets the new message and link instead.
+   * </p>
+   */
+  public void prepareAndSend(String to, String from, String subject, String message, String link, Instant sendAt) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+
+    if (sendAt.isAfter(now.toInstant()) && jdbcTemplate.update(COALESCE_SQL, message, link, to, subject, now) > 0) {
+      log.debug("Replaced link of a waiting email");
+      return;
+    }
+
+    log.debug("Queueing email...");
+    jdbcTemplate.update(INSERT_SQL, to, from, subject, message, link, now, Timestamp.from(sendAt));
   }
 
 }
@@ -0,0 +1,123 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.AuthProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * EmailThrottle class. Decides when the next confirmation e-mail to an
+ * address may be sent. The first e-mail goes out right away and opens a
+ * window. E-mails asked for within the window are merged into one e-mail,
+ * sent when the window closes with the newest link. At most maxPerHour
+ * e-mails are sent to an address per hour, further ones are not sent at all.
+ * </p>
+ * <p>
+ * Addresses are counted in a bounded in-memory cache, separately by every
+ * node.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class EmailThrottle {
+
+  private static final Duration HOUR = Duration.ofHours(1);
+
+  private final boolean enabled;
+  private final long window;
+  private final int maxPerHour;
+  private final Cache<String, Recipient> recipients;
+
+  private final Counter coalesced;
+  private final Counter limited;
+
+  /**
+   * <p>
+   * EmailThrottle constructor.
+   * </p>
+   */
+  public EmailThrottle(AuthProperties properties, MeterRegistry meterRegistry) {
+    AuthProperties.EmailThrottle settings = properties.getEmailThrottle();
+
+    this.enabled = settings.isEnabled();
+    this.window = settings.getWindow().toMillis();
+    this.maxPerHour = settings.getMaxPerHour();
+    this.recipients = Caffeine.newBuilder().maximumSize(settings.getMaximumSize())
+        .expireAfterAccess(settings.getWindow().compareTo(HOUR) > 0 ? settings.getWindow() : HOUR).build();
+
+    this.coalesced = meterRegistry.counter("emailThrottle.suppressed", "reason", "coalesced");
+    this.limited = meterRegistry.counter("emailThrottle.suppressed", "reason", "limited");
+  }
+
+  /**
+   * <p>
+   * Count an e-mail to given address.
+   * </p>
+   *
+   * @return when the e-mail should be sent, or null when it must not be sent
+   */
+  public Instant acquire(String email) {
+    long now = System.currentTimeMillis();
+
+    if (!enabled || email == null) {
+      return Instant.ofEpochMilli(now);
+    }
+
+    Recipient recipient = recipients.get(email.trim().toLowerCase(Locale.ROOT), key -> new Recipient());
+
+    synchronized (recipient) {
+      if (now - recipient.hourStarted >= HOUR.toMillis()) {
+        recipient.hourStarted = now;
+        recipient.sent = 0;
+      }
+
+      boolean inWindow = now - recipient.windowStarted < window;
+
+      if (inWindow && recipient.deferred) {
+        // the e-mail waiting for the end of the window gets the newest link instead
+        coalesced.increment();
+        return Instant.ofEpochMilli(recipient.windowStarted + window);
+      }
+
+      if (recipient.sent >= maxPerHour) {
+        log.debug("Too many e-mails to {}", email);
+        limited.increment();
+        return null;
+      }
+
+      recipient.sent++;
+
+      if (inWindow) {
+        recipient.deferred = true;
+        return Instant.ofEpochMilli(recipient.windowStarted + window);
+      }
+
+      recipient.windowStarted = now;
+      recipient.deferred = false;
+      return Instant.ofEpochMilli(now);
+    }
+  }
+
+  private static class Recipient {
+
+    private long hourStarted;
+    private int sent;
+    private long windowStarted;
+    private boolean deferred;
+
+  }
+
+}
@@ -0,0 +1,38 @@
+package com.gigsterous.auth.service;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * IntrospectionService interface. Token introspection as defined by RFC 7662.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+public interface IntrospectionService {
+
+  /**
+   * <p>
+   * Introspect access token with given value.
+   * </p>
+   *
+   * @param token
+   *          String
+   * @return introspection response, only active=false for unknown, expired or
+   *         invalidated tokens
+   */
+  public Map<String, Object> introspect(String token);
+
+  /**
+   * <p>
+   * Introspect access tokens with given values at once.
+   * </p>
+   *
+   * @param tokens
+   *          List
+   * @return introspection responses in the order of given tokens
+   */
+  public List<Map<String, Object>> introspect(List<String> tokens);
+
+}
@@ -0,0 +1,120 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.token.BulkTokenStore;
+import com.gigsterous.auth.token.StoredAccessToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * IntrospectionService class. Tokens of a batch are read from the token store
+ * with a single multi-key lookup when the store supports it.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class IntrospectionServiceImpl implements IntrospectionService {
+
+  private static final Map<String, Object> INACTIVE = Collections.singletonMap("active", false);
+
+  private final TokenStore tokenStore;
+
+  /**
+   * <p>
+   * IntrospectionService constructor.
+   * </p>
+   */
+  public IntrospectionServiceImpl(TokenStore tokenStore) {
+    this.tokenStore = tokenStore;
+  }
+
+  @Override
+  public Map<String, Object> introspect(String token) {
+    return introspect(Collections.singletonList(token)).get(0);
+  }
+
+  @Override
+  public List<Map<String, Object>> introspect(List<String> tokens) {
+    log.debug("Introspecting {} tokens", tokens.size());
+
+    Map<String, StoredAccessToken> stored = read(new LinkedHashSet<>(tokens));
+
+    List<Map<String, Object>> responses = new ArrayList<>(tokens.size());
+    for (String token : tokens) {
+      responses.add(toResponse(stored.get(token)));
+    }
+
+    return responses;
+  }
+
+  private Map<String, StoredAccessToken> read(LinkedHashSet<String> tokenValues) {
+    if (tokenStore instanceof BulkTokenStore) {
+      return ((BulkTokenStore) tokenStore).readAccessTokens(tokenValues);
+    }
+
+    Map<String, StoredAccessToken> stored = new HashMap<>();
+    for (String tokenValue : tokenValues) {
+      OAuth2AccessToken token = tokenStore.readAccessToken(tokenValue);
+      OAuth2Authentication authentication = token != null ? tokenStore.readAuthentication(token) : null;
+
+      if (authentication != null) {
+        stored.put(tokenValue, new StoredAccessToken(token, authentication));
+      }
+    }
+
+    return stored;
+  }
+
+  private static Map<String, Object> toResponse(StoredAccessToken stored) {
+    if (stored == null || stored.getAuthentication() == null || stored.getToken().isExpired()) {
+      return INACTIVE;
+    }
+
+    OAuth2AccessToken token = stored.getToken();
+    OAuth2Authentication authentication = stored.getAuthentication();
+    OAuth2Request request = authentication.getOAuth2Request();
+
+    Map<String, Object> response = new LinkedHashMap<>();
+    response.put("active", true);
+    response.put("scope", String.join(" ", token.getScope()));
+    response.put("client_id", request.getClientId());
+    response.put("token_type", token.getTokenType());
+
+    if (!authentication.isClientOnly()) {
+      response.put("username", authentication.getName());
+      response.put("sub", authentication.getName());
+    }
+
+    if (token.getExpiration() != null) {
+      response.put("exp", token.getExpiration().getTime() / 1000);
+    }
+
+    if (!request.getResourceIds().isEmpty()) {
+      response.put("aud", request.getResourceIds());
+    }
+
+    Object jti = token.getAdditionalInformation().get("jti");
+    if (jti != null) {
+      response.put("jti", jti);
+    }
+
+    return response;
+  }
+
+}
@@ -0,0 +1,83 @@
+package com.gigsterous.auth.service;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.UUID;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * LeaseService class. Time limited leases kept in the scheduler_lease table,
+ * used to run a scheduled job on a single node at a time. A lease is taken by
+ * a conditional update, so only one node can win it, and it expires by itself
+ * when its holder dies.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class LeaseService {
+
+  private static final String ACQUIRE_SQL = "update scheduler_lease set owner = ?, expires_at = ? "
+      + "where name = ? and (owner = ? or expires_at is null or expires_at < ?)";
+  private static final String RELEASE_SQL = "update scheduler_lease set expires_at = null "
+      + "where name = ? and owner = ?";
+  private static final String COUNT_SQL = "select count(*) from scheduler_lease where name = ?";
+  private static final String INSERT_SQL = "insert into scheduler_lease (name, owner, expires_at) values (?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final String owner;
+
+  /**
+   * <p>
+   * LeaseService constructor.
+   * </p>
+   */
+  public LeaseService(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+  }
+
+  /**
+   * <p>
+   * Take or prolong the lease of given name. Returns false when another node
+   * holds it.
+   * </p>
+   */
+  public boolean tryAcquire(String name, Duration duration) {
+    long now = System.currentTimeMillis();
+    Timestamp expiresAt = new Timestamp(now + duration.toMillis());
+
+    if (jdbcTemplate.update(ACQUIRE_SQL, owner, expiresAt, name, owner, new Timestamp(now)) == 1) {
+      return true;
+    }
+
+    if (jdbcTemplate.queryForObject(COUNT_SQL, Integer.class, name) > 0) {
+      return false;
+    }
+
+    try {
+      return jdbcTemplate.update(INSERT_SQL, name, owner, expiresAt) == 1;
+    } catch (DuplicateKeyException e) {
+      log.debug("Lease {} was created by another node", name);
+      return false;
+    }
+  }
+
+  /**
+   * <p>
+   * Give up the lease of given name if it is held by this node.
+   * </p>
+   */
+  public void release(String name) {
+    jdbcTemplate.update(RELEASE_SQL, name, owner);
+  }
+
+}
@@ -1,21 +1,45 @@
 package com.gigsterous.auth.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
 /**
  * <p>
- * MailContentBuilder class.
+ * MailContentBuilder class. The template is rendered once per message, with a
+ * placeholder in place of the link, and kept split at the placeholder. Messages
+ * come from a few keys resolved for the locale of the recipient, so there are
+ * only a few such skeletons, and building an e-mail only splices the escaped
+ * link into its skeleton.
  * </p>
- * 
+ *
  * @author Martin Myslik
  */
 @Service
 public class MailContentBuilder {
 
+  static final String TEMPLATE = "mail/mail";
+
+  // no message contains it, so the skeleton can be split at it
+  private static final String LINK_PLACEHOLDER = "link-" + UUID.randomUUID();
+  private static final Pattern LINK_PLACEHOLDER_PATTERN = Pattern.compile(Pattern.quote(LINK_PLACEHOLDER));
+  private static final int MAX_SKELETONS = 100;
+
   private TemplateEngine templateEngine;
+  private final Cache<String, Skeleton> skeletons;
+  private final Timer renderTimer;
 
   /**
    * <p>
@@ -23,8 +47,10 @@ public class MailContentBuilder {
    * </p>
    */
   @Autowired
-  public MailContentBuilder(TemplateEngine templateEngine) {
+  public MailContentBuilder(TemplateEngine templateEngine, MeterRegistry meterRegistry) {
     this.templateEngine = templateEngine;
+    this.skeletons = Caffeine.newBuilder().maximumSize(MAX_SKELETONS).build();
+    this.renderTimer = meterRegistry.timer("mail.render");
   }
 
   /**
@@ -33,11 +59,59 @@ public class MailContentBuilder {
    * </p>
    */
   public String build(String message, String link) {
+    long started = System.nanoTime();
+
+    String content;
+    if (link != null) {
+      content = skeletons.get(message, this::skeleton).splice(HtmlUtils.htmlEscape(link));
+    } else {
+      // the template leaves out the whole attribute without a link
+      content = render(message, null);
+    }
+
+    renderTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+    return content;
+  }
+
+  private Skeleton skeleton(String message) {
+    return new Skeleton(LINK_PLACEHOLDER_PATTERN.split(render(message, LINK_PLACEHOLDER), -1));
+  }
+
+  private String render(String message, String link) {
     Context context = new Context();
     context.setVariable("message", message);
     context.setVariable("link", link);
 
-    return templateEngine.process("mail/mail", context);
+    return templateEngine.process(TEMPLATE, context);
+  }
+
+  private static class Skeleton {
+
+    private final String[] parts;
+    private final int length;
+
+    Skeleton(String[] parts) {
+      this.parts = parts;
+
+      int partsLength = 0;
+      for (String part : parts) {
+        partsLength += part.length();
+      }
+      this.length = partsLength;
+    }
+
+    String splice(String link) {
+      StringBuilder content = new StringBuilder(length + link.length() * (parts.length - 1));
+      content.append(parts[0]);
+
+      for (int i = 1; i < parts.length; i++) {
+        content.append(link).append(parts[i]);
+      }
+
+      return content.toString();
+    }
+
   }
 
 }
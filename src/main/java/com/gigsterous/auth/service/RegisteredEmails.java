@@ -0,0 +1,186 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.AuthProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * RegisteredEmails class. Bloom filter of the e-mails in the users table, so
+ * that logins with e-mails which are definitely not registered can be turned
+ * down without a query. Most brute-force and enumeration traffic uses such
+ * e-mails.
+ * </p>
+ * <p>
+ * The filter is built from the whole table on startup and then rebuilt
+ * periodically, which drops deleted users and resizes it. In between, users
+ * registered on this node are added right away, and users registered or
+ * changing their e-mail on other nodes are added by a short refresh which
+ * reads only pending e-mails and the rows above the last user id seen, less an
+ * overlap, because ids are taken on insert and a lower one may commit after a
+ * higher one was read. Rows are read in pages by user id. A pending e-mail is added before it
+ * becomes the e-mail of the user, so verifying it never locks the user out.
+ * Until the first build, every e-mail might be registered.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class RegisteredEmails {
+
+  private static final String COUNT_SQL = "select count(*) from users";
+  private static final String SELECT_SQL = "select user_id, email, pending_email from users";
+  private static final String SELECT_PAGE_SQL = SELECT_SQL + " where user_id > ? order by user_id limit ?";
+  private static final String SELECT_PENDING_SQL = SELECT_SQL + " where pending_email is not null";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final AuthProperties.EmailFilter settings;
+  private final Counter rejected;
+
+  private volatile BloomFilter filter;
+  // filter being rebuilt, which also gets the e-mails added meanwhile
+  private volatile BloomFilter building;
+  private final AtomicLong lastUserId = new AtomicLong();
+
+  /**
+   * <p>
+   * RegisteredEmails constructor.
+   * </p>
+   */
+  public RegisteredEmails(JdbcTemplate jdbcTemplate, AuthProperties properties, MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.settings = properties.getEmailFilter();
+    this.rejected = meterRegistry.counter("emailFilter.rejected");
+
+    meterRegistry.gauge("emailFilter.size", this,
+        emails -> emails.filter != null ? emails.filter.getSizeInBytes() : 0);
+  }
+
+  /**
+   * <p>
+   * Return false if no user has given e-mail for sure.
+   * </p>
+   */
+  public boolean mightBeRegistered(String email) {
+    BloomFilter current = filter;
+    if (email == null || current == null || current.mightContain(normalize(email))) {
+      return true;
+    }
+
+    rejected.increment();
+    return false;
+  }
+
+  /**
+   * <p>
+   * Add given e-mail right after it was saved to the users table.
+   * </p>
+   */
+  public void add(String email) {
+    if (email == null) {
+      return;
+    }
+
+    String normalized = normalize(email);
+
+    BloomFilter current = filter;
+    if (current != null) {
+      current.put(normalized);
+    }
+
+    BloomFilter next = building;
+    if (next != null) {
+      next.put(normalized);
+    }
+  }
+
+  /**
+   * <p>
+   * Build a new filter from all users and replace the current one.
+   * </p>
+   */
+  public synchronized void rebuild() {
+    long started = System.currentTimeMillis();
+    long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+
+    // room to grow until the next rebuild
+    BloomFilter next = new BloomFilter(Math.max(settings.getExpectedUsers(), 2 * count),
+        settings.getFalsePositiveRate());
+    building = next;
+
+    // users saved on this node meanwhile are added to both filters, those saved elsewhere by the next refresh
+    long maxUserId = readFrom(next, 0);
+
+    filter = next;
+    building = null;
+    lastUserId.set(maxUserId);
+
+    log.info("Built e-mail filter of {} users ({} bytes) in {} ms", count, next.getSizeInBytes(),
+        System.currentTimeMillis() - started);
+  }
+
+  /**
+   * <p>
+   * Add users registered and e-mails pending on any node since the last build
+   * or refresh.
+   * </p>
+   */
+  public synchronized void refresh() {
+    BloomFilter current = filter;
+    if (current == null) {
+      return;
+    }
+
+    long maxUserId = readFrom(current, Math.max(0, lastUserId.get() - settings.getRefreshOverlap()));
+    read(current, SELECT_PENDING_SQL);
+
+    lastUserId.accumulateAndGet(maxUserId, Math::max);
+  }
+
+  /**
+   * <p>
+   * Read users above given id page by page and return the highest id read.
+   * </p>
+   */
+  private long readFrom(BloomFilter target, long userId) {
+    long maxUserId = userId;
+    long pageMaxUserId;
+    do {
+      pageMaxUserId = read(target, SELECT_PAGE_SQL, maxUserId, settings.getPageSize());
+      maxUserId = Math.max(maxUserId, pageMaxUserId);
+    } while (pageMaxUserId != 0);
+
+    return maxUserId;
+  }
+
+  private long read(BloomFilter target, String sql, Object... args) {
+    AtomicLong maxUserId = new AtomicLong();
+
+    jdbcTemplate.query(sql, rs -> {
+      maxUserId.accumulateAndGet(rs.getLong(1), Math::max);
+      target.put(normalize(rs.getString(2)));
+
+      String pendingEmail = rs.getString(3);
+      if (pendingEmail != null) {
+        target.put(normalize(pendingEmail));
+      }
+    }, args);
+
+    return maxUserId.get();
+  }
+
+  private static String normalize(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+
+}
@@ -0,0 +1,91 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.AuthProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * TokenEpochService class. Every user has a token epoch, a counter stamped
+ * into tokens when they are issued. Moving the counter forward invalidates all
+ * tokens issued before at once, no matter how many there are or whether they
+ * are kept in the token store at all.
+ * </p>
+ * <p>
+ * Epochs are checked on every token use, so they are served from a small
+ * in-memory map which is refreshed from the database after a short interval.
+ * </p>
+ * 
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class TokenEpochService {
+
+  private static final String SELECT_SQL = "select token_epoch from users where email = ?";
+  private static final String INCREMENT_SQL = "update users set token_epoch = token_epoch + 1 where email = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Cache<String, Long> epochs;
+  private final UserCache userCache;
+
+  /**
+   * <p>
+   * TokenEpochService constructor.
+   * </p>
+   */
+  public TokenEpochService(JdbcTemplate jdbcTemplate, AuthProperties properties, UserCache userCache) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.userCache = userCache;
+
+    AuthProperties.TokenEpoch settings = properties.getTokenEpoch();
+    this.epochs = Caffeine.newBuilder().maximumSize(settings.getMaximumSize())
+        .expireAfterWrite(settings.getRefreshInterval().toMillis(), TimeUnit.MILLISECONDS).build();
+  }
+
+  /**
+   * <p>
+   * Return current token epoch of user with given username.
+   * </p>
+   */
+  public long currentEpoch(String username) {
+    return epochs.get(username, this::load);
+  }
+
+  /**
+   * <p>
+   * Move token epoch of user with given username forward, which invalidates
+   * all tokens issued to the user so far.
+   * </p>
+   *
+   * @return the new epoch
+   */
+  public long increment(String username) {
+    log.debug("Moving token epoch of {} forward", username);
+
+    jdbcTemplate.update(INCREMENT_SQL, username);
+    // cached users carry the epoch stamped into new tokens
+    userCache.evict(username);
+
+    long epoch = load(username);
+    epochs.put(username, epoch);
+
+    return epoch;
+  }
+
+  private Long load(String username) {
+    List<Long> epoch = jdbcTemplate.queryForList(SELECT_SQL, Long.class, username);
+
+    // tokens of unknown users are left to the other checks
+    return epoch.isEmpty() ? 0L : epoch.get(0);
+  }
+
+}
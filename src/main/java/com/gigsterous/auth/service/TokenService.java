@@ -9,6 +9,18 @@ package com.gigsterous.auth.service;
  */
 public interface TokenService {
 
+  /**
+   * <p>
+   * Invalidate all access and refresh tokens issued to user with given username
+   * so far, without removing them.
+   * </p>
+   *
+   * @param username
+   *          String
+   * @return the new token epoch of the user
+   */
+  public long invalidateTokens(String username);
+
   /**
    * <p>
    * Revoke access and refresh tokens for user with given username.
@@ -16,7 +28,33 @@ public interface TokenService {
    *
    * @param username
    *          String
+   * @return number of revoked tokens
+   */
+  public int revokeTokens(String username);
+
+  /**
+   * <p>
+   * Revoke access and refresh tokens issued to client with given id.
+   * </p>
+   *
+   * @param clientId
+   *          String
+   * @return number of revoked tokens
+   */
+  public int revokeClientTokens(String clientId);
+
+  /**
+   * <p>
+   * Revoke access and refresh tokens issued to client with given id for user
+   * with given username.
+   * </p>
+   *
+   * @param clientId
+   *          String
+   * @param username
+   *          String
+   * @return number of revoked tokens
    */
-  public void revokeTokens(String username);
+  public int revokeClientTokens(String clientId, String username);
 
 }
@@ -1,6 +1,12 @@
 package com.gigsterous.auth.service;
 
+import com.gigsterous.auth.token.BulkTokenStore;
+import com.gigsterous.auth.token.CachingTokenStore;
+import com.gigsterous.auth.token.EpochTokenStore;
+import com.gigsterous.auth.token.WriteBehindTokenStore;
+
 import java.util.Collection;
+import java.util.function.Function;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -8,10 +14,13 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * <p>
- * TokenService class.
+ * TokenService class. Tokens are removed with set-based statements when the
+ * token store supports it, otherwise they are looked up and removed one by
+ * one. Invalidating all tokens of a user only moves the user's token epoch.
  * </p>
  * 
  * @author Martin Myslik
@@ -21,36 +30,112 @@ import org.springframework.stereotype.Service;
 public class TokenServiceImpl implements TokenService {
 
   private final TokenStore tokenStore;
+  private final TokenEpochService tokenEpochService;
 
   /**
    * <p>
    * TokenService constructor.
    * </p>
    */
-  public TokenServiceImpl(TokenStore tokenStore) {
+  public TokenServiceImpl(TokenStore tokenStore, TokenEpochService tokenEpochService) {
     this.tokenStore = tokenStore;
+    this.tokenEpochService = tokenEpochService;
+  }
+
+  @Override
+  public long invalidateTokens(String username) {
+    log.debug("Invalidating tokens for {}", username);
+
+    // the tokens stay in the store until they expire and are reaped
+    return tokenEpochService.increment(username);
   }
 
   @Override
-  public void revokeTokens(String username) {
+  @Transactional
+  public int revokeTokens(String username) {
     log.debug("Revoking tokens for {}", username);
 
-    if (!(tokenStore instanceof JdbcTokenStore)) {
+    if (isBulkTokenStore()) {
+      return ((BulkTokenStore) tokenStore).removeTokensByUserName(username);
+    }
+
+    // look tokens up in the underlying store but remove them through the cache so it gets invalidated
+    TokenStore store = unwrap(tokenStore);
+
+    if (!(store instanceof JdbcTokenStore)) {
       log.debug("Token store is not instance of JdbcTokenStore. Cannot revoke tokens!");
 
-      return;
+      return 0;
+    }
+
+    return removeOneByOne(((JdbcTokenStore) store).findTokensByUserName(username));
+  }
+
+  @Override
+  @Transactional
+  public int revokeClientTokens(String clientId) {
+    log.debug("Revoking tokens of client {}", clientId);
+
+    if (isBulkTokenStore()) {
+      return ((BulkTokenStore) tokenStore).removeTokensByClientId(clientId);
+    }
+
+    return removeOneByOne(lookUp(store -> store.findTokensByClientId(clientId)));
+  }
+
+  @Override
+  @Transactional
+  public int revokeClientTokens(String clientId, String username) {
+    log.debug("Revoking tokens of client {} for {}", clientId, username);
+
+    if (isBulkTokenStore()) {
+      return ((BulkTokenStore) tokenStore).removeTokensByClientIdAndUserName(clientId, username);
     }
 
-    Collection<OAuth2AccessToken> tokens = ((JdbcTokenStore) tokenStore).findTokensByUserName(username);
+    return removeOneByOne(lookUp(store -> store.findTokensByClientIdAndUserName(clientId, username)));
+  }
+
+  private boolean isBulkTokenStore() {
+    // decorators can only remove in bulk when the store behind them can
+    return tokenStore instanceof BulkTokenStore && unwrap(tokenStore) instanceof BulkTokenStore;
+  }
+
+  private Collection<OAuth2AccessToken> lookUp(Function<TokenStore, Collection<OAuth2AccessToken>> finder) {
+    return finder.apply(unwrap(tokenStore));
+  }
+
+  private static TokenStore unwrap(TokenStore store) {
+    if (store instanceof EpochTokenStore) {
+      return unwrap(((EpochTokenStore) store).getDelegate());
+    }
+
+    if (store instanceof CachingTokenStore) {
+      return unwrap(((CachingTokenStore) store).getDelegate());
+    }
+
+    if (store instanceof WriteBehindTokenStore) {
+      return unwrap(((WriteBehindTokenStore) store).getDelegate());
+    }
+
+    return store;
+  }
+
+  private int removeOneByOne(Collection<OAuth2AccessToken> tokens) {
+    int removed = 0;
 
     for (OAuth2AccessToken token : tokens) {
       log.debug("Revoking access token {}", token);
       tokenStore.removeAccessToken(token);
+      removed++;
 
-      log.debug("Revoking refresh token {}", token.getRefreshToken());
-      tokenStore.removeRefreshToken(token.getRefreshToken());
+      if (token.getRefreshToken() != null) {
+        log.debug("Revoking refresh token {}", token.getRefreshToken());
+        tokenStore.removeRefreshToken(token.getRefreshToken());
+        removed++;
+      }
     }
 
+    return removed;
   }
 
 }
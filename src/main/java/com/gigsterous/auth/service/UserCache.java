@@ -0,0 +1,109 @@
+package com.gigsterous.auth.service;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.model.UserSnapshot;
+import com.gigsterous.auth.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * UserCache class. Read-through cache of users by e-mail, so that logins and
+ * account pages do not query the users table on every request. Entries are
+ * immutable snapshots keyed by the trimmed, lowercased e-mail, and every
+ * lookup returns a new detached user, never the entity managed by JPA. Unknown
+ * e-mails are not cached.
+ * </p>
+ * <p>
+ * Whoever changes or deletes a user evicts it after the change is saved. Users
+ * changed on other nodes are picked up after the time to live.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class UserCache {
+
+  private final UserRepository userRepository;
+  private final Cache<String, UserSnapshot> users;
+
+  /**
+   * <p>
+   * UserCache constructor.
+   * </p>
+   */
+  public UserCache(UserRepository userRepository, AuthProperties properties, MeterRegistry meterRegistry) {
+    this.userRepository = userRepository;
+
+    AuthProperties.UserCache settings = properties.getUserCache();
+    this.users = Caffeine.newBuilder().maximumSize(settings.getMaximumSize())
+        .expireAfterWrite(settings.getTimeToLive().toMillis(), TimeUnit.MILLISECONDS).recordStats().build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+  }
+
+  /**
+   * <p>
+   * Find a user by email.
+   * </p>
+   *
+   * @return a detached copy of the user, changes to it are not saved
+   */
+  public Optional<User> findByEmail(String email) {
+    if (email == null) {
+      return Optional.empty();
+    }
+
+    UserSnapshot snapshot = users.get(normalize(email), key -> load(email));
+
+    // the users table compares e-mails as they are, a differently written one is looked up without the cache
+    if (snapshot != null && !snapshot.getEmail().equals(email)) {
+      return userRepository.findOneByEmail(email).map(UserSnapshot::of).map(UserSnapshot::toUser);
+    }
+
+    return Optional.ofNullable(snapshot).map(UserSnapshot::toUser);
+  }
+
+  /**
+   * <p>
+   * Drop user with given email, so that it is loaded again on the next lookup.
+   * </p>
+   */
+  public void evict(String email) {
+    if (email != null) {
+      log.debug("Evicting user {}", email);
+      users.invalidate(normalize(email));
+    }
+  }
+
+  /**
+   * <p>
+   * Drop all users.
+   * </p>
+   */
+  public void evictAll() {
+    users.invalidateAll();
+  }
+
+  private UserSnapshot load(String email) {
+    return userRepository.findOneByEmail(email).map(UserSnapshot::of).orElse(null);
+  }
+
+  private static String normalize(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+
+}
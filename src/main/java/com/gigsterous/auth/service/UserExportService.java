@@ -0,0 +1,154 @@
+package com.gigsterous.auth.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * <p>
+ * UserExportService class. Writes all users as newline delimited JSON, in the
+ * same format as the users endpoint, or as CSV, one user per line. Both can be
+ * imported again with {@link UserImportService}. Rows are read with a JDBC
+ * fetch size and written as they are read, without entities in a persistence
+ * context, so memory use does not grow with the number of users.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class UserExportService {
+
+  private static final String SELECT_SQL = "select user_id, email, pending_email, password, role, enabled, "
+      + "token_epoch, version from users order by user_id";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter writer;
+
+  /**
+   * <p>
+   * UserExportService constructor.
+   * </p>
+   */
+  public UserExportService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, AuthProperties properties) {
+    // a template of its own, so that the fetch size does not apply to other queries
+    this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+    this.jdbcTemplate.setFetchSize(properties.getUserExport().getFetchSize());
+    this.objectMapper = objectMapper;
+    // the generator buffers and flushes on its own, not after every user
+    this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
+  /**
+   * <p>
+   * Write all users to given stream as newline delimited JSON.
+   * </p>
+   *
+   * @return number of users written
+   */
+  public long export(OutputStream out) throws IOException {
+    return export(out, UserFormat.NDJSON);
+  }
+
+  /**
+   * <p>
+   * Write all users to given stream in given format.
+   * </p>
+   *
+   * @return number of users written
+   */
+  public long export(OutputStream out, UserFormat format) throws IOException {
+    long started = System.currentTimeMillis();
+    long count;
+
+    if (format == UserFormat.CSV) {
+      count = exportCsv(out);
+    } else {
+      count = exportNdjson(out);
+    }
+
+    log.debug("Exported {} users as {} in {} ms", count, format, System.currentTimeMillis() - started);
+
+    return count;
+  }
+
+  private long exportNdjson(OutputStream out) throws IOException {
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.setRootValueSeparator(null);
+
+      return query(user -> {
+        writer.writeValue(generator, user);
+        generator.writeRaw('\n');
+      });
+    }
+  }
+
+  private long exportCsv(OutputStream out) throws IOException {
+    // not closed, the stream belongs to the caller
+    Writer csv = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    csv.write(UserFormat.csvLine(UserFormat.CSV_COLUMNS));
+
+    long count = query(user -> csv.write(UserFormat.csvLine(user.getEmail(), user.getPassword(),
+        user.getRole() != null ? user.getRole().name() : null, String.valueOf(user.isEnabled()))));
+
+    csv.flush();
+
+    return count;
+  }
+
+  private long query(UserWriter userWriter) throws IOException {
+    long[] count = new long[1];
+
+    try {
+      jdbcTemplate.query(SELECT_SQL, rs -> {
+        User user = new User();
+        user.setId(rs.getLong(1));
+        user.setEmail(rs.getString(2));
+        user.setPendingEmail(rs.getString(3));
+        user.setPassword(rs.getString(4));
+        user.setRole(rs.getString(5) != null ? Role.valueOf(rs.getString(5)) : null);
+        user.setEnabled(rs.getBoolean(6));
+        user.setTokenEpoch(rs.getLong(7));
+        user.setVersion(rs.getLong(8));
+
+        try {
+          userWriter.write(user);
+        } catch (IOException e) {
+          // the client went away, which ends the query as well
+          throw new UncheckedIOException(e);
+        }
+        count[0]++;
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+
+    return count[0];
+  }
+
+  private interface UserWriter {
+
+    void write(User user) throws IOException;
+
+  }
+
+}
@@ -0,0 +1,106 @@
+package com.gigsterous.auth.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * UserFormat enum. Formats in which users are exported and imported. Both
+ * write one user per line, so a file of any size can be read and written as a
+ * stream, and an export can be imported again as it is.
+ * </p>
+ * <p>
+ * CSV starts with a header line naming the columns and quotes values
+ * containing commas or quotes as in RFC 4180. Values cannot span lines.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public enum UserFormat {
+
+  NDJSON("application/x-ndjson"), CSV("text/csv");
+
+  static final String[] CSV_COLUMNS = { "email", "password", "role", "enabled" };
+
+  private final String mediaType;
+
+  UserFormat(String mediaType) {
+    this.mediaType = mediaType;
+  }
+
+  public String getMediaType() {
+    return mediaType;
+  }
+
+  /**
+   * <p>
+   * Find the format of given content type, ignoring its parameters.
+   * </p>
+   *
+   * @return the format, or null when the content type is none of them
+   */
+  public static UserFormat of(String contentType) {
+    if (contentType != null) {
+      String mediaType = contentType.split(";", 2)[0].trim();
+      for (UserFormat format : values()) {
+        if (format.mediaType.equalsIgnoreCase(mediaType)) {
+          return format;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  static String csvLine(String... values) {
+    StringBuilder line = new StringBuilder();
+
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        line.append(',');
+      }
+
+      String value = values[i] != null ? values[i] : "";
+      if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+      } else {
+        line.append(value);
+      }
+    }
+
+    return line.append('\n').toString();
+  }
+
+  static List<String> csvValues(String line) {
+    List<String> values = new ArrayList<>();
+    StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+
+      if (quoted) {
+        if (c != '"') {
+          value.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        values.add(value.toString().trim());
+        value.setLength(0);
+      } else {
+        value.append(c);
+      }
+    }
+
+    values.add(value.toString().trim());
+
+    return values;
+  }
+
+}
@@ -0,0 +1,361 @@
+package com.gigsterous.auth.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.Role;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * <p>
+ * UserImportService class. Imports users from newline delimited JSON or CSV,
+ * as written by {@link UserExportService}, reading one batch of users at a
+ * time. Each batch is checked against registered e-mails with one IN query
+ * and inserted with one batched statement in a transaction of its own.
+ * </p>
+ * <p>
+ * Passwords have to be BCrypt hashes, which are stored as $2a$ hashes. Imported
+ * users are enabled unless told otherwise, and no e-mails are sent to them.
+ * Users which are registered already, appear twice, or cannot be read are
+ * skipped. Progress is written after every batch, one JSON object per line.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+@Service
+public class UserImportService {
+
+  private static final String SELECT_REGISTERED_SQL = "select email from users where email in (%s)";
+  private static final String INSERT_SQL = "insert into users (email, password, role, enabled) values (?, ?, ?, ?)";
+
+  // $2b$ and $2y$ hashes of other implementations are the same as $2a$ hashes of jBCrypt
+  private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$\\d\\d\\$[./0-9A-Za-z]{53}\\z");
+  private static final int MAX_EMAIL_LENGTH = 128;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter writer;
+  private final RegisteredEmails registeredEmails;
+  private final int batchSize;
+
+  /**
+   * <p>
+   * UserImportService constructor.
+   * </p>
+   */
+  public UserImportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+      ObjectMapper objectMapper, RegisteredEmails registeredEmails, AuthProperties properties) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.objectMapper = objectMapper;
+    this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    this.registeredEmails = registeredEmails;
+    this.batchSize = properties.getUserImport().getBatchSize();
+  }
+
+  /**
+   * <p>
+   * Import users from given stream, writing progress to the other one.
+   * </p>
+   *
+   * @throws IllegalArgumentException
+   *           when CSV does not start with a header naming email and password
+   *           columns, before anything is imported
+   * @return progress after the last batch
+   */
+  public Progress importUsers(InputStream in, UserFormat format, OutputStream progressOut) throws IOException {
+    long started = System.currentTimeMillis();
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    LineParser parser = format == UserFormat.CSV ? csvParser(reader.readLine()) : this::parseJson;
+
+    Progress progress = new Progress();
+    List<ImportedUser> batch = new ArrayList<>(batchSize);
+
+    try (JsonGenerator generator = objectMapper.getFactory().createGenerator(progressOut)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.setRootValueSeparator(null);
+
+      long lineNumber = format == UserFormat.CSV ? 1 : 0;
+      String line;
+
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        progress.read++;
+        ImportedUser user = parser.parse(line, lineNumber);
+
+        if (user == null) {
+          progress.skip(lineNumber, null, Reason.INVALID);
+        } else if (user.invalid) {
+          progress.skip(lineNumber, user.email, Reason.INVALID);
+        } else {
+          batch.add(user);
+        }
+
+        // skipped users are reported with every batch as well, so that they do not pile up
+        if (batch.size() >= batchSize || progress.skipped.size() >= batchSize) {
+          importBatch(batch, progress);
+          writeProgress(generator, progress);
+        }
+      }
+
+      importBatch(batch, progress);
+      progress.done = true;
+      writeProgress(generator, progress);
+    }
+
+    log.info("Imported {} of {} users as {} in {} ms", progress.imported, progress.read, format,
+        System.currentTimeMillis() - started);
+
+    return progress;
+  }
+
+  private void importBatch(List<ImportedUser> batch, Progress progress) {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    List<ImportedUser> users = unregistered(batch, progress);
+    List<Object[]> rows = new ArrayList<>(users.size());
+    for (ImportedUser user : users) {
+      rows.add(new Object[] { user.email, user.password, user.role.name(), user.enabled });
+    }
+
+    List<ImportedUser> imported;
+    try {
+      transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(INSERT_SQL, rows));
+      imported = users;
+    } catch (DataIntegrityViolationException e) {
+      // someone registered in the meantime, the whole batch was rolled back
+      log.debug("Batch insert failed, inserting {} users one by one", users.size(), e);
+      imported = insertOneByOne(users, progress);
+    }
+
+    for (ImportedUser user : imported) {
+      registeredEmails.add(user.email);
+    }
+
+    progress.imported += imported.size();
+    batch.clear();
+  }
+
+  private List<ImportedUser> unregistered(List<ImportedUser> batch, Progress progress) {
+    Set<String> emails = new HashSet<>();
+    List<ImportedUser> candidates = new ArrayList<>(batch.size());
+
+    for (ImportedUser user : batch) {
+      if (emails.add(user.email)) {
+        candidates.add(user);
+      } else {
+        progress.skip(user.line, user.email, Reason.DUPLICATE);
+      }
+    }
+
+    String sql = String.format(SELECT_REGISTERED_SQL, String.join(", ", Collections.nCopies(emails.size(), "?")));
+    Set<String> registered = new HashSet<>(jdbcTemplate.queryForList(sql, String.class, emails.toArray()));
+
+    List<ImportedUser> users = new ArrayList<>(candidates.size());
+    for (ImportedUser user : candidates) {
+      if (registered.contains(user.email)) {
+        progress.skip(user.line, user.email, Reason.REGISTERED);
+      } else {
+        users.add(user);
+      }
+    }
+
+    return users;
+  }
+
+  private List<ImportedUser> insertOneByOne(List<ImportedUser> users, Progress progress) {
+    List<ImportedUser> inserted = new ArrayList<>(users.size());
+
+    for (ImportedUser user : users) {
+      try {
+        jdbcTemplate.update(INSERT_SQL, user.email, user.password, user.role.name(), user.enabled);
+        inserted.add(user);
+      } catch (DuplicateKeyException e) {
+        progress.skip(user.line, user.email, Reason.REGISTERED);
+      } catch (DataIntegrityViolationException e) {
+        progress.skip(user.line, user.email, Reason.INVALID);
+      }
+    }
+
+    return inserted;
+  }
+
+  private void writeProgress(JsonGenerator generator, Progress progress) throws IOException {
+    writer.writeValue(generator, progress);
+    generator.writeRaw('\n');
+    // sent right away, so that the caller sees how far the import got
+    generator.flush();
+
+    progress.skipped.clear();
+  }
+
+  private ImportedUser parseJson(String line, long lineNumber) {
+    JsonNode node;
+    try {
+      node = objectMapper.readTree(line);
+    } catch (IOException e) {
+      return null;
+    }
+
+    if (node == null || !node.isObject()) {
+      return null;
+    }
+
+    return user(lineNumber, text(node.get("email")), text(node.get("password")), text(node.get("role")),
+        text(node.get("enabled")));
+  }
+
+  private LineParser csvParser(String header) {
+    List<String> columns = header != null ? UserFormat.csvValues(header) : Collections.emptyList();
+
+    int email = columns.indexOf(UserFormat.CSV_COLUMNS[0]);
+    int password = columns.indexOf(UserFormat.CSV_COLUMNS[1]);
+    int role = columns.indexOf(UserFormat.CSV_COLUMNS[2]);
+    int enabled = columns.indexOf(UserFormat.CSV_COLUMNS[3]);
+
+    if (email < 0 || password < 0) {
+      throw new IllegalArgumentException("CSV header has to name email and password columns");
+    }
+
+    return (line, lineNumber) -> {
+      List<String> values = UserFormat.csvValues(line);
+      return user(lineNumber, value(values, email), value(values, password), value(values, role),
+          value(values, enabled));
+    };
+  }
+
+  private static ImportedUser user(long line, String email, String password, String role, String enabled) {
+    ImportedUser user = new ImportedUser();
+    user.line = line;
+    user.email = email != null ? email.trim() : null;
+    user.password = password;
+    user.enabled = enabled == null || enabled.isEmpty() || Boolean.parseBoolean(enabled);
+
+    user.invalid = user.email == null || user.email.length() > MAX_EMAIL_LENGTH || user.email.indexOf('@') < 1
+        || password == null || !BCRYPT_PATTERN.matcher(password).matches();
+
+    if (!user.invalid) {
+      user.password = "$2a$" + password.substring(password.indexOf('$', 1) + 1);
+    }
+
+    try {
+      user.role = role == null || role.isEmpty() ? Role.USER : Role.valueOf(role.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      user.invalid = true;
+    }
+
+    return user;
+  }
+
+  private static String text(JsonNode node) {
+    return node != null && !node.isNull() ? node.asText() : null;
+  }
+
+  private static String value(List<String> values, int index) {
+    return index >= 0 && index < values.size() ? values.get(index) : null;
+  }
+
+  private interface LineParser {
+
+    ImportedUser parse(String line, long lineNumber);
+
+  }
+
+  private static class ImportedUser {
+
+    private long line;
+    private String email;
+    private String password;
+    private Role role;
+    private boolean enabled;
+    private boolean invalid;
+
+  }
+
+  /**
+   * <p>
+   * Why a user was not imported.
+   * </p>
+   */
+  public enum Reason {
+    REGISTERED, DUPLICATE, INVALID
+  }
+
+  /**
+   * <p>
+   * A user which was not imported, by its line in the imported file.
+   * </p>
+   */
+  @Getter
+  public static class SkippedUser {
+
+    private final long line;
+    private final String email;
+    private final Reason reason;
+
+    SkippedUser(long line, String email, Reason reason) {
+      this.line = line;
+      this.email = email;
+      this.reason = reason;
+    }
+
+  }
+
+  /**
+   * <p>
+   * Users read and imported so far, and users skipped since the previous
+   * progress line.
+   * </p>
+   */
+  @Getter
+  public static class Progress {
+
+    private long read;
+    private long imported;
+    private long skippedTotal;
+    private final List<SkippedUser> skipped = new ArrayList<>();
+    private boolean done;
+
+    private void skip(long line, String email, Reason reason) {
+      skippedTotal++;
+      skipped.add(new SkippedUser(line, email, reason));
+    }
+
+  }
+
+}
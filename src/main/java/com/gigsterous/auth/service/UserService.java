@@ -1,5 +1,6 @@
 package com.gigsterous.auth.service;
 
+import com.gigsterous.auth.crypto.UpgradablePasswordEncoder;
 import com.gigsterous.auth.model.User;
 import com.gigsterous.auth.repository.UserRepository;
 
@@ -10,6 +11,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 /**
@@ -25,16 +27,35 @@ import org.springframework.stereotype.Service;
 public class UserService implements UserDetailsService {
 
   private final UserRepository userRepository;
+  private final PasswordEncoder passwordEncoder;
+  private final UserCache userCache;
+  private final RegisteredEmails registeredEmails;
 
-  public UserService(UserRepository userRepository) {
+  /**
+   * <p>
+   * UserService constructor.
+   * </p>
+   */
+  public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, UserCache userCache,
+      RegisteredEmails registeredEmails) {
     this.userRepository = userRepository;
+    this.passwordEncoder = passwordEncoder;
+    this.userCache = userCache;
+    this.registeredEmails = registeredEmails;
   }
 
   @Override
   public UserDetails loadUserByUsername(String username) {
     log.debug("Loading user details for username: {}", username);
 
-    Optional<User> optionalUser = userRepository.findOneByEmail(username);
+    // the authentication provider still matches the password against a dummy hash, so this takes as long as a miss
+    if (!registeredEmails.mightBeRegistered(username)) {
+      log.debug("E-mail is not registered");
+
+      throw new UsernameNotFoundException("E-mail address not found.");
+    }
+
+    Optional<User> optionalUser = userCache.findByEmail(username);
 
     if (!optionalUser.isPresent()) {
       log.error("User not found!");
@@ -44,4 +65,43 @@ public class UserService implements UserDetailsService {
 
     return optionalUser.get();
   }
+
+  /**
+   * <p>
+   * Replace the password hash of given user, who has just logged in with
+   * given password, if it was made with other settings than the current ones.
+   * Nothing is written when the stored hash is no longer the one matched, as
+   * the user details may be cached and the password may have been changed
+   * since.
+   * </p>
+   *
+   * @return true if the password was rehashed
+   */
+  public boolean upgradePassword(UserDetails user, String rawPassword) {
+    String matchedHash = user.getPassword();
+    if (!(passwordEncoder instanceof UpgradablePasswordEncoder)
+        || !((UpgradablePasswordEncoder) passwordEncoder).upgradeEncoding(matchedHash)) {
+      return false;
+    }
+
+    Optional<User> optionalUser = userRepository.findOneByEmail(user.getUsername());
+    if (!optionalUser.isPresent()) {
+      return false;
+    }
+
+    if (!matchedHash.equals(optionalUser.get().getPassword())) {
+      log.debug("Password of {} changed since it was matched, not rehashing it", user.getUsername());
+      return false;
+    }
+
+    log.debug("Rehashing password of {}", user.getUsername());
+
+    User loaded = optionalUser.get();
+    loaded.setPassword(passwordEncoder.encode(rawPassword));
+    userRepository.save(loaded);
+    userCache.evict(loaded.getEmail());
+
+    return true;
+  }
+
 }
@@ -0,0 +1,85 @@
+package com.gigsterous.auth.session;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * <p>
+ * JdbcSessionStore class. Keeps HTTP sessions in the http_session table, so
+ * that every node sees the sessions opened by the others. Expired sessions
+ * are deleted in batches by the token reaper.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class JdbcSessionStore implements SessionStore {
+
+  private static final String SELECT_SQL = "select created_at, last_accessed_at, max_inactive_interval, data "
+      + "from http_session where session_id = ?";
+  private static final String INSERT_SQL = "insert into http_session (session_id, created_at, last_accessed_at, "
+      + "max_inactive_interval, expires_at, data) values (?, ?, ?, ?, ?, ?)";
+  private static final String UPDATE_SQL = "update http_session set created_at = ?, last_accessed_at = ?, "
+      + "max_inactive_interval = ?, expires_at = ?, data = ? where session_id = ?";
+  private static final String TOUCH_SQL = "update http_session set last_accessed_at = ?, expires_at = ? "
+      + "where session_id = ?";
+  private static final String DELETE_SQL = "delete from http_session where session_id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * <p>
+   * JdbcSessionStore constructor.
+   * </p>
+   */
+  public JdbcSessionStore(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  @Override
+  public StoredSession load(String id) {
+    List<StoredSession> sessions = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new StoredSession(id,
+        rs.getTimestamp(1).getTime(), rs.getTimestamp(2).getTime(), rs.getInt(3), rs.getBytes(4)), id);
+
+    if (sessions.isEmpty() || sessions.get(0).isExpired(System.currentTimeMillis())) {
+      return null;
+    }
+
+    return sessions.get(0);
+  }
+
+  @Override
+  public void save(StoredSession session) {
+    Timestamp createdAt = new Timestamp(session.getCreationTime());
+    Timestamp lastAccessedAt = new Timestamp(session.getLastAccessedTime());
+    Timestamp expiresAt = session.getExpiresAt() != 0L ? new Timestamp(session.getExpiresAt()) : null;
+
+    if (jdbcTemplate.update(UPDATE_SQL, createdAt, lastAccessedAt, session.getMaxInactiveInterval(), expiresAt,
+        session.getData(), session.getId()) > 0) {
+      return;
+    }
+
+    try {
+      jdbcTemplate.update(INSERT_SQL, session.getId(), createdAt, lastAccessedAt, session.getMaxInactiveInterval(),
+          expiresAt, session.getData());
+    } catch (DuplicateKeyException e) {
+      // inserted by a parallel request of the same session meanwhile
+      jdbcTemplate.update(UPDATE_SQL, createdAt, lastAccessedAt, session.getMaxInactiveInterval(), expiresAt,
+          session.getData(), session.getId());
+    }
+  }
+
+  @Override
+  public void touch(String id, long lastAccessedTime, long expiresAt) {
+    jdbcTemplate.update(TOUCH_SQL, new Timestamp(lastAccessedTime), expiresAt != 0L ? new Timestamp(expiresAt) : null,
+        id);
+  }
+
+  @Override
+  public void delete(String id) {
+    jdbcTemplate.update(DELETE_SQL, id);
+  }
+
+}
@@ -0,0 +1,262 @@
+package com.gigsterous.auth.session;
+
+import com.gigsterous.auth.token.MappedLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * LogSessionStore class. Session store for single node deployments which
+ * keeps sessions in a local {@link MappedLog}, so that they survive a restart
+ * without a database table. Session blobs stay off-heap in the mapped file and
+ * only an index of where each session lives is kept on the heap, rebuilt by
+ * replaying the log on startup.
+ * </p>
+ * <p>
+ * A request to an unchanged session appends a short touch record only.
+ * Expired sessions are dropped from the index in batches; the log is
+ * compacted, writing live sessions into a new file, when most of it is taken
+ * by dropped sessions and outdated records, or grown when it is full.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class LogSessionStore implements SessionStore, Closeable {
+
+  private static final int MAGIC = 0x53534C47;
+
+  private static final byte SAVE = 1;
+  private static final byte TOUCH = 2;
+  private static final byte REMOVE = 3;
+
+  private final MappedLog sessionLog;
+
+  // the index, guarded by the lock of the log
+  private final Map<String, Entry> sessions = new HashMap<>();
+
+  /**
+   * <p>
+   * LogSessionStore constructor. Opens the latest log in given directory and
+   * replays it, or starts a new one.
+   * </p>
+   */
+  public LogSessionStore(Path directory, int initialSize, boolean sync) {
+    this.sessionLog = new MappedLog(directory, "sessions", MAGIC, initialSize, sync);
+
+    sessionLog.open(this::replay, this::copyLive);
+    dropExpired(System.currentTimeMillis());
+    log.info("Opened session log in {} with {} sessions", directory, sessions.size());
+  }
+
+  @Override
+  public StoredSession load(String id) {
+    return sessionLog.read(() -> {
+      Entry entry = sessions.get(id);
+      if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+        return null;
+      }
+
+      return new StoredSession(id, entry.creationTime, entry.lastAccessedTime, entry.maxInactiveInterval,
+          data(entry));
+    });
+  }
+
+  @Override
+  public void save(StoredSession session) {
+    byte[] record = MappedLog.record(SAVE, session.getId(), session.getCreationTime(),
+        session.getLastAccessedTime(), (long) session.getMaxInactiveInterval(), session.getData());
+
+    Entry entry = new Entry();
+    entry.creationTime = session.getCreationTime();
+    entry.lastAccessedTime = session.getLastAccessedTime();
+    entry.maxInactiveInterval = session.getMaxInactiveInterval();
+    entry.expiresAt = session.getExpiresAt();
+
+    sessionLog.write(() -> {
+      unindex(session.getId());
+      index(session.getId(), entry, sessionLog.append(record), record.length);
+    });
+  }
+
+  @Override
+  public void touch(String id, long lastAccessedTime, long expiresAt) {
+    byte[] record = MappedLog.record(TOUCH, id, lastAccessedTime, expiresAt);
+
+    sessionLog.write(() -> {
+      Entry entry = sessions.get(id);
+      if (entry != null) {
+        sessionLog.append(record);
+        entry.lastAccessedTime = lastAccessedTime;
+        entry.expiresAt = expiresAt;
+      }
+    });
+  }
+
+  @Override
+  public void delete(String id) {
+    sessionLog.write(() -> {
+      if (sessions.containsKey(id)) {
+        sessionLog.append(MappedLog.record(REMOVE, id));
+        unindex(id);
+      }
+    });
+  }
+
+  /**
+   * <p>
+   * Drop sessions expired at given time from the index, batchSize at a time
+   * so that requests are not held up for long, and compact the log when most
+   * of it is garbage.
+   * </p>
+   *
+   * @return number of dropped sessions
+   */
+  public int expire(long now, int batchSize) {
+    int expired = 0;
+
+    while (true) {
+      int dropped = sessionLog.write(() -> {
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, Entry> session : sessions.entrySet()) {
+          if (ids.size() >= batchSize) {
+            break;
+          }
+          if (isExpired(session.getValue(), now)) {
+            ids.add(session.getKey());
+          }
+        }
+
+        // replay drops expired sessions too, the log needs no record of it
+        ids.forEach(this::unindex);
+        return ids.size();
+      });
+
+      expired += dropped;
+      if (dropped < batchSize) {
+        break;
+      }
+    }
+
+    sessionLog.compactIfMostlyGarbage();
+
+    return expired;
+  }
+
+  /**
+   * <p>
+   * Return the size of the log and how much of it is taken by live sessions.
+   * </p>
+   */
+  public Map<String, Object> getStatus() {
+    return sessionLog.read(() -> {
+      Map<String, Object> status = sessionLog.getStatus();
+      status.put("sessions", sessions.size());
+      return status;
+    });
+  }
+
+  @Override
+  public void close() throws IOException {
+    sessionLog.close();
+  }
+
+  private boolean replay(byte op, MappedLog.Fields fields, int position, int length) {
+    String id = fields.string();
+
+    if (op == SAVE) {
+      Entry entry = new Entry();
+      entry.creationTime = fields.readLong();
+      entry.lastAccessedTime = fields.readLong();
+      entry.maxInactiveInterval = (int) fields.readLong();
+      entry.expiresAt = StoredSession.expiresAt(entry.lastAccessedTime, entry.maxInactiveInterval);
+      unindex(id);
+      index(id, entry, position, length);
+    } else if (op == TOUCH) {
+      Entry entry = sessions.get(id);
+      if (entry != null) {
+        entry.lastAccessedTime = fields.readLong();
+        entry.expiresAt = fields.readLong();
+      }
+    } else if (op == REMOVE) {
+      unindex(id);
+    } else {
+      return false;
+    }
+
+    return true;
+  }
+
+  private Runnable copyLive(MappedLog.Target target) {
+    List<Runnable> moves = new ArrayList<>();
+
+    sessions.forEach((id, entry) -> {
+      // written anew rather than copied, so that the last touch becomes part of the record
+      byte[] record = MappedLog.record(SAVE, id, entry.creationTime, entry.lastAccessedTime,
+          (long) entry.maxInactiveInterval, data(entry));
+      int position = target.write(record);
+      moves.add(() -> {
+        unindex(id);
+        index(id, entry, position, record.length);
+      });
+    });
+
+    return () -> moves.forEach(Runnable::run);
+  }
+
+  private void dropExpired(long now) {
+    sessionLog.write(() -> new ArrayList<>(sessions.keySet()).forEach(id -> {
+      if (isExpired(sessions.get(id), now)) {
+        unindex(id);
+      }
+    }));
+  }
+
+  private void index(String id, Entry entry, int position, int length) {
+    entry.position = position;
+    entry.length = length;
+    sessions.put(id, entry);
+    sessionLog.addLiveBytes(length);
+  }
+
+  private void unindex(String id) {
+    Entry entry = sessions.remove(id);
+    if (entry != null) {
+      sessionLog.removeLiveBytes(entry.length);
+    }
+  }
+
+  private byte[] data(Entry entry) {
+    // skip the id, creation and last access time and the interval every save starts with
+    return sessionLog.fields(entry.position).skip(4).bytes();
+  }
+
+  private static boolean isExpired(Entry entry, long now) {
+    return entry.expiresAt != 0L && entry.expiresAt <= now;
+  }
+
+  /**
+   * <p>
+   * Position of the last save of a session in the log and its expiry.
+   * </p>
+   */
+  private static class Entry {
+
+    private int position;
+    private int length;
+    private long creationTime;
+    private long lastAccessedTime;
+    private int maxInactiveInterval;
+    private long expiresAt;
+
+  }
+
+}
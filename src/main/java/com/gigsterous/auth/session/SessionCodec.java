@@ -0,0 +1,179 @@
+package com.gigsterous.auth.session;
+
+import com.gigsterous.auth.token.TokenCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
+import org.springframework.util.SerializationUtils;
+import org.springframework.web.servlet.i18n.SessionLocaleResolver;
+
+/**
+ * <p>
+ * SessionCodec class. Compact, versioned binary format for the attributes of
+ * an HTTP session.
+ * </p>
+ * <p>
+ * The attributes every logged in user has are written without their name:
+ * the security context with its authentication in the format of
+ * {@link TokenCodec}, the chosen locale as a language tag and the CSRF token
+ * as its three strings. Any other attribute, such as the request saved before
+ * login, is written with Java serialization, and attributes which are not
+ * serializable are left out. An attribute which cannot be read any more, for
+ * example after its class changed, is dropped instead of failing the request.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class SessionCodec {
+
+  static final byte MAGIC = (byte) 0xC5;
+  static final byte VERSION = 1;
+
+  static final String CSRF_TOKEN = HttpSessionCsrfTokenRepository.class.getName() + ".CSRF_TOKEN";
+
+  private static final byte SECURITY_CONTEXT = 1;
+  private static final byte LOCALE = 2;
+  private static final byte CSRF = 3;
+  private static final byte SERIALIZED = 4;
+
+  private static final String SECURITY_CONTEXT_NAME = HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY;
+  private static final String LOCALE_NAME = SessionLocaleResolver.LOCALE_SESSION_ATTRIBUTE_NAME;
+
+  private final TokenCodec tokenCodec;
+
+  /**
+   * <p>
+   * SessionCodec constructor.
+   * </p>
+   */
+  public SessionCodec(TokenCodec tokenCodec) {
+    this.tokenCodec = tokenCodec;
+  }
+
+  /**
+   * <p>
+   * Encode session attributes.
+   * </p>
+   */
+  public byte[] encode(Map<String, Object> attributes) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(MAGIC);
+      out.writeByte(VERSION);
+
+      for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+        writeAttribute(out, attribute.getKey(), attribute.getValue());
+      }
+
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * <p>
+   * Decode session attributes.
+   * </p>
+   */
+  public Map<String, Object> decode(byte[] bytes) {
+    Map<String, Object> attributes = new LinkedHashMap<>();
+
+    if (bytes == null || bytes.length < 2 || bytes[0] != MAGIC || bytes[1] != VERSION) {
+      log.warn("Dropping session attributes of unknown format");
+      return attributes;
+    }
+
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 2, bytes.length - 2));
+      while (in.available() > 0) {
+        readAttribute(in, attributes);
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Dropping the rest of session attributes which cannot be read", e);
+    }
+
+    return attributes;
+  }
+
+  private void writeAttribute(DataOutputStream out, String name, Object value) throws IOException {
+    if (SECURITY_CONTEXT_NAME.equals(name) && value != null && value.getClass() == SecurityContextImpl.class
+        && ((SecurityContext) value).getAuthentication() != null) {
+      out.writeByte(SECURITY_CONTEXT);
+      writeBytes(out, tokenCodec.encodeUserAuthentication(((SecurityContext) value).getAuthentication()));
+    } else if (LOCALE_NAME.equals(name) && value instanceof Locale) {
+      out.writeByte(LOCALE);
+      out.writeUTF(((Locale) value).toLanguageTag());
+    } else if (CSRF_TOKEN.equals(name) && value != null && value.getClass() == DefaultCsrfToken.class) {
+      CsrfToken token = (CsrfToken) value;
+      out.writeByte(CSRF);
+      out.writeUTF(token.getHeaderName());
+      out.writeUTF(token.getParameterName());
+      out.writeUTF(token.getToken());
+    } else if (value instanceof Serializable) {
+      out.writeByte(SERIALIZED);
+      out.writeUTF(name);
+      writeBytes(out, SerializationUtils.serialize(value));
+    } else {
+      log.debug("Session attribute {} is not serializable, leaving it out", name);
+    }
+  }
+
+  private void readAttribute(DataInputStream in, Map<String, Object> attributes) throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case SECURITY_CONTEXT:
+        attributes.put(SECURITY_CONTEXT_NAME, new SecurityContextImpl(tokenCodec.decodeUserAuthentication(
+            readBytes(in))));
+        break;
+      case LOCALE:
+        attributes.put(LOCALE_NAME, Locale.forLanguageTag(in.readUTF()));
+        break;
+      case CSRF:
+        attributes.put(CSRF_TOKEN, new DefaultCsrfToken(in.readUTF(), in.readUTF(), in.readUTF()));
+        break;
+      case SERIALIZED:
+        String name = in.readUTF();
+        byte[] value = readBytes(in);
+        try {
+          attributes.put(name, SerializationUtils.deserialize(value));
+        } catch (RuntimeException e) {
+          log.warn("Dropping session attribute {} which cannot be deserialized: {}", name, e.getMessage());
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown session attribute type " + type);
+    }
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+}
@@ -0,0 +1,64 @@
+package com.gigsterous.auth.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * SessionCounter class. Publishes the number of open HTTP sessions of this
+ * node as the httpSessions.active gauge, and the number of sessions ever
+ * opened as the httpSessions.created counter.
+ * </p>
+ * <p>
+ * Sessions kept by a {@link SessionStore} are shared by all nodes and expire
+ * in the store without any event, so they are only counted as created, by
+ * {@link SessionStoreFilter}, and the gauge stays at zero. The size of the
+ * store is the number of open sessions then.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Component
+public class SessionCounter implements HttpSessionListener {
+
+  private final AtomicInteger active = new AtomicInteger();
+  private final Counter created;
+
+  /**
+   * <p>
+   * SessionCounter constructor.
+   * </p>
+   */
+  public SessionCounter(MeterRegistry meterRegistry) {
+    meterRegistry.gauge("httpSessions.active", active);
+    this.created = meterRegistry.counter("httpSessions.created");
+  }
+
+  @Override
+  public void sessionCreated(HttpSessionEvent event) {
+    active.incrementAndGet();
+    created.increment();
+  }
+
+  @Override
+  public void sessionDestroyed(HttpSessionEvent event) {
+    active.decrementAndGet();
+  }
+
+  /**
+   * <p>
+   * Count a session written to a {@link SessionStore} for the first time.
+   * </p>
+   */
+  public void storedSessionCreated() {
+    created.increment();
+  }
+
+}
@@ -0,0 +1,47 @@
+package com.gigsterous.auth.session;
+
+/**
+ * <p>
+ * SessionStore interface. Keeps HTTP sessions outside of the servlet
+ * container, as encoded blobs, so that they survive a restart and can be
+ * shared by several nodes.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public interface SessionStore {
+
+  /**
+   * <p>
+   * Read session of given id.
+   * </p>
+   *
+   * @return the session, or null when it does not exist or has expired
+   */
+  StoredSession load(String id);
+
+  /**
+   * <p>
+   * Write session, replacing the one with the same id.
+   * </p>
+   */
+  void save(StoredSession session);
+
+  /**
+   * <p>
+   * Record a request to an unchanged session, extending its expiry.
+   * </p>
+   *
+   * @param expiresAt
+   *          when the session expires now, 0 when it never does
+   */
+  void touch(String id, long lastAccessedTime, long expiresAt);
+
+  /**
+   * <p>
+   * Delete session of given id.
+   * </p>
+   */
+  void delete(String id);
+
+}
@@ -0,0 +1,493 @@
+package com.gigsterous.auth.session;
+
+import com.gigsterous.auth.AuthProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import javax.servlet.http.HttpSession;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>
+ * SessionStoreFilter class. Replaces the HTTP sessions of the servlet
+ * container with sessions kept by a {@link SessionStore}, identified by a
+ * cookie, so that a user stays logged in when the next request goes to
+ * another node or the node restarts.
+ * </p>
+ * <p>
+ * A session is read only when the request asks for it, and written only when
+ * its attributes changed: before a redirect or an error is sent, so that the
+ * next request of the browser finds it, and when the request ends. Requests
+ * to an unchanged session record their time at most once per touch interval.
+ * A new session which never gets an attribute is not written at all.
+ * </p>
+ * <p>
+ * The container does not know of these sessions, so they are counted by
+ * {@link SessionCounter} when first written.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class SessionStoreFilter extends OncePerRequestFilter {
+
+  private static final int MAX_ID_LENGTH = 64;
+
+  private final SessionStore store;
+  private final SessionCodec codec;
+  private final SessionCounter sessionCounter;
+  private final String cookieName;
+  private final int maxInactiveInterval;
+  private final long touchInterval;
+
+  private final Timer loadTimer;
+  private final Timer saveTimer;
+  private final Counter touched;
+
+  /**
+   * <p>
+   * SessionStoreFilter constructor.
+   * </p>
+   */
+  public SessionStoreFilter(SessionStore store, SessionCodec codec, SessionCounter sessionCounter,
+      AuthProperties.SessionStore properties, MeterRegistry meterRegistry) {
+    this.store = store;
+    this.codec = codec;
+    this.sessionCounter = sessionCounter;
+    this.cookieName = properties.getCookieName();
+    this.maxInactiveInterval = (int) properties.getTimeout().getSeconds();
+    this.touchInterval = properties.getTouchInterval().toMillis();
+
+    this.loadTimer = meterRegistry.timer("sessionStore.load");
+    this.saveTimer = meterRegistry.timer("sessionStore.save");
+    this.touched = meterRegistry.counter("sessionStore.touched");
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    SessionRequest sessionRequest = new SessionRequest(request, response);
+
+    try {
+      chain.doFilter(sessionRequest, new SessionResponse(response, sessionRequest));
+    } finally {
+      sessionRequest.commit();
+    }
+  }
+
+  @Override
+  protected boolean shouldNotFilterErrorDispatch() {
+    // error pages must not fall back to sessions of the container
+    return false;
+  }
+
+  /**
+   * <p>
+   * Request handing out the stored session instead of one of the container.
+   * </p>
+   */
+  private class SessionRequest extends HttpServletRequestWrapper {
+
+    private final HttpServletResponse response;
+
+    private StoredHttpSession session;
+    private boolean requestedSessionRead;
+    private boolean requestedSessionValid;
+
+    SessionRequest(HttpServletRequest request, HttpServletResponse response) {
+      super(request);
+      this.response = response;
+    }
+
+    @Override
+    public HttpSession getSession() {
+      return getSession(true);
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+      if (session != null && !session.invalidated) {
+        return session;
+      }
+
+      if (!requestedSessionRead) {
+        requestedSessionRead = true;
+        session = readRequestedSession();
+        requestedSessionValid = session != null;
+        if (session != null) {
+          return session;
+        }
+      }
+
+      if (!create) {
+        return null;
+      }
+
+      long now = System.currentTimeMillis();
+      session = new StoredHttpSession(UUID.randomUUID().toString(), now, now, maxInactiveInterval,
+          new LinkedHashMap<>(), getServletContext());
+      writeCookie(session.id, -1);
+      return session;
+    }
+
+    @Override
+    public String changeSessionId() {
+      if (getSession(false) == null) {
+        throw new IllegalStateException("There is no session to change the id of");
+      }
+
+      if (session.replacedId == null && session.storedData != null) {
+        session.replacedId = session.id;
+      }
+      session.id = UUID.randomUUID().toString();
+      session.changed = true;
+      session.metadataChanged = true;
+      writeCookie(session.id, -1);
+      return session.id;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+      Cookie[] cookies = getCookies();
+      if (cookies == null) {
+        return null;
+      }
+
+      for (Cookie cookie : cookies) {
+        if (cookieName.equals(cookie.getName()) && cookie.getValue() != null && !cookie.getValue().isEmpty()
+            && cookie.getValue().length() <= MAX_ID_LENGTH) {
+          return cookie.getValue();
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+      getSession(false);
+      return requestedSessionValid && session != null && !session.invalidated;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+      return getRequestedSessionId() != null;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+      return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+      return false;
+    }
+
+    /**
+     * <p>
+     * Write the session if it changed, or record the request when the last
+     * recorded one is older than the touch interval.
+     * </p>
+     */
+    void commit() {
+      StoredHttpSession current = session;
+      if (current == null || current.invalidated) {
+        return;
+      }
+
+      if (current.changed) {
+        current.changed = false;
+        byte[] data = codec.encode(current.copyAttributes());
+
+        boolean modified = current.metadataChanged || !Arrays.equals(data, current.storedData);
+        boolean empty = current.attributes.isEmpty() && current.storedData == null;
+        if (modified && !empty) {
+          StoredSession stored = new StoredSession(current.id, current.creationTime, current.lastAccessedTime,
+              current.maxInactiveInterval, data);
+          saveTimer.record(() -> store.save(stored));
+          if (current.storedData == null) {
+            sessionCounter.storedSessionCreated();
+          }
+
+          if (current.replacedId != null) {
+            store.delete(current.replacedId);
+            current.replacedId = null;
+          }
+
+          current.metadataChanged = false;
+          current.storedData = data;
+          current.storedAccessTime = current.lastAccessedTime;
+          return;
+        }
+      }
+
+      if (current.storedData != null && current.lastAccessedTime - current.storedAccessTime >= touchInterval) {
+        store.touch(current.id, current.lastAccessedTime,
+            StoredSession.expiresAt(current.lastAccessedTime, current.maxInactiveInterval));
+        current.storedAccessTime = current.lastAccessedTime;
+        touched.increment();
+      }
+    }
+
+    void invalidate(StoredHttpSession invalidated) {
+      store.delete(invalidated.id);
+      if (invalidated.replacedId != null) {
+        store.delete(invalidated.replacedId);
+      }
+      writeCookie("", 0);
+    }
+
+    private StoredHttpSession readRequestedSession() {
+      String id = getRequestedSessionId();
+      if (id == null) {
+        return null;
+      }
+
+      StoredSession stored = loadTimer.record(() -> store.load(id));
+      if (stored == null) {
+        log.debug("Requested session is not stored or has expired");
+        return null;
+      }
+
+      StoredHttpSession loaded = new StoredHttpSession(id, stored.getCreationTime(), System.currentTimeMillis(),
+          stored.getMaxInactiveInterval(), codec.decode(stored.getData()), getServletContext());
+      loaded.isNew = false;
+      loaded.changed = false;
+      loaded.storedData = stored.getData();
+      loaded.storedAccessTime = stored.getLastAccessedTime();
+      return loaded;
+    }
+
+    private void writeCookie(String value, int maxAge) {
+      Cookie cookie = new Cookie(cookieName, value);
+      cookie.setPath(getContextPath().isEmpty() ? "/" : getContextPath());
+      cookie.setHttpOnly(true);
+      cookie.setSecure(isSecure());
+      cookie.setMaxAge(maxAge);
+      response.addCookie(cookie);
+    }
+
+    /**
+     * <p>
+     * Session of one request, with its attributes decoded.
+     * </p>
+     */
+    private class StoredHttpSession implements HttpSession {
+
+      private final long creationTime;
+      private final long lastAccessedTime;
+      private final Map<String, Object> attributes;
+      private final ServletContext servletContext;
+
+      private String id;
+      private int maxInactiveInterval;
+      private boolean isNew = true;
+      private boolean changed = true;
+      private boolean metadataChanged;
+      private boolean invalidated;
+
+      // what the store holds, null when the session has not been written yet
+      private byte[] storedData;
+      private long storedAccessTime;
+      private String replacedId;
+
+      StoredHttpSession(String id, long creationTime, long lastAccessedTime, int maxInactiveInterval,
+          Map<String, Object> attributes, ServletContext servletContext) {
+        this.id = id;
+        this.creationTime = creationTime;
+        this.lastAccessedTime = lastAccessedTime;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.attributes = Collections.synchronizedMap(attributes);
+        this.servletContext = servletContext;
+      }
+
+      @Override
+      public long getCreationTime() {
+        checkValid();
+        return creationTime;
+      }
+
+      @Override
+      public String getId() {
+        return id;
+      }
+
+      @Override
+      public long getLastAccessedTime() {
+        checkValid();
+        return lastAccessedTime;
+      }
+
+      @Override
+      public ServletContext getServletContext() {
+        return servletContext;
+      }
+
+      @Override
+      public void setMaxInactiveInterval(int interval) {
+        if (interval != maxInactiveInterval) {
+          changed = true;
+          metadataChanged = true;
+        }
+        maxInactiveInterval = interval;
+      }
+
+      @Override
+      public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+      }
+
+      @Override
+      @Deprecated
+      public javax.servlet.http.HttpSessionContext getSessionContext() {
+        return null;
+      }
+
+      @Override
+      public Object getAttribute(String name) {
+        checkValid();
+        return attributes.get(name);
+      }
+
+      @Override
+      @Deprecated
+      public Object getValue(String name) {
+        return getAttribute(name);
+      }
+
+      @Override
+      public Enumeration<String> getAttributeNames() {
+        checkValid();
+        return Collections.enumeration(copyAttributes().keySet());
+      }
+
+      @Override
+      @Deprecated
+      public String[] getValueNames() {
+        return Collections.list(getAttributeNames()).toArray(new String[0]);
+      }
+
+      @Override
+      public void setAttribute(String name, Object value) {
+        if (value == null) {
+          removeAttribute(name);
+          return;
+        }
+
+        checkValid();
+        attributes.put(name, value);
+        changed = true;
+      }
+
+      @Override
+      @Deprecated
+      public void putValue(String name, Object value) {
+        setAttribute(name, value);
+      }
+
+      @Override
+      public void removeAttribute(String name) {
+        checkValid();
+        if (attributes.remove(name) != null) {
+          changed = true;
+        }
+      }
+
+      @Override
+      @Deprecated
+      public void removeValue(String name) {
+        removeAttribute(name);
+      }
+
+      @Override
+      public void invalidate() {
+        checkValid();
+        invalidated = true;
+        SessionRequest.this.invalidate(this);
+      }
+
+      @Override
+      public boolean isNew() {
+        checkValid();
+        return isNew;
+      }
+
+      Map<String, Object> copyAttributes() {
+        synchronized (attributes) {
+          return new LinkedHashMap<>(attributes);
+        }
+      }
+
+      private void checkValid() {
+        if (invalidated) {
+          throw new IllegalStateException("Session " + id + " has been invalidated");
+        }
+      }
+
+    }
+
+  }
+
+  /**
+   * <p>
+   * Response writing the session before the browser is sent elsewhere.
+   * </p>
+   */
+  private static class SessionResponse extends HttpServletResponseWrapper {
+
+    private final SessionRequest request;
+
+    SessionResponse(HttpServletResponse response, SessionRequest request) {
+      super(response);
+      this.request = request;
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+      request.commit();
+      super.sendRedirect(location);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+      request.commit();
+      super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+      request.commit();
+      super.sendError(sc, msg);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      request.commit();
+      super.flushBuffer();
+    }
+
+  }
+
+}
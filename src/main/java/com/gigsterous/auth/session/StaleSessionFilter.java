@@ -0,0 +1,60 @@
+package com.gigsterous.auth.session;
+
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.service.TokenEpochService;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>
+ * StaleSessionFilter class. Logs out sessions whose user was logged in before
+ * the token epoch of the user moved, after a password change or a global
+ * logout elsewhere. Tokens obtained through such a session would carry the old
+ * epoch and be rejected right away, so the user is sent to log in again
+ * instead.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class StaleSessionFilter extends OncePerRequestFilter {
+
+  private final TokenEpochService tokenEpochService;
+
+  public StaleSessionFilter(TokenEpochService tokenEpochService) {
+    this.tokenEpochService = tokenEpochService;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+    if (authentication != null && authentication.getPrincipal() instanceof User
+        && ((User) authentication.getPrincipal()).getTokenEpoch() < tokenEpochService
+            .currentEpoch(authentication.getName())) {
+      log.debug("Logging out session of {} opened in an older token epoch", authentication.getName());
+
+      SecurityContextHolder.clearContext();
+      HttpSession session = request.getSession(false);
+      if (session != null) {
+        session.invalidate();
+      }
+    }
+
+    filterChain.doFilter(request, response);
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.gigsterous.auth.session;
+
+import lombok.Getter;
+
+/**
+ * <p>
+ * StoredSession class. HTTP session as kept by a {@link SessionStore}, with
+ * its attributes encoded by {@link SessionCodec}.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Getter
+public class StoredSession {
+
+  private final String id;
+  private final long creationTime;
+  private final long lastAccessedTime;
+  private final int maxInactiveInterval;
+  private final byte[] data;
+
+  /**
+   * <p>
+   * StoredSession constructor.
+   * </p>
+   *
+   * @param maxInactiveInterval
+   *          seconds the session is kept without a request, it never expires
+   *          when not positive
+   */
+  public StoredSession(String id, long creationTime, long lastAccessedTime, int maxInactiveInterval, byte[] data) {
+    this.id = id;
+    this.creationTime = creationTime;
+    this.lastAccessedTime = lastAccessedTime;
+    this.maxInactiveInterval = maxInactiveInterval;
+    this.data = data;
+  }
+
+  /**
+   * <p>
+   * Return when the session expires, or 0 when it never does.
+   * </p>
+   */
+  public long getExpiresAt() {
+    return expiresAt(lastAccessedTime, maxInactiveInterval);
+  }
+
+  /**
+   * <p>
+   * Tell whether the session has expired at given time.
+   * </p>
+   */
+  public boolean isExpired(long now) {
+    long expiresAt = getExpiresAt();
+    return expiresAt != 0L && expiresAt <= now;
+  }
+
+  static long expiresAt(long lastAccessedTime, int maxInactiveInterval) {
+    return maxInactiveInterval > 0 ? lastAccessedTime + maxInactiveInterval * 1000L : 0L;
+  }
+
+}
@@ -0,0 +1,38 @@
+package com.gigsterous.auth.throttle;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * <p>
+ * LoginFailureListener class. Counts logins rejected for wrong credentials with
+ * {@link LoginThrottle}, for the account tried and the address of the request
+ * being authenticated.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class LoginFailureListener implements ApplicationListener<AuthenticationFailureBadCredentialsEvent> {
+
+  private final LoginThrottle loginThrottle;
+
+  public LoginFailureListener(LoginThrottle loginThrottle) {
+    this.loginThrottle = loginThrottle;
+  }
+
+  @Override
+  public void onApplicationEvent(AuthenticationFailureBadCredentialsEvent event) {
+    loginThrottle.recordFailure(event.getAuthentication().getName(), currentAddress());
+  }
+
+  private static String currentAddress() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+    return attributes instanceof ServletRequestAttributes
+        ? ((ServletRequestAttributes) attributes).getRequest().getRemoteAddr()
+        : null;
+  }
+
+}
@@ -0,0 +1,137 @@
+package com.gigsterous.auth.throttle;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * LoginThrottle class. Limits failed login attempts per account and per
+ * client address within a sliding window. Successful logins are not counted,
+ * so that nobody can lock an account out by logging in with its e-mail address
+ * and nobody is locked out by logging in often.
+ * </p>
+ * <p>
+ * Attempts are checked before the password is, and counted once it turned out
+ * wrong, so concurrent attempts can exceed the limit by as many as there are
+ * in flight.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class LoginThrottle {
+
+  private final SlidingWindowSketch accounts;
+  private final SlidingWindowSketch addresses;
+  private final int maxAttemptsPerAccount;
+  private final int maxAttemptsPerAddress;
+
+  private final Counter attempts;
+  private final Counter failures;
+  private final Counter rejectedByAccount;
+  private final Counter rejectedByAddress;
+
+  /**
+   * <p>
+   * LoginThrottle constructor.
+   * </p>
+   */
+  public LoginThrottle(SlidingWindowSketch accounts, SlidingWindowSketch addresses, int maxAttemptsPerAccount,
+      int maxAttemptsPerAddress, MeterRegistry meterRegistry) {
+    this.accounts = accounts;
+    this.addresses = addresses;
+    this.maxAttemptsPerAccount = maxAttemptsPerAccount;
+    this.maxAttemptsPerAddress = maxAttemptsPerAddress;
+    this.attempts = meterRegistry.counter("loginThrottle.attempts");
+    this.failures = meterRegistry.counter("loginThrottle.failures");
+    this.rejectedByAccount = meterRegistry.counter("loginThrottle.rejected", "key", "account");
+    this.rejectedByAddress = meterRegistry.counter("loginThrottle.rejected", "key", "address");
+  }
+
+  /**
+   * <p>
+   * Check a login attempt for given username and address, which may be null
+   * when unknown.
+   * </p>
+   *
+   * @return false if too many attempts failed already and this one must be
+   *         rejected
+   */
+  public boolean isAllowed(String username, String address) {
+    long now = System.currentTimeMillis();
+    attempts.increment();
+
+    if (address != null && addresses.estimate(address, now) >= maxAttemptsPerAddress) {
+      log.debug("Too many failed login attempts from {}", address);
+      rejectedByAddress.increment();
+      return false;
+    }
+
+    String account = account(username);
+    if (account != null && accounts.estimate(account, now) >= maxAttemptsPerAccount) {
+      log.debug("Too many failed login attempts for {}", username);
+      rejectedByAccount.increment();
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * <p>
+   * Count a failed login attempt for given username and address, which may be
+   * null when unknown.
+   * </p>
+   */
+  public void recordFailure(String username, String address) {
+    long now = System.currentTimeMillis();
+    failures.increment();
+
+    if (address != null) {
+      addresses.increment(address, now);
+    }
+
+    String account = account(username);
+    if (account != null) {
+      accounts.increment(account, now);
+    }
+  }
+
+  /**
+   * <p>
+   * Return how long a rejected client should wait before trying again.
+   * </p>
+   */
+  public Duration getRetryAfter() {
+    return accounts.getSliceDuration();
+  }
+
+  /**
+   * <p>
+   * Return limits, counters and memory taken by the throttle.
+   * </p>
+   */
+  public Map<String, Object> getStatus() {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("maxAttemptsPerAccount", maxAttemptsPerAccount);
+    status.put("maxAttemptsPerAddress", maxAttemptsPerAddress);
+    status.put("attempts", (long) attempts.count());
+    status.put("failures", (long) failures.count());
+    status.put("rejectedByAccount", (long) rejectedByAccount.count());
+    status.put("rejectedByAddress", (long) rejectedByAddress.count());
+    status.put("sizeInBytes", accounts.getSizeInBytes() + addresses.getSizeInBytes());
+    return status;
+  }
+
+  private static String account(String username) {
+    return username != null ? username.trim().toLowerCase(Locale.ROOT) : null;
+  }
+
+}
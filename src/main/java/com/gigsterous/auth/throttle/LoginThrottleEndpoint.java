@@ -0,0 +1,35 @@
+package com.gigsterous.auth.throttle;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+/**
+ * <p>
+ * LoginThrottleEndpoint class. Actuator endpoint showing limits and counters
+ * of the login throttle.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Endpoint(id = "loginthrottle")
+public class LoginThrottleEndpoint {
+
+  private final LoginThrottle loginThrottle;
+
+  /**
+   * <p>
+   * LoginThrottleEndpoint constructor.
+   * </p>
+   */
+  public LoginThrottleEndpoint(LoginThrottle loginThrottle) {
+    this.loginThrottle = loginThrottle;
+  }
+
+  @ReadOperation
+  public Map<String, Object> status() {
+    return loginThrottle.getStatus();
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.gigsterous.auth.throttle;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>
+ * LoginThrottleFilter class. Checks form logins and password grants with
+ * {@link LoginThrottle} and answers those over the limit with 429, before the
+ * user is loaded or any password is hashed. Failed attempts are counted by
+ * {@link LoginFailureListener}.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class LoginThrottleFilter extends OncePerRequestFilter {
+
+  private static final RequestMatcher FORM_LOGIN = new AntPathRequestMatcher("/login", "POST");
+  private static final RequestMatcher TOKEN = new AntPathRequestMatcher("/oauth/token", "POST");
+
+  private final LoginThrottle loginThrottle;
+
+  public LoginThrottleFilter(LoginThrottle loginThrottle) {
+    this.loginThrottle = loginThrottle;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !FORM_LOGIN.matches(request)
+        && !(TOKEN.matches(request) && "password".equals(request.getParameter("grant_type")));
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    if (!loginThrottle.isAllowed(request.getParameter("username"), request.getRemoteAddr())) {
+      response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(loginThrottle.getRetryAfter().getSeconds()));
+      response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many login attempts");
+      return;
+    }
+
+    filterChain.doFilter(request, response);
+  }
+
+}
@@ -0,0 +1,152 @@
+package com.gigsterous.auth.throttle;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * SlidingWindowSketch class. Approximate count of events per key over a
+ * sliding time window, in a fixed amount of memory regardless of how many keys
+ * are seen. The window is split into slices, each holding a count-min sketch
+ * of depth rows of width counters. A slice is cleared when the window moves
+ * past it.
+ * </p>
+ * <p>
+ * Counts never fall below the true count, but colliding keys can make them
+ * higher. Counters are updated without locks, so a few increments can be lost
+ * while a slice is being cleared.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class SlidingWindowSketch {
+
+  private final int slices;
+  private final int depth;
+  private final int width;
+  private final long sliceMillis;
+
+  private final AtomicIntegerArray counters;
+  private final AtomicLongArray sliceNumbers;
+
+  // keys are hashed with a secret seed, so that nobody can pick keys colliding with somebody else's account
+  private final int seed = new SecureRandom().nextInt();
+
+  /**
+   * <p>
+   * SlidingWindowSketch constructor. Width is rounded up to a power of two.
+   * </p>
+   */
+  public SlidingWindowSketch(Duration window, int slices, int depth, int width) {
+    this.slices = slices;
+    this.depth = depth;
+    this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+    this.sliceMillis = Math.max(1, window.toMillis() / slices);
+    this.counters = new AtomicIntegerArray(slices * depth * this.width);
+    this.sliceNumbers = new AtomicLongArray(slices);
+  }
+
+  /**
+   * <p>
+   * Count one event of given key and return the count within the window,
+   * including this one.
+   * </p>
+   */
+  public int increment(String key, long now) {
+    long sliceNumber = now / sliceMillis;
+    int slice = claim(sliceNumber);
+    int[] hashes = hashes(key);
+
+    for (int row = 0; row < depth; row++) {
+      counters.incrementAndGet(index(slice, row, hashes[row]));
+    }
+
+    return estimate(hashes, sliceNumber);
+  }
+
+  /**
+   * <p>
+   * Return the count of given key within the window.
+   * </p>
+   */
+  public int estimate(String key, long now) {
+    return estimate(hashes(key), now / sliceMillis);
+  }
+
+  /**
+   * <p>
+   * Return the memory taken by the counters.
+   * </p>
+   */
+  public long getSizeInBytes() {
+    return (long) counters.length() * Integer.BYTES + (long) sliceNumbers.length() * Long.BYTES;
+  }
+
+  public Duration getSliceDuration() {
+    return Duration.ofMillis(sliceMillis);
+  }
+
+  private int estimate(int[] hashes, long sliceNumber) {
+    int count = 0;
+
+    for (int slice = 0; slice < slices; slice++) {
+      // slices left behind by the window are cleared lazily, until then they are skipped
+      if (sliceNumber - sliceNumbers.get(slice) >= slices) {
+        continue;
+      }
+
+      int min = Integer.MAX_VALUE;
+      for (int row = 0; row < depth; row++) {
+        min = Math.min(min, counters.get(index(slice, row, hashes[row])));
+      }
+      count += min;
+    }
+
+    return count;
+  }
+
+  private int claim(long sliceNumber) {
+    int slice = (int) (sliceNumber % slices);
+    long current = sliceNumbers.get(slice);
+
+    if (current < sliceNumber && sliceNumbers.compareAndSet(slice, current, sliceNumber)) {
+      int from = slice * depth * width;
+      for (int i = from; i < from + depth * width; i++) {
+        counters.set(i, 0);
+      }
+    }
+
+    return slice;
+  }
+
+  private int index(int slice, int row, int hash) {
+    return (slice * depth + row) * width + (hash & (width - 1));
+  }
+
+  private int[] hashes(String key) {
+    int h1 = seed;
+    for (int i = 0; i < key.length(); i++) {
+      h1 = (h1 ^ key.charAt(i)) * 0x01000193;
+    }
+    h1 = mix(h1);
+    int h2 = mix(h1 ^ 0x9E3779B9);
+
+    int[] hashes = new int[depth];
+    for (int row = 0; row < depth; row++) {
+      hashes[row] = h1 + row * h2;
+    }
+    return hashes;
+  }
+
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.gigsterous.auth.token;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * <p>
+ * BulkTokenStore interface. Token store able to remove all tokens of a user or
+ * a client at once, without loading them first, and to read many access tokens
+ * in one go.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public interface BulkTokenStore extends TokenStore {
+
+  /**
+   * <p>
+   * Remove access and refresh tokens issued to given user.
+   * </p>
+   *
+   * @return number of removed tokens
+   */
+  int removeTokensByUserName(String userName);
+
+  /**
+   * <p>
+   * Remove access and refresh tokens issued to given client.
+   * </p>
+   *
+   * @return number of removed tokens
+   */
+  int removeTokensByClientId(String clientId);
+
+  /**
+   * <p>
+   * Remove access and refresh tokens issued to given client for given user.
+   * </p>
+   *
+   * @return number of removed tokens
+   */
+  int removeTokensByClientIdAndUserName(String clientId, String userName);
+
+  /**
+   * <p>
+   * Read access tokens of given values together with their authentications.
+   * </p>
+   *
+   * @return tokens by their value, unknown tokens are left out
+   */
+  Map<String, StoredAccessToken> readAccessTokens(Collection<String> tokenValues);
+
+}
@@ -0,0 +1,266 @@
+package com.gigsterous.auth.token;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * <p>
+ * CachingTokenStore class. Read-through cache in front of another token store.
+ * Access tokens and their authentications are cached by token value so that
+ * check_token calls and bearer requests do not have to query and deserialize
+ * the token tables every time. Entries are bounded in size and evicted after a
+ * fixed time to live, which is also the longest time a token revoked on another
+ * node can still be accepted here.
+ * </p>
+ * <p>
+ * Bulk removal and reads are passed on to the delegate, which therefore has to
+ * be a {@link BulkTokenStore} itself.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class CachingTokenStore implements BulkTokenStore {
+
+  private final BulkTokenStore delegate;
+  private final Cache<String, OAuth2AccessToken> accessTokens;
+  private final Cache<String, CachedAuthentication> authentications;
+
+  /**
+   * <p>
+   * CachingTokenStore constructor.
+   * </p>
+   */
+  public CachingTokenStore(BulkTokenStore delegate, long maximumSize, Duration timeToLive) {
+    this.delegate = delegate;
+    this.accessTokens = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS).recordStats().build();
+    this.authentications = Caffeine.newBuilder().maximumSize(maximumSize)
+        .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS).recordStats().build();
+  }
+
+  /**
+   * <p>
+   * Register hit/miss/eviction metrics of both caches with given registry.
+   * </p>
+   */
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, accessTokens, "tokenStore.accessTokens");
+    CaffeineCacheMetrics.monitor(registry, authentications, "tokenStore.authentications");
+  }
+
+  /**
+   * <p>
+   * Return the token store this cache reads through to.
+   * </p>
+   */
+  public TokenStore getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    return readAuthentication(token.getValue());
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    CachedAuthentication cached = authentications.get(token, this::loadAuthentication);
+    return cached == null ? null : cached.authentication;
+  }
+
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    delegate.storeAccessToken(token, authentication);
+
+    // freshly issued tokens are usually checked right away
+    accessTokens.put(token.getValue(), token);
+    authentications.put(token.getValue(), new CachedAuthentication(authentication, token));
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    return accessTokens.get(tokenValue, delegate::readAccessToken);
+  }
+
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    delegate.removeAccessToken(token);
+    evict(token.getValue());
+  }
+
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    delegate.storeRefreshToken(refreshToken, authentication);
+  }
+
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+    return delegate.readRefreshToken(tokenValue);
+  }
+
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    return delegate.readAuthenticationForRefreshToken(token);
+  }
+
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    delegate.removeRefreshToken(token);
+    evictByRefreshToken(token.getValue());
+  }
+
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+    evictByRefreshToken(refreshToken.getValue());
+  }
+
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    return delegate.getAccessToken(authentication);
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+    return delegate.findTokensByClientIdAndUserName(clientId, userName);
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    return delegate.findTokensByClientId(clientId);
+  }
+
+  @Override
+  public int removeTokensByUserName(String userName) {
+    int removed = delegate.removeTokensByUserName(userName);
+    evictByAuthentication(authentication -> !authentication.isClientOnly()
+        && userName.equals(authentication.getName()));
+    return removed;
+  }
+
+  @Override
+  public int removeTokensByClientId(String clientId) {
+    int removed = delegate.removeTokensByClientId(clientId);
+    evictByAuthentication(authentication -> clientId.equals(authentication.getOAuth2Request().getClientId()));
+    return removed;
+  }
+
+  @Override
+  public int removeTokensByClientIdAndUserName(String clientId, String userName) {
+    int removed = delegate.removeTokensByClientIdAndUserName(clientId, userName);
+    evictByAuthentication(authentication -> clientId.equals(authentication.getOAuth2Request().getClientId())
+        && !authentication.isClientOnly() && userName.equals(authentication.getName()));
+    return removed;
+  }
+
+  @Override
+  public Map<String, StoredAccessToken> readAccessTokens(Collection<String> tokenValues) {
+    Map<String, StoredAccessToken> tokens = new HashMap<>();
+    List<String> misses = new ArrayList<>();
+
+    for (String tokenValue : tokenValues) {
+      OAuth2AccessToken token = accessTokens.getIfPresent(tokenValue);
+      CachedAuthentication authentication = authentications.getIfPresent(tokenValue);
+
+      if (token != null && authentication != null) {
+        tokens.put(tokenValue, new StoredAccessToken(token, authentication.authentication));
+      } else {
+        misses.add(tokenValue);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      delegate.readAccessTokens(misses).forEach((tokenValue, stored) -> {
+        accessTokens.put(tokenValue, stored.getToken());
+        authentications.put(tokenValue, new CachedAuthentication(stored.getAuthentication(), stored.getToken()));
+        tokens.put(tokenValue, stored);
+      });
+    }
+
+    return tokens;
+  }
+
+  private CachedAuthentication loadAuthentication(String tokenValue) {
+    OAuth2Authentication authentication = delegate.readAuthentication(tokenValue);
+    if (authentication == null) {
+      return null;
+    }
+
+    // the access token tells which refresh token the entry belongs to, usually it is cached already
+    OAuth2AccessToken token = readAccessToken(tokenValue);
+    return token == null ? null : new CachedAuthentication(authentication, token);
+  }
+
+  private void evict(String tokenValue) {
+    accessTokens.invalidate(tokenValue);
+    authentications.invalidate(tokenValue);
+  }
+
+  private void evictByRefreshToken(String refreshTokenValue) {
+    // there is no index from refresh to access token, the caches are small enough to scan
+    accessTokens.asMap().forEach((tokenValue, token) -> {
+      if (refreshTokenValue.equals(refreshTokenValue(token))) {
+        log.debug("Evicting access token issued for refresh token");
+        evict(tokenValue);
+      }
+    });
+
+    // both caches are bounded on their own, an authentication can outlive its access token
+    authentications.asMap().forEach((tokenValue, authentication) -> {
+      if (refreshTokenValue.equals(authentication.refreshTokenValue)) {
+        log.debug("Evicting authentication issued for refresh token");
+        evict(tokenValue);
+      }
+    });
+  }
+
+  private void evictByAuthentication(Predicate<OAuth2Authentication> matches) {
+    authentications.asMap().forEach((tokenValue, authentication) -> {
+      if (matches.test(authentication.authentication)) {
+        evict(tokenValue);
+      }
+    });
+  }
+
+  private static String refreshTokenValue(OAuth2AccessToken token) {
+    return token.getRefreshToken() == null ? null : token.getRefreshToken().getValue();
+  }
+
+  /**
+   * <p>
+   * Cached authentication together with the refresh token of its access token.
+   * </p>
+   */
+  private static class CachedAuthentication {
+
+    private final OAuth2Authentication authentication;
+    private final String refreshTokenValue;
+
+    CachedAuthentication(OAuth2Authentication authentication, OAuth2AccessToken token) {
+      this.authentication = authentication;
+      this.refreshTokenValue = refreshTokenValue(token);
+    }
+
+  }
+
+}
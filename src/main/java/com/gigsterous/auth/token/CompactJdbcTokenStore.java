@@ -0,0 +1,256 @@
+package com.gigsterous.auth.token;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
+
+/**
+ * <p>
+ * CompactJdbcTokenStore class. JDBC token store which keeps tokens and
+ * authentications in the compact format of {@link TokenCodec} instead of Java
+ * serialization. Rows written in either format can be read.
+ * </p>
+ * <p>
+ * Tokens are written together with their expiry, so that expired rows can be
+ * found and purged without reading the token blobs. Refresh tokens also keep
+ * the user and client they were issued to, so that all tokens of a user or a
+ * client can be removed with a few set-based statements.
+ * </p>
+ * <p>
+ * Many access tokens can be read with a single query, as long as they fit into
+ * one IN list.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class CompactJdbcTokenStore extends JdbcTokenStore implements BulkTokenStore {
+
+  private static final String INSERT_ACCESS_TOKEN_SQL = "insert into oauth_access_token (token_id, token, "
+      + "authentication_id, user_name, client_id, authentication, refresh_token, expires_at) "
+      + "values (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String DELETE_ACCESS_TOKEN_SQL = "delete from oauth_access_token where token_id = ?";
+  private static final String INSERT_REFRESH_TOKEN_SQL = "insert into oauth_refresh_token (token_id, token, "
+      + "authentication, expires_at, user_name, client_id) values (?, ?, ?, ?, ?, ?)";
+
+  // refresh tokens go first, the access token rows still point at those stored before the owner columns existed;
+  // each statement filters on one index, an OR of both would scan the whole table
+  private static final String DELETE_REFRESH_TOKENS_OF_ACCESS_TOKENS_BY_USER_NAME_SQL = "delete from "
+      + "oauth_refresh_token where token_id in (select refresh_token from oauth_access_token where user_name = ?)";
+  private static final String DELETE_REFRESH_TOKENS_OF_ACCESS_TOKENS_BY_CLIENT_ID_SQL = "delete from "
+      + "oauth_refresh_token where token_id in (select refresh_token from oauth_access_token where client_id = ?)";
+  private static final String DELETE_REFRESH_TOKENS_OF_ACCESS_TOKENS_BY_CLIENT_ID_AND_USER_NAME_SQL = "delete from "
+      + "oauth_refresh_token where token_id in (select refresh_token from oauth_access_token where client_id = ? "
+      + "and user_name = ?)";
+  private static final String DELETE_REFRESH_TOKENS_BY_USER_NAME_SQL = "delete from oauth_refresh_token "
+      + "where user_name = ?";
+  private static final String DELETE_REFRESH_TOKENS_BY_CLIENT_ID_SQL = "delete from oauth_refresh_token "
+      + "where client_id = ?";
+  private static final String DELETE_REFRESH_TOKENS_BY_CLIENT_ID_AND_USER_NAME_SQL = "delete from "
+      + "oauth_refresh_token where client_id = ? and user_name = ?";
+  private static final String DELETE_ACCESS_TOKENS_BY_USER_NAME_SQL = "delete from oauth_access_token "
+      + "where user_name = ?";
+  private static final String DELETE_ACCESS_TOKENS_BY_CLIENT_ID_SQL = "delete from oauth_access_token "
+      + "where client_id = ?";
+  private static final String DELETE_ACCESS_TOKENS_BY_CLIENT_ID_AND_USER_NAME_SQL = "delete from "
+      + "oauth_access_token where client_id = ? and user_name = ?";
+
+  private static final int[] ACCESS_TOKEN_TYPES = { Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR,
+      Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.TIMESTAMP };
+  private static final int[] REFRESH_TOKEN_TYPES = { Types.VARCHAR, Types.BLOB, Types.BLOB, Types.TIMESTAMP,
+      Types.VARCHAR, Types.VARCHAR };
+
+  private static final String SELECT_ACCESS_TOKENS_SQL = "select token_id, token, authentication "
+      + "from oauth_access_token where token_id in (%s)";
+  private static final int MAX_IN_LIST = 500;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TokenCodec codec;
+
+  private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+  /**
+   * <p>
+   * CompactJdbcTokenStore constructor.
+   * </p>
+   */
+  public CompactJdbcTokenStore(DataSource dataSource, TokenCodec codec) {
+    super(dataSource);
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.codec = codec;
+  }
+
+  @Override
+  public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+    super.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+    this.authenticationKeyGenerator = authenticationKeyGenerator;
+  }
+
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    // replace a previous row of the same token without reading and deserializing it first
+    jdbcTemplate.update(DELETE_ACCESS_TOKEN_SQL, extractTokenKey(token.getValue()));
+    jdbcTemplate.update(INSERT_ACCESS_TOKEN_SQL, accessTokenRow(token, authentication), ACCESS_TOKEN_TYPES);
+  }
+
+  /**
+   * <p>
+   * Store given access tokens with batched statements.
+   * </p>
+   */
+  public void storeAccessTokens(Map<OAuth2AccessToken, OAuth2Authentication> tokens) {
+    List<Object[]> tokenIds = new ArrayList<>(tokens.size());
+    List<Object[]> rows = new ArrayList<>(tokens.size());
+
+    tokens.forEach((token, authentication) -> {
+      tokenIds.add(new Object[] { extractTokenKey(token.getValue()) });
+      rows.add(accessTokenRow(token, authentication));
+    });
+
+    jdbcTemplate.batchUpdate(DELETE_ACCESS_TOKEN_SQL, tokenIds);
+    jdbcTemplate.batchUpdate(INSERT_ACCESS_TOKEN_SQL, rows, ACCESS_TOKEN_TYPES);
+  }
+
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    jdbcTemplate.update(INSERT_REFRESH_TOKEN_SQL, refreshTokenRow(refreshToken, authentication), REFRESH_TOKEN_TYPES);
+  }
+
+  /**
+   * <p>
+   * Store given refresh tokens with a batched statement.
+   * </p>
+   */
+  public void storeRefreshTokens(Map<OAuth2RefreshToken, OAuth2Authentication> refreshTokens) {
+    List<Object[]> rows = new ArrayList<>(refreshTokens.size());
+    refreshTokens.forEach((refreshToken, authentication) -> rows.add(refreshTokenRow(refreshToken, authentication)));
+
+    jdbcTemplate.batchUpdate(INSERT_REFRESH_TOKEN_SQL, rows, REFRESH_TOKEN_TYPES);
+  }
+
+  @Override
+  public int removeTokensByUserName(String userName) {
+    return jdbcTemplate.update(DELETE_REFRESH_TOKENS_OF_ACCESS_TOKENS_BY_USER_NAME_SQL, userName)
+        + jdbcTemplate.update(DELETE_REFRESH_TOKENS_BY_USER_NAME_SQL, userName)
+        + jdbcTemplate.update(DELETE_ACCESS_TOKENS_BY_USER_NAME_SQL, userName);
+  }
+
+  @Override
+  public int removeTokensByClientId(String clientId) {
+    return jdbcTemplate.update(DELETE_REFRESH_TOKENS_OF_ACCESS_TOKENS_BY_CLIENT_ID_SQL, clientId)
+        + jdbcTemplate.update(DELETE_REFRESH_TOKENS_BY_CLIENT_ID_SQL, clientId)
+        + jdbcTemplate.update(DELETE_ACCESS_TOKENS_BY_CLIENT_ID_SQL, clientId);
+  }
+
+  @Override
+  public int removeTokensByClientIdAndUserName(String clientId, String userName) {
+    return jdbcTemplate.update(DELETE_REFRESH_TOKENS_OF_ACCESS_TOKENS_BY_CLIENT_ID_AND_USER_NAME_SQL, clientId,
+        userName) + jdbcTemplate.update(DELETE_REFRESH_TOKENS_BY_CLIENT_ID_AND_USER_NAME_SQL, clientId, userName)
+        + jdbcTemplate.update(DELETE_ACCESS_TOKENS_BY_CLIENT_ID_AND_USER_NAME_SQL, clientId, userName);
+  }
+
+  @Override
+  public Map<String, StoredAccessToken> readAccessTokens(Collection<String> tokenValues) {
+    Map<String, String> valuesByKey = new HashMap<>();
+    for (String tokenValue : tokenValues) {
+      valuesByKey.put(extractTokenKey(tokenValue), tokenValue);
+    }
+
+    Map<String, StoredAccessToken> tokens = new HashMap<>();
+    List<String> keys = new ArrayList<>(valuesByKey.keySet());
+
+    for (int from = 0; from < keys.size(); from += MAX_IN_LIST) {
+      List<String> chunk = keys.subList(from, Math.min(from + MAX_IN_LIST, keys.size()));
+      String sql = String.format(SELECT_ACCESS_TOKENS_SQL, String.join(", ", Collections.nCopies(chunk.size(), "?")));
+
+      jdbcTemplate.query(sql, rs -> {
+        String tokenValue = valuesByKey.get(rs.getString(1));
+        try {
+          tokens.put(tokenValue, new StoredAccessToken(deserializeAccessToken(rs.getBytes(2)),
+              deserializeAuthentication(rs.getBytes(3))));
+        } catch (IllegalArgumentException e) {
+          // left out like an unknown token, the single token read removes such rows
+          log.warn("Failed to deserialize access token {}", rs.getString(1), e);
+        }
+      }, chunk.toArray());
+    }
+
+    return tokens;
+  }
+
+  @Override
+  protected byte[] serializeAccessToken(OAuth2AccessToken token) {
+    return codec.encodeAccessToken(token);
+  }
+
+  @Override
+  protected byte[] serializeRefreshToken(OAuth2RefreshToken token) {
+    return codec.encodeRefreshToken(token);
+  }
+
+  @Override
+  protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
+    return codec.encodeAuthentication(authentication);
+  }
+
+  @Override
+  protected OAuth2AccessToken deserializeAccessToken(byte[] token) {
+    return codec.decodeAccessToken(token);
+  }
+
+  @Override
+  protected OAuth2RefreshToken deserializeRefreshToken(byte[] token) {
+    return codec.decodeRefreshToken(token);
+  }
+
+  @Override
+  protected OAuth2Authentication deserializeAuthentication(byte[] authentication) {
+    return codec.decodeAuthentication(authentication);
+  }
+
+  private Object[] accessTokenRow(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    String refreshToken = token.getRefreshToken() != null ? token.getRefreshToken().getValue() : null;
+
+    return new Object[] { extractTokenKey(token.getValue()), new SqlLobValue(serializeAccessToken(token)),
+        authenticationKeyGenerator.extractKey(authentication),
+        authentication.isClientOnly() ? null : authentication.getName(),
+        authentication.getOAuth2Request().getClientId(), new SqlLobValue(serializeAuthentication(authentication)),
+        extractTokenKey(refreshToken), timestamp(token.getExpiration()) };
+  }
+
+  private Object[] refreshTokenRow(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    Date expiration = refreshToken instanceof ExpiringOAuth2RefreshToken
+        ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration()
+        : null;
+
+    return new Object[] { extractTokenKey(refreshToken.getValue()),
+        new SqlLobValue(serializeRefreshToken(refreshToken)), new SqlLobValue(serializeAuthentication(authentication)),
+        timestamp(expiration), authentication.isClientOnly() ? null : authentication.getName(),
+        authentication.getOAuth2Request().getClientId() };
+  }
+
+  private static Timestamp timestamp(Date date) {
+    return date != null ? new Timestamp(date.getTime()) : null;
+  }
+
+}
@@ -0,0 +1,63 @@
+package com.gigsterous.auth.token;
+
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.service.TokenEpochService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
+
+/**
+ * <p>
+ * EpochTokenEnhancer class. Stamps the token epoch of the user into access
+ * tokens, as additional information of opaque tokens and as a claim of JWT
+ * ones.
+ * </p>
+ * <p>
+ * The epoch is taken from the authenticated user rather than the database, so
+ * that a session opened before a global logout cannot be used to obtain valid
+ * tokens. Such sessions are logged out by
+ * {@link com.gigsterous.auth.session.StaleSessionFilter} before they get here.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class EpochTokenEnhancer implements TokenEnhancer {
+
+  static final String EPOCH = "epoch";
+
+  private final TokenEpochService tokenEpochService;
+
+  /**
+   * <p>
+   * EpochTokenEnhancer constructor.
+   * </p>
+   */
+  public EpochTokenEnhancer(TokenEpochService tokenEpochService) {
+    this.tokenEpochService = tokenEpochService;
+  }
+
+  @Override
+  public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+    if (authentication.isClientOnly()) {
+      return accessToken;
+    }
+
+    Object principal = authentication.getPrincipal();
+    long epoch = principal instanceof User ? ((User) principal).getTokenEpoch()
+        : tokenEpochService.currentEpoch(authentication.getName());
+
+    Map<String, Object> information = new LinkedHashMap<>(accessToken.getAdditionalInformation());
+    information.put(EPOCH, epoch);
+
+    DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(accessToken);
+    result.setAdditionalInformation(information);
+
+    return result;
+  }
+
+}
@@ -0,0 +1,200 @@
+package com.gigsterous.auth.token;
+
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.service.TokenEpochService;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * <p>
+ * EpochTokenStore class. Token store which hides tokens issued in an older
+ * token epoch of their user, so that they are rejected as invalid once the
+ * user logged out everywhere or changed password.
+ * </p>
+ * <p>
+ * Access tokens are checked against the epoch stamped by
+ * {@link EpochTokenEnhancer} whenever their authentication is read, refresh
+ * tokens against the epoch of the user they were issued to. Tokens without an
+ * epoch count as issued in the first one.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class EpochTokenStore implements BulkTokenStore {
+
+  private final TokenStore delegate;
+  private final TokenEpochService tokenEpochService;
+
+  /**
+   * <p>
+   * EpochTokenStore constructor.
+   * </p>
+   */
+  public EpochTokenStore(TokenStore delegate, TokenEpochService tokenEpochService) {
+    this.delegate = delegate;
+    this.tokenEpochService = tokenEpochService;
+  }
+
+  /**
+   * <p>
+   * Return the token store tokens are kept in.
+   * </p>
+   */
+  public TokenStore getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    OAuth2Authentication authentication = delegate.readAuthentication(token);
+    return authentication != null && isCurrent(token, authentication) ? authentication : null;
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    OAuth2AccessToken accessToken = delegate.readAccessToken(token);
+    return accessToken != null ? readAuthentication(accessToken) : null;
+  }
+
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    delegate.storeAccessToken(token, authentication);
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    return delegate.readAccessToken(tokenValue);
+  }
+
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    delegate.removeAccessToken(token);
+  }
+
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    delegate.storeRefreshToken(refreshToken, authentication);
+  }
+
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+    OAuth2RefreshToken refreshToken = delegate.readRefreshToken(tokenValue);
+    if (refreshToken == null) {
+      return null;
+    }
+
+    OAuth2Authentication authentication = delegate.readAuthenticationForRefreshToken(refreshToken);
+    if (authentication != null && !authentication.isClientOnly()
+        && epochOf(authentication) < tokenEpochService.currentEpoch(authentication.getName())) {
+      // refresh tokens may never expire, so they would not be reaped otherwise
+      log.debug("Removing refresh token issued in an older epoch of {}", authentication.getName());
+      delegate.removeRefreshToken(refreshToken);
+      return null;
+    }
+
+    return refreshToken;
+  }
+
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    return delegate.readAuthenticationForRefreshToken(token);
+  }
+
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    delegate.removeRefreshToken(token);
+  }
+
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+  }
+
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    OAuth2AccessToken token = delegate.getAccessToken(authentication);
+
+    // never hand out an invalidated token again, a new one is issued instead
+    if (token != null && !isCurrent(token, authentication)) {
+      log.debug("Removing access token issued in an older epoch of {}", authentication.getName());
+      delegate.removeAccessToken(token);
+      return null;
+    }
+
+    return token;
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+    return delegate.findTokensByClientIdAndUserName(clientId, userName);
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    return delegate.findTokensByClientId(clientId);
+  }
+
+  @Override
+  public int removeTokensByUserName(String userName) {
+    return bulkDelegate().removeTokensByUserName(userName);
+  }
+
+  @Override
+  public int removeTokensByClientId(String clientId) {
+    return bulkDelegate().removeTokensByClientId(clientId);
+  }
+
+  @Override
+  public int removeTokensByClientIdAndUserName(String clientId, String userName) {
+    return bulkDelegate().removeTokensByClientIdAndUserName(clientId, userName);
+  }
+
+  @Override
+  public Map<String, StoredAccessToken> readAccessTokens(Collection<String> tokenValues) {
+    Map<String, StoredAccessToken> tokens = new HashMap<>();
+
+    bulkDelegate().readAccessTokens(tokenValues).forEach((tokenValue, stored) -> {
+      if (isCurrent(stored.getToken(), stored.getAuthentication())) {
+        tokens.put(tokenValue, stored);
+      }
+    });
+
+    return tokens;
+  }
+
+  private BulkTokenStore bulkDelegate() {
+    if (!(delegate instanceof BulkTokenStore)) {
+      throw new UnsupportedOperationException("Token store " + delegate.getClass().getName()
+          + " does not support bulk removal");
+    }
+
+    return (BulkTokenStore) delegate;
+  }
+
+  private boolean isCurrent(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    if (authentication.isClientOnly()) {
+      return true;
+    }
+
+    Object epoch = token.getAdditionalInformation().get(EpochTokenEnhancer.EPOCH);
+    long tokenEpoch = epoch instanceof Number ? ((Number) epoch).longValue() : 0L;
+
+    return tokenEpoch >= tokenEpochService.currentEpoch(authentication.getName());
+  }
+
+  private static long epochOf(OAuth2Authentication authentication) {
+    Object principal = authentication.getPrincipal();
+    return principal instanceof User ? ((User) principal).getTokenEpoch() : 0L;
+  }
+
+}
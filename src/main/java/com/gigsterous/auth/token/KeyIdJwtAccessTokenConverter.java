@@ -0,0 +1,130 @@
+package com.gigsterous.auth.token;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.Signer;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+/**
+ * <p>
+ * KeyIdJwtAccessTokenConverter class. Signs access tokens with an RSA key pair
+ * and puts a key id into the JWT header, so that resource servers can pick the
+ * matching key from the key set published by the auth server.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class KeyIdJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+  private static final String ALGORITHM = "RS256";
+
+  private final JsonParser jsonParser = JsonParserFactory.create();
+  private final RSAPublicKey publicKey;
+  private final Signer signer;
+  private final String keyId;
+
+  /**
+   * <p>
+   * KeyIdJwtAccessTokenConverter constructor. The key id defaults to the RFC 7638
+   * thumbprint of the public key.
+   * </p>
+   */
+  public KeyIdJwtAccessTokenConverter(KeyPair keyPair, String keyId) {
+    this.publicKey = (RSAPublicKey) keyPair.getPublic();
+    this.signer = new RsaSigner((RSAPrivateKey) keyPair.getPrivate());
+    this.keyId = keyId != null ? keyId : thumbprint(publicKey);
+
+    setKeyPair(keyPair);
+  }
+
+  public String getKeyId() {
+    return keyId;
+  }
+
+  /**
+   * <p>
+   * Return the public key as a JSON Web Key.
+   * </p>
+   */
+  public Map<String, Object> getJwk() {
+    Map<String, Object> jwk = new LinkedHashMap<>();
+    jwk.put("kty", "RSA");
+    jwk.put("alg", ALGORITHM);
+    jwk.put("use", "sig");
+    jwk.put("kid", keyId);
+    jwk.put("n", base64Url(publicKey.getModulus()));
+    jwk.put("e", base64Url(publicKey.getPublicExponent()));
+    return jwk;
+  }
+
+  @Override
+  public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+    OAuth2RefreshToken refreshToken = accessToken.getRefreshToken();
+    DefaultOAuth2AccessToken result = (DefaultOAuth2AccessToken) super.enhance(accessToken, authentication);
+
+    // a reused refresh token is already signed and stored, re-encoding it would
+    // hand out a value the token store does not know
+    if (refreshToken != null && isJwt(refreshToken.getValue())) {
+      result.setRefreshToken(refreshToken);
+    }
+
+    return result;
+  }
+
+  @Override
+  protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+    String content = jsonParser.formatMap(getAccessTokenConverter().convertAccessToken(accessToken, authentication));
+    return JwtHelper.encode(content, signer, Collections.singletonMap("kid", keyId)).getEncoded();
+  }
+
+  /**
+   * <p>
+   * Tell whether given token value has the shape of a JWT rather than an opaque
+   * token.
+   * </p>
+   */
+  public static boolean isJwt(String tokenValue) {
+    int first = tokenValue.indexOf('.');
+    return first > 0 && tokenValue.indexOf('.', first + 1) > first + 1;
+  }
+
+  private static String thumbprint(RSAPublicKey key) {
+    String canonical = "{\"e\":\"" + base64Url(key.getPublicExponent()) + "\",\"kty\":\"RSA\",\"n\":\""
+        + base64Url(key.getModulus()) + "\"}";
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static String base64Url(BigInteger value) {
+    byte[] bytes = value.toByteArray();
+    // drop the sign byte, JWK integers are unsigned
+    if (bytes.length > 1 && bytes[0] == 0) {
+      bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+}
@@ -0,0 +1,59 @@
+package com.gigsterous.auth.token;
+
+import com.gigsterous.auth.service.TokenEpochService;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+/**
+ * <p>
+ * LocalJwtTokenServices class. Verifies JWT access tokens by their signature
+ * only, without touching the token store. Opaque tokens issued before JWT mode
+ * was switched on are still looked up in the token store until they expire.
+ * </p>
+ * <p>
+ * Only the token epoch of the user is checked, from the in-memory copy kept by
+ * {@link TokenEpochService}.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class LocalJwtTokenServices implements ResourceServerTokenServices {
+
+  private final DefaultTokenServices jwtTokenServices = new DefaultTokenServices();
+  private final DefaultTokenServices storedTokenServices = new DefaultTokenServices();
+
+  /**
+   * <p>
+   * LocalJwtTokenServices constructor.
+   * </p>
+   */
+  public LocalJwtTokenServices(JwtAccessTokenConverter accessTokenConverter, TokenStore tokenStore,
+      TokenEpochService tokenEpochService) {
+    jwtTokenServices.setTokenStore(new EpochTokenStore(new JwtTokenStore(accessTokenConverter), tokenEpochService));
+    storedTokenServices.setTokenStore(tokenStore);
+  }
+
+  @Override
+  public OAuth2Authentication loadAuthentication(String accessToken)
+      throws AuthenticationException, InvalidTokenException {
+    return servicesFor(accessToken).loadAuthentication(accessToken);
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String accessToken) {
+    return servicesFor(accessToken).readAccessToken(accessToken);
+  }
+
+  private ResourceServerTokenServices servicesFor(String accessToken) {
+    return KeyIdJwtAccessTokenConverter.isJwt(accessToken) ? jwtTokenServices : storedTokenServices;
+  }
+
+}
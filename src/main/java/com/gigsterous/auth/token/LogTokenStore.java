@@ -0,0 +1,452 @@
+package com.gigsterous.auth.token;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+
+/**
+ * <p>
+ * LogTokenStore class. Token store for single node deployments which keeps
+ * tokens in a local {@link MappedLog} instead of a database. Every change is
+ * appended to the log and the token blobs stay off-heap in the mapped file;
+ * only a small index of where each token lives is kept on the heap, rebuilt by
+ * replaying the log on startup.
+ * </p>
+ * <p>
+ * Compaction copies the records of live tokens into the new log and drops
+ * tokens expired for longer than the retention period; it runs when the log is
+ * full and most of it is taken by removed tokens, and can be run periodically.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class LogTokenStore implements BulkTokenStore, Closeable {
+
+  private static final int MAGIC = 0x544B4C47;
+
+  private static final byte STORE_ACCESS_TOKEN = 1;
+  private static final byte REMOVE_ACCESS_TOKEN = 2;
+  private static final byte STORE_REFRESH_TOKEN = 3;
+  private static final byte REMOVE_REFRESH_TOKEN = 4;
+
+  private final TokenCodec codec;
+  private final long expiredRetention;
+  private final MappedLog tokenLog;
+
+  private final AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+  // the index, guarded by the lock of the log
+  private final Map<String, Entry> accessTokens = new HashMap<>();
+  private final Map<String, String> accessTokensByAuthentication = new HashMap<>();
+  private final Map<String, Set<String>> accessTokensByRefreshToken = new HashMap<>();
+  private final Map<String, Entry> refreshTokens = new HashMap<>();
+
+  /**
+   * <p>
+   * LogTokenStore constructor. Opens the latest log in given directory and
+   * replays it, or starts a new one.
+   * </p>
+   *
+   * @param expiredRetention
+   *          milliseconds tokens are kept after they expire
+   */
+  public LogTokenStore(Path directory, TokenCodec codec, int initialSize, boolean sync, long expiredRetention) {
+    this.codec = codec;
+    this.expiredRetention = expiredRetention;
+    this.tokenLog = new MappedLog(directory, "tokens", MAGIC, initialSize, sync);
+
+    tokenLog.open(this::replay, this::copyLive);
+    log.info("Opened token log in {} with {} access and {} refresh tokens", directory, accessTokens.size(),
+        refreshTokens.size());
+  }
+
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    Entry entry = new Entry();
+    entry.authenticationKey = authenticationKeyGenerator.extractKey(authentication);
+    entry.userName = authentication.isClientOnly() ? null : authentication.getName();
+    entry.clientId = authentication.getOAuth2Request().getClientId();
+    entry.refreshToken = token.getRefreshToken() != null ? token.getRefreshToken().getValue() : null;
+    entry.expiresAt = token.getExpiration() != null ? token.getExpiration().getTime() : 0L;
+
+    byte[] record = MappedLog.record(STORE_ACCESS_TOKEN, token.getValue(), entry.authenticationKey, entry.userName,
+        entry.clientId, entry.refreshToken, entry.expiresAt, codec.encodeAccessToken(token),
+        codec.encodeAuthentication(authentication));
+
+    tokenLog.write(() -> {
+      unindexAccessToken(token.getValue());
+      indexAccessToken(token.getValue(), entry, tokenLog.append(record), record.length);
+    });
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    return tokenLog.read(() -> {
+      Entry entry = accessTokens.get(tokenValue);
+      return entry != null ? codec.decodeAccessToken(fields(entry).skip(5).bytes()) : null;
+    });
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    return readAuthentication(token.getValue());
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    return tokenLog.read(() -> {
+      Entry entry = accessTokens.get(token);
+      return entry != null ? codec.decodeAuthentication(fields(entry).skip(6).bytes()) : null;
+    });
+  }
+
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    tokenLog.write(() -> removeAccessToken(token.getValue()));
+  }
+
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    Entry entry = new Entry();
+    entry.userName = authentication.isClientOnly() ? null : authentication.getName();
+    entry.clientId = authentication.getOAuth2Request().getClientId();
+    entry.expiresAt = refreshToken instanceof ExpiringOAuth2RefreshToken
+        && ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration() != null
+            ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration().getTime()
+            : 0L;
+
+    byte[] record = MappedLog.record(STORE_REFRESH_TOKEN, refreshToken.getValue(), entry.userName, entry.clientId,
+        entry.expiresAt, codec.encodeRefreshToken(refreshToken), codec.encodeAuthentication(authentication));
+
+    tokenLog.write(() -> {
+      unindexRefreshToken(refreshToken.getValue());
+      indexRefreshToken(refreshToken.getValue(), entry, tokenLog.append(record), record.length);
+    });
+  }
+
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+    return tokenLog.read(() -> {
+      Entry entry = refreshTokens.get(tokenValue);
+      return entry != null ? codec.decodeRefreshToken(fields(entry).skip(3).bytes()) : null;
+    });
+  }
+
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    return tokenLog.read(() -> {
+      Entry entry = refreshTokens.get(token.getValue());
+      return entry != null ? codec.decodeAuthentication(fields(entry).skip(4).bytes()) : null;
+    });
+  }
+
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    tokenLog.write(() -> removeRefreshToken(token.getValue()));
+  }
+
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    tokenLog.write(() -> {
+      Set<String> tokenValues = accessTokensByRefreshToken.get(refreshToken.getValue());
+      if (tokenValues != null) {
+        new ArrayList<>(tokenValues).forEach(this::removeAccessToken);
+      }
+    });
+  }
+
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    String tokenValue = tokenLog.read(() -> accessTokensByAuthentication.get(authenticationKeyGenerator
+        .extractKey(authentication)));
+    return tokenValue != null ? readAccessToken(tokenValue) : null;
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+    return findAccessTokens(entry -> clientId.equals(entry.clientId) && userName.equals(entry.userName));
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    return findAccessTokens(entry -> clientId.equals(entry.clientId));
+  }
+
+  @Override
+  public int removeTokensByUserName(String userName) {
+    return removeTokens(entry -> userName.equals(entry.userName));
+  }
+
+  @Override
+  public int removeTokensByClientId(String clientId) {
+    return removeTokens(entry -> clientId.equals(entry.clientId));
+  }
+
+  @Override
+  public int removeTokensByClientIdAndUserName(String clientId, String userName) {
+    return removeTokens(entry -> clientId.equals(entry.clientId) && userName.equals(entry.userName));
+  }
+
+  @Override
+  public Map<String, StoredAccessToken> readAccessTokens(Collection<String> tokenValues) {
+    return tokenLog.read(() -> {
+      Map<String, StoredAccessToken> tokens = new HashMap<>();
+
+      for (String tokenValue : tokenValues) {
+        Entry entry = accessTokens.get(tokenValue);
+        if (entry != null) {
+          MappedLog.Fields fields = fields(entry).skip(5);
+          tokens.put(tokenValue, new StoredAccessToken(codec.decodeAccessToken(fields.bytes()),
+              codec.decodeAuthentication(fields.bytes())));
+        }
+      }
+
+      return tokens;
+    });
+  }
+
+  /**
+   * <p>
+   * Rewrite the log with live tokens only, dropping removed tokens and tokens
+   * expired for longer than the retention period.
+   * </p>
+   */
+  public void compact() {
+    tokenLog.compact();
+  }
+
+  /**
+   * <p>
+   * Return the size of the log and how much of it is taken by live tokens.
+   * </p>
+   */
+  public Map<String, Object> getStatus() {
+    return tokenLog.read(() -> {
+      Map<String, Object> status = tokenLog.getStatus();
+      status.put("accessTokens", accessTokens.size());
+      status.put("refreshTokens", refreshTokens.size());
+      return status;
+    });
+  }
+
+  @Override
+  public void close() throws IOException {
+    tokenLog.close();
+  }
+
+  private boolean replay(byte op, MappedLog.Fields fields, int position, int length) {
+    String tokenValue = fields.string();
+
+    switch (op) {
+      case STORE_ACCESS_TOKEN:
+        Entry access = new Entry();
+        access.authenticationKey = fields.string();
+        access.userName = fields.string();
+        access.clientId = fields.string();
+        access.refreshToken = fields.string();
+        access.expiresAt = fields.readLong();
+        unindexAccessToken(tokenValue);
+        indexAccessToken(tokenValue, access, position, length);
+        return true;
+      case REMOVE_ACCESS_TOKEN:
+        unindexAccessToken(tokenValue);
+        return true;
+      case STORE_REFRESH_TOKEN:
+        Entry refresh = new Entry();
+        refresh.userName = fields.string();
+        refresh.clientId = fields.string();
+        refresh.expiresAt = fields.readLong();
+        unindexRefreshToken(tokenValue);
+        indexRefreshToken(tokenValue, refresh, position, length);
+        return true;
+      case REMOVE_REFRESH_TOKEN:
+        unindexRefreshToken(tokenValue);
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private Runnable copyLive(MappedLog.Target target) {
+    long cutoff = System.currentTimeMillis() - expiredRetention;
+    List<Runnable> moves = new ArrayList<>();
+    List<String> expiredAccessTokens = copyLive(accessTokens, target, cutoff, moves);
+    List<String> expiredRefreshTokens = copyLive(refreshTokens, target, cutoff, moves);
+
+    return () -> {
+      moves.forEach(Runnable::run);
+      expiredAccessTokens.forEach(this::unindexAccessToken);
+      expiredRefreshTokens.forEach(this::unindexRefreshToken);
+      log.info("Dropped {} expired tokens from the token log",
+          expiredAccessTokens.size() + expiredRefreshTokens.size());
+    };
+  }
+
+  private static List<String> copyLive(Map<String, Entry> entries, MappedLog.Target target, long cutoff,
+      List<Runnable> moves) {
+    List<String> expired = new ArrayList<>();
+
+    entries.forEach((tokenValue, entry) -> {
+      if (isExpired(entry, cutoff)) {
+        expired.add(tokenValue);
+      } else {
+        int position = target.copy(entry.position, entry.length);
+        moves.add(() -> entry.position = position);
+      }
+    });
+
+    return expired;
+  }
+
+  private static boolean isExpired(Entry entry, long cutoff) {
+    return entry.expiresAt != 0L && entry.expiresAt < cutoff;
+  }
+
+  private void removeAccessToken(String tokenValue) {
+    if (accessTokens.containsKey(tokenValue)) {
+      tokenLog.append(MappedLog.record(REMOVE_ACCESS_TOKEN, tokenValue));
+      unindexAccessToken(tokenValue);
+    }
+  }
+
+  private void removeRefreshToken(String tokenValue) {
+    if (refreshTokens.containsKey(tokenValue)) {
+      tokenLog.append(MappedLog.record(REMOVE_REFRESH_TOKEN, tokenValue));
+      unindexRefreshToken(tokenValue);
+    }
+  }
+
+  private int removeTokens(Predicate<Entry> owner) {
+    return tokenLog.write(() -> {
+      Set<String> accessTokenValues = new HashSet<>();
+      Set<String> refreshTokenValues = new LinkedHashSet<>();
+
+      accessTokens.forEach((tokenValue, entry) -> {
+        if (owner.test(entry)) {
+          accessTokenValues.add(tokenValue);
+          if (entry.refreshToken != null) {
+            refreshTokenValues.add(entry.refreshToken);
+          }
+        }
+      });
+      refreshTokens.forEach((tokenValue, entry) -> {
+        if (owner.test(entry)) {
+          refreshTokenValues.add(tokenValue);
+        }
+      });
+
+      int removed = 0;
+      for (String tokenValue : accessTokenValues) {
+        removeAccessToken(tokenValue);
+        removed++;
+      }
+      for (String tokenValue : refreshTokenValues) {
+        if (refreshTokens.containsKey(tokenValue)) {
+          removeRefreshToken(tokenValue);
+          removed++;
+        }
+      }
+
+      return removed;
+    });
+  }
+
+  private Collection<OAuth2AccessToken> findAccessTokens(Predicate<Entry> owner) {
+    return tokenLog.read(() -> {
+      List<OAuth2AccessToken> tokens = new ArrayList<>();
+
+      for (Entry entry : accessTokens.values()) {
+        if (owner.test(entry)) {
+          tokens.add(codec.decodeAccessToken(fields(entry).skip(5).bytes()));
+        }
+      }
+
+      return tokens;
+    });
+  }
+
+  private void indexAccessToken(String tokenValue, Entry entry, int position, int length) {
+    entry.position = position;
+    entry.length = length;
+    accessTokens.put(tokenValue, entry);
+    accessTokensByAuthentication.put(entry.authenticationKey, tokenValue);
+    if (entry.refreshToken != null) {
+      accessTokensByRefreshToken.computeIfAbsent(entry.refreshToken, key -> new HashSet<>()).add(tokenValue);
+    }
+    tokenLog.addLiveBytes(length);
+  }
+
+  private void unindexAccessToken(String tokenValue) {
+    Entry entry = accessTokens.remove(tokenValue);
+    if (entry == null) {
+      return;
+    }
+
+    accessTokensByAuthentication.remove(entry.authenticationKey, tokenValue);
+    if (entry.refreshToken != null) {
+      Set<String> tokenValues = accessTokensByRefreshToken.get(entry.refreshToken);
+      tokenValues.remove(tokenValue);
+      if (tokenValues.isEmpty()) {
+        accessTokensByRefreshToken.remove(entry.refreshToken);
+      }
+    }
+    tokenLog.removeLiveBytes(entry.length);
+  }
+
+  private void indexRefreshToken(String tokenValue, Entry entry, int position, int length) {
+    entry.position = position;
+    entry.length = length;
+    refreshTokens.put(tokenValue, entry);
+    tokenLog.addLiveBytes(length);
+  }
+
+  private void unindexRefreshToken(String tokenValue) {
+    Entry entry = refreshTokens.remove(tokenValue);
+    if (entry != null) {
+      tokenLog.removeLiveBytes(entry.length);
+    }
+  }
+
+  private MappedLog.Fields fields(Entry entry) {
+    // skip the token value every record starts with
+    return tokenLog.fields(entry.position).skip(1);
+  }
+
+  /**
+   * <p>
+   * Position of a live record in the log and what is needed to find it.
+   * </p>
+   */
+  private static class Entry {
+
+    private int position;
+    private int length;
+    private String authenticationKey;
+    private String userName;
+    private String clientId;
+    private String refreshToken;
+    private long expiresAt;
+
+  }
+
+}
@@ -0,0 +1,538 @@
+package com.gigsterous.auth.token;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * MappedLog class. Local, memory-mapped append-only log the token and session
+ * logs are kept in. Every record is framed with its operation, length and
+ * checksum; on open the log is replayed record by record, stopping at the
+ * first torn or corrupt one. What a record holds and the index of live records
+ * are up to the store, which guards its index with the lock of the log.
+ * </p>
+ * <p>
+ * When the log is full it is either grown or, when most of it is taken by
+ * outdated records, compacted: the store copies its live records into a new
+ * generation of the log file which then atomically replaces the old one.
+ * </p>
+ * <p>
+ * Records are written to the mapped file right away but only forced to disk on
+ * compaction and close, unless sync is set; a crash of the machine may lose
+ * the latest records, a crash of the process does not.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class MappedLog implements Closeable {
+
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 9;
+
+  private static final byte END = 0;
+
+  private final Path directory;
+  private final String name;
+  private final Pattern logFilePattern;
+  private final int magic;
+  private final int initialSize;
+  private final boolean sync;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Compaction compaction;
+  private long generation;
+  private FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int writePosition;
+  private long liveBytes;
+
+  /**
+   * <p>
+   * MappedLog constructor. The log is kept in files named after given name
+   * and the generation of the log, and is not opened until open is called.
+   * </p>
+   */
+  public MappedLog(Path directory, String name, int magic, int initialSize, boolean sync) {
+    this.directory = directory;
+    this.name = name;
+    this.logFilePattern = Pattern.compile(Pattern.quote(name) + "-(\\d+)\\.log");
+    this.magic = magic;
+    this.initialSize = Math.max(initialSize, HEADER_SIZE + RECORD_HEADER_SIZE);
+    this.sync = sync;
+  }
+
+  /**
+   * <p>
+   * Open the latest log in the directory and replay it, or start a new one.
+   * </p>
+   *
+   * @param replay
+   *          applies every intact record to the index of the store
+   * @param compaction
+   *          copies live records of the store when the log is compacted
+   */
+  public void open(Replay replay, Compaction compaction) {
+    this.compaction = compaction;
+
+    write(() -> {
+      try {
+        openLatest(replay);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot open log in " + directory, e);
+      }
+    });
+  }
+
+  /**
+   * <p>
+   * Append given record to the log, compacting or growing it first when it is
+   * full. Must be called holding the write lock.
+   * </p>
+   *
+   * @return position of the record in the log
+   */
+  public int append(byte[] record) {
+    if (writePosition + record.length > buffer.capacity()) {
+      long deadBytes = writePosition - HEADER_SIZE - liveBytes;
+      long required = HEADER_SIZE + liveBytes + record.length;
+
+      // compact when most of the log is garbage, grow otherwise
+      long capacity = deadBytes >= liveBytes ? Math.max(buffer.capacity(), required * 2) : 2L * buffer.capacity();
+      compact(Math.max(capacity, required));
+    }
+
+    int position = writePosition;
+    ByteBuffer target = buffer.duplicate();
+    target.position(position);
+    target.put(record);
+    writePosition += record.length;
+
+    if (sync) {
+      buffer.force();
+    }
+
+    return position;
+  }
+
+  /**
+   * <p>
+   * Return a reader of the fields of the record at given position. Must be
+   * called holding the lock, the log may be replaced by a compaction.
+   * </p>
+   */
+  public Fields fields(int position) {
+    return new Fields(buffer, position + RECORD_HEADER_SIZE);
+  }
+
+  /**
+   * <p>
+   * Count given number of bytes as taken by a live record, when it is indexed.
+   * </p>
+   */
+  public void addLiveBytes(int length) {
+    liveBytes += length;
+  }
+
+  /**
+   * <p>
+   * Stop counting given number of bytes as live, when a record is unindexed.
+   * </p>
+   */
+  public void removeLiveBytes(int length) {
+    liveBytes -= length;
+  }
+
+  /**
+   * <p>
+   * Rewrite the log with the live records only.
+   * </p>
+   */
+  public void compact() {
+    write(() -> compact(buffer.capacity()));
+  }
+
+  /**
+   * <p>
+   * Rewrite the log with the live records only when most of it is garbage.
+   * </p>
+   */
+  public void compactIfMostlyGarbage() {
+    write(() -> {
+      long deadBytes = writePosition - HEADER_SIZE - liveBytes;
+      if (deadBytes > liveBytes && writePosition > initialSize / 2) {
+        compact(buffer.capacity());
+      }
+    });
+  }
+
+  /**
+   * <p>
+   * Return the size of the log and how much of it is taken by live records.
+   * </p>
+   */
+  public Map<String, Object> getStatus() {
+    return read(() -> {
+      Map<String, Object> status = new HashMap<>();
+      status.put("generation", generation);
+      status.put("capacity", buffer.capacity());
+      status.put("size", writePosition);
+      status.put("liveBytes", liveBytes);
+      return status;
+    });
+  }
+
+  public <T> T read(Supplier<T> action) {
+    lock.readLock().lock();
+    try {
+      return action.get();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public void write(Runnable action) {
+    write(() -> {
+      action.run();
+      return null;
+    });
+  }
+
+  public <T> T write(Supplier<T> action) {
+    lock.writeLock().lock();
+    try {
+      return action.get();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    lock.writeLock().lock();
+    try {
+      if (channel != null && channel.isOpen()) {
+        buffer.force();
+        channel.close();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * <p>
+   * Frame a record of given operation and fields: longs, strings and byte
+   * arrays, which may be null.
+   * </p>
+   */
+  public static byte[] record(byte op, Object... fields) {
+    try {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(body);
+
+      for (Object field : fields) {
+        if (field instanceof Long) {
+          out.writeInt(Long.BYTES);
+          out.writeLong((Long) field);
+        } else {
+          byte[] bytes = field instanceof String ? ((String) field).getBytes(StandardCharsets.UTF_8) : (byte[]) field;
+          out.writeInt(bytes != null ? bytes.length : -1);
+          if (bytes != null) {
+            out.write(bytes);
+          }
+        }
+      }
+
+      byte[] bodyBytes = body.toByteArray();
+      ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodyBytes.length);
+      record.put(op).putInt(bodyBytes.length).putInt(checksum(ByteBuffer.wrap(bodyBytes), 0, bodyBytes.length));
+      record.put(bodyBytes);
+
+      return record.array();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void openLatest(Replay replay) throws IOException {
+    Files.createDirectories(directory);
+
+    Path latest = null;
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        String fileName = file.getFileName().toString();
+        Matcher matcher = logFilePattern.matcher(fileName);
+
+        if (fileName.startsWith(name + "-") && fileName.endsWith(".tmp")) {
+          // left over by a compaction which did not finish, the log it was made from is still there
+          Files.delete(file);
+        } else if (matcher.matches() && Long.parseLong(matcher.group(1)) >= generation) {
+          generation = Long.parseLong(matcher.group(1));
+          latest = file;
+        }
+      }
+    }
+
+    if (latest == null) {
+      latest = logFile(generation);
+    }
+
+    channel = FileChannel.open(latest, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), initialSize));
+
+    if (buffer.getInt(0) == 0) {
+      buffer.putInt(0, magic);
+      buffer.putInt(4, VERSION);
+    } else if (buffer.getInt(0) != magic || buffer.getInt(4) != VERSION) {
+      throw new IOException("Unknown log format in " + latest);
+    }
+
+    replay(latest, replay);
+    deleteOlderLogs();
+  }
+
+  private void replay(Path file, Replay replay) {
+    int position = HEADER_SIZE;
+
+    while (position + RECORD_HEADER_SIZE <= buffer.capacity() && buffer.get(position) != END) {
+      byte op = buffer.get(position);
+      int length = buffer.getInt(position + 1);
+
+      if (length < 0 || (long) position + RECORD_HEADER_SIZE + length > buffer.capacity()
+          || buffer.getInt(position + 5) != checksum(buffer, position + RECORD_HEADER_SIZE, length)
+          || !replay.apply(op, fields(position), position, RECORD_HEADER_SIZE + length)) {
+        log.warn("Log {} is torn at {}, dropping the rest of it", file, position);
+        break;
+      }
+
+      position += RECORD_HEADER_SIZE + length;
+    }
+
+    writePosition = position;
+
+    // records after a torn one may have been flushed out of order and must not be replayed next time
+    for (int i = writePosition; i < buffer.capacity(); i++) {
+      buffer.put(i, END);
+    }
+  }
+
+  private void deleteOlderLogs() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Matcher matcher = logFilePattern.matcher(file.getFileName().toString());
+        if (matcher.matches() && Long.parseLong(matcher.group(1)) < generation) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private void compact(long capacity) {
+    if (capacity > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Log " + logFile(generation) + " cannot grow beyond 2GB");
+    }
+
+    Path file = logFile(generation + 1);
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+    try {
+      FileChannel newChannel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      MappedByteBuffer newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      newBuffer.putInt(0, magic);
+      newBuffer.putInt(4, VERSION);
+
+      CompactionTarget target = new CompactionTarget(buffer, newBuffer);
+      Runnable reindex = compaction.copyLive(target);
+
+      newBuffer.force();
+      Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+
+      channel.close();
+      Files.delete(logFile(generation));
+
+      log.info("Compacted log {} from {} to {} bytes", file, writePosition, target.destination.position());
+
+      generation++;
+      channel = newChannel;
+      buffer = newBuffer;
+      writePosition = target.destination.position();
+      reindex.run();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot compact log in " + directory, e);
+    }
+  }
+
+  private Path logFile(long logGeneration) {
+    return directory.resolve(name + "-" + logGeneration + ".log");
+  }
+
+  private static int checksum(ByteBuffer source, int position, int length) {
+    ByteBuffer bytes = source.duplicate();
+    bytes.limit(position + length).position(position);
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * <p>
+   * Applies a record read back from the log to the index of the store.
+   * </p>
+   */
+  @FunctionalInterface
+  public interface Replay {
+
+    /**
+     * @return false when the operation of the record is unknown, which makes
+     *         the rest of the log be dropped like a torn record
+     */
+    boolean apply(byte op, Fields fields, int position, int length);
+
+  }
+
+  /**
+   * <p>
+   * Copies live records of the store into a new generation of the log.
+   * </p>
+   */
+  @FunctionalInterface
+  public interface Compaction {
+
+    /**
+     * @return what to update in the index once the new log replaced the old
+     *         one, the index must not change before
+     */
+    Runnable copyLive(Target target);
+
+  }
+
+  /**
+   * <p>
+   * New generation of the log being written by a compaction.
+   * </p>
+   */
+  public interface Target {
+
+    /**
+     * <p>
+     * Copy the record at given position of the old log as it is.
+     * </p>
+     *
+     * @return position of the record in the new log
+     */
+    int copy(int position, int length);
+
+    /**
+     * <p>
+     * Write a record made anew.
+     * </p>
+     *
+     * @return position of the record in the new log
+     */
+    int write(byte[] record);
+
+  }
+
+  private static class CompactionTarget implements Target {
+
+    private final ByteBuffer source;
+    private final ByteBuffer destination;
+
+    CompactionTarget(ByteBuffer source, ByteBuffer destination) {
+      this.source = source.duplicate();
+      this.destination = destination.duplicate();
+      this.destination.position(HEADER_SIZE);
+    }
+
+    @Override
+    public int copy(int position, int length) {
+      int next = destination.position();
+      source.limit(position + length).position(position);
+      destination.put(source);
+      return next;
+    }
+
+    @Override
+    public int write(byte[] record) {
+      int next = destination.position();
+      destination.put(record);
+      return next;
+    }
+
+  }
+
+  /**
+   * <p>
+   * Reads the fields of a record in the order they were written.
+   * </p>
+   */
+  public static class Fields {
+
+    private final ByteBuffer buffer;
+
+    Fields(ByteBuffer source, int position) {
+      this.buffer = source.duplicate();
+      this.buffer.position(position);
+    }
+
+    public Fields skip(int count) {
+      for (int i = 0; i < count; i++) {
+        int length = buffer.getInt();
+        if (length > 0) {
+          buffer.position(buffer.position() + length);
+        }
+      }
+      return this;
+    }
+
+    public byte[] bytes() {
+      int length = buffer.getInt();
+      if (length < 0) {
+        return null;
+      }
+
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return bytes;
+    }
+
+    public String string() {
+      byte[] bytes = bytes();
+      return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    public long readLong() {
+      buffer.getInt();
+      return buffer.getLong();
+    }
+
+  }
+
+}
@@ -0,0 +1,32 @@
+package com.gigsterous.auth.token;
+
+import lombok.Getter;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * <p>
+ * StoredAccessToken class. Access token read together with the authentication
+ * it was issued for.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Getter
+public class StoredAccessToken {
+
+  private final OAuth2AccessToken token;
+  private final OAuth2Authentication authentication;
+
+  /**
+   * <p>
+   * StoredAccessToken constructor.
+   * </p>
+   */
+  public StoredAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    this.token = token;
+    this.authentication = authentication;
+  }
+
+}
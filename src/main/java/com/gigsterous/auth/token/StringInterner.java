@@ -0,0 +1,52 @@
+package com.gigsterous.auth.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * StringInterner class. Shares instances of strings which repeat across many
+ * tokens, such as scopes, authorities and client ids. The pool stops growing
+ * once it is full, so unexpected values cannot exhaust the heap.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class StringInterner {
+
+  private final ConcurrentMap<String, String> pool = new ConcurrentHashMap<>();
+  private final int maximumSize;
+
+  /**
+   * <p>
+   * StringInterner constructor.
+   * </p>
+   */
+  public StringInterner(int maximumSize) {
+    this.maximumSize = maximumSize;
+  }
+
+  /**
+   * <p>
+   * Return the pooled instance equal to given string.
+   * </p>
+   */
+  public String intern(String value) {
+    if (value == null) {
+      return null;
+    }
+
+    String pooled = pool.get(value);
+    if (pooled != null) {
+      return pooled;
+    }
+
+    if (pool.size() >= maximumSize) {
+      return value;
+    }
+
+    pooled = pool.putIfAbsent(value, value);
+    return pooled != null ? pooled : value;
+  }
+
+}
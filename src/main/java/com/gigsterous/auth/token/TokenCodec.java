@@ -0,0 +1,740 @@
+package com.gigsterous.auth.token;
+
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+/**
+ * <p>
+ * TokenCodec class. Compact, versioned binary format for access tokens,
+ * refresh tokens and authentications kept in the token tables, and for users
+ * logged in to the HTTP session.
+ * </p>
+ * <p>
+ * Every blob starts with a magic byte, a format version and the kind of the
+ * encoded object. Numbers are written as variable length integers and strings
+ * repeating within one blob, or listed in the shared dictionary, are written
+ * as a reference only. Strings forming the vocabulary of tokens (scopes,
+ * authorities, client ids, parameter names) are interned when decoded, so that
+ * cached tokens share them.
+ * </p>
+ * <p>
+ * Objects the format has no representation for, such as custom principals or
+ * web authentication details, are written with Java serialization instead, and
+ * Java serialized blobs written before this format existed are still read.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+public class TokenCodec {
+
+  static final byte MAGIC = (byte) 0xC7;
+  static final byte VERSION = 1;
+
+  private static final byte ACCESS_TOKEN = 1;
+  private static final byte REFRESH_TOKEN = 2;
+  private static final byte AUTHENTICATION = 3;
+  private static final byte USER_AUTHENTICATION = 4;
+
+  private static final byte NONE = 0;
+  private static final byte REFRESH_PLAIN = 1;
+  private static final byte REFRESH_EXPIRING = 2;
+  private static final byte USERNAME_PASSWORD = 1;
+  private static final byte PRE_AUTHENTICATED = 2;
+  private static final byte PRINCIPAL_STRING = 1;
+  private static final byte PRINCIPAL_USER_DETAILS = 3;
+  private static final byte PRINCIPAL_USER_EPOCH = 4;
+
+  private static final Class<?> SPRING_USER = org.springframework.security.core.userdetails.User.class;
+
+  private static final byte VALUE_NULL = 0;
+  private static final byte VALUE_STRING = 1;
+  private static final byte VALUE_LONG = 2;
+  private static final byte VALUE_INTEGER = 3;
+  private static final byte VALUE_BOOLEAN = 4;
+  private static final byte VALUE_LIST = 5;
+  private static final byte VALUE_SET = 6;
+  private static final byte VALUE_MAP = 7;
+
+  // part of the format - append only, any other change needs a new VERSION
+  private static final List<String> DICTIONARY = Arrays.asList("bearer", "grant_type", "password", "refresh_token",
+      "authorization_code", "client_credentials", "implicit", "client_id", "username", "scope", "read", "write",
+      "code", "redirect_uri", "response_type", "state", "token", "jti", "ati", "ROLE_USER", "ROLE_ADMIN");
+
+  private final StringInterner interner;
+
+  /**
+   * <p>
+   * TokenCodec constructor.
+   * </p>
+   */
+  public TokenCodec(StringInterner interner) {
+    this.interner = interner;
+  }
+
+  /**
+   * <p>
+   * Tell whether given blob was written with Java serialization.
+   * </p>
+   */
+  public static boolean isJavaSerialized(byte[] bytes) {
+    return bytes != null && bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+  }
+
+  /**
+   * <p>
+   * Encode access token.
+   * </p>
+   */
+  public byte[] encodeAccessToken(OAuth2AccessToken token) {
+    try {
+      Output out = new Output(ACCESS_TOKEN);
+      writeAccessToken(out, token);
+      return out.toByteArray();
+    } catch (UnsupportedValueException e) {
+      return SerializationUtils.serialize(token);
+    }
+  }
+
+  /**
+   * <p>
+   * Encode refresh token.
+   * </p>
+   */
+  public byte[] encodeRefreshToken(OAuth2RefreshToken token) {
+    try {
+      Output out = new Output(REFRESH_TOKEN);
+      writeRefreshToken(out, token);
+      return out.toByteArray();
+    } catch (UnsupportedValueException e) {
+      return SerializationUtils.serialize(token);
+    }
+  }
+
+  /**
+   * <p>
+   * Encode authentication.
+   * </p>
+   */
+  public byte[] encodeAuthentication(OAuth2Authentication authentication) {
+    try {
+      Output out = new Output(AUTHENTICATION);
+      writeAuthentication(out, authentication);
+      return out.toByteArray();
+    } catch (UnsupportedValueException e) {
+      return SerializationUtils.serialize(authentication);
+    }
+  }
+
+  /**
+   * <p>
+   * Encode authentication of a user, as kept in the HTTP session. Web
+   * authentication details are left out, they only tell the address and the
+   * session the user logged in from.
+   * </p>
+   */
+  public byte[] encodeUserAuthentication(Authentication authentication) {
+    try {
+      Output out = new Output(USER_AUTHENTICATION);
+      writeUserAuthentication(out, authentication, false);
+      return out.toByteArray();
+    } catch (UnsupportedValueException e) {
+      return SerializationUtils.serialize(authentication);
+    }
+  }
+
+  /**
+   * <p>
+   * Decode access token.
+   * </p>
+   */
+  public OAuth2AccessToken decodeAccessToken(byte[] bytes) {
+    if (isJavaSerialized(bytes)) {
+      return SerializationUtils.deserialize(bytes);
+    }
+
+    return readAccessToken(new Input(bytes, ACCESS_TOKEN));
+  }
+
+  /**
+   * <p>
+   * Decode refresh token.
+   * </p>
+   */
+  public OAuth2RefreshToken decodeRefreshToken(byte[] bytes) {
+    if (isJavaSerialized(bytes)) {
+      return SerializationUtils.deserialize(bytes);
+    }
+
+    return readRefreshToken(new Input(bytes, REFRESH_TOKEN));
+  }
+
+  /**
+   * <p>
+   * Decode authentication.
+   * </p>
+   */
+  public OAuth2Authentication decodeAuthentication(byte[] bytes) {
+    if (isJavaSerialized(bytes)) {
+      return SerializationUtils.deserialize(bytes);
+    }
+
+    return readAuthentication(new Input(bytes, AUTHENTICATION));
+  }
+
+  /**
+   * <p>
+   * Decode authentication of a user.
+   * </p>
+   */
+  public Authentication decodeUserAuthentication(byte[] bytes) {
+    if (isJavaSerialized(bytes)) {
+      return SerializationUtils.deserialize(bytes);
+    }
+
+    return readUserAuthentication(new Input(bytes, USER_AUTHENTICATION));
+  }
+
+  // Access and refresh tokens
+
+  private void writeAccessToken(Output out, OAuth2AccessToken token) {
+    requireType(token, DefaultOAuth2AccessToken.class);
+
+    out.writeString(token.getValue());
+    out.writeString(token.getTokenType());
+    out.writeDate(token.getExpiration());
+    writeRefreshToken(out, token.getRefreshToken());
+    out.writeStrings(token.getScope());
+    writeValue(out, token.getAdditionalInformation());
+  }
+
+  @SuppressWarnings("unchecked")
+  private OAuth2AccessToken readAccessToken(Input in) {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(in.readString());
+    token.setTokenType(in.readVocabulary());
+    token.setExpiration(in.readDate());
+    token.setRefreshToken(readRefreshToken(in));
+    token.setScope(in.readVocabularySet());
+    token.setAdditionalInformation((Map<String, Object>) readValue(in));
+    return token;
+  }
+
+  private void writeRefreshToken(Output out, OAuth2RefreshToken token) {
+    if (token == null) {
+      out.writeByte(NONE);
+    } else if (token.getClass() == DefaultExpiringOAuth2RefreshToken.class) {
+      out.writeByte(REFRESH_EXPIRING);
+      out.writeString(token.getValue());
+      out.writeDate(((ExpiringOAuth2RefreshToken) token).getExpiration());
+    } else {
+      requireType(token, DefaultOAuth2RefreshToken.class);
+      out.writeByte(REFRESH_PLAIN);
+      out.writeString(token.getValue());
+    }
+  }
+
+  private OAuth2RefreshToken readRefreshToken(Input in) {
+    byte type = in.readByte();
+    switch (type) {
+      case NONE:
+        return null;
+      case REFRESH_PLAIN:
+        return new DefaultOAuth2RefreshToken(in.readString());
+      case REFRESH_EXPIRING:
+        return new DefaultExpiringOAuth2RefreshToken(in.readString(), in.readDate());
+      default:
+        throw new IllegalArgumentException("Unknown refresh token type " + type);
+    }
+  }
+
+  // Authentication
+
+  private void writeAuthentication(Output out, OAuth2Authentication authentication) {
+    requireType(authentication, OAuth2Authentication.class);
+
+    OAuth2Request request = authentication.getOAuth2Request();
+    writeRequest(out, request);
+
+    TokenRequest refresh = request.getRefreshTokenRequest();
+    out.writeBoolean(refresh != null);
+    if (refresh != null) {
+      out.writeStringMap(refresh.getRequestParameters());
+      out.writeString(refresh.getClientId());
+      out.writeStrings(refresh.getScope());
+      out.writeString(refresh.getGrantType());
+    }
+
+    writeUserAuthentication(out, authentication.getUserAuthentication(), true);
+    writeValue(out, authentication.getDetails());
+  }
+
+  private OAuth2Authentication readAuthentication(Input in) {
+    OAuth2Request request = readRequest(in);
+
+    if (in.readBoolean()) {
+      request = request.refresh(new TokenRequest(in.readVocabularyMap(), in.readVocabulary(),
+          in.readVocabularySet(), in.readVocabulary()));
+    }
+
+    OAuth2Authentication authentication = new OAuth2Authentication(request, readUserAuthentication(in));
+    authentication.setDetails(readValue(in));
+    return authentication;
+  }
+
+  private void writeRequest(Output out, OAuth2Request request) {
+    out.writeStringMap(request.getRequestParameters());
+    out.writeString(request.getClientId());
+    writeAuthorities(out, request.getAuthorities());
+    out.writeBoolean(request.isApproved());
+    out.writeStrings(request.getScope());
+    out.writeStrings(request.getResourceIds());
+    out.writeString(request.getRedirectUri());
+    out.writeStrings(request.getResponseTypes());
+    writeValue(out, request.getExtensions());
+  }
+
+  @SuppressWarnings("unchecked")
+  private OAuth2Request readRequest(Input in) {
+    return new OAuth2Request(in.readVocabularyMap(), in.readVocabulary(), readAuthorities(in), in.readBoolean(),
+        in.readVocabularySet(), in.readVocabularySet(), in.readString(), in.readVocabularySet(),
+        (Map<String, Serializable>) readValue(in));
+  }
+
+  private void writeUserAuthentication(Output out, Authentication authentication, boolean withWebDetails) {
+    if (authentication == null) {
+      out.writeByte(NONE);
+      return;
+    }
+
+    if (authentication.getClass() == UsernamePasswordAuthenticationToken.class) {
+      out.writeByte(USERNAME_PASSWORD);
+      out.writeBoolean(authentication.isAuthenticated());
+    } else {
+      requireType(authentication, PreAuthenticatedAuthenticationToken.class);
+      out.writeByte(PRE_AUTHENTICATED);
+    }
+
+    writePrincipal(out, authentication.getPrincipal());
+    writeValue(out, authentication.getCredentials());
+    writeAuthorities(out, authentication.getAuthorities());
+    writeValue(out, withWebDetails || !(authentication.getDetails() instanceof WebAuthenticationDetails)
+        ? authentication.getDetails() : null);
+  }
+
+  private Authentication readUserAuthentication(Input in) {
+    byte type = in.readByte();
+    if (type == NONE) {
+      return null;
+    }
+
+    boolean authenticated = type == USERNAME_PASSWORD && in.readBoolean();
+    Object principal = readPrincipal(in);
+    Object credentials = readValue(in);
+    List<GrantedAuthority> authorities = readAuthorities(in);
+
+    AbstractAuthenticationToken token;
+    if (type == PRE_AUTHENTICATED) {
+      token = new PreAuthenticatedAuthenticationToken(principal, credentials, authorities);
+    } else if (type == USERNAME_PASSWORD && authenticated) {
+      token = new UsernamePasswordAuthenticationToken(principal, credentials, authorities);
+    } else if (type == USERNAME_PASSWORD) {
+      token = new UsernamePasswordAuthenticationToken(principal, credentials);
+    } else {
+      throw new IllegalArgumentException("Unknown authentication type " + type);
+    }
+
+    token.setDetails(readValue(in));
+    return token;
+  }
+
+  private void writePrincipal(Output out, Object principal) {
+    if (principal instanceof String) {
+      out.writeByte(PRINCIPAL_STRING);
+      out.writeString((String) principal);
+    } else if (principal != null && principal.getClass() == User.class) {
+      // the password hash is deliberately left out, tokens never need it
+      User user = (User) principal;
+      out.writeByte(PRINCIPAL_USER_EPOCH);
+      out.writeLong(user.getId());
+      out.writeString(user.getEmail());
+      out.writeString(user.getRole() != null ? user.getRole().name() : null);
+      out.writeBoolean(user.isEnabled());
+      out.writeLong(user.getTokenEpoch());
+    } else if (principal != null && principal.getClass() == SPRING_USER) {
+      UserDetails user = (UserDetails) principal;
+      out.writeByte(PRINCIPAL_USER_DETAILS);
+      out.writeString(user.getUsername());
+      out.writeBoolean(user.isEnabled());
+      out.writeBoolean(user.isAccountNonExpired());
+      out.writeBoolean(user.isCredentialsNonExpired());
+      out.writeBoolean(user.isAccountNonLocked());
+      writeAuthorities(out, user.getAuthorities());
+    } else {
+      throw new UnsupportedValueException();
+    }
+  }
+
+  private Object readPrincipal(Input in) {
+    byte type = in.readByte();
+    switch (type) {
+      case PRINCIPAL_STRING:
+        return in.readString();
+      case PRINCIPAL_USER_EPOCH:
+        User user = new User();
+        user.setId(in.readLong());
+        user.setEmail(in.readString());
+        String role = in.readVocabulary();
+        user.setRole(role != null ? Role.valueOf(role) : null);
+        user.setEnabled(in.readBoolean());
+        user.setTokenEpoch(in.readLong());
+        return user;
+      case PRINCIPAL_USER_DETAILS:
+        // the password is not kept, restore the user the same way as with erased credentials
+        UserDetails details = new org.springframework.security.core.userdetails.User(in.readString(), "",
+            in.readBoolean(), in.readBoolean(), in.readBoolean(), in.readBoolean(), readAuthorities(in));
+        ((CredentialsContainer) details).eraseCredentials();
+        return details;
+      default:
+        throw new IllegalArgumentException("Unknown principal type " + type);
+    }
+  }
+
+  private void writeAuthorities(Output out, Collection<? extends GrantedAuthority> authorities) {
+    out.writeVarInt(authorities.size());
+    for (GrantedAuthority authority : authorities) {
+      requireType(authority, SimpleGrantedAuthority.class);
+      out.writeString(authority.getAuthority());
+    }
+  }
+
+  private List<GrantedAuthority> readAuthorities(Input in) {
+    int size = in.readVarInt();
+    List<GrantedAuthority> authorities = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      authorities.add(new SimpleGrantedAuthority(in.readVocabulary()));
+    }
+    return authorities;
+  }
+
+  // Free form values - additional information, extensions, details
+
+  private void writeValue(Output out, Object value) {
+    if (value == null) {
+      out.writeByte(VALUE_NULL);
+    } else if (value instanceof String) {
+      out.writeByte(VALUE_STRING);
+      out.writeString((String) value);
+    } else if (value instanceof Long) {
+      out.writeByte(VALUE_LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(VALUE_INTEGER);
+      out.writeLong((Integer) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(VALUE_BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof List || value instanceof Set) {
+      out.writeByte(value instanceof List ? VALUE_LIST : VALUE_SET);
+      Collection<?> collection = (Collection<?>) value;
+      out.writeVarInt(collection.size());
+      for (Object element : collection) {
+        writeValue(out, element);
+      }
+    } else if (value instanceof Map) {
+      out.writeByte(VALUE_MAP);
+      Map<?, ?> map = (Map<?, ?>) value;
+      out.writeVarInt(map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        if (!(entry.getKey() instanceof String)) {
+          throw new UnsupportedValueException();
+        }
+        out.writeString((String) entry.getKey());
+        writeValue(out, entry.getValue());
+      }
+    } else {
+      throw new UnsupportedValueException();
+    }
+  }
+
+  private Object readValue(Input in) {
+    byte type = in.readByte();
+    switch (type) {
+      case VALUE_NULL:
+        return null;
+      case VALUE_STRING:
+        return in.readString();
+      case VALUE_LONG:
+        return in.readLong();
+      case VALUE_INTEGER:
+        return (int) in.readLong();
+      case VALUE_BOOLEAN:
+        return in.readBoolean();
+      case VALUE_LIST:
+      case VALUE_SET:
+        int size = in.readVarInt();
+        Collection<Object> collection = type == VALUE_LIST ? new ArrayList<>(size) : new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+          collection.add(readValue(in));
+        }
+        return collection;
+      case VALUE_MAP:
+        int entries = in.readVarInt();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+          map.put(in.readVocabulary(), readValue(in));
+        }
+        return map;
+      default:
+        throw new IllegalArgumentException("Unknown value type " + type);
+    }
+  }
+
+  private static void requireType(Object value, Class<?> type) {
+    if (value == null || value.getClass() != type) {
+      throw new UnsupportedValueException();
+    }
+  }
+
+  /**
+   * Thrown when an object has no representation in this format.
+   */
+  private static class UnsupportedValueException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+  }
+
+  /**
+   * Writes one blob, keeping the table of strings already written.
+   */
+  private static class Output {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    Output(byte kind) {
+      for (String word : DICTIONARY) {
+        strings.put(word, strings.size());
+      }
+
+      writeByte(MAGIC);
+      writeByte(VERSION);
+      writeByte(kind);
+    }
+
+    void writeByte(int value) {
+      bytes.write(value);
+    }
+
+    void writeBoolean(boolean value) {
+      bytes.write(value ? 1 : 0);
+    }
+
+    void writeVarInt(int value) {
+      writeLong(value);
+    }
+
+    void writeLong(long value) {
+      // zig-zag keeps small negative numbers short as well
+      long zigZag = (value << 1) ^ (value >> 63);
+      while ((zigZag & ~0x7FL) != 0) {
+        bytes.write((int) ((zigZag & 0x7F) | 0x80));
+        zigZag >>>= 7;
+      }
+      bytes.write((int) zigZag);
+    }
+
+    void writeDate(Date date) {
+      writeBoolean(date != null);
+      if (date != null) {
+        writeLong(date.getTime());
+      }
+    }
+
+    void writeString(String value) {
+      // 0 is null, 1 is a new literal, anything else refers to the string table
+      if (value == null) {
+        writeVarInt(0);
+        return;
+      }
+
+      Integer index = strings.get(value);
+      if (index != null) {
+        writeVarInt(index + 2);
+        return;
+      }
+
+      strings.put(value, strings.size());
+      byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(1);
+      writeVarInt(utf8.length);
+      bytes.write(utf8, 0, utf8.length);
+    }
+
+    void writeStrings(Collection<String> values) {
+      writeVarInt(values == null ? 0 : values.size() + 1);
+      if (values != null) {
+        values.forEach(this::writeString);
+      }
+    }
+
+    void writeStringMap(Map<String, String> map) {
+      writeVarInt(map.size());
+      map.forEach((key, value) -> {
+        writeString(key);
+        writeString(value);
+      });
+    }
+
+    byte[] toByteArray() {
+      return bytes.toByteArray();
+    }
+
+  }
+
+  /**
+   * Reads one blob, rebuilding the table of strings read so far.
+   */
+  private class Input {
+
+    private final byte[] bytes;
+    private final List<String> strings = new ArrayList<>(DICTIONARY);
+    private int position;
+
+    Input(byte[] bytes, byte kind) {
+      this.bytes = bytes;
+
+      if (bytes.length < 3 || bytes[0] != MAGIC) {
+        throw new IllegalArgumentException("Not an encoded token");
+      }
+      if (bytes[1] != VERSION) {
+        throw new IllegalArgumentException("Unsupported token format version " + bytes[1]);
+      }
+      if (bytes[2] != kind) {
+        throw new IllegalArgumentException("Unexpected kind of encoded object " + bytes[2]);
+      }
+      position = 3;
+    }
+
+    byte readByte() {
+      if (position >= bytes.length) {
+        throw new IllegalArgumentException("Encoded token is truncated");
+      }
+      return bytes[position++];
+    }
+
+    boolean readBoolean() {
+      return readByte() != 0;
+    }
+
+    int readVarInt() {
+      return (int) readLong();
+    }
+
+    long readLong() {
+      long zigZag = 0;
+      int shift = 0;
+      byte current;
+      do {
+        current = readByte();
+        zigZag |= (long) (current & 0x7F) << shift;
+        shift += 7;
+      } while ((current & 0x80) != 0);
+      return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    Date readDate() {
+      return readBoolean() ? new Date(readLong()) : null;
+    }
+
+    String readString() {
+      int reference = readVarInt();
+      if (reference == 0) {
+        return null;
+      }
+      if (reference < 0 || reference - 2 >= strings.size()) {
+        throw new IllegalArgumentException("Encoded token refers to unknown string " + reference);
+      }
+      if (reference > 1) {
+        return strings.get(reference - 2);
+      }
+
+      int length = readVarInt();
+      if (length < 0 || position + length > bytes.length) {
+        throw new IllegalArgumentException("Encoded token is truncated");
+      }
+      String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      strings.add(value);
+      return value;
+    }
+
+    String readVocabulary() {
+      String value = interner.intern(readString());
+      if (value != null && strings.get(strings.size() - 1).equals(value)) {
+        // let later references in this blob share the pooled instance too
+        strings.set(strings.size() - 1, value);
+      }
+      return value;
+    }
+
+    Set<String> readVocabularySet() {
+      int size = readVarInt();
+      if (size == 0) {
+        return null;
+      }
+
+      Set<String> values = new LinkedHashSet<>();
+      for (int i = 1; i < size; i++) {
+        values.add(readVocabulary());
+      }
+      return values;
+    }
+
+    Map<String, String> readVocabularyMap() {
+      int size = readVarInt();
+      Map<String, String> map = new LinkedHashMap<>();
+      for (int i = 0; i < size; i++) {
+        // values such as usernames, codes and states are nearly unique and would only crowd the pool
+        String key = readVocabulary();
+        map.put(key, readString());
+      }
+      return map;
+    }
+
+  }
+
+}
@@ -0,0 +1,176 @@
+package com.gigsterous.auth.token;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.LeaseService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * <p>
+ * TokenReaper class. Deletes expired access and refresh tokens, abandoned
+ * authorization codes, expired confirmation tokens and expired HTTP sessions
+ * of the session table. Rows are deleted in
+ * small batches with a pause in between, so that no statement holds locks for
+ * long, and only the node holding the reaper lease runs at a time. On one
+ * node, a run started by hand is skipped while the scheduled one is running
+ * and the other way round, so that only the run which took the lease releases
+ * it.
+ * </p>
+ * <p>
+ * Access tokens are kept for a grace period after they expire, so that clients
+ * still get the expired token error rather than an invalid token one.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class TokenReaper {
+
+  static final String LEASE = "tokenReaper";
+
+  private static final String ACCESS_TOKENS = "oauth_access_token";
+  private static final String REFRESH_TOKENS = "oauth_refresh_token";
+  private static final String CODES = "oauth_code";
+  private static final String CONFIRMATION_TOKENS = "confirmation_tokens";
+  private static final String HTTP_SESSIONS = "http_session";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final LeaseService leaseService;
+  private final AuthProperties.TokenReaper properties;
+  private final MeterRegistry meterRegistry;
+  private final Timer runTimer;
+
+  private final Map<String, AtomicLong> totalDeleted = new ConcurrentHashMap<>();
+  private final AtomicLong skippedRuns = new AtomicLong();
+  private final Lock running = new ReentrantLock();
+  private volatile Map<String, Object> lastRun;
+
+  /**
+   * <p>
+   * TokenReaper constructor.
+   * </p>
+   */
+  public TokenReaper(JdbcTemplate jdbcTemplate, LeaseService leaseService, AuthProperties.TokenReaper properties,
+      MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.leaseService = leaseService;
+    this.properties = properties;
+    this.meterRegistry = meterRegistry;
+    this.runTimer = meterRegistry.timer("tokenReaper.run");
+  }
+
+  /**
+   * <p>
+   * Run one sweep over all token tables, unless another node holds the lease
+   * or a sweep is already running on this one.
+   * </p>
+   */
+  public void reap() {
+    if (!running.tryLock()) {
+      log.debug("Token reaper is already running on this node, skipping");
+      skippedRuns.incrementAndGet();
+      return;
+    }
+
+    try {
+      if (!leaseService.tryAcquire(LEASE, properties.getLeaseDuration())) {
+        log.debug("Token reaper lease is held by another node, skipping");
+        skippedRuns.incrementAndGet();
+        return;
+      }
+
+      try {
+        runTimer.record(this::sweepAll);
+      } finally {
+        leaseService.release(LEASE);
+      }
+    } finally {
+      running.unlock();
+    }
+  }
+
+  /**
+   * <p>
+   * Return the outcome of the last run and totals since start.
+   * </p>
+   */
+  public Map<String, Object> getStatus() {
+    Map<String, Object> status = new LinkedHashMap<>();
+    status.put("lastRun", lastRun);
+    status.put("totalDeleted", totalDeleted);
+    status.put("skippedRuns", skippedRuns.get());
+    return status;
+  }
+
+  private void sweepAll() {
+    Instant started = Instant.now();
+    long now = started.toEpochMilli();
+    Map<String, Object> deleted = new LinkedHashMap<>();
+
+    deleted.put(ACCESS_TOKENS, sweep(ACCESS_TOKENS, "expires_at", now - properties.getGracePeriod().toMillis()));
+    deleted.put(REFRESH_TOKENS, sweep(REFRESH_TOKENS, "expires_at", now));
+    deleted.put(CODES, sweep(CODES, "created_at", now - properties.getCodeTimeToLive().toMillis()));
+    deleted.put(CONFIRMATION_TOKENS, sweep(CONFIRMATION_TOKENS, "expires_at", now));
+    deleted.put(HTTP_SESSIONS, sweep(HTTP_SESSIONS, "expires_at", now));
+
+    Map<String, Object> run = new LinkedHashMap<>();
+    run.put("started", started.toString());
+    run.put("duration", Duration.between(started, Instant.now()).toString());
+    run.put("deleted", deleted);
+    lastRun = run;
+
+    log.debug("Token reaper deleted {}", deleted);
+  }
+
+  private long sweep(String table, String column, long cutoff) {
+    String sql = "delete from " + table + " where " + column + " < ? limit ?";
+    Timestamp before = new Timestamp(cutoff);
+    long deleted = 0;
+
+    for (int batch = 0; batch < properties.getMaxBatches(); batch++) {
+      int count = jdbcTemplate.update(sql, before, properties.getBatchSize());
+      deleted += count;
+
+      if (count < properties.getBatchSize() || !pause()) {
+        break;
+      }
+
+      // a long sweep must not outlive the lease and overlap with another node
+      if (!leaseService.tryAcquire(LEASE, properties.getLeaseDuration())) {
+        log.warn("Token reaper lost its lease while deleting from {}", table);
+        break;
+      }
+    }
+
+    totalDeleted.computeIfAbsent(table, key -> new AtomicLong()).addAndGet(deleted);
+    meterRegistry.counter("tokenReaper.deleted", "table", table).increment(deleted);
+
+    return deleted;
+  }
+
+  private boolean pause() {
+    try {
+      Thread.sleep(properties.getPause().toMillis());
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,47 @@
+package com.gigsterous.auth.token;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+/**
+ * <p>
+ * TokenReaperEndpoint class. Actuator endpoint showing progress of the token
+ * reaper and allowing to run it right away.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Endpoint(id = "tokenreaper")
+public class TokenReaperEndpoint {
+
+  private final TokenReaper tokenReaper;
+
+  /**
+   * <p>
+   * TokenReaperEndpoint constructor.
+   * </p>
+   */
+  public TokenReaperEndpoint(TokenReaper tokenReaper) {
+    this.tokenReaper = tokenReaper;
+  }
+
+  @ReadOperation
+  public Map<String, Object> status() {
+    return tokenReaper.getStatus();
+  }
+
+  /**
+   * <p>
+   * Run the reaper now and return its status.
+   * </p>
+   */
+  @WriteOperation
+  public Map<String, Object> reap() {
+    tokenReaper.reap();
+    return tokenReaper.getStatus();
+  }
+
+}
@@ -0,0 +1,503 @@
+package com.gigsterous.auth.token;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.DefaultAuthenticationKeyGenerator;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * <p>
+ * WriteBehindTokenStore class. Keeps newly issued tokens in memory and writes
+ * them to the token tables in batches, every flush interval or as soon as a
+ * batch is full, within one transaction per batch. Pending tokens are readable
+ * right away, but only on this node.
+ * </p>
+ * <p>
+ * When a batch is rejected, its tokens are written one by one, so that a single
+ * token violating a constraint is dropped instead of holding up all others.
+ * Tokens which cannot be written because the database is unavailable stay
+ * pending and are tried again with the next flush.
+ * </p>
+ * <p>
+ * With {@link Durability#ASYNC} the grant returns as soon as the token is
+ * pending, and tokens not yet flushed are lost if the node dies. With
+ * {@link Durability#GROUP_COMMIT} the grant waits until the batch holding its
+ * token is committed, sharing the commit with other grants of the same batch.
+ * Removal and lookups by client or user see the pending tokens as well.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class WriteBehindTokenStore implements BulkTokenStore, Closeable {
+
+  /**
+   * <p>
+   * When a grant considers its token stored.
+   * </p>
+   */
+  public enum Durability {
+    ASYNC, GROUP_COMMIT
+  }
+
+  private final CompactJdbcTokenStore delegate;
+  private final TransactionTemplate transactionTemplate;
+  private final int batchSize;
+  private final int maxPending;
+  private final Durability durability;
+  private final Duration commitTimeout;
+
+  private final Map<String, Pending<OAuth2AccessToken>> accessTokens = new ConcurrentHashMap<>();
+  private final Map<String, Pending<OAuth2RefreshToken>> refreshTokens = new ConcurrentHashMap<>();
+  // pending access tokens by authentication key, the token store keeps one token per authentication
+  private final Map<String, Pending<OAuth2AccessToken>> accessTokensByAuthentication = new ConcurrentHashMap<>();
+
+  // held while a batch is written, so that a removal cannot overtake the insert of the token it removes
+  private final ReentrantLock flushLock = new ReentrantLock();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final ScheduledExecutorService executor;
+
+  private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+  private Counter flushedCounter;
+  private Counter failedFlushCounter;
+  private Counter droppedCounter;
+
+  /**
+   * <p>
+   * WriteBehindTokenStore constructor. Once more than maxPending tokens wait
+   * for a flush, further tokens are written synchronously.
+   * </p>
+   */
+  public WriteBehindTokenStore(CompactJdbcTokenStore delegate, TransactionTemplate transactionTemplate,
+      Duration flushInterval, int batchSize, int maxPending, Durability durability, Duration commitTimeout) {
+    this.delegate = delegate;
+    this.transactionTemplate = transactionTemplate;
+    this.batchSize = batchSize;
+    this.maxPending = maxPending;
+    this.durability = durability;
+    this.commitTimeout = commitTimeout;
+
+    this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "token-write-behind");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * <p>
+   * Register the pending token gauge and flush counters with given registry.
+   * </p>
+   */
+  public void bindTo(MeterRegistry registry) {
+    registry.gauge("tokenStore.writeBehind.pending", accessTokens, Map::size);
+    flushedCounter = registry.counter("tokenStore.writeBehind.flushed");
+    failedFlushCounter = registry.counter("tokenStore.writeBehind.failedFlushes");
+    droppedCounter = registry.counter("tokenStore.writeBehind.dropped");
+  }
+
+  /**
+   * <p>
+   * Return the token store pending tokens are written to.
+   * </p>
+   */
+  public TokenStore getDelegate() {
+    return delegate;
+  }
+
+  public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+    this.authenticationKeyGenerator = authenticationKeyGenerator;
+  }
+
+  @Override
+  public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+    if (accessTokens.size() >= maxPending) {
+      log.debug("Too many tokens pending, storing access token synchronously");
+      delegate.storeAccessToken(token, authentication);
+      return;
+    }
+
+    Pending<OAuth2AccessToken> pending = new Pending<>(token, authentication,
+        authenticationKeyGenerator.extractKey(authentication));
+    accessTokens.put(token.getValue(), pending);
+    accessTokensByAuthentication.put(pending.authenticationKey, pending);
+    awaitFlush(pending, () -> discardAccessToken(token.getValue(), pending));
+  }
+
+  @Override
+  public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+    if (refreshTokens.size() >= maxPending) {
+      log.debug("Too many tokens pending, storing refresh token synchronously");
+      delegate.storeRefreshToken(refreshToken, authentication);
+      return;
+    }
+
+    Pending<OAuth2RefreshToken> pending = new Pending<>(refreshToken, authentication, null);
+    refreshTokens.put(refreshToken.getValue(), pending);
+    awaitFlush(pending, () -> refreshTokens.remove(refreshToken.getValue(), pending));
+  }
+
+  @Override
+  public OAuth2AccessToken readAccessToken(String tokenValue) {
+    Pending<OAuth2AccessToken> pending = accessTokens.get(tokenValue);
+    return pending != null ? pending.token : delegate.readAccessToken(tokenValue);
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+    return readAuthentication(token.getValue());
+  }
+
+  @Override
+  public OAuth2Authentication readAuthentication(String token) {
+    Pending<OAuth2AccessToken> pending = accessTokens.get(token);
+    return pending != null ? pending.authentication : delegate.readAuthentication(token);
+  }
+
+  @Override
+  public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+    Pending<OAuth2RefreshToken> pending = refreshTokens.get(tokenValue);
+    return pending != null ? pending.token : delegate.readRefreshToken(tokenValue);
+  }
+
+  @Override
+  public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+    Pending<OAuth2RefreshToken> pending = refreshTokens.get(token.getValue());
+    return pending != null ? pending.authentication : delegate.readAuthenticationForRefreshToken(token);
+  }
+
+  @Override
+  public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+    Pending<OAuth2AccessToken> pending = accessTokensByAuthentication
+        .get(authenticationKeyGenerator.extractKey(authentication));
+    return pending != null ? pending.token : delegate.getAccessToken(authentication);
+  }
+
+  @Override
+  public void removeAccessToken(OAuth2AccessToken token) {
+    withFlushLock(() -> {
+      Pending<OAuth2AccessToken> pending = accessTokens.get(token.getValue());
+      if (pending != null) {
+        discardAccessToken(token.getValue(), pending);
+      }
+      delegate.removeAccessToken(token);
+    });
+  }
+
+  @Override
+  public void removeRefreshToken(OAuth2RefreshToken token) {
+    withFlushLock(() -> {
+      refreshTokens.remove(token.getValue());
+      delegate.removeRefreshToken(token);
+    });
+  }
+
+  @Override
+  public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+    withFlushLock(() -> {
+      removeIf(accessTokens, pending -> pending.token.getRefreshToken() != null
+          && refreshToken.getValue().equals(pending.token.getRefreshToken().getValue()), this::discardAccessToken);
+      delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+    });
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+    flush();
+    return delegate.findTokensByClientIdAndUserName(clientId, userName);
+  }
+
+  @Override
+  public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+    flush();
+    return delegate.findTokensByClientId(clientId);
+  }
+
+  @Override
+  public int removeTokensByUserName(String userName) {
+    return removePending(authentication -> !authentication.isClientOnly()
+        && userName.equals(authentication.getName()), () -> delegate.removeTokensByUserName(userName));
+  }
+
+  @Override
+  public int removeTokensByClientId(String clientId) {
+    return removePending(authentication -> clientId.equals(authentication.getOAuth2Request().getClientId()),
+        () -> delegate.removeTokensByClientId(clientId));
+  }
+
+  @Override
+  public int removeTokensByClientIdAndUserName(String clientId, String userName) {
+    return removePending(authentication -> clientId.equals(authentication.getOAuth2Request().getClientId())
+        && !authentication.isClientOnly() && userName.equals(authentication.getName()),
+        () -> delegate.removeTokensByClientIdAndUserName(clientId, userName));
+  }
+
+  @Override
+  public Map<String, StoredAccessToken> readAccessTokens(Collection<String> tokenValues) {
+    Map<String, StoredAccessToken> tokens = new HashMap<>();
+    List<String> misses = new ArrayList<>();
+
+    for (String tokenValue : tokenValues) {
+      Pending<OAuth2AccessToken> pending = accessTokens.get(tokenValue);
+      if (pending != null) {
+        tokens.put(tokenValue, new StoredAccessToken(pending.token, pending.authentication));
+      } else {
+        misses.add(tokenValue);
+      }
+    }
+
+    if (!misses.isEmpty()) {
+      tokens.putAll(delegate.readAccessTokens(misses));
+    }
+
+    return tokens;
+  }
+
+  /**
+   * <p>
+   * Write all pending tokens, in transactions of at most one batch each.
+   * Tokens stay pending when the database cannot be reached and are tried
+   * again with the next flush.
+   * </p>
+   */
+  public void flush() {
+    withFlushLock(() -> {
+      flushRequested.set(false);
+
+      // refresh tokens first, so that no access token is readable from the table before its refresh token
+      flush(refreshTokens, delegate::storeRefreshTokens, refreshTokens::remove);
+      flush(accessTokens, delegate::storeAccessTokens, this::discardAccessToken);
+    });
+  }
+
+  /**
+   * <p>
+   * Stop flushing on schedule and write the tokens still pending.
+   * </p>
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+
+    try {
+      executor.awaitTermination(commitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    flush();
+    log.info("Token write-behind stopped");
+  }
+
+  private void flushQuietly() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      log.warn("Failed to flush {} pending tokens, retrying with the next batch",
+          accessTokens.size() + refreshTokens.size(), e);
+
+      if (failedFlushCounter != null) {
+        failedFlushCounter.increment();
+      }
+    }
+  }
+
+  private void awaitFlush(Pending<?> pending, Runnable discard) {
+    if (accessTokens.size() + refreshTokens.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+      executor.execute(this::flushQuietly);
+    }
+
+    if (durability != Durability.GROUP_COMMIT) {
+      return;
+    }
+
+    try {
+      pending.written.get(commitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Token could not be stored", e.getCause());
+    } catch (TimeoutException e) {
+      // the grant fails, a token written later is never handed out and expires unused
+      discard.run();
+      throw new IllegalStateException("Token was not stored within " + commitTimeout, e);
+    } catch (InterruptedException e) {
+      discard.run();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while storing token", e);
+    }
+  }
+
+  private int removePending(Predicate<OAuth2Authentication> matches, IntSupplier removal) {
+    flushLock.lock();
+    try {
+      return removeIf(accessTokens, pending -> matches.test(pending.authentication), this::discardAccessToken)
+          + removeIf(refreshTokens, pending -> matches.test(pending.authentication), refreshTokens::remove)
+          + removal.getAsInt();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private <T> void flush(Map<String, Pending<T>> pending, Consumer<Map<T, OAuth2Authentication>> store,
+      BiPredicate<String, Pending<T>> remove) {
+    List<Map.Entry<String, Pending<T>>> entries = new ArrayList<>(new LinkedHashMap<>(pending).entrySet());
+
+    for (int from = 0; from < entries.size(); from += batchSize) {
+      List<Map.Entry<String, Pending<T>>> batch = entries.subList(from, Math.min(from + batchSize, entries.size()));
+
+      try {
+        transactionTemplate.execute(status -> {
+          store.accept(collect(batch));
+          return null;
+        });
+      } catch (RuntimeException e) {
+        if (!isRejected(e)) {
+          // the database is unavailable, all tokens stay pending
+          throw e;
+        }
+
+        log.warn("Batch of {} pending tokens was rejected, writing them one by one", batch.size(), e);
+        batch.forEach(entry -> writeOne(entry, store, remove));
+        continue;
+      }
+
+      // tokens stored again while the batch was written stay pending for the next one
+      batch.forEach(entry -> written(entry, remove));
+      countFlushed(batch.size());
+    }
+  }
+
+  private <T> void writeOne(Map.Entry<String, Pending<T>> entry, Consumer<Map<T, OAuth2Authentication>> store,
+      BiPredicate<String, Pending<T>> remove) {
+    try {
+      transactionTemplate.execute(status -> {
+        store.accept(collect(Collections.singletonList(entry)));
+        return null;
+      });
+    } catch (RuntimeException e) {
+      if (!isRejected(e)) {
+        throw e;
+      }
+
+      log.warn("Dropping pending token which cannot be written", e);
+      remove.test(entry.getKey(), entry.getValue());
+      entry.getValue().written.completeExceptionally(e);
+
+      if (droppedCounter != null) {
+        droppedCounter.increment();
+      }
+      return;
+    }
+
+    written(entry, remove);
+    countFlushed(1);
+  }
+
+  private void countFlushed(int written) {
+    if (flushedCounter != null) {
+      flushedCounter.increment(written);
+    }
+  }
+
+  private static <T> void written(Map.Entry<String, Pending<T>> entry, BiPredicate<String, Pending<T>> remove) {
+    remove.test(entry.getKey(), entry.getValue());
+    entry.getValue().written.complete(null);
+  }
+
+  /**
+   * <p>
+   * Whether given failure is caused by the tokens written, a constraint
+   * violation or a token which cannot be encoded, rather than by the database
+   * being unavailable.
+   * </p>
+   */
+  private static boolean isRejected(RuntimeException e) {
+    return e instanceof DataIntegrityViolationException || e instanceof IllegalArgumentException;
+  }
+
+  private void withFlushLock(Runnable action) {
+    flushLock.lock();
+    try {
+      action.run();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private boolean discardAccessToken(String tokenValue, Pending<OAuth2AccessToken> pending) {
+    if (!accessTokens.remove(tokenValue, pending)) {
+      return false;
+    }
+
+    accessTokensByAuthentication.remove(pending.authenticationKey, pending);
+    return true;
+  }
+
+  private static <T> int removeIf(Map<String, Pending<T>> pending, Predicate<Pending<T>> matches,
+      BiPredicate<String, Pending<T>> remove) {
+    int removed = 0;
+
+    for (Map.Entry<String, Pending<T>> entry : pending.entrySet()) {
+      if (matches.test(entry.getValue()) && remove.test(entry.getKey(), entry.getValue())) {
+        removed++;
+      }
+    }
+
+    return removed;
+  }
+
+  private static <T> Map<T, OAuth2Authentication> collect(List<Map.Entry<String, Pending<T>>> batch) {
+    Map<T, OAuth2Authentication> tokens = new LinkedHashMap<>();
+    batch.forEach(entry -> tokens.put(entry.getValue().token, entry.getValue().authentication));
+    return tokens;
+  }
+
+  private static class Pending<T> {
+
+    private final T token;
+    private final OAuth2Authentication authentication;
+    private final String authenticationKey;
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+
+    Pending(T token, OAuth2Authentication authentication, String authenticationKey) {
+      this.token = token;
+      this.authentication = authentication;
+      this.authenticationKey = authenticationKey;
+    }
+
+  }
+
+}
@@ -0,0 +1,107 @@
+package db.migration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+
+/**
+ * <p>
+ * Moves the tokens outstanding in users.confirmation_token to
+ * confirmation_tokens, so that links sent before the upgrade keep working. The
+ * purpose is inferred from the user: an e-mail change when an e-mail is
+ * pending, a registration when the user is not enabled yet and a password
+ * reset otherwise. Every token gets the default validity of its purpose,
+ * counted from now, as the time it was sent is not known.
+ * </p>
+ * <p>
+ * The hash, purpose names and validities are those of the application at the
+ * time of this migration and are kept here, so that later changes to the
+ * application do not change what the migration does.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class V11_1__Confirmation_token_migration implements JdbcMigration {
+
+  private static final int BATCH_SIZE = 500;
+
+  private static final String REGISTRATION = "REGISTRATION";
+  private static final String PASSWORD_RESET = "PASSWORD_RESET";
+  private static final String EMAIL_CHANGE = "EMAIL_CHANGE";
+
+  private static final Duration REGISTRATION_VALIDITY = Duration.ofDays(7);
+  private static final Duration PASSWORD_RESET_VALIDITY = Duration.ofHours(1);
+  private static final Duration EMAIL_CHANGE_VALIDITY = Duration.ofDays(1);
+
+  @Override
+  public void migrate(Connection connection) throws Exception {
+    long now = System.currentTimeMillis();
+    int moved = 0;
+
+    try (Statement select = connection.createStatement();
+        ResultSet rows = select.executeQuery("SELECT user_id, confirmation_token, pending_email, enabled FROM users "
+            + "WHERE confirmation_token IS NOT NULL AND confirmation_token <> ''");
+        PreparedStatement insert = connection.prepareStatement("INSERT INTO confirmation_tokens "
+            + "(token_hash, user_id, purpose, expires_at) VALUES (?, ?, ?, ?)")) {
+
+      while (rows.next()) {
+        String purpose = purpose(rows.getString(3) != null, rows.getBoolean(4));
+
+        insert.setString(1, hash(rows.getString(2)));
+        insert.setLong(2, rows.getLong(1));
+        insert.setString(3, purpose);
+        insert.setTimestamp(4, new Timestamp(now + validity(purpose).toMillis()));
+        insert.addBatch();
+
+        if (++moved % BATCH_SIZE == 0) {
+          insert.executeBatch();
+        }
+      }
+
+      insert.executeBatch();
+    }
+
+    log.info("Moved {} confirmation tokens", moved);
+  }
+
+  private static String purpose(boolean emailPending, boolean enabled) {
+    if (emailPending) {
+      return EMAIL_CHANGE;
+    }
+
+    return enabled ? PASSWORD_RESET : REGISTRATION;
+  }
+
+  private static Duration validity(String purpose) {
+    switch (purpose) {
+      case REGISTRATION:
+        return REGISTRATION_VALIDITY;
+      case PASSWORD_RESET:
+        return PASSWORD_RESET_VALIDITY;
+      default:
+        return EMAIL_CHANGE_VALIDITY;
+    }
+  }
+
+  private static String hash(String token) throws Exception {
+    // hex-encoded SHA-256, as confirmation tokens are stored
+    byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+
+    StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+}
@@ -0,0 +1,79 @@
+package db.migration;
+
+import com.gigsterous.auth.token.StringInterner;
+import com.gigsterous.auth.token.TokenCodec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+
+/**
+ * <p>
+ * Converts tokens stored with Java serialization to the compact format of
+ * {@link TokenCodec}. Rows which cannot be read or have no compact form are
+ * left as they are, the token store reads both formats.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class V2__Compact_token_encoding implements JdbcMigration {
+
+  private static final int BATCH_SIZE = 500;
+
+  private final TokenCodec codec = new TokenCodec(new StringInterner(1024));
+
+  @Override
+  public void migrate(Connection connection) throws Exception {
+    convert(connection, "oauth_access_token", "authentication_id",
+        token -> codec.encodeAccessToken(codec.decodeAccessToken(token)));
+    convert(connection, "oauth_refresh_token", "token_id",
+        token -> codec.encodeRefreshToken(codec.decodeRefreshToken(token)));
+  }
+
+  private void convert(Connection connection, String table, String key, Function<byte[], byte[]> tokenConverter)
+      throws Exception {
+    int converted = 0;
+    int skipped = 0;
+
+    try (Statement select = connection.createStatement();
+        ResultSet rows = select.executeQuery("SELECT " + key + ", token, authentication FROM " + table);
+        PreparedStatement update = connection
+            .prepareStatement("UPDATE " + table + " SET token = ?, authentication = ? WHERE " + key + " = ?")) {
+
+      while (rows.next()) {
+        byte[] token = rows.getBytes(2);
+        byte[] authentication = rows.getBytes(3);
+
+        if (!TokenCodec.isJavaSerialized(token) && !TokenCodec.isJavaSerialized(authentication)) {
+          continue;
+        }
+
+        try {
+          update.setBytes(1, tokenConverter.apply(token));
+          update.setBytes(2, codec.encodeAuthentication(codec.decodeAuthentication(authentication)));
+          update.setString(3, rows.getString(1));
+          update.addBatch();
+
+          if (++converted % BATCH_SIZE == 0) {
+            update.executeBatch();
+          }
+        } catch (RuntimeException e) {
+          log.warn("Leaving {} row {} in its original format: {}", table, rows.getString(1), e.getMessage());
+          skipped++;
+        }
+      }
+
+      update.executeBatch();
+    }
+
+    log.info("Converted {} rows of {} to compact format, {} left unchanged", converted, table, skipped);
+  }
+
+}
@@ -0,0 +1,82 @@
+package db.migration;
+
+import com.gigsterous.auth.token.StringInterner;
+import com.gigsterous.auth.token.TokenCodec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.function.Function;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+
+/**
+ * <p>
+ * Fills the expires_at column of tokens stored before it existed. Tokens which
+ * cannot be read keep no expiry.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class V4__Token_expiry implements JdbcMigration {
+
+  private static final int BATCH_SIZE = 500;
+
+  private final TokenCodec codec = new TokenCodec(new StringInterner(1024));
+
+  @Override
+  public void migrate(Connection connection) throws Exception {
+    backfill(connection, "oauth_access_token", token -> codec.decodeAccessToken(token).getExpiration());
+    backfill(connection, "oauth_refresh_token", token -> {
+      OAuth2RefreshToken refreshToken = codec.decodeRefreshToken(token);
+      return refreshToken instanceof ExpiringOAuth2RefreshToken
+          ? ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration()
+          : null;
+    });
+  }
+
+  private void backfill(Connection connection, String table, Function<byte[], Date> expiration) throws Exception {
+    int updated = 0;
+
+    try (Statement select = connection.createStatement();
+        ResultSet rows = select.executeQuery("SELECT token_id, token FROM " + table + " WHERE expires_at IS NULL");
+        PreparedStatement update = connection
+            .prepareStatement("UPDATE " + table + " SET expires_at = ? WHERE token_id = ?")) {
+
+      while (rows.next()) {
+        Date expiresAt;
+        try {
+          expiresAt = expiration.apply(rows.getBytes(2));
+        } catch (RuntimeException e) {
+          log.warn("Cannot read expiry of {} row {}: {}", table, rows.getString(1), e.getMessage());
+          continue;
+        }
+
+        if (expiresAt == null) {
+          continue;
+        }
+
+        update.setTimestamp(1, new Timestamp(expiresAt.getTime()));
+        update.setString(2, rows.getString(1));
+        update.addBatch();
+
+        if (++updated % BATCH_SIZE == 0) {
+          update.executeBatch();
+        }
+      }
+
+      update.executeBatch();
+    }
+
+    log.info("Set expiry of {} rows of {}", updated, table);
+  }
+
+}
@@ -0,0 +1,66 @@
+package db.migration;
+
+import com.gigsterous.auth.token.StringInterner;
+import com.gigsterous.auth.token.TokenCodec;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * <p>
+ * Fills user_name and client_id of refresh tokens stored before the columns
+ * existed, from the authentication each token was issued for.
+ * </p>
+ *
+ * @author Martin Myslik
+ */
+@Slf4j
+public class V7__Refresh_token_owner implements JdbcMigration {
+
+  private static final int BATCH_SIZE = 500;
+
+  private final TokenCodec codec = new TokenCodec(new StringInterner(1024));
+
+  @Override
+  public void migrate(Connection connection) throws Exception {
+    int updated = 0;
+
+    try (Statement select = connection.createStatement();
+        ResultSet rows = select
+            .executeQuery("SELECT token_id, authentication FROM oauth_refresh_token WHERE client_id IS NULL");
+        PreparedStatement update = connection
+            .prepareStatement("UPDATE oauth_refresh_token SET user_name = ?, client_id = ? WHERE token_id = ?")) {
+
+      while (rows.next()) {
+        OAuth2Authentication authentication;
+        try {
+          authentication = codec.decodeAuthentication(rows.getBytes(2));
+        } catch (RuntimeException e) {
+          log.warn("Cannot read owner of refresh token {}: {}", rows.getString(1), e.getMessage());
+          continue;
+        }
+
+        update.setString(1, authentication.isClientOnly() ? null : authentication.getName());
+        update.setString(2, authentication.getOAuth2Request().getClientId());
+        update.setString(3, rows.getString(1));
+        update.addBatch();
+
+        if (++updated % BATCH_SIZE == 0) {
+          update.executeBatch();
+        }
+      }
+
+      update.executeBatch();
+    }
+
+    log.info("Set owner of {} refresh tokens", updated);
+  }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Users - row version, moved forward on every change and used as the ETag of the user info
+ */
+
+ALTER TABLE users ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
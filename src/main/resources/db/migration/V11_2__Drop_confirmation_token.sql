@@ -0,0 +1,5 @@
+/**
+ * Users - confirmation tokens are kept in confirmation_tokens
+ */
+
+ALTER TABLE users DROP COLUMN confirmation_token;
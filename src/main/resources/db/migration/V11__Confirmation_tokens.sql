@@ -0,0 +1,17 @@
+/**
+ * Confirmation tokens - one-time tokens of registration, password reset and e-mail change links,
+ * kept only as a SHA-256 hash. Tokens outstanding in users.confirmation_token are moved here by
+ * V11_1 before the column is dropped by V11_2.
+ */
+
+DROP TABLE IF EXISTS confirmation_tokens;
+CREATE TABLE confirmation_tokens (
+  token_hash CHAR(64) PRIMARY KEY,
+  user_id BIGINT NOT NULL,
+  purpose VARCHAR(16) NOT NULL,
+  expires_at TIMESTAMP NULL,
+  FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE INDEX confirmation_tokens_user_id_purpose ON confirmation_tokens (user_id, purpose);
+CREATE INDEX confirmation_tokens_expires_at ON confirmation_tokens (expires_at);
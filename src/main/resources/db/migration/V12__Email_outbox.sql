@@ -0,0 +1,21 @@
+/**
+ * E-mail outbox - e-mails written in the same transaction as the change they announce, sent in
+ * batches by the e-mail dispatcher and deleted once sent
+ */
+
+DROP TABLE IF EXISTS email_outbox;
+CREATE TABLE email_outbox (
+  email_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  recipient VARCHAR(128) NOT NULL,
+  sender VARCHAR(128) NOT NULL,
+  subject VARCHAR(255) NOT NULL,
+  message VARCHAR(2048) NOT NULL,
+  link VARCHAR(1024),
+  attempts INT DEFAULT 0 NOT NULL,
+  created_at TIMESTAMP NOT NULL,
+  next_attempt_at TIMESTAMP NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE INDEX email_outbox_next_attempt_at ON email_outbox (next_attempt_at);
+
+INSERT INTO scheduler_lease (name, owner, expires_at) VALUES ('emailDispatcher', null, null);
@@ -0,0 +1,6 @@
+/**
+ * E-mail outbox - e-mails waiting to be sent are looked up by recipient, so that repeated ones
+ * can be merged
+ */
+
+CREATE INDEX email_outbox_recipient ON email_outbox (recipient);
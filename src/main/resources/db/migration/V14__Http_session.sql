@@ -0,0 +1,16 @@
+/**
+ * HTTP sessions - kept here instead of in the servlet container when auth.sessionStore.type is jdbc,
+ * with their attributes in a compact binary format, deleted by the token reaper once expired
+ */
+
+DROP TABLE IF EXISTS http_session;
+CREATE TABLE http_session (
+  session_id VARCHAR(64) PRIMARY KEY,
+  created_at TIMESTAMP NULL,
+  last_accessed_at TIMESTAMP NULL,
+  max_inactive_interval INT NOT NULL,
+  expires_at TIMESTAMP NULL,
+  data BLOB NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE INDEX http_session_expires_at ON http_session (expires_at);
@@ -0,0 +1,33 @@
+/**
+ * Access tokens - lookups by token, user, client and refresh token. The old schema did not prevent
+ * duplicate tokens, one row of each is kept.
+ */
+
+ALTER TABLE oauth_access_token ADD COLUMN expires_at TIMESTAMP NULL;
+
+DELETE FROM oauth_access_token WHERE token_id IS NOT NULL AND authentication_id NOT IN (
+  SELECT kept_id FROM (SELECT MIN(authentication_id) AS kept_id FROM oauth_access_token GROUP BY token_id) kept
+);
+
+CREATE UNIQUE INDEX oauth_access_token_token_id ON oauth_access_token (token_id);
+CREATE INDEX oauth_access_token_user_name_client_id ON oauth_access_token (user_name, client_id);
+CREATE INDEX oauth_access_token_client_id ON oauth_access_token (client_id);
+CREATE INDEX oauth_access_token_refresh_token ON oauth_access_token (refresh_token);
+CREATE INDEX oauth_access_token_expires_at ON oauth_access_token (expires_at);
+
+/**
+ * Refresh tokens - primary key on the token hash. Duplicate rows cannot be told apart, they are
+ * numbered to keep the first one, rows without a token are dropped.
+ */
+
+ALTER TABLE oauth_refresh_token ADD COLUMN row_id BIGINT NOT NULL AUTO_INCREMENT UNIQUE;
+DELETE FROM oauth_refresh_token WHERE token_id IS NULL OR row_id NOT IN (
+  SELECT kept_id FROM (SELECT MIN(row_id) AS kept_id FROM oauth_refresh_token GROUP BY token_id) kept
+);
+ALTER TABLE oauth_refresh_token DROP COLUMN row_id;
+
+ALTER TABLE oauth_refresh_token MODIFY token_id VARCHAR(255) NOT NULL;
+ALTER TABLE oauth_refresh_token ADD PRIMARY KEY (token_id);
+ALTER TABLE oauth_refresh_token ADD COLUMN expires_at TIMESTAMP NULL;
+
+CREATE INDEX oauth_refresh_token_expires_at ON oauth_refresh_token (expires_at);
@@ -0,0 +1,21 @@
+/**
+ * Leases - lets one node at a time run a scheduled job
+ */
+
+DROP TABLE IF EXISTS scheduler_lease;
+CREATE TABLE scheduler_lease (
+  name VARCHAR(64) PRIMARY KEY,
+  owner VARCHAR(255),
+  expires_at TIMESTAMP NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO scheduler_lease (name, owner, expires_at) VALUES ('tokenReaper', null, null);
+
+/**
+ * Authorization codes - creation time to find abandoned codes
+ */
+
+ALTER TABLE oauth_code ADD COLUMN created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP;
+
+CREATE INDEX oauth_code_code ON oauth_code (code);
+CREATE INDEX oauth_code_created_at ON oauth_code (created_at);
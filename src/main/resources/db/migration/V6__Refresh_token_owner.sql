@@ -0,0 +1,9 @@
+/**
+ * Refresh tokens - owner columns to revoke them by user and client
+ */
+
+ALTER TABLE oauth_refresh_token ADD COLUMN user_name VARCHAR(255);
+ALTER TABLE oauth_refresh_token ADD COLUMN client_id VARCHAR(255);
+
+CREATE INDEX oauth_refresh_token_user_name_client_id ON oauth_refresh_token (user_name, client_id);
+CREATE INDEX oauth_refresh_token_client_id ON oauth_refresh_token (client_id);
@@ -0,0 +1,5 @@
+/**
+ * Users - token epoch, tokens issued in an older epoch are no longer valid
+ */
+
+ALTER TABLE users ADD COLUMN token_epoch BIGINT DEFAULT 0 NOT NULL;
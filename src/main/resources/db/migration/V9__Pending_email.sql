@@ -0,0 +1,5 @@
+/**
+ * Users - pending e-mails are read by every node to keep its filter of registered e-mails current
+ */
+
+CREATE INDEX users_pending_email ON users (pending_email);
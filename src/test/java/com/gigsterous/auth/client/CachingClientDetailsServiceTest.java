@@ -0,0 +1,61 @@
+package com.gigsterous.auth.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+public class CachingClientDetailsServiceTest {
+
+  @Mock
+  private ClientDetailsService delegate;
+
+  private BaseClientDetails client;
+
+  private CachingClientDetailsService clientDetailsService;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    client = new BaseClientDetails("gigy", "resource", "read,write", "password", null);
+    given(delegate.loadClientByClientId("gigy")).willReturn(client);
+    given(delegate.loadClientByClientId("unknown")).willThrow(new NoSuchClientException("No client"));
+
+    clientDetailsService = new CachingClientDetailsService(delegate, 100, Duration.ofMinutes(1));
+  }
+
+  @Test
+  public void testGivenCachedClientWhenLoadingAgainThenDelegateIsQueriedOnce() {
+    clientDetailsService.loadClientByClientId("gigy");
+
+    assertThat(clientDetailsService.loadClientByClientId("gigy"), is(client));
+    verify(delegate, times(1)).loadClientByClientId("gigy");
+  }
+
+  @Test
+  public void testGivenEvictedClientWhenLoadingThenItIsQueriedAgain() {
+    clientDetailsService.loadClientByClientId("gigy");
+    clientDetailsService.evict("gigy");
+    clientDetailsService.loadClientByClientId("gigy");
+
+    verify(delegate, times(2)).loadClientByClientId("gigy");
+  }
+
+  @Test(expected = NoSuchClientException.class)
+  public void testGivenUnknownClientWhenLoadingThenExceptionIsThrown() {
+    clientDetailsService.loadClientByClientId("unknown");
+  }
+
+}
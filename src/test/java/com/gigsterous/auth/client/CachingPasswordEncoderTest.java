@@ -0,0 +1,58 @@
+package com.gigsterous.auth.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+public class CachingPasswordEncoderTest {
+
+  @Mock
+  private PasswordEncoder delegate;
+
+  private CachingPasswordEncoder passwordEncoder;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    given(delegate.matches("secret", "hash")).willReturn(true);
+    given(delegate.matches("secret", "otherHash")).willReturn(false);
+
+    passwordEncoder = new CachingPasswordEncoder(delegate, 100, Duration.ofMinutes(1));
+  }
+
+  @Test
+  public void testGivenVerifiedSecretWhenMatchingAgainThenDelegateIsAskedOnce() {
+    passwordEncoder.matches("secret", "hash");
+
+    assertThat(passwordEncoder.matches("secret", "hash"), is(true));
+    verify(delegate, times(1)).matches("secret", "hash");
+  }
+
+  @Test
+  public void testGivenWrongSecretWhenMatchingAgainThenDelegateIsAskedEveryTime() {
+    passwordEncoder.matches("wrong", "hash");
+
+    assertThat(passwordEncoder.matches("wrong", "hash"), is(false));
+    verify(delegate, times(2)).matches("wrong", "hash");
+  }
+
+  @Test
+  public void testGivenVerifiedSecretWhenHashChangesThenSecretIsVerifiedAgain() {
+    passwordEncoder.matches("secret", "hash");
+
+    assertThat(passwordEncoder.matches("secret", "otherHash"), is(false));
+    verify(delegate).matches("secret", "otherHash");
+  }
+
+}
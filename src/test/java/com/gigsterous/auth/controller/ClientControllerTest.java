@@ -0,0 +1,73 @@
+package com.gigsterous.auth.controller;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.client.CachingClientDetailsService;
+import com.gigsterous.auth.service.TokenService;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(value = ClientController.class, secure = true)
+@AutoConfigureRestDocs(outputDir = "docs/snippets")
+public class ClientControllerTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @MockBean
+  private TokenService tokenService;
+
+  @MockBean
+  private CachingClientDetailsService clientDetailsService;
+
+  @MockBean
+  private AuthProperties properties;
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenClientWhenRevokingItsTokensThenReturnNumberOfRevokedTokens() throws Exception {
+    given(tokenService.revokeClientTokens("gigy")).willReturn(4);
+
+    // @formatter:off
+    this.mvc.perform(delete("/clients/gigy/tokens").with(csrf())).andExpect(status().isOk()).andExpect(jsonPath("$.revoked", is(4))).andDo(document("client-tokens-revoked"));
+    // @formatter:on
+  }
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenClientAndUsernameWhenRevokingTokensThenRevokeOnlyTokensOfThatUser() throws Exception {
+    given(tokenService.revokeClientTokens("gigy", "anna@example.com")).willReturn(2);
+
+    // @formatter:off
+    this.mvc.perform(delete("/clients/gigy/tokens").param("username", "anna@example.com").with(csrf())).andExpect(status().isOk()).andExpect(jsonPath("$.revoked", is(2)));
+    // @formatter:on
+  }
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenClientWhenEvictingItFromCacheThenReturnNoContent() throws Exception {
+    // @formatter:off
+    this.mvc.perform(delete("/clients/gigy/cache").with(csrf())).andExpect(status().isNoContent()).andDo(document("client-cache-evicted"));
+    // @formatter:on
+
+    verify(clientDetailsService).evict("gigy");
+  }
+
+}
@@ -0,0 +1,77 @@
+package com.gigsterous.auth.controller;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class IntrospectionControllerIT {
+
+  private static final ParameterizedTypeReference<Map<String, Object>> MAP =
+      new ParameterizedTypeReference<Map<String, Object>>() {
+      };
+  private static final ParameterizedTypeReference<List<Map<String, Object>>> LIST_OF_MAPS =
+      new ParameterizedTypeReference<List<Map<String, Object>>>() {
+      };
+
+  @Autowired
+  private TestRestTemplate testRestTemplate;
+
+  @Test
+  public void testGivenNoClientCredentialsWhenIntrospectingThenReturnUnauthorized() {
+    // the JDK client cannot read a 401 answer to a streamed POST, the request is rejected before the method matters
+    ResponseEntity<String> response = testRestTemplate.getForEntity("/oauth/introspect?token=unknown", String.class);
+
+    assertThat(response.getStatusCode(), is(HttpStatus.UNAUTHORIZED));
+  }
+
+  @Test
+  public void testGivenIssuedAndUnknownTokenWhenIntrospectingBatchThenOnlyIssuedTokenIsActive() {
+    MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+    form.add("grant_type", "password");
+    form.add("username", "anna@example.com");
+    form.add("password", "password");
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+    Map<String, Object> token = testRestTemplate.withBasicAuth("gigy", "secret")
+        .exchange("/oauth/token", HttpMethod.POST, new HttpEntity<>(form, headers), MAP).getBody();
+
+    ResponseEntity<List<Map<String, Object>>> response = testRestTemplate.withBasicAuth("gigy", "secret").exchange(
+        "/oauth/introspect/batch", HttpMethod.POST, new HttpEntity<>(Arrays.asList(token.get("access_token"),
+            "unknown")), LIST_OF_MAPS);
+
+    assertThat(response.getStatusCode(), is(HttpStatus.OK));
+
+    List<Map<String, Object>> results = response.getBody();
+    assertThat(results.get(0).get("active"), is(true));
+    assertThat(results.get(0).get("username"), is("anna@example.com"));
+    assertThat(results.get(0).get("client_id"), is("gigy"));
+    assertThat(results.get(1).get("active"), is(false));
+  }
+
+}
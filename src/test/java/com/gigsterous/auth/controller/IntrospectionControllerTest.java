@@ -0,0 +1,89 @@
+package com.gigsterous.auth.controller;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.IntrospectionService;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(value = IntrospectionController.class, secure = true)
+@AutoConfigureRestDocs(outputDir = "docs/snippets")
+public class IntrospectionControllerTest {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @MockBean
+  private IntrospectionService introspectionService;
+
+  @MockBean
+  private AuthProperties properties;
+
+  @Before
+  public void setUp() {
+    AuthProperties.Introspection introspection = new AuthProperties.Introspection();
+    introspection.setMaxBatchSize(2);
+    given(properties.getIntrospection()).willReturn(introspection);
+
+    Map<String, Object> active = new LinkedHashMap<>();
+    active.put("active", true);
+    active.put("scope", "read write");
+    active.put("client_id", "gigy");
+    active.put("token_type", "bearer");
+    active.put("username", "john@example.com");
+    active.put("sub", "john@example.com");
+    active.put("exp", 1539856800L);
+
+    given(introspectionService.introspect("b14d9a0c-450d-4fd9-bd46-d5a70422e4c7")).willReturn(active);
+    given(introspectionService.introspect(Arrays.asList("b14d9a0c-450d-4fd9-bd46-d5a70422e4c7", "expired")))
+        .willReturn(Arrays.asList(active, Collections.singletonMap("active", false)));
+  }
+
+  @Test
+  @WithMockUser(username = "gigy", password = "secret")
+  public void testGivenActiveTokenWhenIntrospectingThenReturnItsClaims() throws Exception {
+    // @formatter:off
+    this.mvc.perform(post("/oauth/introspect").with(csrf()).contentType(MediaType.APPLICATION_FORM_URLENCODED).param("token", "b14d9a0c-450d-4fd9-bd46-d5a70422e4c7")).andExpect(status().isOk()).andExpect(jsonPath("$.active", is(true))).andExpect(jsonPath("$.username", is("john@example.com"))).andDo(document("introspect"));
+    // @formatter:on
+  }
+
+  @Test
+  @WithMockUser(username = "gigy", password = "secret")
+  public void testGivenBatchOfTokensWhenIntrospectingThenReturnResponsesInOrder() throws Exception {
+    // @formatter:off
+    this.mvc.perform(post("/oauth/introspect/batch").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"b14d9a0c-450d-4fd9-bd46-d5a70422e4c7\", \"expired\"]")).andExpect(status().isOk()).andExpect(jsonPath("$[0].active", is(true))).andExpect(jsonPath("$[1].active", is(false))).andDo(document("introspect-batch"));
+    // @formatter:on
+  }
+
+  @Test
+  @WithMockUser(username = "gigy", password = "secret")
+  public void testGivenTooManyTokensWhenIntrospectingBatchThenReturnBadRequest() throws Exception {
+    // @formatter:off
+    this.mvc.perform(post("/oauth/introspect/batch").with(csrf()).contentType(MediaType.APPLICATION_JSON).content("[\"a\", \"b\", \"c\"]")).andExpect(status().isBadRequest());
+    // @formatter:on
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.gigsterous.auth.controller;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class LocaleIT {
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Test
+  public void testGivenAnonymousVisitorWhenChangingLanguageThenLocaleIsKeptInCookieWithoutSession()
+      throws Exception {
+    // @formatter:off
+    MvcResult result = this.mvc.perform(get("/").param("lang", "cs"))
+        .andExpect(status().isOk())
+        .andExpect(cookie().value("lang", "cs"))
+        .andReturn();
+    // @formatter:on
+
+    assertThat(result.getRequest().getSession(false), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenLanguageCookieWhenRequestingPageThenItIsRenderedInThatLanguage() throws Exception {
+    // @formatter:off
+    this.mvc.perform(get("/login").cookie(new Cookie("lang", "cs")))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("Přihlášení")));
+    // @formatter:on
+  }
+
+}
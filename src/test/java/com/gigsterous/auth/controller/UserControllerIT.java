@@ -43,4 +43,12 @@ public class UserControllerIT {
     assertThat(response.getStatusCode(), is(HttpStatus.UNAUTHORIZED));
   }
 
+  @Test
+  public void testGivenUnauthorizedUserWhenExportingUsersThenReturnUnauthorized() {
+
+    ResponseEntity<String> response = testRestTemplate.getForEntity("/users/export", String.class);
+
+    assertThat(response.getStatusCode(), is(HttpStatus.UNAUTHORIZED));
+  }
+
 }
@@ -1,16 +1,30 @@
 package com.gigsterous.auth.controller;
 
 import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.gigsterous.auth.AuthProperties;
 import com.gigsterous.auth.model.Role;
 import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.model.UserInfo;
 import com.gigsterous.auth.repository.UserRepository;
+import com.gigsterous.auth.service.UserCache;
+import com.gigsterous.auth.service.UserExportService;
+import com.gigsterous.auth.service.UserFormat;
+import com.gigsterous.auth.service.UserImportService;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -39,6 +53,15 @@ public class UserControllerTest {
   @MockBean
   private UserRepository userRepo;
 
+  @MockBean
+  private UserCache userCache;
+
+  @MockBean
+  private UserExportService userExportService;
+
+  @MockBean
+  private UserImportService userImportService;
+
   @MockBean
   private AuthProperties properties;
 
@@ -66,8 +89,8 @@ public class UserControllerTest {
     users.add(user2);
 
     // mock repository
-    given(userRepo.findOneByEmail("john@example.com")).willReturn(Optional.of(user1));
-    given(userRepo.findAll()).willReturn(users);
+    given(userRepo.findInfoByEmail("john@example.com")).willReturn(Optional.of(new UserInfo(1L, Role.ADMIN, true, 3L)));
+    given(userRepo.findByIdGreaterThanOrderByIdAsc(eq(0L), any())).willReturn(users);
   }
 
   @Test
@@ -78,6 +101,14 @@ public class UserControllerTest {
     // @formatter:on
   }
 
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password")
+  public void testGivenUnchangedUserWhenGettingCurrentUserWithEtagThenReturnNotModified() throws Exception {
+    this.mvc.perform(get("/user").header("If-None-Match", "\"1-3\"")).andExpect(status().isNotModified())
+        .andExpect(header().string("ETag", "\"1-3\"")).andExpect(content().string(""))
+        .andDo(document("user-not-modified"));
+  }
+
   @Test
   @WithMockUser(username = "john@example.com", password = "password")
   public void testGivenUserEndpointWhenGettingAllUsersAsAdminThenStatusIsOk() throws Exception {
@@ -86,4 +117,71 @@ public class UserControllerTest {
     // @formatter:on
   }
 
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenFullPageWhenGettingAllUsersThenLinkToNextPageIsReturned() throws Exception {
+    this.mvc.perform(get("/users").param("size", "2")).andExpect(status().isOk())
+        .andExpect(jsonPath("$.length()", is(2)))
+        .andExpect(header().string("Link", "<http://localhost:8080/users?after=1&size=2>; rel=\"next\""))
+        .andDo(document("users-page"));
+  }
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenAdminWhenExportingUsersThenUsersAreStreamedAsNdjson() throws Exception {
+    given(userExportService.export(any(), eq(UserFormat.NDJSON))).willAnswer(invocation -> {
+      OutputStream out = invocation.getArgument(0);
+      out.write("{\"email\":\"john@example.com\"}\n".getBytes(StandardCharsets.UTF_8));
+      return 1L;
+    });
+
+    this.mvc.perform(get("/users/export")).andExpect(status().isOk())
+        .andExpect(content().contentType("application/x-ndjson"))
+        .andExpect(content().string("{\"email\":\"john@example.com\"}\n")).andDo(document("users-export"));
+  }
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenAdminWhenExportingUsersAsCsvThenUsersAreStreamedAsCsv() throws Exception {
+    String csv = "email,password,role,enabled\njohn@example.com,$2a$10$...,ADMIN,true\n";
+    given(userExportService.export(any(), eq(UserFormat.CSV))).willAnswer(invocation -> {
+      OutputStream out = invocation.getArgument(0);
+      out.write(csv.getBytes(StandardCharsets.UTF_8));
+      return 1L;
+    });
+
+    this.mvc.perform(get("/users/export").accept("text/csv")).andExpect(status().isOk())
+        .andExpect(content().contentType("text/csv")).andExpect(content().string(csv))
+        .andDo(document("users-export-csv"));
+  }
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenAdminWhenImportingUsersThenProgressIsStreamedAsNdjson() throws Exception {
+    String progress = "{\"read\":2,\"imported\":1,\"skippedTotal\":1,\"skipped\":[{\"line\":2,"
+        + "\"email\":\"john@example.com\",\"reason\":\"REGISTERED\"}],\"done\":true}\n";
+    given(userImportService.importUsers(any(), eq(UserFormat.NDJSON), any())).willAnswer(invocation -> {
+      OutputStream out = invocation.getArgument(2);
+      out.write(progress.getBytes(StandardCharsets.UTF_8));
+      return null;
+    });
+
+    String users = "{\"email\":\"jane@example.com\",\"password\":\"$2a$10$...\",\"role\":\"USER\"}\n"
+        + "{\"email\":\"john@example.com\",\"password\":\"$2a$10$...\",\"role\":\"ADMIN\"}\n";
+
+    this.mvc.perform(post("/users/import").with(csrf()).contentType("application/x-ndjson").content(users))
+        .andExpect(status().isOk()).andExpect(content().contentType("application/x-ndjson"))
+        .andExpect(content().string(progress)).andDo(document("users-import"));
+  }
+
+  @Test
+  @WithMockUser(username = "john@example.com", password = "password", roles = "ADMIN")
+  public void testGivenCsvWithoutHeaderWhenImportingUsersThenStatusIsBadRequest() throws Exception {
+    given(userImportService.importUsers(any(), eq(UserFormat.CSV), any()))
+        .willThrow(new IllegalArgumentException("CSV header has to name email and password columns"));
+
+    this.mvc.perform(post("/users/import").with(csrf()).contentType("text/csv").content("jane@example.com,$2a$10$\n"))
+        .andExpect(status().isBadRequest());
+  }
+
 }
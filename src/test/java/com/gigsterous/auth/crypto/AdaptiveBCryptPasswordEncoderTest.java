@@ -0,0 +1,53 @@
+package com.gigsterous.auth.crypto;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+public class AdaptiveBCryptPasswordEncoderTest {
+
+  private AdaptiveBCryptPasswordEncoder passwordEncoder = new AdaptiveBCryptPasswordEncoder(5);
+
+  @Test
+  public void testGivenHashOfSameStrengthWhenCheckingUpgradeThenNoUpgradeIsNeeded() {
+    assertThat(passwordEncoder.upgradeEncoding(passwordEncoder.encode("password")), is(false));
+  }
+
+  @Test
+  public void testGivenHashOfLowerStrengthWhenCheckingUpgradeThenUpgradeIsNeeded() {
+    String hash = new BCryptPasswordEncoder(4).encode("password");
+
+    assertThat(passwordEncoder.matches("password", hash), is(true));
+    assertThat(passwordEncoder.upgradeEncoding(hash), is(true));
+  }
+
+  @Test
+  public void testGivenHashOfHigherStrengthWhenCheckingUpgradeThenItIsKept() {
+    String hash = new BCryptPasswordEncoder(6).encode("password");
+
+    assertThat(passwordEncoder.matches("password", hash), is(true));
+    assertThat(passwordEncoder.upgradeEncoding(hash), is(false));
+  }
+
+  @Test
+  public void testGivenHashOfOtherSchemeWhenCheckingUpgradeThenItIsLeftAlone() {
+    assertThat(passwordEncoder.upgradeEncoding("{noop}password"), is(false));
+    assertThat(passwordEncoder.upgradeEncoding(null), is(false));
+  }
+
+  @Test
+  public void testGivenTargetDurationWhenCalibratingThenStrengthStaysWithinBounds() {
+    assertThat(AdaptiveBCryptPasswordEncoder.calibrated(Duration.ofMillis(1), 4, 6).getStrength(), is(4));
+    assertThat(AdaptiveBCryptPasswordEncoder.calibrated(Duration.ofHours(1), 4, 6).getStrength(), is(6));
+    assertThat(AdaptiveBCryptPasswordEncoder.calibrated(Duration.ofMillis(50), 4, 8).getStrength(),
+        allOf(greaterThanOrEqualTo(4), lessThanOrEqualTo(8)));
+  }
+
+}
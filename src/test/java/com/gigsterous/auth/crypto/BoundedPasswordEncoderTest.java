@@ -0,0 +1,82 @@
+package com.gigsterous.auth.crypto;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+public class BoundedPasswordEncoderTest {
+
+  @Mock
+  private PasswordEncoder delegate;
+
+  private BoundedPasswordEncoder passwordEncoder;
+
+  private ExecutorService callers;
+
+  private SimpleMeterRegistry registry;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    registry = new SimpleMeterRegistry();
+    passwordEncoder = new BoundedPasswordEncoder(delegate, 1, 1);
+    passwordEncoder.bindTo(registry);
+    callers = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    callers.shutdownNow();
+    passwordEncoder.close();
+  }
+
+  @Test
+  public void testGivenPasswordWhenMatchingThenDelegateResultIsReturned() {
+    given(delegate.matches("password", "hash")).willReturn(true);
+    given(delegate.encode("password")).willReturn("hash");
+
+    assertThat(passwordEncoder.matches("password", "hash"), is(true));
+    assertThat(passwordEncoder.encode("password"), is("hash"));
+  }
+
+  @Test(expected = PasswordHashingRejectedException.class, timeout = 10000)
+  public void testGivenFullQueueWhenMatchingThenRequestIsRejected() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    given(delegate.matches("slow", "hash")).willAnswer(invocation -> {
+      started.countDown();
+      return release.await(10, TimeUnit.SECONDS);
+    });
+
+    try {
+      // one password is being matched, the other one waits in the queue
+      callers.submit(() -> passwordEncoder.matches("slow", "hash"));
+      started.await(10, TimeUnit.SECONDS);
+      callers.submit(() -> passwordEncoder.matches("slow", "hash"));
+
+      while (registry.get("passwordHashing.queue").gauge().value() < 1) {
+        Thread.sleep(10);
+      }
+
+      passwordEncoder.matches("password", "hash");
+    } finally {
+      release.countDown();
+    }
+  }
+
+}
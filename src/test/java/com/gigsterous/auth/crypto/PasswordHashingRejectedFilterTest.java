@@ -0,0 +1,35 @@
+package com.gigsterous.auth.crypto;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import javax.servlet.ServletException;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class PasswordHashingRejectedFilterTest {
+
+  private PasswordHashingRejectedFilter filter = new PasswordHashingRejectedFilter(2);
+
+  @Test
+  public void testGivenRejectedPasswordCheckWhenFilteringThenRespondWithServiceUnavailable() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(new MockHttpServletRequest("POST", "/login"), response, (req, res) -> {
+      throw new ServletException(new PasswordHashingRejectedException("Too many passwords"));
+    });
+
+    assertThat(response.getStatus(), is(503));
+    assertThat(response.getHeader("Retry-After"), is("2"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testGivenOtherFailureWhenFilteringThenItIsRethrown() throws Exception {
+    filter.doFilter(new MockHttpServletRequest("POST", "/login"), new MockHttpServletResponse(), (req, res) -> {
+      throw new IllegalStateException("Other failure");
+    });
+  }
+
+}
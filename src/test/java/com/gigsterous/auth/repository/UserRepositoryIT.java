@@ -0,0 +1,61 @@
+package com.gigsterous.auth.repository;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.model.UserInfo;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class UserRepositoryIT {
+
+  @Autowired
+  private UserRepository userRepo;
+
+  private User user;
+
+  @Before
+  public void setUp() {
+    user = new User();
+    user.setEmail(UUID.randomUUID() + "@example.com");
+    user.setPassword("password");
+    user.setRole(Role.USER);
+    user.setEnabled(false);
+
+    user = userRepo.save(user);
+  }
+
+  @After
+  public void tearDown() {
+    userRepo.deleteById(user.getId());
+  }
+
+  @Test
+  public void testGivenSavedUserWhenChangingItThenUserInfoGetsNewEtag() {
+    UserInfo before = userRepo.findInfoByEmail(user.getEmail()).get();
+
+    user.setEnabled(true);
+    userRepo.save(user);
+
+    UserInfo after = userRepo.findInfoByEmail(user.getEmail()).get();
+    assertThat(before.isEnabled(), is(false));
+    assertThat(after.isEnabled(), is(true));
+    assertThat(after.getId(), is(user.getId()));
+    assertThat(after.getETag().equals(before.getETag()), is(false));
+  }
+
+}
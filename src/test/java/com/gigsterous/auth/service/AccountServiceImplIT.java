@@ -0,0 +1,74 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.model.User;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class AccountServiceImplIT {
+
+  private static final String INSERT_SQL = "insert into users (email, password, role, enabled) "
+      + "values (?, 'password', 'USER', true)";
+  private static final String SELECT_LINKS_SQL = "select link from email_outbox where recipient = ? "
+      + "order by email_id";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private AccountService accountService;
+
+  private User user;
+
+  @Before
+  public void setUp() {
+    user = new User();
+    user.setEmail(UUID.randomUUID() + "@example.com");
+    jdbcTemplate.update(INSERT_SQL, user.getEmail());
+  }
+
+  @After
+  public void tearDown() {
+    jdbcTemplate.update("delete from email_outbox where recipient = ?", user.getEmail());
+    jdbcTemplate.update("delete from users where email = ?", user.getEmail());
+  }
+
+  @Test
+  public void testGivenPasswordResetRequestedTwiceWhenUsingFirstLinkThenPasswordIsReset() {
+    accountService.resetPassword(user, Locale.ENGLISH);
+    accountService.resetPassword(user, Locale.ENGLISH);
+
+    // the first e-mail is sent right away, the second one is held back by the throttle
+    List<String> links = jdbcTemplate.queryForList(SELECT_LINKS_SQL, String.class, user.getEmail());
+    assertThat(links, hasSize(2));
+
+    accountService.confirmUser(token(links.get(0)), "changed-password");
+
+    assertThat(jdbcTemplate.queryForObject("select enabled from users where email = ?", Boolean.class,
+        user.getEmail()), is(true));
+    assertThat(accountService.getUserForToken(token(links.get(1))).isPresent(), is(false));
+  }
+
+  private static String token(String link) {
+    return link.substring(link.indexOf("token=") + "token=".length());
+  }
+
+}
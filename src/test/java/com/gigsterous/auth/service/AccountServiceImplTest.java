@@ -5,12 +5,17 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.ConfirmationPurpose;
 import com.gigsterous.auth.model.User;
 import com.gigsterous.auth.repository.UserRepository;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Instant;
 import java.util.Locale;
 import java.util.Optional;
 
@@ -38,6 +43,17 @@ public class AccountServiceImplTest {
   @Mock
   private MessageSource messages;
 
+  @Mock
+  private RegisteredEmails registeredEmails;
+
+  @Mock
+  private ConfirmationTokenService confirmationTokens;
+
+  @Mock
+  private EmailThrottle emailThrottle;
+
+  private static final Instant NOW = Instant.now();
+
   private AuthProperties properties;
   private AccountService accountService;
 
@@ -53,7 +69,11 @@ public class AccountServiceImplTest {
     properties.setRedirectionUrl("http://www.example.com");
     properties.setEmailFrom("noreply@example.com");
 
-    accountService = new AccountServiceImpl(userRepository, emailService, bCryptPasswordEncoder, properties, messages);
+    accountService = new AccountServiceImpl(userRepository, emailService, bCryptPasswordEncoder, properties, messages,
+        new UserCache(userRepository, properties, new SimpleMeterRegistry()), registeredEmails,
+        confirmationTokens, emailThrottle);
+
+    given(emailThrottle.acquire(any())).willReturn(NOW);
 
   }
 
@@ -113,10 +133,11 @@ public class AccountServiceImplTest {
 
     User user = new User();
     user.setEmail("user@example.com");
-    user.setConfirmationToken("1234");
 
     // given existing user
-    given(userRepository.findByConfirmationToken("1234")).willReturn(Optional.of(user));
+    given(confirmationTokens.find("1234", ConfirmationPurpose.REGISTRATION, ConfirmationPurpose.PASSWORD_RESET))
+        .willReturn(Optional.of(1L));
+    given(userRepository.findById(1L)).willReturn(Optional.of(user));
 
     // when getting user for token
     Optional<User> loadedUser = accountService.getUserForToken("1234");
@@ -140,9 +161,11 @@ public class AccountServiceImplTest {
 
     // then email was sent
     verify(emailService).prepareAndSend(mailMessageCaptor.capture(), eq("noreply@example.com"),
-        eq("Registration confirmation"), any(), any(String.class));
+        eq("Registration confirmation"), any(), any(String.class), eq(NOW));
 
     assertThat(mailMessageCaptor.getValue(), is("user@example.com"));
+    verify(registeredEmails).add("user@example.com");
+    verify(confirmationTokens).issue(0L, ConfirmationPurpose.REGISTRATION);
 
   }
 
@@ -162,7 +185,7 @@ public class AccountServiceImplTest {
 
     // then email was sent
     verify(emailService).prepareAndSend(eq("user@example.com"), eq("noreply@example.com"),
-        eq("Registration confirmation"), mailMessageCaptor.capture(), any(String.class));
+        eq("Registration confirmation"), mailMessageCaptor.capture(), any(String.class), eq(NOW));
 
     assertThat(mailMessageCaptor.getValue(), is("Registration email"));
 
@@ -173,12 +196,13 @@ public class AccountServiceImplTest {
 
     User user = new User();
     user.setEmail("user@example.com");
-    user.setConfirmationToken("1234");
     user.setEnabled(false);
     user.setPassword(null);
 
     // given existing user
-    given(userRepository.findByConfirmationToken("1234")).willReturn(Optional.of(user));
+    given(confirmationTokens.consume("1234", ConfirmationPurpose.REGISTRATION, ConfirmationPurpose.PASSWORD_RESET))
+        .willReturn(Optional.of(1L));
+    given(userRepository.findById(1L)).willReturn(Optional.of(user));
     given(bCryptPasswordEncoder.encode("password")).willReturn("encoded");
 
     // when confirming user
@@ -194,11 +218,11 @@ public class AccountServiceImplTest {
   }
 
   @Test
-  public void givenUserWhenResettingPasswordThenUserIsEnabled() {
+  public void givenUserWhenResettingPasswordThenUserStaysEnabledUntilResetTokenIsUsed() {
 
     User user = new User();
+    user.setId(1L);
     user.setEmail("user@example.com");
-    user.setConfirmationToken("1234");
     user.setEnabled(true);
     user.setPassword("secret");
 
@@ -211,11 +235,31 @@ public class AccountServiceImplTest {
     // when resetting password
     accountService.resetPassword(temp, Locale.ENGLISH);
 
-    // then user was updated
-    verify(userRepository).save(userCaptor.capture());
+    // then reset token was issued and user was not changed
+    verify(confirmationTokens).issue(1L, ConfirmationPurpose.PASSWORD_RESET);
+    verify(userRepository, never()).save(any());
 
-    User updatedUser = userCaptor.getValue();
-    assertThat(updatedUser.isEnabled(), is(true));
+    assertThat(user.isEnabled(), is(true));
+
+  }
+
+  @Test
+  public void givenEmailHeldBackWhenResettingPasswordThenPreviousTokenIsKept() {
+
+    User user = new User();
+    user.setId(1L);
+    user.setEmail("user@example.com");
+
+    // given existing user with a reset e-mail sent a moment ago
+    given(userRepository.findOneByEmail("user@example.com")).willReturn(Optional.of(user));
+    given(emailThrottle.acquire("user@example.com")).willReturn(NOW.plusSeconds(300));
+
+    // when resetting password again
+    accountService.resetPassword(user, Locale.ENGLISH);
+
+    // then another token was issued, without revoking the one sent before
+    verify(confirmationTokens).issueAnother(1L, ConfirmationPurpose.PASSWORD_RESET);
+    verify(confirmationTokens, never()).issue(1L, ConfirmationPurpose.PASSWORD_RESET);
 
   }
 
@@ -224,7 +268,6 @@ public class AccountServiceImplTest {
 
     User user = new User();
     user.setEmail("user@example.com");
-    user.setConfirmationToken("1234");
     user.setEnabled(true);
     user.setPassword("secret");
 
@@ -239,12 +282,31 @@ public class AccountServiceImplTest {
 
     // then email was sent
     verify(emailService).prepareAndSend(mailMessageCaptor.capture(), eq("noreply@example.com"), eq("Password reset"),
-        any(), any(String.class));
+        any(), any(String.class), eq(NOW));
 
     assertThat(mailMessageCaptor.getValue(), is("user@example.com"));
 
   }
 
+  @Test
+  public void givenTooManyEmailsWhenResettingPasswordThenNoTokenIsIssuedAndNoEmailIsSent() {
+
+    User user = new User();
+    user.setEmail("user@example.com");
+
+    // given existing user over the limit of e-mails
+    given(userRepository.findOneByEmail("user@example.com")).willReturn(Optional.of(user));
+    given(emailThrottle.acquire("user@example.com")).willReturn(null);
+
+    // when resetting password
+    accountService.resetPassword(user, Locale.ENGLISH);
+
+    // then nothing was sent
+    verify(confirmationTokens, never()).issue(0L, ConfirmationPurpose.PASSWORD_RESET);
+    verify(emailService, never()).prepareAndSend(any(), any(), any(), any(), any(), any());
+
+  }
+
   @Test
   public void givenPasswordChangeWhenOldPasswordMatchesThenReturnTrue() {
     User user = new User();
@@ -353,4 +415,28 @@ public class AccountServiceImplTest {
         any(String.class));
   }
 
+  @Test
+  public void givenEmailChangeTokenWhenVerifyingEmailThenPendingEmailBecomesEmail() {
+    User user = new User();
+    user.setEmail("user@example.com");
+    user.setPendingEmail("user2@example.com");
+
+    given(confirmationTokens.consume("1234", ConfirmationPurpose.EMAIL_CHANGE)).willReturn(Optional.of(1L));
+    given(userRepository.findById(1L)).willReturn(Optional.of(user));
+
+    Optional<User> verified = accountService.verifyEmail("1234");
+
+    assertThat(verified.get().getEmail(), is("user2@example.com"));
+    assertThat(verified.get().getPendingEmail(), is((String) null));
+    verify(userRepository).save(user);
+  }
+
+  @Test
+  public void givenInvalidTokenWhenVerifyingEmailThenNothingIsSaved() {
+    given(confirmationTokens.consume("1234", ConfirmationPurpose.EMAIL_CHANGE)).willReturn(Optional.empty());
+
+    assertThat(accountService.verifyEmail("1234").isPresent(), is(false));
+    verify(userRepository, never()).save(any());
+  }
+
 }
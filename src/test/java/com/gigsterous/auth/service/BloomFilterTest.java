@@ -0,0 +1,40 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+  private BloomFilter filter = new BloomFilter(10000, 0.01);
+
+  @Test
+  public void testGivenAddedStringsWhenLookingUpThenAllMightBeContained() {
+    for (int i = 0; i < 10000; i++) {
+      filter.put("user" + i + "@example.com");
+    }
+
+    for (int i = 0; i < 10000; i++) {
+      assertThat(filter.mightContain("user" + i + "@example.com"), is(true));
+    }
+  }
+
+  @Test
+  public void testGivenFullFilterWhenLookingUpOtherStringsThenFewFalsePositives() {
+    for (int i = 0; i < 10000; i++) {
+      filter.put("user" + i + "@example.com");
+    }
+
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (filter.mightContain("other" + i + "@example.com")) {
+        falsePositives++;
+      }
+    }
+
+    assertThat(falsePositives, is(lessThan(200)));
+  }
+
+}
@@ -0,0 +1,103 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.ConfirmationPurpose;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class ConfirmationTokenServiceIT {
+
+  private static final String INSERT_SQL = "insert into users (email, password, role, enabled) "
+      + "values (?, 'password', 'USER', false)";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private AuthProperties properties;
+
+  private ConfirmationTokenService confirmationTokens;
+
+  private String email;
+
+  private long userId;
+
+  @Before
+  public void setUp() {
+    properties = new AuthProperties();
+    confirmationTokens = new ConfirmationTokenService(jdbcTemplate, properties);
+
+    email = UUID.randomUUID() + "@example.com";
+    jdbcTemplate.update(INSERT_SQL, email);
+    userId = jdbcTemplate.queryForObject("select user_id from users where email = ?", Long.class, email);
+  }
+
+  @After
+  public void tearDown() {
+    jdbcTemplate.update("delete from users where user_id = ?", userId);
+  }
+
+  @Test
+  public void testGivenIssuedTokenWhenFindingThenUserIsFoundOnlyForItsPurpose() {
+    String token = confirmationTokens.issue(userId, ConfirmationPurpose.REGISTRATION);
+
+    assertThat(confirmationTokens.find(token, ConfirmationPurpose.REGISTRATION), is(Optional.of(userId)));
+    assertThat(confirmationTokens.find(token, ConfirmationPurpose.EMAIL_CHANGE), is(Optional.empty()));
+    assertThat(jdbcTemplate.queryForObject("select count(*) from confirmation_tokens where token_hash = ?",
+        Integer.class, token), is(0));
+  }
+
+  @Test
+  public void testGivenConsumedTokenWhenUsingAgainThenItIsRejected() {
+    String token = confirmationTokens.issue(userId, ConfirmationPurpose.PASSWORD_RESET);
+
+    assertThat(confirmationTokens.consume(token, ConfirmationPurpose.PASSWORD_RESET), is(Optional.of(userId)));
+    assertThat(confirmationTokens.consume(token, ConfirmationPurpose.PASSWORD_RESET), is(Optional.empty()));
+  }
+
+  @Test
+  public void testGivenNewTokenWhenUsingPreviousOneThenItIsRejected() {
+    String previous = confirmationTokens.issue(userId, ConfirmationPurpose.EMAIL_CHANGE);
+    String token = confirmationTokens.issue(userId, ConfirmationPurpose.EMAIL_CHANGE);
+
+    assertThat(token, is(not(previous)));
+    assertThat(confirmationTokens.find(previous, ConfirmationPurpose.EMAIL_CHANGE), is(Optional.empty()));
+    assertThat(confirmationTokens.find(token, ConfirmationPurpose.EMAIL_CHANGE), is(Optional.of(userId)));
+  }
+
+  @Test
+  public void testGivenAnotherTokenWhenUsingPreviousOneThenBothAreRevoked() {
+    String previous = confirmationTokens.issue(userId, ConfirmationPurpose.PASSWORD_RESET);
+    String token = confirmationTokens.issueAnother(userId, ConfirmationPurpose.PASSWORD_RESET);
+
+    assertThat(confirmationTokens.consume(previous, ConfirmationPurpose.PASSWORD_RESET), is(Optional.of(userId)));
+    assertThat(confirmationTokens.find(token, ConfirmationPurpose.PASSWORD_RESET), is(Optional.empty()));
+  }
+
+  @Test
+  public void testGivenExpiredTokenWhenFindingThenItIsRejected() {
+    properties.getConfirmationTokens().setPasswordResetValidity(Duration.ofMinutes(-1));
+    String token = confirmationTokens.issue(userId, ConfirmationPurpose.PASSWORD_RESET);
+
+    assertThat(confirmationTokens.find(token, ConfirmationPurpose.PASSWORD_RESET), is(Optional.empty()));
+  }
+
+}
@@ -0,0 +1,163 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.AuthProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class EmailDispatcherIT {
+
+  @Autowired
+  private EmailService emailService;
+
+  @Autowired
+  private LeaseService leaseService;
+
+  @Autowired
+  private MailContentBuilder mailContentBuilder;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private SmtpServerStub smtpServer;
+
+  private JavaMailSenderImpl mailSender;
+
+  private MeterRegistry meterRegistry;
+
+  private EmailDispatcher emailDispatcher;
+
+  @Before
+  public void setUp() throws Exception {
+    jdbcTemplate.update("delete from email_outbox");
+
+    smtpServer = new SmtpServerStub();
+
+    mailSender = new JavaMailSenderImpl();
+    mailSender.setHost("localhost");
+    mailSender.setPort(smtpServer.getPort());
+
+    AuthProperties.EmailOutbox properties = new AuthProperties.EmailOutbox();
+    properties.setBatchSize(2);
+    properties.setInitialBackoff(Duration.ofMinutes(1));
+
+    meterRegistry = new SimpleMeterRegistry();
+    emailDispatcher = new EmailDispatcher(jdbcTemplate, leaseService, mailSender, mailContentBuilder, properties,
+        meterRegistry);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    smtpServer.close();
+    jdbcTemplate.update("delete from email_outbox");
+  }
+
+  @Test
+  public void testGivenQueuedEmailsWhenDispatchingThenTheyAreSentInBatchesAndDeleted() {
+    queue("anna@example.com");
+    queue("heather@example.com");
+    queue("john@example.com");
+
+    emailDispatcher.dispatch();
+
+    assertThat(smtpServer.getRecipients(),
+        containsInAnyOrder("anna@example.com", "heather@example.com", "john@example.com"));
+    assertThat(smtpServer.getConnections(), is(2));
+    assertThat(queued(), is(0));
+    assertThat(meterRegistry.get("emailOutbox.delay").timer().count(), is(3L));
+    assertThat(meterRegistry.get("emailOutbox.size").gauge().value(), is(0.0));
+  }
+
+  @Test
+  public void testGivenRejectedRecipientWhenDispatchingThenOnlyItsEmailIsTriedLater() {
+    smtpServer.reject("heather@example.com");
+    queue("anna@example.com");
+    queue("heather@example.com");
+
+    emailDispatcher.dispatch();
+
+    assertThat(smtpServer.getRecipients(), containsInAnyOrder("anna@example.com"));
+    Map<String, Object> retry = jdbcTemplate.queryForMap("select recipient, attempts, "
+        + "next_attempt_at > created_at as later from email_outbox");
+    assertThat(retry.get("recipient"), is("heather@example.com"));
+    assertThat(retry.get("attempts"), is(1));
+    assertThat(retry.get("later"), is(true));
+
+    // not due yet
+    emailDispatcher.dispatch();
+
+    assertThat(queued(), is(1));
+    assertThat(meterRegistry.get("emailOutbox.size").gauge().value(), is(1.0));
+  }
+
+  @Test
+  public void testGivenUnreachableMailServerWhenDispatchingThenEmailsAreKept() throws Exception {
+    queue("anna@example.com");
+    smtpServer.close();
+
+    emailDispatcher.dispatch();
+
+    assertThat(jdbcTemplate.queryForObject("select attempts from email_outbox", Integer.class), is(1));
+    assertThat(meterRegistry.get("emailOutbox.retried").counter().count(), is(1.0));
+  }
+
+  @Test
+  public void testGivenWaitingEmailWhenQueueingAnotherThenOnlyTheNewestLinkIsKept() {
+    Instant sendAt = Instant.now().plusSeconds(60);
+    emailService.prepareAndSend("anna@example.com", "noreply@example.com", "Test", "Hello!", "http://localhost/1",
+        sendAt);
+    emailService.prepareAndSend("anna@example.com", "noreply@example.com", "Test", "Hello!", "http://localhost/2",
+        sendAt);
+
+    emailDispatcher.dispatch();
+
+    assertThat(smtpServer.getRecipients().isEmpty(), is(true));
+    assertThat(jdbcTemplate.queryForObject("select link from email_outbox", String.class), is("http://localhost/2"));
+  }
+
+  @Test
+  public void testGivenEmailOlderThanRetentionWhenDispatchingThenItIsDropped() {
+    smtpServer.reject("heather@example.com");
+    queue("heather@example.com");
+    jdbcTemplate.update("update email_outbox set created_at = ?",
+        Timestamp.from(Instant.now().minus(Duration.ofHours(2))));
+
+    emailDispatcher.dispatch();
+
+    assertThat(smtpServer.getRecipients().isEmpty(), is(true));
+    assertThat(queued(), is(0));
+    assertThat(meterRegistry.get("emailOutbox.dropped").counter().count(), is(1.0));
+  }
+
+  private void queue(String to) {
+    emailService.prepareAndSend(to, "noreply@example.com", "Test", "Hello!", "http://www.example.com");
+  }
+
+  private int queued() {
+    return jdbcTemplate.queryForObject("select count(*) from email_outbox", Integer.class);
+  }
+
+}
@@ -1,24 +1,25 @@
 package com.gigsterous.auth.service;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
-import javax.mail.MessagingException;
+import java.sql.Timestamp;
+import java.time.Instant;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessagePreparator;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 public class EmailServiceTest {
 
   @Mock
-  private JavaMailSender mailSender;
-
-  @Mock
-  private MailContentBuilder contentBuilder;
+  private JdbcTemplate jdbcTemplate;
 
   private EmailService emailService;
 
@@ -26,14 +27,28 @@ public class EmailServiceTest {
   public void setUp() {
     MockitoAnnotations.initMocks(this);
 
-    emailService = new EmailService(mailSender, contentBuilder);
+    emailService = new EmailService(jdbcTemplate);
   }
 
   @Test
-  public void testGivenEmailServiceWhenSendingEmailThenVerifyEmailSentThroughMailSender() throws MessagingException {
+  public void testGivenEmailServiceWhenSendingEmailThenVerifyEmailQueuedInOutbox() {
     emailService.prepareAndSend("john@example.com", "noreply@example.com", "test", "Hello!", "http://www.example.com");
 
-    verify(mailSender).send(any(MimeMessagePreparator.class));
+    verify(jdbcTemplate).update(startsWith("insert into email_outbox"), eq("john@example.com"),
+        eq("noreply@example.com"), eq("test"), eq("Hello!"), eq("http://www.example.com"), any(Timestamp.class),
+        any(Timestamp.class));
+  }
+
+  @Test
+  public void testGivenWaitingEmailWhenSendingLaterThenItsLinkIsReplacedInsteadOfQueueingAnother() {
+    given(jdbcTemplate.update(startsWith("update email_outbox"), eq("Hello!"), eq("http://www.example.com/2"),
+        eq("john@example.com"), eq("test"), any(Timestamp.class))).willReturn(1);
+
+    emailService.prepareAndSend("john@example.com", "noreply@example.com", "test", "Hello!", "http://www.example.com/2",
+        Instant.now().plusSeconds(60));
+
+    verify(jdbcTemplate, never()).update(startsWith("insert into email_outbox"), any(), any(), any(), any(), any(),
+        any(), any());
   }
 
 }
@@ -0,0 +1,62 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.AuthProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EmailThrottleTest {
+
+  private AuthProperties properties;
+
+  private MeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() {
+    properties = new AuthProperties();
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @Test
+  public void testGivenRepeatedEmailsWithinWindowWhenAcquiringThenTheyAreMergedIntoOneSentAtItsEnd() {
+    EmailThrottle emailThrottle = new EmailThrottle(properties, meterRegistry);
+
+    Instant first = emailThrottle.acquire("john@example.com");
+    Instant second = emailThrottle.acquire("John@example.com ");
+    Instant third = emailThrottle.acquire("john@example.com");
+
+    assertThat(first.isAfter(Instant.now()), is(false));
+    assertThat(second, is(first.plus(properties.getEmailThrottle().getWindow())));
+    assertThat(third, is(second));
+    assertThat(suppressed("coalesced"), is(1.0));
+  }
+
+  @Test
+  public void testGivenTooManyEmailsWithinHourWhenAcquiringThenNoMoreAreSent() {
+    properties.getEmailThrottle().setWindow(Duration.ZERO);
+    properties.getEmailThrottle().setMaxPerHour(2);
+    EmailThrottle emailThrottle = new EmailThrottle(properties, meterRegistry);
+
+    emailThrottle.acquire("john@example.com");
+    emailThrottle.acquire("john@example.com");
+
+    assertThat(emailThrottle.acquire("john@example.com"), is(nullValue()));
+    assertThat(emailThrottle.acquire("anna@example.com") != null, is(true));
+    assertThat(suppressed("limited"), is(1.0));
+  }
+
+  private double suppressed(String reason) {
+    return meterRegistry.get("emailThrottle.suppressed").tag("reason", reason).counter().count();
+  }
+
+}
@@ -0,0 +1,62 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class LeaseServiceIT {
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private LeaseService node;
+
+  private LeaseService otherNode;
+
+  private String lease;
+
+  @Before
+  public void setUp() {
+    node = new LeaseService(jdbcTemplate);
+    otherNode = new LeaseService(jdbcTemplate);
+    lease = UUID.randomUUID().toString().substring(0, 32);
+  }
+
+  @Test
+  public void testGivenHeldLeaseWhenAnotherNodeAcquiresThenItIsRefused() {
+    assertThat(node.tryAcquire(lease, Duration.ofMinutes(1)), is(true));
+    assertThat(node.tryAcquire(lease, Duration.ofMinutes(1)), is(true));
+
+    assertThat(otherNode.tryAcquire(lease, Duration.ofMinutes(1)), is(false));
+  }
+
+  @Test
+  public void testGivenReleasedLeaseWhenAnotherNodeAcquiresThenItIsGranted() {
+    node.tryAcquire(lease, Duration.ofMinutes(1));
+    node.release(lease);
+
+    assertThat(otherNode.tryAcquire(lease, Duration.ofMinutes(1)), is(true));
+  }
+
+  @Test
+  public void testGivenExpiredLeaseWhenAnotherNodeAcquiresThenItIsGranted() {
+    node.tryAcquire(lease, Duration.ofMillis(-1));
+
+    assertThat(otherNode.tryAcquire(lease, Duration.ofMinutes(1)), is(true));
+  }
+
+}
@@ -0,0 +1,93 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import org.thymeleaf.templateresolver.ITemplateResolver;
+import org.thymeleaf.templateresolver.TemplateResolution;
+
+public class MailContentBuilderTest {
+
+  private final AtomicInteger renders = new AtomicInteger();
+
+  private TemplateEngine templateEngine;
+
+  private MailContentBuilder mailContentBuilder;
+
+  @Before
+  public void setUp() {
+    ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+    templateResolver.setPrefix("templates/");
+    templateResolver.setSuffix(".html");
+    templateResolver.setTemplateMode(TemplateMode.HTML);
+    templateResolver.setCacheable(false);
+
+    templateEngine = new TemplateEngine();
+    templateEngine.setTemplateResolver(new ITemplateResolver() {
+
+      @Override
+      public String getName() {
+        return templateResolver.getName();
+      }
+
+      @Override
+      public Integer getOrder() {
+        return templateResolver.getOrder();
+      }
+
+      @Override
+      public TemplateResolution resolveTemplate(IEngineConfiguration configuration, String ownerTemplate,
+          String template, Map<String, Object> templateResolutionAttributes) {
+        // resolved on every render, as nothing is cached
+        renders.incrementAndGet();
+        return templateResolver.resolveTemplate(configuration, ownerTemplate, template, templateResolutionAttributes);
+      }
+
+    });
+
+    mailContentBuilder = new MailContentBuilder(templateEngine, new SimpleMeterRegistry());
+  }
+
+  @Test
+  public void testGivenLinkWithSpecialCharactersWhenBuildingThenContentIsTheSameAsRenderedByTemplate() {
+    String message = "To confirm your <e-mail> address, please click the link below:";
+    String link = "http://localhost:9000/auth/confirmRedirect?token=a&b=\"c'";
+
+    assertThat(mailContentBuilder.build(message, link), is(render(message, link)));
+    assertThat(mailContentBuilder.build(message, "http://www.example.com"),
+        is(render(message, "http://www.example.com")));
+    assertThat(mailContentBuilder.build(message, null), is(render(message, null)));
+  }
+
+  @Test
+  public void testGivenSameMessageWhenBuildingTwiceThenTemplateIsRenderedOnce() {
+    String first = mailContentBuilder.build("Hello!", "http://www.example.com/1");
+    String second = mailContentBuilder.build("Hello!", "http://www.example.com/2");
+
+    assertThat(first, containsString("href=\"http://www.example.com/1\""));
+    assertThat(second, containsString("href=\"http://www.example.com/2\""));
+    assertThat(renders.get(), is(1));
+  }
+
+  private String render(String message, String link) {
+    Context context = new Context();
+    context.setVariable("message", message);
+    context.setVariable("link", link);
+
+    return templateEngine.process(MailContentBuilder.TEMPLATE, context);
+  }
+
+}
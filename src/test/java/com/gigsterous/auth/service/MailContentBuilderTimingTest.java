@@ -0,0 +1,88 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+@Slf4j
+public class MailContentBuilderTimingTest {
+
+  private static final String MESSAGE = "To confirm your e-mail address, please click the link below:";
+  private static final int WARMUP = 2000;
+  private static final int ITERATIONS = 10000;
+
+  private TemplateEngine templateEngine;
+
+  private MailContentBuilder mailContentBuilder;
+
+  @Before
+  public void setUp() {
+    ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+    templateResolver.setPrefix("templates/");
+    templateResolver.setSuffix(".html");
+    templateResolver.setTemplateMode(TemplateMode.HTML);
+    templateResolver.setCacheable(true);
+
+    templateEngine = new TemplateEngine();
+    templateEngine.setTemplateResolver(templateResolver);
+
+    mailContentBuilder = new MailContentBuilder(templateEngine, new SimpleMeterRegistry());
+  }
+
+  @Test
+  public void testGivenManyLinksWhenBuildingThenSplicedAndRenderedMessagesAreEqual() {
+    // rendering every e-mail as before, against splicing the link into the skeleton of the message; timings
+    // depend on the machine and are only logged
+    assertThat(mailContentBuilder.build(MESSAGE, link(0)), is(render(link(0))));
+    assertThat(mailContentBuilder.build(MESSAGE, link(ITERATIONS)), is(render(link(ITERATIONS))));
+
+    long rendered = time(i -> render(link(i)));
+    long spliced = time(i -> mailContentBuilder.build(MESSAGE, link(i)));
+
+    log.info("Built {} e-mails in {} ms by rendering, in {} ms by splicing", ITERATIONS,
+        TimeUnit.NANOSECONDS.toMillis(rendered), TimeUnit.NANOSECONDS.toMillis(spliced));
+  }
+
+  private long time(IntFunction<String> build) {
+    int length = 0;
+    for (int i = 0; i < WARMUP; i++) {
+      length += build.apply(i).length();
+    }
+
+    long started = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      length += build.apply(i).length();
+    }
+    long elapsed = System.nanoTime() - started;
+
+    // keeps the results from being optimized away
+    assertThat(length > 0, is(true));
+    return elapsed;
+  }
+
+  private String render(String link) {
+    Context context = new Context();
+    context.setVariable("message", MESSAGE);
+    context.setVariable("link", link);
+
+    return templateEngine.process(MailContentBuilder.TEMPLATE, context);
+  }
+
+  private static String link(int i) {
+    return "http://localhost:9000/auth/confirmRedirect?token=" + i;
+  }
+
+}
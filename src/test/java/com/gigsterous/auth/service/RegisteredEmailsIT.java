@@ -0,0 +1,111 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.AuthProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class RegisteredEmailsIT {
+
+  private static final String INSERT_SQL = "insert into users (email, pending_email, password, role, enabled) "
+      + "values (?, ?, 'password', 'USER', false)";
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  private RegisteredEmails registeredEmails;
+
+  private AuthProperties properties;
+
+  private String email;
+  private String otherEmail;
+
+  @Before
+  public void setUp() {
+    properties = new AuthProperties();
+    registeredEmails = new RegisteredEmails(jdbcTemplate, properties, new SimpleMeterRegistry());
+    email = UUID.randomUUID() + "@example.com";
+    otherEmail = UUID.randomUUID() + "@example.com";
+  }
+
+  @After
+  public void tearDown() {
+    jdbcTemplate.update("delete from users where email in (?, ?)", email, otherEmail);
+  }
+
+  @Test
+  public void testGivenFilterNotBuiltWhenCheckingThenEveryEmailMightBeRegistered() {
+    assertThat(registeredEmails.mightBeRegistered(email), is(true));
+  }
+
+  @Test
+  public void testGivenBuiltFilterWhenCheckingThenOnlyUsersMightBeRegistered() {
+    registeredEmails.rebuild();
+
+    assertThat(registeredEmails.mightBeRegistered("John@example.com"), is(true));
+    assertThat(registeredEmails.mightBeRegistered(email), is(false));
+
+    registeredEmails.add(email);
+
+    assertThat(registeredEmails.mightBeRegistered(email), is(true));
+  }
+
+  @Test
+  public void testGivenUserSavedByOtherNodeWhenRefreshingThenEmailAndPendingEmailAreAdded() {
+    registeredEmails.rebuild();
+    String pendingEmail = UUID.randomUUID() + "@example.com";
+    jdbcTemplate.update(INSERT_SQL, email, pendingEmail);
+
+    registeredEmails.refresh();
+
+    assertThat(registeredEmails.mightBeRegistered(email), is(true));
+    assertThat(registeredEmails.mightBeRegistered(pendingEmail), is(true));
+  }
+
+  @Test
+  public void testGivenLowerUserIdCommittedLateWhenRefreshingThenEmailIsAdded() {
+    jdbcTemplate.update(INSERT_SQL, email, null);
+    long userId = jdbcTemplate.queryForObject("select user_id from users where email = ?", Long.class, email);
+    jdbcTemplate.update(INSERT_SQL, otherEmail, null);
+    jdbcTemplate.update("delete from users where email = ?", email);
+    registeredEmails.rebuild();
+
+    // the lower id is inserted after the higher one was read, like a transaction committing late
+    jdbcTemplate.update("insert into users (user_id, email, password, role, enabled) "
+        + "values (?, ?, 'password', 'USER', false)", userId, email);
+    registeredEmails.refresh();
+
+    assertThat(registeredEmails.mightBeRegistered(email), is(true));
+  }
+
+  @Test
+  public void testGivenSmallPagesWhenBuildingThenAllUsersAreRead() {
+    properties.getEmailFilter().setPageSize(1);
+    registeredEmails = new RegisteredEmails(jdbcTemplate, properties, new SimpleMeterRegistry());
+
+    registeredEmails.rebuild();
+
+    assertThat(registeredEmails.mightBeRegistered("john@example.com"), is(true));
+    assertThat(registeredEmails.mightBeRegistered("anna@example.com"), is(true));
+    assertThat(registeredEmails.mightBeRegistered("heather@example.com"), is(true));
+    assertThat(registeredEmails.mightBeRegistered(email), is(false));
+  }
+
+}
@@ -0,0 +1,111 @@
+package com.gigsterous.auth.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * In-process SMTP server for tests. Accepts every message, except those to
+ * rejected recipients, and keeps them together with the number of
+ * connections it served.
+ * </p>
+ */
+class SmtpServerStub implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+  private final Thread acceptor;
+
+  private final List<String> recipients = new CopyOnWriteArrayList<>();
+  private final Set<String> rejectedRecipients = new CopyOnWriteArraySet<>();
+  private final AtomicInteger connections = new AtomicInteger();
+
+  SmtpServerStub() throws IOException {
+    serverSocket = new ServerSocket(0);
+    acceptor = new Thread(this::accept, "smtp-stub");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  int getConnections() {
+    return connections.get();
+  }
+
+  List<String> getRecipients() {
+    return recipients;
+  }
+
+  void reject(String recipient) {
+    rejectedRecipients.add(recipient);
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try (Socket socket = serverSocket.accept()) {
+        connections.incrementAndGet();
+        serve(socket);
+      } catch (SocketException e) {
+        // closed
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  private void serve(Socket socket) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+    OutputStream out = socket.getOutputStream();
+    String recipient = null;
+
+    reply(out, "220 localhost");
+
+    String line;
+    while ((line = in.readLine()) != null) {
+      String command = line.toUpperCase(Locale.ROOT);
+
+      if (command.startsWith("RCPT TO:")) {
+        recipient = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+        reply(out, rejectedRecipients.contains(recipient) ? "550 rejected" : "250 OK");
+      } else if (command.startsWith("DATA")) {
+        reply(out, "354 go ahead");
+        String data;
+        while ((data = in.readLine()) != null && !".".equals(data)) {
+          // message content is not kept
+        }
+        recipients.add(recipient);
+        reply(out, "250 OK");
+      } else if (command.startsWith("QUIT")) {
+        reply(out, "221 bye");
+        return;
+      } else {
+        reply(out, "250 OK");
+      }
+    }
+  }
+
+  private static void reply(OutputStream out, String reply) throws IOException {
+    out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.flush();
+  }
+
+}
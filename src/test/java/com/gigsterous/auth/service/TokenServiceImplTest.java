@@ -1,8 +1,14 @@
 package com.gigsterous.auth.service;
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.gigsterous.auth.token.BulkTokenStore;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -20,6 +26,9 @@ public class TokenServiceImplTest {
   @Mock
   private JdbcTokenStore tokenStore;
 
+  @Mock
+  private TokenEpochService tokenEpochService;
+
   @Mock
   private OAuth2AccessToken accessToken;
 
@@ -32,7 +41,7 @@ public class TokenServiceImplTest {
   public void setUp() {
     MockitoAnnotations.initMocks(this);
 
-    tokenService = new TokenServiceImpl(tokenStore);
+    tokenService = new TokenServiceImpl(tokenStore, tokenEpochService);
   }
 
   @Test
@@ -51,4 +60,35 @@ public class TokenServiceImplTest {
     verify(tokenStore).removeRefreshToken(refreshToken);
   }
 
+  @Test
+  public void testGivenUsernameWhenInvalidatingTokensThenMoveTokenEpochWithoutTouchingTokens() {
+    tokenService.invalidateTokens("john@example.com");
+
+    verify(tokenEpochService).increment("john@example.com");
+    verifyNoMoreInteractions(tokenStore);
+  }
+
+  @Test
+  public void testGivenBulkTokenStoreWhenRevokingTokensThenRemoveThemInOneGo() {
+    BulkTokenStore bulkTokenStore = mock(BulkTokenStore.class);
+    given(bulkTokenStore.removeTokensByUserName("john@example.com")).willReturn(6);
+
+    assertThat(new TokenServiceImpl(bulkTokenStore, tokenEpochService).revokeTokens("john@example.com"), is(6));
+
+    verify(bulkTokenStore).removeTokensByUserName("john@example.com");
+    verifyNoMoreInteractions(bulkTokenStore);
+  }
+
+  @Test
+  public void testGivenClientIdWhenRevokingClientTokensThenRevokeAllTokensOfClient() {
+    List<OAuth2AccessToken> tokens = new ArrayList<>();
+    tokens.add(accessToken);
+
+    given(tokenStore.findTokensByClientId(eq("gigy"))).willReturn(tokens);
+
+    assertThat(tokenService.revokeClientTokens("gigy"), is(1));
+
+    verify(tokenStore).removeAccessToken(accessToken);
+  }
+
 }
@@ -0,0 +1,82 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.repository.UserRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class UserCacheTest {
+
+  @Mock
+  private UserRepository userRepo;
+
+  private UserCache userCache;
+
+  private User user;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    userCache = new UserCache(userRepo, new AuthProperties(), new SimpleMeterRegistry());
+
+    user = new User();
+    user.setId(1L);
+    user.setEmail("john@example.com");
+    user.setPassword("password");
+    user.setRole(Role.USER);
+    user.setEnabled(true);
+
+    given(userRepo.findOneByEmail("john@example.com")).willReturn(Optional.of(user));
+  }
+
+  @Test
+  public void testGivenCachedUserWhenLookingUpThenDetachedCopyIsReturnedWithoutQuery() {
+    User first = userCache.findByEmail("john@example.com").get();
+    first.setEmail("1");
+
+    User second = userCache.findByEmail("john@example.com").get();
+
+    assertThat(second, is(not(sameInstance(user))));
+    assertThat(second.getEmail(), is("john@example.com"));
+    assertThat(second.getRole(), is(Role.USER));
+    verify(userRepo, times(1)).findOneByEmail("john@example.com");
+  }
+
+  @Test
+  public void testGivenEvictedUserWhenLookingUpThenItIsLoadedAgain() {
+    userCache.findByEmail("john@example.com");
+    user.setPassword("changed");
+
+    userCache.evict(" John@Example.com");
+
+    assertThat(userCache.findByEmail("john@example.com").get().getPassword(), is("changed"));
+    verify(userRepo, times(2)).findOneByEmail("john@example.com");
+  }
+
+  @Test
+  public void testGivenDifferentlyWrittenEmailWhenLookingUpThenRepositoryDecides() {
+    userCache.findByEmail("john@example.com");
+
+    assertThat(userCache.findByEmail("John@example.com").isPresent(), is(false));
+    assertThat(userCache.findByEmail("jane@example.com").isPresent(), is(false));
+  }
+
+}
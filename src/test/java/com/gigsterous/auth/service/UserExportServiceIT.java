@@ -0,0 +1,50 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class UserExportServiceIT {
+
+  @Autowired
+  private UserExportService userExportService;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Test
+  public void testGivenUsersWhenExportingThenOneJsonObjectPerLineIsWrittenInIdOrder() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    long count = userExportService.export(out);
+
+    String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    assertThat(count, is(jdbcTemplate.queryForObject("select count(*) from users", Long.class)));
+    assertThat((long) lines.length, is(count));
+
+    JsonNode first = objectMapper.readTree(lines[0]);
+    assertThat(first.get("email").asText(),
+        is(jdbcTemplate.queryForObject("select email from users order by user_id limit 1", String.class)));
+    assertThat(objectMapper.readTree(lines[1]).get("id").asLong() > first.get("id").asLong(), is(true));
+  }
+
+}
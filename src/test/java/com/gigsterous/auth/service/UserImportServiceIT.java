@@ -0,0 +1,111 @@
+package com.gigsterous.auth.service;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class UserImportServiceIT {
+
+  private static final String HASH = "$2a$04$Jmvnrm5nKnK0xdCTR6i/zOjo1Ux8UGrL2mq2iGG6yC3PXvGZVkmTC";
+
+  @Autowired
+  private UserImportService userImportService;
+
+  @Autowired
+  private UserExportService userExportService;
+
+  @Autowired
+  private RegisteredEmails registeredEmails;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  private final String domain = "@" + UUID.randomUUID() + ".example.com";
+
+  @After
+  public void tearDown() {
+    jdbcTemplate.update("delete from users where email like ?", "%" + domain);
+  }
+
+  @Test
+  public void testGivenNdjsonWhenImportingThenNewUsersAreInsertedAndOthersAreSkipped() throws Exception {
+    String users = user("anna", HASH, "USER") + user("bob", HASH, null) + user("anna", HASH, "USER")
+        + "{\"email\":\"john@example.com\",\"password\":\"" + HASH + "\"}\n" + user("carl", "password", "USER")
+        + "not json\n\n" + user("dora", HASH.replace("$2a$", "$2y$"), "ADMIN");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    UserImportService.Progress progress = userImportService.importUsers(stream(users), UserFormat.NDJSON, out);
+
+    assertThat(progress.getRead(), is(7L));
+    assertThat(progress.getImported(), is(3L));
+    assertThat(progress.getSkippedTotal(), is(4L));
+    assertThat(jdbcTemplate.queryForObject("select role from users where email = ?", String.class, "bob" + domain),
+        is("USER"));
+    assertThat(jdbcTemplate.queryForObject("select password from users where email = ?", String.class,
+        "dora" + domain), is(HASH));
+    assertThat(registeredEmails.mightBeRegistered("anna" + domain), is(true));
+
+    String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    JsonNode last = objectMapper.readTree(lines[lines.length - 1]);
+    assertThat(last.get("done").asBoolean(), is(true));
+    assertThat(last.get("skipped").size(), is(4));
+    assertThat(last.get("skipped").get(0).get("line").asLong(), is(5L));
+    assertThat(last.get("skipped").get(0).get("reason").asText(), is("INVALID"));
+  }
+
+  @Test
+  public void testGivenCsvExportWhenImportingItAgainThenAllUsersAreSkippedAsRegistered() throws Exception {
+    String users = "email,password,role\n\"erik" + domain + "\"," + HASH + ",USER\n";
+    userImportService.importUsers(stream(users), UserFormat.CSV, new ByteArrayOutputStream());
+
+    ByteArrayOutputStream export = new ByteArrayOutputStream();
+    long exported = userExportService.export(export, UserFormat.CSV);
+
+    UserImportService.Progress progress = userImportService.importUsers(new ByteArrayInputStream(export.toByteArray()),
+        UserFormat.CSV, new ByteArrayOutputStream());
+
+    assertThat(progress.getRead(), is(exported));
+    assertThat(progress.getImported(), is(0L));
+    assertThat(progress.getSkippedTotal(), is(exported));
+    assertThat(jdbcTemplate.queryForObject("select enabled from users where email = ?", Boolean.class,
+        "erik" + domain), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGivenCsvWithoutHeaderWhenImportingThenNothingIsImported() throws Exception {
+    userImportService.importUsers(stream("frank" + domain + "," + HASH + "\n"), UserFormat.CSV,
+        new ByteArrayOutputStream());
+  }
+
+  private String user(String name, String password, String role) {
+    return "{\"email\":\"" + name + domain + "\",\"password\":\"" + password + "\""
+        + (role != null ? ",\"role\":\"" + role + "\"" : "") + "}\n";
+  }
+
+  private static ByteArrayInputStream stream(String content) {
+    return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
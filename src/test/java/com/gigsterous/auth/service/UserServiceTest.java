@@ -2,30 +2,47 @@ package com.gigsterous.auth.service;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.crypto.UpgradablePasswordEncoder;
 import com.gigsterous.auth.model.User;
 import com.gigsterous.auth.repository.UserRepository;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import java.util.Optional;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
 public class UserServiceTest {
 
   @Mock
   private UserRepository userRepo;
 
+  @Mock
+  private UpgradablePasswordEncoder passwordEncoder;
+
+  @Mock
+  private RegisteredEmails registeredEmails;
+
   private UserService userService;
 
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
 
-    userService = new UserService(userRepo);
+    userService = new UserService(userRepo, passwordEncoder,
+        new UserCache(userRepo, new AuthProperties(), new SimpleMeterRegistry()), registeredEmails);
+
+    given(registeredEmails.mightBeRegistered("john@example.com")).willReturn(true);
   }
 
   @Test
@@ -36,7 +53,59 @@ public class UserServiceTest {
 
     given(userRepo.findOneByEmail("john@example.com")).willReturn(Optional.of(user));
 
-    assertThat(userService.loadUserByUsername("john@example.com"), is(user));
+    assertThat(userService.loadUserByUsername("john@example.com").getUsername(), is("john@example.com"));
+  }
+
+  @Test(expected = UsernameNotFoundException.class)
+  public void testGivenUnregisteredEmailWhenLoadingUserByUsernameThenFailWithoutQuery() {
+    try {
+      userService.loadUserByUsername("jane@example.com");
+    } finally {
+      verify(userRepo, never()).findOneByEmail("jane@example.com");
+    }
+  }
+
+  @Test
+  public void testGivenOutdatedHashWhenUpgradingPasswordThenNewHashIsSaved() {
+    User user = new User();
+    user.setEmail("john@example.com");
+    user.setPassword("outdated");
+
+    given(userRepo.findOneByEmail("john@example.com")).willReturn(Optional.of(user));
+    given(passwordEncoder.upgradeEncoding("outdated")).willReturn(true);
+    given(passwordEncoder.encode("password")).willReturn("current");
+
+    assertThat(userService.upgradePassword(user, "password"), is(true));
+    assertThat(user.getPassword(), is("current"));
+    verify(userRepo).save(user);
+  }
+
+  @Test
+  public void testGivenPasswordChangedSinceMatchingWhenUpgradingPasswordThenNothingIsSaved() {
+    User cached = new User();
+    cached.setEmail("john@example.com");
+    cached.setPassword("outdated");
+
+    User stored = new User();
+    stored.setEmail("john@example.com");
+    stored.setPassword("changed");
+
+    given(userRepo.findOneByEmail("john@example.com")).willReturn(Optional.of(stored));
+    given(passwordEncoder.upgradeEncoding("outdated")).willReturn(true);
+
+    assertThat(userService.upgradePassword(cached, "password"), is(false));
+    assertThat(stored.getPassword(), is("changed"));
+    verify(userRepo, never()).save(any());
+  }
+
+  @Test
+  public void testGivenCurrentHashWhenUpgradingPasswordThenNothingIsSaved() {
+    User user = new User();
+    user.setEmail("john@example.com");
+    user.setPassword("current");
+
+    assertThat(userService.upgradePassword(user, "password"), is(false));
+    verify(passwordEncoder, never()).encode("password");
   }
 
 }
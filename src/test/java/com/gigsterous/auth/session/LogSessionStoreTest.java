@@ -0,0 +1,86 @@
+package com.gigsterous.auth.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogSessionStoreTest {
+
+  private static final int INITIAL_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  private LogSessionStore sessionStore;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.newFolder("sessions").toPath();
+    sessionStore = new LogSessionStore(directory, INITIAL_SIZE, false);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    sessionStore.close();
+  }
+
+  @Test
+  public void testGivenSavedAndTouchedSessionWhenReopeningThenItIsRestoredWithLastAccess() throws IOException {
+    long now = System.currentTimeMillis();
+    sessionStore.save(session("a", now - 10000, "anna"));
+    sessionStore.save(session("b", now - 10000, "john"));
+    sessionStore.touch("a", now, now + 60000);
+    sessionStore.delete("b");
+
+    sessionStore.close();
+    sessionStore = new LogSessionStore(directory, INITIAL_SIZE, false);
+
+    StoredSession restored = sessionStore.load("a");
+    assertThat(restored.getLastAccessedTime(), is(now));
+    assertThat(new String(restored.getData(), StandardCharsets.UTF_8), is("anna"));
+    assertThat(sessionStore.load("b"), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenExpiredSessionsWhenExpiringThenTheyAreDroppedInBatches() {
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 5; i++) {
+      sessionStore.save(session("expired" + i, now - 120000, "anna"));
+    }
+    sessionStore.save(session("live", now, "john"));
+
+    assertThat(sessionStore.load("expired0"), is(nullValue()));
+    assertThat(sessionStore.expire(now, 2), is(5));
+    assertThat(sessionStore.getStatus().get("sessions"), is(1));
+  }
+
+  @Test
+  public void testGivenFullLogWhenSavingThenItIsCompactedAndSessionsAreKept() {
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 200; i++) {
+      sessionStore.save(session("a", now, "anna" + i));
+      sessionStore.touch("a", now + i, now + i + 60000);
+    }
+
+    assertThat(new String(sessionStore.load("a").getData(), StandardCharsets.UTF_8), is("anna199"));
+    assertThat(sessionStore.load("a").getLastAccessedTime(), is(now + 199));
+    assertThat((long) sessionStore.getStatus().get("generation") > 0, is(true));
+  }
+
+  private static StoredSession session(String id, long lastAccessedTime, String data) {
+    return new StoredSession(id, lastAccessedTime, lastAccessedTime, 60, data.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
@@ -0,0 +1,95 @@
+package com.gigsterous.auth.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.token.StringInterner;
+import com.gigsterous.auth.token.TokenCodec;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.util.SerializationUtils;
+import org.springframework.web.servlet.i18n.SessionLocaleResolver;
+
+public class SessionCodecTest {
+
+  private SessionCodec codec;
+
+  private User user;
+
+  private Map<String, Object> attributes;
+
+  @Before
+  public void setUp() {
+    codec = new SessionCodec(new TokenCodec(new StringInterner(100)));
+
+    user = new User();
+    user.setId(1);
+    user.setEmail("john@example.com");
+    user.setRole(Role.ADMIN);
+    user.setEnabled(true);
+
+    UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(user, null,
+        user.getAuthorities());
+    authentication.setDetails(new WebAuthenticationDetails(new MockHttpServletRequest()));
+
+    attributes = new LinkedHashMap<>();
+    attributes.put(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY,
+        new SecurityContextImpl(authentication));
+    attributes.put(SessionLocaleResolver.LOCALE_SESSION_ATTRIBUTE_NAME, Locale.forLanguageTag("cs"));
+    attributes.put(SessionCodec.CSRF_TOKEN, new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "7c4a1d3e"));
+  }
+
+  @Test
+  public void testGivenSessionOfLoggedInUserWhenEncodingAndDecodingThenAttributesAreRestoredCompactly() {
+    attributes.put("redirect", "/oauth/authorize");
+
+    byte[] encoded = codec.encode(attributes);
+    Map<String, Object> decoded = codec.decode(encoded);
+
+    SecurityContext context = (SecurityContext) decoded.get(
+        HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY);
+    assertThat(((User) context.getAuthentication().getPrincipal()).getEmail(), is("john@example.com"));
+    assertThat(context.getAuthentication().getAuthorities(), is(user.getAuthorities()));
+    assertThat(context.getAuthentication().isAuthenticated(), is(true));
+    assertThat(context.getAuthentication().getDetails(), is(nullValue()));
+    assertThat(decoded.get(SessionLocaleResolver.LOCALE_SESSION_ATTRIBUTE_NAME), is(Locale.forLanguageTag("cs")));
+    assertThat(((CsrfToken) decoded.get(SessionCodec.CSRF_TOKEN)).getToken(), is("7c4a1d3e"));
+    assertThat(decoded.get("redirect"), is("/oauth/authorize"));
+
+    attributes.remove("redirect");
+    assertThat(codec.encode(attributes).length, lessThan(SerializationUtils.serialize(
+        new LinkedHashMap<>(attributes)).length / 10));
+  }
+
+  @Test
+  public void testGivenAttributeWhichCannotBeDeserializedWhenDecodingThenOnlyItIsDropped() {
+    attributes.put("broken", "value");
+    byte[] encoded = codec.encode(attributes);
+    // corrupt the stream magic of the serialized string, the last attribute
+    int magic = encoded.length - SerializationUtils.serialize("value").length;
+    encoded[magic] = 0;
+
+    Map<String, Object> decoded = codec.decode(encoded);
+
+    assertThat(decoded.size(), is(3));
+    assertThat(decoded.containsKey("broken"), is(false));
+  }
+
+}
@@ -0,0 +1,42 @@
+package com.gigsterous.auth.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import javax.servlet.http.HttpSessionEvent;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpSession;
+
+public class SessionCounterTest {
+
+  @Test
+  public void testGivenOpenedAndClosedSessionsWhenCountingThenActiveSessionsArePublished() {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SessionCounter sessionCounter = new SessionCounter(meterRegistry);
+
+    HttpSessionEvent first = new HttpSessionEvent(new MockHttpSession());
+    HttpSessionEvent second = new HttpSessionEvent(new MockHttpSession());
+    sessionCounter.sessionCreated(first);
+    sessionCounter.sessionCreated(second);
+    sessionCounter.sessionDestroyed(first);
+
+    assertThat(meterRegistry.get("httpSessions.active").gauge().value(), is(1.0));
+    assertThat(meterRegistry.get("httpSessions.created").counter().count(), is(2.0));
+  }
+
+  @Test
+  public void testGivenStoredSessionWhenCountingThenItIsCountedOnlyAsCreated() {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SessionCounter sessionCounter = new SessionCounter(meterRegistry);
+
+    sessionCounter.storedSessionCreated();
+
+    assertThat(meterRegistry.get("httpSessions.active").gauge().value(), is(0.0));
+    assertThat(meterRegistry.get("httpSessions.created").counter().count(), is(1.0));
+  }
+
+}
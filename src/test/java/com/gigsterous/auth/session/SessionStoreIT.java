@@ -0,0 +1,96 @@
+package com.gigsterous.auth.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.servlet.http.Cookie;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "auth.sessionStore.type=jdbc")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class SessionStoreIT {
+
+  private static final Pattern CSRF = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @After
+  public void tearDown() {
+    jdbcTemplate.update("delete from http_session");
+  }
+
+  @Test
+  public void testGivenFormLoginWhenNextRequestCarriesSessionCookieThenUserIsLoggedInFromStore() throws Exception {
+    double created = meterRegistry.get("httpSessions.created").counter().count();
+
+    MvcResult page = this.mvc.perform(get("/login")).andExpect(status().isOk()).andReturn();
+    Cookie anonymous = page.getResponse().getCookie("SESSION");
+    Matcher csrf = CSRF.matcher(page.getResponse().getContentAsString());
+    assertThat(csrf.find(), is(true));
+    assertThat(countSessions(anonymous.getValue()), is(1));
+
+    // @formatter:off
+    MvcResult login = this.mvc.perform(post("/login")
+        .cookie(anonymous)
+        .param("username", "anna@example.com")
+        .param("password", "password")
+        .param("_csrf", csrf.group(1)))
+        .andExpect(redirectedUrl("/profile"))
+        .andReturn();
+    // @formatter:on
+
+    Cookie loggedIn = login.getResponse().getCookie("SESSION");
+    assertThat(loggedIn.getValue(), is(not(anonymous.getValue())));
+    assertThat(countSessions(anonymous.getValue()), is(0));
+    assertThat(countSessions(loggedIn.getValue()), is(1));
+
+    MvcResult profile = this.mvc.perform(get("/profile").cookie(loggedIn)).andExpect(status().isOk()).andReturn();
+
+    assertThat(profile.getRequest().getSession(false), is(nullValue()));
+    assertThat(meterRegistry.get("httpSessions.created").counter().count(), is(created + 1));
+  }
+
+  @Test
+  public void testGivenAnonymousVisitorWhenRequestingPageWithoutFormThenNoSessionIsStored() throws Exception {
+    this.mvc.perform(get("/")).andExpect(status().isOk()).andExpect(cookie().doesNotExist("SESSION"));
+
+    assertThat(jdbcTemplate.queryForObject("select count(*) from http_session", Integer.class), is(0));
+  }
+
+  private int countSessions(String id) {
+    return jdbcTemplate.queryForObject("select count(*) from http_session where session_id = ?", Integer.class, id);
+  }
+
+}
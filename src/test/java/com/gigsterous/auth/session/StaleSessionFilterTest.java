@@ -0,0 +1,86 @@
+package com.gigsterous.auth.session;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.service.TokenEpochService;
+
+import javax.servlet.FilterChain;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+public class StaleSessionFilterTest {
+
+  @Mock
+  private TokenEpochService tokenEpochService;
+
+  @Mock
+  private FilterChain filterChain;
+
+  private MockHttpServletRequest request;
+  private MockHttpServletResponse response;
+  private MockHttpSession session;
+
+  private StaleSessionFilter filter;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    User user = new User();
+    user.setEmail("anna@example.com");
+    user.setRole(Role.USER);
+    user.setTokenEpoch(2);
+    SecurityContextHolder.getContext()
+        .setAuthentication(new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities()));
+
+    session = new MockHttpSession();
+    request = new MockHttpServletRequest("GET", "/profile");
+    request.setSession(session);
+    response = new MockHttpServletResponse();
+
+    filter = new StaleSessionFilter(tokenEpochService);
+  }
+
+  @After
+  public void tearDown() {
+    SecurityContextHolder.clearContext();
+  }
+
+  @Test
+  public void testGivenSessionOfCurrentEpochWhenFilteringThenUserStaysLoggedIn() throws Exception {
+    given(tokenEpochService.currentEpoch("anna@example.com")).willReturn(2L);
+
+    filter.doFilter(request, response, filterChain);
+
+    assertThat(SecurityContextHolder.getContext().getAuthentication().getName(), is("anna@example.com"));
+    assertThat(session.isInvalid(), is(false));
+    verify(filterChain).doFilter(request, response);
+  }
+
+  @Test
+  public void testGivenSessionOfOlderEpochWhenFilteringThenSessionIsLoggedOut() throws Exception {
+    given(tokenEpochService.currentEpoch("anna@example.com")).willReturn(3L);
+
+    filter.doFilter(request, response, filterChain);
+
+    assertThat(SecurityContextHolder.getContext().getAuthentication(), is(nullValue()));
+    assertThat(session.isInvalid(), is(true));
+    verify(filterChain).doFilter(request, response);
+  }
+
+}
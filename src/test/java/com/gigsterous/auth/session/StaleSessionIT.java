@@ -0,0 +1,77 @@
+package com.gigsterous.auth.session;
+
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestBuilders.formLogin;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrlPattern;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+// csrf() replaces the lazy CSRF token repository of the context, which would store tokens for every page afterwards
+@DirtiesContext
+public class StaleSessionIT {
+
+  private static final String USERNAME = "heather@example.com";
+  private static final String PASSWORD = "password";
+
+  @Autowired
+  private MockMvc mvc;
+
+  @Test
+  public void testGivenTwoSessionsWhenLoggingOutGloballyInOneThenTheOtherIsLoggedOut() throws Exception {
+    MockHttpSession other = login(PASSWORD);
+    MockHttpSession current = login(PASSWORD);
+
+    this.mvc.perform(post("/globalLogout").session(current).with(csrf())).andExpect(status().isOk());
+
+    this.mvc.perform(get("/profile").session(other)).andExpect(redirectedUrlPattern("**/login"));
+  }
+
+  @Test
+  public void testGivenTwoSessionsWhenChangingPasswordInOneThenOnlyThatOneStaysLoggedIn() throws Exception {
+    MockHttpSession other = login(PASSWORD);
+    MockHttpSession current = login(PASSWORD);
+
+    changePassword(current, PASSWORD, "changed-password");
+
+    try {
+      this.mvc.perform(get("/profile").session(current)).andExpect(status().isOk());
+      this.mvc.perform(get("/profile").session(other)).andExpect(redirectedUrlPattern("**/login"));
+    } finally {
+      changePassword(current, "changed-password", PASSWORD);
+    }
+  }
+
+  private MockHttpSession login(String password) throws Exception {
+    return (MockHttpSession) this.mvc.perform(formLogin().user(USERNAME).password(password))
+        .andExpect(redirectedUrl("/profile")).andReturn().getRequest().getSession();
+  }
+
+  private void changePassword(MockHttpSession session, String currentPassword, String newPassword)
+      throws Exception {
+    // @formatter:off
+    this.mvc.perform(post("/changePassword").session(session).with(csrf())
+        .param("currentPassword", currentPassword)
+        .param("newPassword", newPassword)
+        .param("confirmPassword", newPassword))
+        .andExpect(status().isOk());
+    // @formatter:on
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.gigsterous.auth.throttle;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+
+import javax.servlet.FilterChain;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class LoginThrottleFilterTest {
+
+  @Mock
+  private LoginThrottle loginThrottle;
+
+  @Mock
+  private FilterChain filterChain;
+
+  private LoginThrottleFilter filter;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    given(loginThrottle.getRetryAfter()).willReturn(Duration.ofMinutes(1));
+    filter = new LoginThrottleFilter(loginThrottle);
+  }
+
+  @Test
+  public void testGivenThrottledPasswordGrantWhenFilteringThenRespondWithTooManyRequests() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/oauth/token");
+    request.setServletPath("/oauth/token");
+    request.setParameter("grant_type", "password");
+    request.setParameter("username", "anna@example.com");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    given(loginThrottle.isAllowed("anna@example.com", "127.0.0.1")).willReturn(false);
+
+    filter.doFilter(request, response, filterChain);
+
+    assertThat(response.getStatus(), is(429));
+    assertThat(response.getHeader("Retry-After"), is("60"));
+    verify(filterChain, never()).doFilter(any(), any());
+  }
+
+  @Test
+  public void testGivenRefreshGrantWhenFilteringThenItIsNotCounted() throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/oauth/token");
+    request.setServletPath("/oauth/token");
+    request.setParameter("grant_type", "refresh_token");
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(request, response, filterChain);
+
+    assertThat(response.getHeader("Retry-After"), is(nullValue()));
+    verify(loginThrottle, never()).isAllowed(any(), any());
+    verify(filterChain).doFilter(request, response);
+  }
+
+}
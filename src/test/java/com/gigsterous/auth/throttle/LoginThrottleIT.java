@@ -0,0 +1,73 @@
+package com.gigsterous.auth.throttle;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+    "auth.loginThrottle.maxAttemptsPerAccount=3", "auth.loginThrottle.maxAttemptsPerAddress=5" })
+@ActiveProfiles("test")
+public class LoginThrottleIT {
+
+  private static final String PASSWORD = "password";
+
+  @Autowired
+  private TestRestTemplate testRestTemplate;
+
+  @Test
+  public void testGivenTooManyFailuresForAccountWhenLoggingInFromAnotherAddressThenAttemptIsRejected() {
+    for (int attempt = 0; attempt < 3; attempt++) {
+      assertThat(requestToken("heather@example.com", "wrong", "203.0.113.1"), is(HttpStatus.BAD_REQUEST));
+    }
+
+    assertThat(requestToken("heather@example.com", PASSWORD, "203.0.113.2"), is(HttpStatus.TOO_MANY_REQUESTS));
+  }
+
+  @Test
+  public void testGivenTooManyFailuresFromForwardedAddressWhenLoggingInThenOnlyThatAddressIsRejected() {
+    for (int attempt = 0; attempt < 5; attempt++) {
+      assertThat(requestToken("nobody" + attempt + "@example.com", "wrong", "203.0.113.10"),
+          is(HttpStatus.BAD_REQUEST));
+    }
+
+    assertThat(requestToken("john@example.com", PASSWORD, "203.0.113.10"), is(HttpStatus.TOO_MANY_REQUESTS));
+    assertThat(requestToken("john@example.com", PASSWORD, "203.0.113.11"), is(HttpStatus.OK));
+  }
+
+  @Test
+  public void testGivenManySuccessfulLoginsWhenLoggingInThenAttemptIsAllowed() {
+    for (int attempt = 0; attempt < 6; attempt++) {
+      assertThat(requestToken("anna@example.com", PASSWORD, "203.0.113.20"), is(HttpStatus.OK));
+    }
+  }
+
+  private HttpStatus requestToken(String username, String password, String address) {
+    MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+    form.add("grant_type", "password");
+    form.add("username", username);
+    form.add("password", password);
+
+    HttpHeaders headers = new HttpHeaders();
+    headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+    headers.set("X-Forwarded-For", address);
+
+    return testRestTemplate.withBasicAuth("gigy", "secret")
+        .postForEntity("/oauth/token", new HttpEntity<>(form, headers), String.class).getStatusCode();
+  }
+
+}
@@ -0,0 +1,53 @@
+package com.gigsterous.auth.throttle;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class LoginThrottleTest {
+
+  private LoginThrottle loginThrottle = new LoginThrottle(sketch(), sketch(), 2, 5, new SimpleMeterRegistry());
+
+  @Test
+  public void testGivenTooManyFailuresForAccountWhenLoggingInThenAttemptIsRejected() {
+    loginThrottle.recordFailure("anna@example.com", "10.0.0.1");
+    assertThat(loginThrottle.isAllowed("anna@example.com", "10.0.0.2"), is(true));
+    loginThrottle.recordFailure("Anna@Example.com ", "10.0.0.2");
+
+    assertThat(loginThrottle.isAllowed("anna@example.com", "10.0.0.3"), is(false));
+    assertThat(loginThrottle.isAllowed("heather@example.com", "10.0.0.3"), is(true));
+    assertThat(loginThrottle.getStatus().get("rejectedByAccount"), is(1L));
+  }
+
+  @Test
+  public void testGivenTooManyFailuresFromAddressWhenLoggingInThenAttemptIsRejected() {
+    for (int attempt = 0; attempt < 5; attempt++) {
+      assertThat(loginThrottle.isAllowed("user" + attempt + "@example.com", "10.0.0.1"), is(true));
+      loginThrottle.recordFailure("user" + attempt + "@example.com", "10.0.0.1");
+    }
+
+    assertThat(loginThrottle.isAllowed("john@example.com", "10.0.0.1"), is(false));
+    assertThat(loginThrottle.isAllowed("john@example.com", "10.0.0.2"), is(true));
+    assertThat(loginThrottle.getStatus().get("rejectedByAddress"), is(1L));
+  }
+
+  @Test
+  public void testGivenManySuccessfulLoginsWhenLoggingInThenAttemptIsAllowed() {
+    for (int attempt = 0; attempt < 10; attempt++) {
+      assertThat(loginThrottle.isAllowed("anna@example.com", "10.0.0.1"), is(true));
+    }
+
+    assertThat(loginThrottle.getStatus().get("attempts"), is(10L));
+    assertThat(loginThrottle.getStatus().get("failures"), is(0L));
+  }
+
+  private static SlidingWindowSketch sketch() {
+    return new SlidingWindowSketch(Duration.ofMinutes(5), 5, 4, 1024);
+  }
+
+}
@@ -0,0 +1,39 @@
+package com.gigsterous.auth.throttle;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.time.Duration;
+
+import org.junit.Test;
+
+public class SlidingWindowSketchTest {
+
+  private SlidingWindowSketch sketch = new SlidingWindowSketch(Duration.ofSeconds(50), 5, 4, 1024);
+
+  @Test
+  public void testGivenEventsWithinWindowWhenEstimatingThenAllAreCounted() {
+    sketch.increment("anna@example.com", 1000);
+    sketch.increment("anna@example.com", 15000);
+
+    assertThat(sketch.increment("anna@example.com", 45000), is(3));
+    assertThat(sketch.estimate("heather@example.com", 45000), is(0));
+  }
+
+  @Test
+  public void testGivenEventsBeforeWindowWhenEstimatingThenTheyAreNotCounted() {
+    sketch.increment("anna@example.com", 1000);
+    sketch.increment("anna@example.com", 25000);
+
+    assertThat(sketch.estimate("anna@example.com", 55000), is(1));
+    assertThat(sketch.estimate("anna@example.com", 75000), is(0));
+  }
+
+  @Test
+  public void testGivenSliceReusedByLaterWindowWhenIncrementingThenOldCountsAreCleared() {
+    sketch.increment("anna@example.com", 1000);
+
+    assertThat(sketch.increment("anna@example.com", 51000), is(1));
+  }
+
+}
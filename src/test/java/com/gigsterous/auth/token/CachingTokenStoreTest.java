@@ -0,0 +1,116 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+public class CachingTokenStoreTest {
+
+  @Mock
+  private BulkTokenStore delegate;
+
+  @Mock
+  private OAuth2Authentication authentication;
+
+  private DefaultOAuth2AccessToken accessToken;
+
+  private CachingTokenStore tokenStore;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    accessToken = new DefaultOAuth2AccessToken("access");
+    accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("refresh"));
+
+    given(delegate.readAccessToken("access")).willReturn(accessToken);
+    given(delegate.readAuthentication("access")).willReturn(authentication);
+
+    tokenStore = new CachingTokenStore(delegate, 100, Duration.ofMinutes(1));
+  }
+
+  @Test
+  public void testGivenCachedTokenWhenReadingTokenAgainThenDelegateIsQueriedOnce() {
+    tokenStore.readAccessToken("access");
+    tokenStore.readAccessToken("access");
+
+    assertThat(tokenStore.readAccessToken("access"), is(accessToken));
+    verify(delegate, times(1)).readAccessToken("access");
+  }
+
+  @Test
+  public void testGivenCachedAuthenticationWhenReadingByTokenThenDelegateIsQueriedOnce() {
+    tokenStore.readAuthentication("access");
+
+    assertThat(tokenStore.readAuthentication(accessToken), is(authentication));
+    verify(delegate, times(1)).readAuthentication("access");
+  }
+
+  @Test
+  public void testGivenUnknownTokenWhenReadingTokenThenMissIsNotCached() {
+    assertThat(tokenStore.readAccessToken("unknown"), is(nullValue()));
+    assertThat(tokenStore.readAccessToken("unknown"), is(nullValue()));
+
+    verify(delegate, times(2)).readAccessToken("unknown");
+  }
+
+  @Test
+  public void testGivenCachedTokenWhenRemovingTokenThenTokenIsReadFromDelegateAgain() {
+    tokenStore.readAccessToken("access");
+    tokenStore.readAuthentication("access");
+
+    tokenStore.removeAccessToken(accessToken);
+
+    tokenStore.readAccessToken("access");
+    tokenStore.readAuthentication("access");
+
+    verify(delegate).removeAccessToken(accessToken);
+    verify(delegate, times(2)).readAccessToken("access");
+    verify(delegate, times(2)).readAuthentication("access");
+  }
+
+  @Test
+  public void testGivenCachedTokenWhenRemovingItsRefreshTokenThenTokenIsEvicted() {
+    tokenStore.readAccessToken("access");
+
+    tokenStore.removeAccessTokenUsingRefreshToken(accessToken.getRefreshToken());
+    tokenStore.readAccessToken("access");
+
+    verify(delegate, times(2)).readAccessToken("access");
+  }
+
+  @Test
+  public void testGivenCachedAuthenticationWhenRemovingItsRefreshTokenThenAuthenticationIsEvicted() {
+    tokenStore.readAuthentication("access");
+
+    tokenStore.removeRefreshToken(accessToken.getRefreshToken());
+    tokenStore.readAuthentication("access");
+
+    verify(delegate, times(2)).readAuthentication("access");
+  }
+
+  @Test
+  public void testGivenStoredTokenWhenReadingTokenThenDelegateIsNotQueried() {
+    tokenStore.storeAccessToken(accessToken, authentication);
+
+    assertThat(tokenStore.readAccessToken("access"), is(accessToken));
+    assertThat(tokenStore.readAuthentication("access"), is(authentication));
+
+    verify(delegate).storeAccessToken(accessToken, authentication);
+    verify(delegate, times(0)).readAccessToken("access");
+  }
+
+}
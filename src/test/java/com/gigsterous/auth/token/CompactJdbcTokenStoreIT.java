@@ -0,0 +1,161 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.DigestUtils;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class CompactJdbcTokenStoreIT {
+
+  @Autowired
+  private DataSource dataSource;
+
+  private JdbcTemplate jdbcTemplate;
+
+  private CompactJdbcTokenStore tokenStore;
+
+  private OAuth2Authentication authentication;
+
+  @Before
+  public void setUp() {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    tokenStore = new CompactJdbcTokenStore(dataSource, new TokenCodec(new StringInterner(100)));
+
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), UUID.randomUUID().toString(),
+        Collections.emptyList(), true, Collections.singleton("read"), Collections.emptySet(), null,
+        Collections.emptySet(), Collections.emptyMap());
+    authentication = new OAuth2Authentication(request, null);
+  }
+
+  @Test
+  public void testGivenTokenWhenStoringThenExpiryIsWrittenToItsColumn() {
+    Date expiration = new Date(System.currentTimeMillis() + 60000);
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    token.setExpiration(expiration);
+
+    tokenStore.storeAccessToken(token, authentication);
+
+    Timestamp expiresAt = jdbcTemplate.queryForObject("select expires_at from oauth_access_token where token_id = ?",
+        Timestamp.class, tokenKey(token.getValue()));
+    assertThat(expiresAt.getTime(), is(expiration.getTime()));
+    assertThat(tokenStore.readAccessToken(token.getValue()), is(token));
+  }
+
+  @Test
+  public void testGivenStoredTokenWhenStoringItAgainThenRowIsReplaced() {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+
+    tokenStore.storeAccessToken(token, authentication);
+    tokenStore.storeAccessToken(token, authentication);
+
+    assertThat(jdbcTemplate.queryForObject("select count(*) from oauth_access_token where token_id = ?",
+        Integer.class, tokenKey(token.getValue())), is(1));
+  }
+
+  @Test
+  public void testGivenExpiringRefreshTokenWhenStoringThenExpiryIsWrittenToItsColumn() {
+    Date expiration = new Date(System.currentTimeMillis() + 60000);
+    DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(
+        UUID.randomUUID().toString(), expiration);
+
+    tokenStore.storeRefreshToken(refreshToken, authentication);
+
+    Timestamp expiresAt = jdbcTemplate.queryForObject("select expires_at from oauth_refresh_token where token_id = ?",
+        Timestamp.class, tokenKey(refreshToken.getValue()));
+    assertThat(expiresAt.getTime(), is(expiration.getTime()));
+  }
+
+  @Test
+  public void testGivenTokensOfSeveralUsersWhenRemovingByUserNameThenOnlyTheirTokensAreRemoved() {
+    String clientId = authentication.getOAuth2Request().getClientId();
+    String username = UUID.randomUUID() + "@example.com";
+    OAuth2AccessToken usersToken = storeTokenWithRefreshToken(userAuthentication(clientId, username));
+    OAuth2AccessToken heathersToken = storeTokenWithRefreshToken(userAuthentication(clientId, "heather@example.com"));
+
+    assertThat(tokenStore.removeTokensByUserName(username), is(2));
+
+    assertThat(tokenStore.readAccessToken(usersToken.getValue()), is(nullValue()));
+    assertThat(tokenStore.readRefreshToken(usersToken.getRefreshToken().getValue()), is(nullValue()));
+    assertThat(tokenStore.readAccessToken(heathersToken.getValue()), is(heathersToken));
+  }
+
+  @Test
+  public void testGivenTokensOfClientWhenRemovingByClientIdAndUserNameThenOtherUsersKeepTheirTokens() {
+    String clientId = authentication.getOAuth2Request().getClientId();
+    storeTokenWithRefreshToken(userAuthentication(clientId, "anna@example.com"));
+    OAuth2AccessToken heathersToken = storeTokenWithRefreshToken(userAuthentication(clientId, "heather@example.com"));
+
+    assertThat(tokenStore.removeTokensByClientIdAndUserName(clientId, "anna@example.com"), is(2));
+    assertThat(tokenStore.findTokensByClientId(clientId).size(), is(1));
+
+    assertThat(tokenStore.removeTokensByClientId(clientId), is(2));
+    assertThat(tokenStore.readAccessToken(heathersToken.getValue()), is(nullValue()));
+    assertThat(tokenStore.readRefreshToken(heathersToken.getRefreshToken().getValue()), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenStoredTokensWhenReadingSeveralAtOnceThenUnknownTokensAreLeftOut() {
+    String clientId = authentication.getOAuth2Request().getClientId();
+    OAuth2AccessToken annasToken = storeTokenWithRefreshToken(userAuthentication(clientId, "anna@example.com"));
+    OAuth2AccessToken heathersToken = storeTokenWithRefreshToken(userAuthentication(clientId, "heather@example.com"));
+
+    Map<String, StoredAccessToken> tokens = tokenStore
+        .readAccessTokens(Arrays.asList(annasToken.getValue(), heathersToken.getValue(), "unknown"));
+
+    assertThat(tokens.size(), is(2));
+    assertThat(tokens.get(annasToken.getValue()).getToken(), is(annasToken));
+    assertThat(tokens.get(heathersToken.getValue()).getAuthentication().getName(), is("heather@example.com"));
+  }
+
+  private OAuth2AccessToken storeTokenWithRefreshToken(OAuth2Authentication authentication) {
+    DefaultOAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken(UUID.randomUUID().toString());
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    token.setRefreshToken(refreshToken);
+
+    tokenStore.storeAccessToken(token, authentication);
+    tokenStore.storeRefreshToken(refreshToken, authentication);
+
+    return token;
+  }
+
+  private static OAuth2Authentication userAuthentication(String clientId, String username) {
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), clientId, Collections.emptyList(), true,
+        Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+    return new OAuth2Authentication(request,
+        new UsernamePasswordAuthenticationToken(username, null, Collections.emptyList()));
+  }
+
+  private static String tokenKey(String value) {
+    return DigestUtils.md5DigestAsHex(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
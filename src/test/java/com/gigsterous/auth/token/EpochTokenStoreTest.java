@@ -0,0 +1,105 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.gigsterous.auth.model.User;
+import com.gigsterous.auth.service.TokenEpochService;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+public class EpochTokenStoreTest {
+
+  @Mock
+  private TokenStore delegate;
+
+  @Mock
+  private TokenEpochService tokenEpochService;
+
+  @Mock
+  private OAuth2Authentication authentication;
+
+  private DefaultOAuth2AccessToken accessToken;
+
+  private DefaultOAuth2RefreshToken refreshToken;
+
+  private EpochTokenStore tokenStore;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    refreshToken = new DefaultOAuth2RefreshToken("refresh");
+    accessToken = new DefaultOAuth2AccessToken("access");
+    accessToken.setRefreshToken(refreshToken);
+    accessToken.setAdditionalInformation(Collections.singletonMap(EpochTokenEnhancer.EPOCH, 1L));
+
+    User user = new User();
+    user.setEmail("john@example.com");
+    user.setTokenEpoch(1L);
+
+    given(authentication.getName()).willReturn("john@example.com");
+    given(authentication.getPrincipal()).willReturn(user);
+    given(delegate.readAccessToken("access")).willReturn(accessToken);
+    given(delegate.readAuthentication(accessToken)).willReturn(authentication);
+    given(delegate.readRefreshToken("refresh")).willReturn(refreshToken);
+    given(delegate.readAuthenticationForRefreshToken(refreshToken)).willReturn(authentication);
+    given(delegate.getAccessToken(authentication)).willReturn(accessToken);
+
+    tokenStore = new EpochTokenStore(delegate, tokenEpochService);
+  }
+
+  @Test
+  public void testGivenTokenOfCurrentEpochWhenReadingAuthenticationThenReturnIt() {
+    given(tokenEpochService.currentEpoch("john@example.com")).willReturn(1L);
+
+    assertThat(tokenStore.readAuthentication("access"), is(authentication));
+    assertThat(tokenStore.readRefreshToken("refresh"), is(refreshToken));
+  }
+
+  @Test
+  public void testGivenTokenOfOlderEpochWhenReadingAuthenticationThenTokenIsInvalid() {
+    given(tokenEpochService.currentEpoch("john@example.com")).willReturn(2L);
+
+    assertThat(tokenStore.readAuthentication("access"), is(nullValue()));
+    verify(delegate, never()).removeAccessToken(accessToken);
+  }
+
+  @Test
+  public void testGivenTokenWithoutEpochWhenUserMovedToNextEpochThenTokenIsInvalid() {
+    accessToken.setAdditionalInformation(Collections.emptyMap());
+    given(tokenEpochService.currentEpoch("john@example.com")).willReturn(1L);
+
+    assertThat(tokenStore.readAuthentication(accessToken), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenRefreshTokenOfOlderEpochWhenReadingThenItIsRemoved() {
+    given(tokenEpochService.currentEpoch("john@example.com")).willReturn(2L);
+
+    assertThat(tokenStore.readRefreshToken("refresh"), is(nullValue()));
+    verify(delegate).removeRefreshToken(refreshToken);
+  }
+
+  @Test
+  public void testGivenExistingTokenOfOlderEpochWhenGettingTokenForAuthenticationThenItIsNotReused() {
+    given(tokenEpochService.currentEpoch("john@example.com")).willReturn(2L);
+
+    assertThat(tokenStore.getAccessToken(authentication), is(nullValue()));
+    verify(delegate).removeAccessToken(accessToken);
+  }
+
+}
@@ -0,0 +1,80 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+public class KeyIdJwtAccessTokenConverterTest {
+
+  private KeyIdJwtAccessTokenConverter converter;
+
+  private OAuth2Authentication authentication;
+
+  @Before
+  public void setUp() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(2048);
+    KeyPair keyPair = generator.generateKeyPair();
+
+    converter = new KeyIdJwtAccessTokenConverter(keyPair, "key-1");
+
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "client", Collections.emptyList(), true,
+        Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+    authentication = new OAuth2Authentication(request, null);
+  }
+
+  @Test
+  public void testGivenAccessTokenWhenEnhancingThenJwtCarriesKeyId() {
+    OAuth2AccessToken token = converter.enhance(new DefaultOAuth2AccessToken("opaque"), authentication);
+
+    assertThat(KeyIdJwtAccessTokenConverter.isJwt(token.getValue()), is(true));
+    assertThat(JwtHelper.headers(token.getValue()).get("kid"), is("key-1"));
+  }
+
+  @Test
+  public void testGivenSignedTokenWhenReadingLocallyThenAuthenticationIsRestored() {
+    OAuth2AccessToken token = converter.enhance(new DefaultOAuth2AccessToken("opaque"), authentication);
+
+    OAuth2Authentication restored = new JwtTokenStore(converter).readAuthentication(token.getValue());
+
+    assertThat(restored.getOAuth2Request().getClientId(), is("client"));
+  }
+
+  @Test
+  public void testGivenSignedRefreshTokenWhenEnhancingThenRefreshTokenIsKept() {
+    OAuth2AccessToken first = converter.enhance(tokenWithRefreshToken("refresh"), authentication);
+    String refreshToken = first.getRefreshToken().getValue();
+
+    OAuth2AccessToken second = converter.enhance(tokenWithRefreshToken(refreshToken), authentication);
+
+    assertThat(second.getRefreshToken().getValue(), is(refreshToken));
+  }
+
+  @Test
+  public void testGivenKeyPairWhenReadingJwkThenPublicKeyIsPublished() {
+    assertThat(converter.getJwk().get("kid"), is("key-1"));
+    assertThat(converter.getJwk().get("e"), is("AQAB"));
+    assertThat(Base64.getUrlDecoder().decode(converter.getJwk().get("n").toString()).length, is(256));
+  }
+
+  private DefaultOAuth2AccessToken tokenWithRefreshToken(String refreshToken) {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("opaque");
+    token.setRefreshToken(new DefaultOAuth2RefreshToken(refreshToken));
+    return token;
+  }
+
+}
@@ -0,0 +1,150 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+public class LogTokenStoreTest {
+
+  private static final int INITIAL_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path directory;
+
+  private LogTokenStore tokenStore;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = folder.newFolder("tokens").toPath();
+    tokenStore = open();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    tokenStore.close();
+  }
+
+  @Test
+  public void testGivenStoredTokenWhenReadingThenTokenAndAuthenticationAreReturned() {
+    OAuth2Authentication authentication = authentication("john@example.com");
+    OAuth2AccessToken token = storeToken(authentication);
+
+    assertThat(tokenStore.readAccessToken(token.getValue()), is(token));
+    assertThat(tokenStore.readAuthentication(token).getName(), is("john@example.com"));
+    assertThat(tokenStore.getAccessToken(authentication), is(token));
+    assertThat(tokenStore.readRefreshToken(token.getRefreshToken().getValue()), is(token.getRefreshToken()));
+  }
+
+  @Test
+  public void testGivenStoredAndRemovedTokensWhenReopeningThenLogIsReplayed() throws IOException {
+    OAuth2AccessToken kept = storeToken(authentication("john@example.com"));
+    OAuth2AccessToken removed = storeToken(authentication("anna@example.com"));
+    tokenStore.removeAccessToken(removed);
+    tokenStore.removeRefreshToken(removed.getRefreshToken());
+
+    tokenStore.close();
+    tokenStore = open();
+
+    assertThat(tokenStore.readAccessToken(kept.getValue()), is(kept));
+    assertThat(tokenStore.readAccessToken(removed.getValue()), is(nullValue()));
+    assertThat(tokenStore.readRefreshToken(removed.getRefreshToken().getValue()), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenManyReplacedTokensWhenLogIsFullThenItIsCompactedAndStillReplayed() throws IOException {
+    OAuth2Authentication authentication = authentication("john@example.com");
+    OAuth2AccessToken token = null;
+
+    for (int i = 0; i < 200; i++) {
+      if (token != null) {
+        tokenStore.removeAccessToken(token);
+      }
+      token = storeToken(authentication);
+    }
+
+    assertThat(((Number) tokenStore.getStatus().get("generation")).longValue() > 0, is(true));
+
+    tokenStore.close();
+    tokenStore = open();
+
+    assertThat(tokenStore.readAccessToken(token.getValue()), is(token));
+    assertThat(tokenStore.readAccessTokens(Collections.singleton(token.getValue())).size(), is(1));
+  }
+
+  @Test
+  public void testGivenTornRecordAtEndOfLogWhenReopeningThenEarlierTokensAreKept() throws IOException {
+    OAuth2AccessToken kept = storeToken(authentication("john@example.com"));
+    int size = ((Number) tokenStore.getStatus().get("size")).intValue();
+    OAuth2AccessToken torn = storeToken(authentication("anna@example.com"));
+    tokenStore.close();
+
+    // damage the last record the way a crash in the middle of writing it would
+    try (RandomAccessFile file = new RandomAccessFile(directory.resolve("tokens-0.log").toFile(), "rw")) {
+      file.seek(size + 20);
+      file.write(new byte[] { 1, 2, 3 });
+    }
+
+    tokenStore = open();
+
+    assertThat(tokenStore.readAccessToken(kept.getValue()), is(kept));
+    assertThat(tokenStore.readAccessToken(torn.getValue()), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenTokensOfSeveralUsersWhenRemovingByUserNameThenOnlyTheirTokensAreRemoved() {
+    OAuth2AccessToken johnsToken = storeToken(authentication("john@example.com"));
+    OAuth2AccessToken annasToken = storeToken(authentication("anna@example.com"));
+
+    assertThat(tokenStore.removeTokensByUserName("anna@example.com"), is(2));
+
+    assertThat(tokenStore.readAccessTokens(Arrays.asList(johnsToken.getValue(), annasToken.getValue())).keySet(),
+        is(Collections.singleton(johnsToken.getValue())));
+    assertThat(tokenStore.findTokensByClientId("gigy").size(), is(1));
+  }
+
+  private LogTokenStore open() {
+    return new LogTokenStore(directory, new TokenCodec(new StringInterner(100)), INITIAL_SIZE, false, 0L);
+  }
+
+  private OAuth2AccessToken storeToken(OAuth2Authentication authentication) {
+    DefaultOAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken(UUID.randomUUID().toString());
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    token.setExpiration(new Date(System.currentTimeMillis() + 60000));
+    token.setRefreshToken(refreshToken);
+
+    tokenStore.storeAccessToken(token, authentication);
+    tokenStore.storeRefreshToken(refreshToken, authentication);
+
+    return token;
+  }
+
+  private static OAuth2Authentication authentication(String username) {
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "gigy", Collections.emptyList(), true,
+        Collections.singleton("read"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+    return new OAuth2Authentication(request,
+        new UsernamePasswordAuthenticationToken(username, null, Collections.emptyList()));
+  }
+
+}
@@ -0,0 +1,90 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedLogTest {
+
+  private static final int MAGIC = 0x54535447;
+  private static final int INITIAL_SIZE = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MappedLog mappedLog;
+
+  @After
+  public void tearDown() throws IOException {
+    mappedLog.close();
+  }
+
+  @Test
+  public void testGivenCompactedLogWhenReopeningThenOnlyCopiedRecordsAreReplayed() throws IOException {
+    Path directory = folder.newFolder("log").toPath();
+    List<Integer> positions = new ArrayList<>();
+    mappedLog = open(directory, new ArrayList<>(), positions);
+
+    mappedLog.write(() -> {
+      for (int i = 0; i < 20; i++) {
+        positions.add(mappedLog.append(MappedLog.record((byte) 1, "record" + i)));
+      }
+    });
+    mappedLog.compact();
+    mappedLog.close();
+
+    List<String> replayed = new ArrayList<>();
+    mappedLog = open(directory, replayed, new ArrayList<>());
+
+    assertThat(replayed, contains("record19"));
+    assertThat(mappedLog.getStatus().get("generation"), is(1L));
+  }
+
+  @Test
+  public void testGivenRecordOfUnknownOperationWhenReopeningThenRestOfLogIsDropped() throws IOException {
+    Path directory = folder.newFolder("log").toPath();
+    mappedLog = open(directory, new ArrayList<>(), new ArrayList<>());
+
+    mappedLog.write(() -> {
+      mappedLog.append(MappedLog.record((byte) 1, "kept"));
+      mappedLog.append(MappedLog.record((byte) 9, "unknown"));
+      mappedLog.append(MappedLog.record((byte) 1, "dropped"));
+    });
+    mappedLog.close();
+
+    List<String> replayed = new ArrayList<>();
+    mappedLog = open(directory, replayed, new ArrayList<>());
+
+    assertThat(replayed, contains("kept"));
+  }
+
+  private static MappedLog open(Path directory, List<String> replayed, List<Integer> positions) {
+    MappedLog mappedLog = new MappedLog(directory, "test", MAGIC, INITIAL_SIZE, false);
+
+    // the last record appended is the only live one, like a store replacing a single value
+    mappedLog.open((op, fields, position, length) -> {
+      if (op != 1) {
+        return false;
+      }
+      replayed.add(fields.string());
+      return true;
+    }, target -> {
+      int last = positions.get(positions.size() - 1);
+      int position = target.copy(last, MappedLog.record((byte) 1, "record19").length);
+      return () -> positions.add(position);
+    });
+
+    return mappedLog;
+  }
+
+}
@@ -0,0 +1,166 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.gigsterous.auth.model.Role;
+import com.gigsterous.auth.model.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+public class TokenCodecTest {
+
+  private TokenCodec codec;
+
+  private DefaultOAuth2AccessToken accessToken;
+
+  private OAuth2Authentication authentication;
+
+  @Before
+  public void setUp() {
+    codec = new TokenCodec(new StringInterner(100));
+
+    accessToken = new DefaultOAuth2AccessToken("b14d9a0c-450d-4fd9-bd46-d5a70422e4c7");
+    accessToken.setExpiration(new Date(1600000000000L));
+    accessToken.setRefreshToken(
+        new DefaultExpiringOAuth2RefreshToken("2e96a6a3-52f9-4b4b-9d23-4e6d1a3e0d5f", new Date(1700000000000L)));
+    accessToken.setScope(new LinkedHashSet<>(Arrays.asList("read", "write")));
+
+    User user = new User();
+    user.setId(1);
+    user.setEmail("john@example.com");
+    user.setPassword("$2a$10$D4OLKI6yy68crm.3imC9X.P2xqKHs5TloWUcr6z5XdOqnTrAK84ri");
+    user.setRole(Role.ADMIN);
+    user.setEnabled(true);
+
+    Map<String, String> parameters = new LinkedHashMap<>();
+    parameters.put("grant_type", "password");
+    parameters.put("username", "john@example.com");
+
+    UsernamePasswordAuthenticationToken userAuthentication = new UsernamePasswordAuthenticationToken(user, null,
+        user.getAuthorities());
+    userAuthentication.setDetails(parameters);
+
+    OAuth2Request request = new OAuth2Request(parameters, "gigy", Collections.emptyList(), true,
+        accessToken.getScope(), Collections.singleton("resource"), null, Collections.emptySet(),
+        Collections.emptyMap());
+    authentication = new OAuth2Authentication(request, userAuthentication);
+  }
+
+  @Test
+  public void testGivenAccessTokenWhenEncodingAndDecodingThenTokenIsEqual() {
+    accessToken.setAdditionalInformation(Collections.singletonMap("jti", "5f1b"));
+
+    OAuth2AccessToken decoded = codec.decodeAccessToken(codec.encodeAccessToken(accessToken));
+
+    assertThat(decoded, is(accessToken));
+    assertThat(decoded.getExpiration(), is(accessToken.getExpiration()));
+    assertThat(decoded.getRefreshToken(), is(accessToken.getRefreshToken()));
+    assertThat(decoded.getScope(), is(accessToken.getScope()));
+    assertThat(decoded.getAdditionalInformation(), is(accessToken.getAdditionalInformation()));
+  }
+
+  @Test
+  public void testGivenAuthenticationWhenEncodingAndDecodingThenAuthenticationIsRestoredWithoutPassword() {
+    OAuth2Authentication decoded = codec.decodeAuthentication(codec.encodeAuthentication(authentication));
+
+    assertThat(decoded.getOAuth2Request(), is(authentication.getOAuth2Request()));
+    assertThat(decoded.getName(), is("john@example.com"));
+    assertThat(decoded.getAuthorities(), is(authentication.getAuthorities()));
+    assertThat(decoded.getUserAuthentication().getDetails(), is(authentication.getUserAuthentication().getDetails()));
+    assertThat(decoded.isAuthenticated(), is(true));
+
+    User principal = (User) decoded.getPrincipal();
+    assertThat(principal.getId(), is(1L));
+    assertThat(principal.getRole(), is(Role.ADMIN));
+    assertThat(principal.getPassword(), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenDecodedAuthenticationsWhenComparingClientIdsThenInstanceIsShared() {
+    byte[] encoded = codec.encodeAuthentication(authentication);
+
+    OAuth2Authentication first = codec.decodeAuthentication(encoded);
+    OAuth2Authentication second = codec.decodeAuthentication(encoded);
+
+    assertThat(first.getOAuth2Request().getClientId(),
+        is(sameInstance(second.getOAuth2Request().getClientId())));
+  }
+
+  @Test
+  public void testGivenDecodedAuthenticationsWhenComparingRequestParametersThenOnlyNamesAreShared() {
+    byte[] encoded = codec.encodeAuthentication(authentication);
+
+    Map<String, String> first = codec.decodeAuthentication(encoded).getOAuth2Request().getRequestParameters();
+    Map<String, String> second = codec.decodeAuthentication(encoded).getOAuth2Request().getRequestParameters();
+
+    String firstName = first.keySet().stream().filter("username"::equals).findFirst().get();
+    String secondName = second.keySet().stream().filter("username"::equals).findFirst().get();
+    assertThat(firstName, is(sameInstance(secondName)));
+    assertThat(first.get("username") == second.get("username"), is(false));
+  }
+
+  @Test
+  public void testGivenJavaSerializedTokenWhenDecodingThenTokenIsRead() {
+    OAuth2AccessToken decoded = codec.decodeAccessToken(SerializationUtils.serialize(accessToken));
+    OAuth2Authentication decodedAuthentication = codec
+        .decodeAuthentication(SerializationUtils.serialize(authentication));
+
+    assertThat(decoded, is(accessToken));
+    assertThat(decodedAuthentication.getName(), is("john@example.com"));
+  }
+
+  @Test
+  public void testGivenUnsupportedDetailsWhenEncodingThenJavaSerializationIsUsed() {
+    authentication.setDetails(new StringBuilder("custom"));
+
+    byte[] encoded = codec.encodeAuthentication(authentication);
+
+    assertThat(TokenCodec.isJavaSerialized(encoded), is(true));
+    assertThat(codec.decodeAuthentication(encoded).getDetails(), is(instanceOf(StringBuilder.class)));
+  }
+
+  @Test
+  public void testGivenTokenWhenEncodingThenItIsSmallerThanJavaSerialization() {
+    assertThat(codec.encodeAccessToken(accessToken).length * 5,
+        is(lessThan(SerializationUtils.serialize(accessToken).length)));
+    assertThat(codec.encodeAuthentication(authentication).length * 5,
+        is(lessThan(SerializationUtils.serialize(authentication).length)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGivenTruncatedTokenWhenDecodingThenExceptionIsThrown() {
+    byte[] encoded = codec.encodeAccessToken(accessToken);
+
+    codec.decodeAccessToken(Arrays.copyOf(encoded, encoded.length / 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGivenReferenceToUnknownStringWhenDecodingThenExceptionIsThrown() {
+    byte[] encoded = codec.encodeAccessToken(accessToken);
+    // the token value is written first, make it refer to string 58 of a table of fewer strings
+    encoded[3] = 120;
+
+    codec.decodeAccessToken(encoded);
+  }
+
+}
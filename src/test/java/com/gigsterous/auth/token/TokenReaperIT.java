@@ -0,0 +1,158 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.gigsterous.auth.AuthProperties;
+import com.gigsterous.auth.service.LeaseService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class TokenReaperIT {
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Mock
+  private LeaseService leaseService;
+
+  private AuthProperties.TokenReaper properties;
+
+  private TokenReaper tokenReaper;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    given(leaseService.tryAcquire(anyString(), any())).willReturn(true);
+
+    properties = new AuthProperties.TokenReaper();
+    properties.setBatchSize(2);
+    properties.setPause(Duration.ZERO);
+
+    tokenReaper = new TokenReaper(jdbcTemplate, leaseService, properties, new SimpleMeterRegistry());
+  }
+
+  @Test
+  public void testGivenExpiredTokensWhenReapingThenOnlyExpiredTokensAreDeletedInBatches() {
+    long now = System.currentTimeMillis();
+    String expired = insertAccessToken(now - Duration.ofDays(1).toMillis());
+    insertAccessToken(now - Duration.ofDays(1).toMillis());
+    insertAccessToken(now - Duration.ofDays(1).toMillis());
+    String withinGracePeriod = insertAccessToken(now - 1000);
+    String valid = insertAccessToken(now + 60000);
+
+    tokenReaper.reap();
+
+    assertThat(countAccessTokens(expired), is(0));
+    assertThat(countAccessTokens(withinGracePeriod), is(1));
+    assertThat(countAccessTokens(valid), is(1));
+  }
+
+  @Test
+  public void testGivenOldAuthorizationCodeWhenReapingThenCodeIsDeleted() {
+    jdbcTemplate.update("insert into oauth_code (code, created_at) values (?, ?)", "old",
+        new Timestamp(System.currentTimeMillis() - Duration.ofHours(1).toMillis()));
+    jdbcTemplate.update("insert into oauth_code (code) values (?)", "fresh");
+
+    tokenReaper.reap();
+
+    assertThat(jdbcTemplate.queryForObject("select count(*) from oauth_code where code = 'old'", Integer.class), is(0));
+    assertThat(jdbcTemplate.queryForObject("select count(*) from oauth_code where code = 'fresh'", Integer.class),
+        is(1));
+  }
+
+  @Test
+  public void testGivenExpiredConfirmationTokenWhenReapingThenTokenIsDeleted() {
+    String expired = UUID.randomUUID().toString();
+    String valid = UUID.randomUUID().toString();
+    String sql = "insert into confirmation_tokens (token_hash, user_id, purpose, expires_at) "
+        + "values (?, 1, 'PASSWORD_RESET', ?)";
+    jdbcTemplate.update(sql, expired, new Timestamp(System.currentTimeMillis() - 1000));
+    jdbcTemplate.update(sql, valid, new Timestamp(System.currentTimeMillis() + 60000));
+
+    tokenReaper.reap();
+
+    String count = "select count(*) from confirmation_tokens where token_hash = ?";
+    assertThat(jdbcTemplate.queryForObject(count, Integer.class, expired), is(0));
+    assertThat(jdbcTemplate.queryForObject(count, Integer.class, valid), is(1));
+
+    jdbcTemplate.update("delete from confirmation_tokens where token_hash = ?", valid);
+  }
+
+  @Test
+  public void testGivenExpiredSessionWhenReapingThenSessionIsDeleted() {
+    String sql = "insert into http_session (session_id, created_at, last_accessed_at, max_inactive_interval, "
+        + "expires_at, data) values (?, ?, ?, 60, ?, ?)";
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    jdbcTemplate.update(sql, "expired", now, now, new Timestamp(now.getTime() - 1000), new byte[0]);
+    jdbcTemplate.update(sql, "valid", now, now, new Timestamp(now.getTime() + 60000), new byte[0]);
+
+    tokenReaper.reap();
+
+    assertThat(jdbcTemplate.queryForList("select session_id from http_session", String.class),
+        is(Collections.singletonList("valid")));
+
+    jdbcTemplate.update("delete from http_session");
+  }
+
+  @Test
+  public void testGivenRunningReapWhenReapingAgainThenSecondRunIsSkippedAndLeaseIsReleasedOnce() throws Exception {
+    CountDownLatch acquiring = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    given(leaseService.tryAcquire(anyString(), any())).willAnswer(invocation -> {
+      acquiring.countDown();
+      return finish.await(5, TimeUnit.SECONDS);
+    });
+
+    // the scheduled run holds the lease while a run is started by hand
+    Thread scheduled = new Thread(tokenReaper::reap);
+    scheduled.start();
+    acquiring.await();
+
+    tokenReaper.reap();
+    finish.countDown();
+    scheduled.join();
+
+    assertThat(tokenReaper.getStatus().get("skippedRuns"), is(1L));
+    verify(leaseService, times(1)).release(TokenReaper.LEASE);
+  }
+
+  private String insertAccessToken(long expiresAt) {
+    String tokenId = UUID.randomUUID().toString();
+    jdbcTemplate.update("insert into oauth_access_token (token_id, authentication_id, expires_at) values (?, ?, ?)",
+        tokenId, tokenId, new Timestamp(expiresAt));
+    return tokenId;
+  }
+
+  private int countAccessTokens(String tokenId) {
+    return jdbcTemplate.queryForObject("select count(*) from oauth_access_token where token_id = ?", Integer.class,
+        tokenId);
+  }
+
+}
@@ -0,0 +1,234 @@
+package com.gigsterous.auth.token;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@ActiveProfiles("test")
+public class WriteBehindTokenStoreIT {
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private JdbcTemplate jdbcTemplate;
+
+  private WriteBehindTokenStore tokenStore;
+
+  private OAuth2Authentication authentication;
+
+  @Before
+  public void setUp() {
+    jdbcTemplate = new JdbcTemplate(dataSource);
+
+    authentication = authentication(UUID.randomUUID() + "@example.com");
+  }
+
+  @After
+  public void tearDown() {
+    if (tokenStore != null) {
+      tokenStore.close();
+    }
+  }
+
+  @Test
+  public void testGivenPendingTokenWhenReadingThenItIsServedBeforeBeingWritten() {
+    tokenStore = writeBehindTokenStore(Duration.ofHours(1), WriteBehindTokenStore.Durability.ASYNC);
+    OAuth2AccessToken token = storeTokenWithRefreshToken();
+
+    assertThat(tokenStore.readAccessToken(token.getValue()), is(token));
+    assertThat(tokenStore.getAccessToken(authentication), is(token));
+    assertThat(tokenStore.readRefreshToken(token.getRefreshToken().getValue()), is(token.getRefreshToken()));
+    assertThat(rows("oauth_access_token", token.getValue()), is(0));
+
+    tokenStore.flush();
+
+    assertThat(rows("oauth_access_token", token.getValue()), is(1));
+    assertThat(rows("oauth_refresh_token", token.getRefreshToken().getValue()), is(1));
+    assertThat(tokenStore.readAuthentication(token).getName(), is(authentication.getName()));
+  }
+
+  @Test
+  public void testGivenPendingTokenWhenRemovingThenItIsNeverWritten() {
+    tokenStore = writeBehindTokenStore(Duration.ofHours(1), WriteBehindTokenStore.Durability.ASYNC);
+    OAuth2AccessToken token = storeTokenWithRefreshToken();
+
+    tokenStore.removeAccessToken(token);
+    tokenStore.flush();
+
+    assertThat(tokenStore.readAccessToken(token.getValue()), is(nullValue()));
+    assertThat(rows("oauth_access_token", token.getValue()), is(0));
+    assertThat(rows("oauth_refresh_token", token.getRefreshToken().getValue()), is(1));
+  }
+
+  @Test
+  public void testGivenPendingAndWrittenTokensWhenRemovingByUserNameThenBothAreCounted() {
+    tokenStore = writeBehindTokenStore(Duration.ofHours(1), WriteBehindTokenStore.Durability.ASYNC);
+    storeTokenWithRefreshToken();
+    tokenStore.flush();
+    OAuth2AccessToken pendingToken = storeTokenWithRefreshToken();
+
+    assertThat(tokenStore.removeTokensByUserName(authentication.getName()), is(4));
+    assertThat(tokenStore.readAccessToken(pendingToken.getValue()), is(nullValue()));
+  }
+
+  @Test
+  public void testGivenGroupCommitWhenStoringThenTokenIsWrittenBeforeReturning() {
+    tokenStore = writeBehindTokenStore(Duration.ofMillis(5), WriteBehindTokenStore.Durability.GROUP_COMMIT);
+    OAuth2AccessToken token = storeTokenWithRefreshToken();
+
+    assertThat(rows("oauth_access_token", token.getValue()), is(1));
+    assertThat(rows("oauth_refresh_token", token.getRefreshToken().getValue()), is(1));
+  }
+
+  @Test
+  public void testGivenMorePendingTokensThanBatchSizeWhenFlushingThenTheyAreWrittenInBatches() {
+    List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+    CompactJdbcTokenStore delegate = new CompactJdbcTokenStore(dataSource, new TokenCodec(new StringInterner(100))) {
+      @Override
+      public void storeAccessTokens(Map<OAuth2AccessToken, OAuth2Authentication> tokens) {
+        batches.add(tokens.size());
+        super.storeAccessTokens(tokens);
+      }
+    };
+    tokenStore = new WriteBehindTokenStore(delegate, new TransactionTemplate(transactionManager),
+        Duration.ofHours(1), 2, 1000, WriteBehindTokenStore.Durability.ASYNC, Duration.ofSeconds(5));
+
+    List<OAuth2AccessToken> tokens = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      tokens.add(storeToken(authentication(authentication.getName())));
+    }
+    tokenStore.flush();
+
+    // flushes may start in the background while tokens are still stored
+    assertThat(batches.stream().allMatch(size -> size <= 2), is(true));
+    assertThat(batches.stream().mapToInt(Integer::intValue).sum(), is(5));
+    tokens.forEach(token -> assertThat(rows("oauth_access_token", token.getValue()), is(1)));
+  }
+
+  @Test
+  public void testGivenTokenViolatingConstraintWhenFlushingThenOnlyThatTokenIsDropped() {
+    tokenStore = writeBehindTokenStore(Duration.ofHours(1), WriteBehindTokenStore.Durability.ASYNC);
+    OAuth2AccessToken first = storeToken(authentication);
+    // the token table keeps one token per authentication
+    OAuth2AccessToken duplicate = storeToken(authentication);
+    OAuth2AccessToken other = storeToken(authentication(authentication.getName()));
+
+    tokenStore.flush();
+
+    assertThat(rows("oauth_access_token", first.getValue()) + rows("oauth_access_token", duplicate.getValue()),
+        is(1));
+    assertThat(rows("oauth_access_token", other.getValue()), is(1));
+    assertThat(tokenStore.getAccessToken(authentication), is(notNullValue()));
+  }
+
+  @Test
+  public void testGivenUnreachableDatabaseWhenFlushingThenNoTokenIsDropped() {
+    DataSource unreachable = new DriverManagerDataSource("jdbc:h2:tcp://localhost:1/unreachable");
+    tokenStore = new WriteBehindTokenStore(
+        new CompactJdbcTokenStore(unreachable, new TokenCodec(new StringInterner(100))),
+        new TransactionTemplate(new DataSourceTransactionManager(unreachable)), Duration.ofHours(1), 100, 1000,
+        WriteBehindTokenStore.Durability.ASYNC, Duration.ofSeconds(5));
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    tokenStore.bindTo(meterRegistry);
+    OAuth2AccessToken token = storeTokenWithRefreshToken();
+
+    assertFlushFails(tokenStore::flush);
+
+    assertThat(tokenStore.readAccessToken(token.getValue()), is(token));
+    assertThat(tokenStore.readRefreshToken(token.getRefreshToken().getValue()), is(token.getRefreshToken()));
+    assertThat(meterRegistry.get("tokenStore.writeBehind.dropped").counter().count(), is(0.0));
+    assertThat(meterRegistry.get("tokenStore.writeBehind.pending").gauge().value(), is(1.0));
+
+    // closing writes the pending tokens, which fails the same way
+    WriteBehindTokenStore closed = tokenStore;
+    tokenStore = null;
+    assertFlushFails(closed::close);
+  }
+
+  private static void assertFlushFails(Runnable flush) {
+    try {
+      flush.run();
+      fail("Flush should fail while the database cannot be reached");
+    } catch (CannotCreateTransactionException e) {
+      // the tokens stay pending
+    }
+  }
+
+  private WriteBehindTokenStore writeBehindTokenStore(Duration flushInterval,
+      WriteBehindTokenStore.Durability durability) {
+    return new WriteBehindTokenStore(new CompactJdbcTokenStore(dataSource, new TokenCodec(new StringInterner(100))),
+        new TransactionTemplate(transactionManager), flushInterval, 100, 1000, durability, Duration.ofSeconds(5));
+  }
+
+  private OAuth2AccessToken storeTokenWithRefreshToken() {
+    DefaultOAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken(UUID.randomUUID().toString());
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    token.setRefreshToken(refreshToken);
+
+    tokenStore.storeRefreshToken(refreshToken, authentication);
+    tokenStore.storeAccessToken(token, authentication);
+
+    return token;
+  }
+
+  private OAuth2AccessToken storeToken(OAuth2Authentication tokenAuthentication) {
+    DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+    tokenStore.storeAccessToken(token, tokenAuthentication);
+    return token;
+  }
+
+  private static OAuth2Authentication authentication(String userName) {
+    OAuth2Request request = new OAuth2Request(Collections.emptyMap(), UUID.randomUUID().toString(),
+        Collections.emptyList(), true, Collections.singleton("read"), Collections.emptySet(), null,
+        Collections.emptySet(), Collections.emptyMap());
+    return new OAuth2Authentication(request,
+        new UsernamePasswordAuthenticationToken(userName, null, Collections.emptyList()));
+  }
+
+  private int rows(String table, String tokenValue) {
+    return jdbcTemplate.queryForObject("select count(*) from " + table + " where token_id = ?", Integer.class,
+        DigestUtils.md5DigestAsHex(tokenValue.getBytes(StandardCharsets.UTF_8)));
+  }
+
+}